@@ -10,9 +10,14 @@
  ******************************************************************************/
 package org.eclipse.bpmn2.modeler.examples.customtask;
 
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.bpmn2.modeler.core.utils.DocumentHeader;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil.Bpmn2DiagramType;
 import org.eclipse.bpmn2.modeler.ui.DefaultBpmn2RuntimeExtension;
 import org.eclipse.bpmn2.modeler.ui.wizards.FileService;
+import org.eclipse.emf.common.util.URI;
 import org.eclipse.graphiti.ui.editor.DiagramEditor;
 import org.eclipse.ui.IEditorInput;
 import org.xml.sax.InputSource;
@@ -24,10 +29,29 @@ public class MyRuntimeExtension extends DefaultBpmn2RuntimeExtension {
 
 	@Override
 	public boolean isContentForRuntime(IEditorInput input) {
-		  InputSource source = new InputSource( FileService.getInputContents(input) );
-		  RootElementParser parser = new RootElementParser("http://org.eclipse.bpmn2.modeler.examples.customtask");
-		  parser.parse(source);
-		  return parser.getResult();
+		// the header of a local file is cached and shared by all Target Runtimes
+		DocumentHeader header = null;
+		URI uri = FileService.getInputUri(input);
+		if (uri!=null && (uri.isPlatformResource() || uri.isFile())) {
+			header = DocumentHeader.getHeader(uri);
+		}
+		else {
+			InputStream in = FileService.getInputContents(input);
+			if (in!=null) {
+				try {
+					header = DocumentHeader.parse(new InputSource(in));
+				}
+				finally {
+					try {
+						in.close();
+					}
+					catch (IOException e) {
+					}
+				}
+			}
+		}
+		return header!=null && "definitions".equals(header.getLocalName())
+				&& header.hasNamespace("http://org.eclipse.bpmn2.modeler.examples.customtask");
 	}
 
 	@Override
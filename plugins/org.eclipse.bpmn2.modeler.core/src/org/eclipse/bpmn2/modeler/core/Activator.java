@@ -12,10 +12,14 @@
  ******************************************************************************/
 package org.eclipse.bpmn2.modeler.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.utils.ProjectSymbolIndex;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
@@ -50,6 +54,8 @@ public class Activator extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		if (System.getProperty(Instrumentation.TRACE_FILE_PROPERTY)!=null)
+			Instrumentation.startRecording();
 	}
 
 	/*
@@ -58,6 +64,16 @@ public class Activator extends AbstractUIPlugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		ProjectSymbolIndex.disposeAll();
+		String traceFile = System.getProperty(Instrumentation.TRACE_FILE_PROPERTY);
+		if (traceFile!=null && Instrumentation.isRecording()) {
+			try {
+				Instrumentation.writeTrace(new File(traceFile));
+			}
+			catch (IOException e) {
+				logError(e);
+			}
+		}
 		plugin = null;
 		super.stop(context);
 	}
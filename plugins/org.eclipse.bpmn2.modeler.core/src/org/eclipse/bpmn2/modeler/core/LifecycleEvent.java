@@ -454,7 +454,7 @@ public class LifecycleEvent {
 	 * @param lifecycleEvent
 	 */
 	public static void notify(LifecycleEvent lifecycleEvent) {
-    	TargetRuntime rt = TargetRuntime.getCurrentRuntime();
+    	TargetRuntime rt = TargetRuntime.getCurrentRuntime(lifecycleEvent.target);
     	rt.notify(lifecycleEvent);
 	}
 	
@@ -20,6 +20,7 @@ import java.util.Map.Entry;
 
 import org.eclipse.bpmn2.ExtensionAttributeValue;
 import org.eclipse.bpmn2.modeler.core.ToolTipProvider;
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceImpl;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
 import org.eclipse.emf.common.notify.Adapter;
 import org.eclipse.emf.common.notify.AdapterFactory;
@@ -45,6 +46,11 @@ import org.eclipse.emf.transaction.TransactionalEditingDomain;
  * {@code <propertyExtension>} extension point. See the
  * {@code org.eclipse.bpmn2.modeler.runtime} extension point documentation for
  * more details.
+ * <p>
+ * Adapters are created on first access through {@link #adapt(Object)}, not
+ * for every object when a Resource is loaded. An adapter still owns all of
+ * its Feature Descriptors; sharing them per EClass is not implemented, see
+ * the {@code featureProperties} field for the reason.
  */
 public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectPropertyProvider {
 
@@ -106,14 +112,34 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 	 */
 	private static Hashtable<EClass,EObject> dummyObjects = new Hashtable<EClass,EObject>();
 
+	/**
+	 * Placeholder for the properties of a feature that has been looked up but
+	 * has no properties yet. It is shared by all adapters and never modified.
+	 */
+	private static final Hashtable<String,Object> NO_FEATURE_PROPERTIES = new Hashtable<String,Object>(1);
+
 	/**
 	 * The map of EStructuralFeatures that need {@code FeatureDescriptor}
-	 * provider classes.
+	 * provider classes. This is created on first use.
+	 * <p>
+	 * Feature Descriptors are owned by each adapter instead of being shared
+	 * per EClass: property adapter constructors choose the descriptors by
+	 * looking at the adapted instance (e.g. whether an Activity is an
+	 * AdHocSubProcess), and many descriptors are anonymous classes that use
+	 * the constructor's {@code object} argument rather than their
+	 * {@code object} field, so a shared descriptor would keep operating on
+	 * the first object it was created for.
 	 */
 	private Hashtable<
 		EStructuralFeature, // feature type
 		Hashtable<String,Object>> // property key and value
-			featureProperties = new Hashtable<EStructuralFeature, Hashtable<String,Object>>();
+			featureProperties;
+	
+	/**
+	 * The Object Descriptor, kept outside of the property table because
+	 * every adapter has one.
+	 */
+	private ObjectDescriptor<T> objectDescriptor;
 	
 	/**
 	 * The Adapter Factory that was used to construct this
@@ -276,7 +302,7 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 	 */
 	@SuppressWarnings("unchecked")
 	public ObjectDescriptor<T> getObjectDescriptor() {
-		ObjectDescriptor<T> od = (ObjectDescriptor<T>) getProperty(OBJECT_DESCRIPTOR);
+		ObjectDescriptor<T> od = objectDescriptor;
 		if (od==null) {
 			setObjectDescriptor(od = new ObjectDescriptor<T>(this, (T)getTarget()));
 		}
@@ -330,13 +356,26 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 	 * @param fd the Feature Descriptor instance
 	 */
 	public void setFeatureDescriptor(EStructuralFeature feature, FeatureDescriptor<T> fd) {
+		fd.setOwner(this);
+		getWritableFeatureProperties(feature).put(FEATURE_DESCRIPTOR, fd);
+	}
+
+	/**
+	 * Return the properties of the given feature, creating the table if the
+	 * feature has no properties of its own yet.
+	 * 
+	 * @param feature an EStructuralFeature
+	 * @return a modifiable property table
+	 */
+	private Hashtable<String,Object> getWritableFeatureProperties(EStructuralFeature feature) {
+		if (featureProperties==null)
+			featureProperties = new Hashtable<EStructuralFeature, Hashtable<String,Object>>();
 		Hashtable<String,Object> props = featureProperties.get(feature);
-		if (props==null) {
-			props = new Hashtable<String,Object>();
+		if (props==null || props==NO_FEATURE_PROPERTIES) {
+			props = new Hashtable<String,Object>(4);
 			featureProperties.put(feature,props);
 		}
-		fd.setOwner(this);
-		props.put(FEATURE_DESCRIPTOR, fd);
+		return props;
 	}
 
 	/**
@@ -355,10 +394,12 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 					return adapter.getFeature(name);
 			}
 		}
-		for (Entry<EStructuralFeature, Hashtable<String, Object>> entry : featureProperties.entrySet()) {
-			EStructuralFeature feature = entry.getKey();
-			if (feature.getName().equals(name)) {
-				return feature;
+		if (featureProperties!=null) {
+			for (Entry<EStructuralFeature, Hashtable<String, Object>> entry : featureProperties.entrySet()) {
+				EStructuralFeature feature = entry.getKey();
+				if (feature.getName().equals(name)) {
+					return feature;
+				}
 			}
 		}
 		return null;
@@ -380,7 +421,8 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 			}
 		}
 		List<EStructuralFeature> features = new ArrayList<EStructuralFeature>();
-		features.addAll(featureProperties.keySet());
+		if (featureProperties!=null)
+			features.addAll(featureProperties.keySet());
 		return features;
 	}
 	
@@ -394,22 +436,18 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 		return features;
 	}
 	
-	/**
-	 * Return a list of all Object Properties.
-	 * 
-	 * @return a list of Object Properties
-	 */
-	private Hashtable <String, Object> getObjectProperties() {
-		if (properties==null)
-			properties = new Hashtable <String,Object>();
-		return properties;
-	}
-	
 	/* (non-Javadoc)
 	 * @see org.eclipse.bpmn2.modeler.core.adapters.ObjectPropertyProvider#getProperty(java.lang.String)
 	 */
 	public Object getProperty(String key) {
-		return getObjectProperties().get(key);
+		if (OBJECT_DESCRIPTOR.equals(key))
+			return objectDescriptor;
+		Object value = super.getProperty(key);
+		if (value==null && LINE_NUMBER.equals(key) && getTarget() instanceof EObject) {
+			// line numbers are recorded by the Resource during loading
+			value = Bpmn2ModelerResourceImpl.getLineNumber((EObject)getTarget());
+		}
+		return value;
 	}
 
 	/* (non-Javadoc)
@@ -420,11 +458,12 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 	 * @param key property name.
 	 * @param value property value.
 	 */
+	@SuppressWarnings("unchecked")
 	public void setProperty(String key, Object value) {
-		if (value==null)
-			getObjectProperties().remove(key);
+		if (OBJECT_DESCRIPTOR.equals(key))
+			objectDescriptor = (ObjectDescriptor<T>) value;
 		else
-			getObjectProperties().put(key, value);
+			super.setProperty(key, value);
 	}
 
 	/**
@@ -435,9 +474,13 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 	 * @return the property value
 	 */
 	public Object getProperty(EStructuralFeature feature, String key) {
+		if (featureProperties==null)
+			featureProperties = new Hashtable<EStructuralFeature, Hashtable<String,Object>>();
 		Hashtable<String,Object> props = featureProperties.get(feature);
 		if (props==null) {
-			props = new Hashtable<String,Object>();
+			// remember that the feature was looked up without allocating a
+			// property table for it; see canAdapt()
+			props = NO_FEATURE_PROPERTIES;
 			featureProperties.put(feature,props);
 		}
 		return props.get(key);
@@ -480,12 +523,7 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 	 * @param value the property value
 	 */
 	public void setProperty(EStructuralFeature feature, String key, Object value) {
-		Hashtable<String,Object> props = featureProperties.get(feature);
-		if (props==null) {
-			props = new Hashtable<String,Object>();
-			featureProperties.put(feature,props);
-		}
-		props.put(key, value);
+		getWritableFeatureProperties(feature).put(key, value);
 	}
 
 	/* (non-Javadoc)
@@ -516,8 +554,7 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 				if (feature==null)
 					return true;
 				// only TRUE if this adapter already has a FeatureDescriptor for this feature 
-				Hashtable<String,Object> props = featureProperties.get(feature);
-				if (props!=null) {
+				if (featureProperties!=null && featureProperties.get(feature)!=null) {
 					return true;
 				}
 			}
@@ -588,7 +625,7 @@ public class ExtendedPropertiesAdapter<T extends EObject> extends ObjectProperty
 	public Resource getResource() {
 		Resource resource = super.getResource();
 		if (resource==null) {
-			ObjectDescriptor<T> od = (ObjectDescriptor<T>) getProperty(OBJECT_DESCRIPTOR);
+			ObjectDescriptor<T> od = objectDescriptor;
 			if (od!=null) {
 				IResourceProvider rp = AdapterRegistry.INSTANCE.adapt(od.object.eContainer(), IResourceProvider.class);
 				if (rp!=null && rp!=this)
@@ -561,6 +561,14 @@ public class FeatureDescriptor<T extends EObject> extends ObjectDescriptor<T> {
 				else
 					((List)object.eGet(feature)).set(index,value);
 			}
+			else if (feature==ResourceIdIndex.getIdFeature(object) && object.eResource()!=null) {
+				// the Resource's ID index is not notified of changes
+				Resource resource = object.eResource();
+				ModelUtil.unsetID(object, resource);
+				object.eSet(feature, value);
+				if (value instanceof String)
+					ResourceIdIndex.getIndex(resource).register((String) value, object);
+			}
 			else
 				object.eSet(feature, value);
 		}
@@ -16,6 +16,7 @@ package org.eclipse.bpmn2.modeler.core.adapters;
 import java.util.Hashtable;
 
 import org.eclipse.bpmn2.modeler.core.features.GraphitiConstants;
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerFactory;
 import org.eclipse.bpmn2.modeler.core.model.ModelDecorator;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
 import org.eclipse.core.runtime.Assert;
@@ -349,17 +350,18 @@ public class ObjectDescriptor<T extends EObject> {
 		if (resource==null)
 			resource = getResource();
 
-		// set the Resource into the Factory's adapter temporarily for use during
-		// object construction and initialization (@see ModelExtensionDescriptor)
+		// hand the Resource to the BPMN2 object factory for use during object
+		// construction and initialization (@see ModelExtensionDescriptor)
 		EFactory factory = eClass.getEPackage().getEFactoryInstance();
-		ObjectPropertyProvider adapter = ObjectPropertyProvider.adapt(factory, resource);
 		Object value = owner.getProperty(GraphitiConstants.CUSTOM_ELEMENT_ID);
-		if (value!=null)
-			adapter.setProperty(GraphitiConstants.CUSTOM_ELEMENT_ID, value);
 		T newObject = null;
-		synchronized(factory) {
+		Bpmn2ModelerFactory.setPendingCreation(resource, value instanceof String ? (String) value : null);
+		try {
 			newObject = (T) factory.create(eClass);
 		}
+		finally {
+			Bpmn2ModelerFactory.clearPendingCreation();
+		}
 		
 		// if the object has an "id", assign it now.
 		String id = ModelUtil.setID(newObject,resource);
@@ -38,7 +38,10 @@ public class ObjectPropertyProvider extends AdapterImpl implements IResourceProv
 	/** Property key for the EMF Resource that the object will eventually be (or already is) contained in */
 	public static final String RESOURCE = "resource"; //$NON-NLS-1$
 
-	protected Hashtable<String, Object> properties = new Hashtable<String, Object>();
+	/** Property table, created when the first property other than the Resource is set */
+	protected Hashtable<String, Object> properties;
+	/** The value of the {@link #RESOURCE} property, which nearly every provider has */
+	private Object resourceProperty;
 	
 	/**
 	 * Add this adapter to the given EObject and link it with the given Resource.
@@ -121,10 +124,17 @@ public class ObjectPropertyProvider extends AdapterImpl implements IResourceProv
 	 * @param value the value
 	 */
 	public void setProperty(String key, Object value) {
-		if (value==null)
-			properties.remove(key);
-		else
+		if (RESOURCE.equals(key))
+			resourceProperty = value;
+		else if (value==null) {
+			if (properties!=null)
+				properties.remove(key);
+		}
+		else {
+			if (properties==null)
+				properties = new Hashtable<String, Object>(4);
 			properties.put(key, value);
+		}
 	}
 	
 	/**
@@ -134,7 +144,9 @@ public class ObjectPropertyProvider extends AdapterImpl implements IResourceProv
 	 * @return the property
 	 */
 	public Object getProperty(String key) {
-		return properties.get(key);
+		if (RESOURCE.equals(key))
+			return resourceProperty;
+		return properties==null ? null : properties.get(key);
 	}
 	
 	/**
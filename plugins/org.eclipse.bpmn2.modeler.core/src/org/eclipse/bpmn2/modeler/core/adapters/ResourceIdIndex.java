@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.adapters;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.modeler.core.utils.Tuple;
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * An index of all element IDs in a single Resource.
+ * <p>
+ * The index is built by visiting every object in the Resource once when it is
+ * created. After that it is updated by the clients that assign IDs, i.e.
+ * {@link org.eclipse.bpmn2.modeler.core.utils.ModelUtil#setID(EObject)},
+ * {@link org.eclipse.bpmn2.modeler.core.utils.ModelUtil#addID(EObject)} and
+ * {@link org.eclipse.bpmn2.modeler.core.utils.ModelUtil#unsetID(EObject, Resource)},
+ * the same as the static ID tables it replaces. The index is only attached to
+ * the Resource itself, not to its contents, so it costs nothing per object
+ * beyond the index entry.
+ * <p>
+ * Entries are checked whenever they are read: an object whose ID has changed,
+ * or that has been added to another Resource, is dropped from the index. The
+ * ID of an object that is not contained in any Resource is reserved: the
+ * object may not have been added to the Resource yet, or it may be added back
+ * by an undo. A reservation holds the object only weakly, so it is released
+ * once the object can no longer be added.
+ * <p>
+ * Generated IDs have the form "prefix_N". The index keeps a counter for each
+ * prefix that is always greater than the highest number seen so far for that
+ * prefix, so that generating a new ID rarely needs more than a single probe.
+ * <p>
+ * All public methods are synchronized on the index, so that independent
+ * Resources can be indexed and modified concurrently from different threads.
+ * The index is discarded along with the Resource, or when the Resource is
+ * unloaded.
+ */
+public class ResourceIdIndex extends AdapterImpl {
+
+	private static final String ID_FEATURE_NAME = "id"; //$NON-NLS-1$
+
+	private final Resource resource;
+	// objects in the Resource, by ID
+	private final Map<String, List<EObject>> ids = new HashMap<String, List<EObject>>();
+	// IDs reserved for objects that are not (yet) in the Resource
+	private final Map<String, Reservation> reservations = new HashMap<String, Reservation>();
+	private final ReferenceQueue<EObject> releasedReservations = new ReferenceQueue<EObject>();
+	private final Map<String, Integer> nextIds = new HashMap<String, Integer>();
+	private final Set<String> duplicateIds = new LinkedHashSet<String>();
+	private boolean objectsWithoutIdTaken;
+
+	/**
+	 * An ID reservation, which is released when its object is garbage
+	 * collected.
+	 */
+	private static class Reservation extends WeakReference<EObject> {
+		final String id;
+
+		Reservation(String id, EObject object, ReferenceQueue<EObject> queue) {
+			super(object, queue);
+			this.id = id;
+		}
+	}
+
+	private ResourceIdIndex(Resource resource) {
+		this.resource = resource;
+		for (Iterator<EObject> iter = resource.getAllContents(); iter.hasNext();) {
+			EObject object = iter.next();
+			String id = getId(object);
+			if (id!=null)
+				add(id, object);
+		}
+	}
+
+	/**
+	 * Return the ID index for the given Resource, creating and attaching it if
+	 * necessary. Creating the index visits every object in the Resource once.
+	 *
+	 * @param resource the Resource.
+	 * @return the Resource's ID index, or null if the resource is null.
+	 */
+	public static ResourceIdIndex getIndex(Resource resource) {
+		if (resource==null)
+			return null;
+		synchronized (resource) {
+			ResourceIdIndex index = findIndex(resource);
+			if (index==null) {
+				index = new ResourceIdIndex(resource);
+				resource.eAdapters().add(index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Detach and discard the ID index for the given Resource, if it has one.
+	 *
+	 * @param resource the Resource.
+	 */
+	public static void removeIndex(Resource resource) {
+		if (resource==null)
+			return;
+		synchronized (resource) {
+			ResourceIdIndex index = findIndex(resource);
+			if (index!=null) {
+				resource.eAdapters().remove(index);
+				index.clear();
+			}
+		}
+	}
+
+	private static ResourceIdIndex findIndex(Resource resource) {
+		for (Adapter a : resource.eAdapters()) {
+			if (a instanceof ResourceIdIndex)
+				return (ResourceIdIndex) a;
+		}
+		return null;
+	}
+
+	/**
+	 * Return the ID attribute of the given object, or null if it has none.
+	 *
+	 * @param object the object.
+	 * @return the object's ID feature.
+	 */
+	public static EStructuralFeature getIdFeature(EObject object) {
+		EStructuralFeature feature = object.eClass().getEIDAttribute();
+		if (feature==null)
+			feature = object.eClass().getEStructuralFeature(ID_FEATURE_NAME);
+		return feature;
+	}
+
+	private static String getId(EObject object) {
+		EStructuralFeature feature = getIdFeature(object);
+		if (feature!=null) {
+			Object id = object.eGet(feature);
+			if (id instanceof String)
+				return (String) id;
+		}
+		return null;
+	}
+
+	public Resource getResource() {
+		return resource;
+	}
+
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type==ResourceIdIndex.class;
+	}
+
+	/**
+	 * Check if the given ID is in use by any object in the Resource, or has been
+	 * reserved for an object that will be added to the Resource.
+	 *
+	 * @param id the ID string.
+	 * @return true if the ID is in use.
+	 */
+	public synchronized boolean contains(String id) {
+		validate(id);
+		return ids.containsKey(id) || reservations.containsKey(id);
+	}
+
+	/**
+	 * Return the object with the given ID. If there are duplicates, the first
+	 * object that was indexed is returned.
+	 *
+	 * @param id the ID string.
+	 * @return the object or null if the ID is not in use by an object in the
+	 *         Resource.
+	 */
+	public synchronized EObject getObject(String id) {
+		validate(id);
+		List<EObject> list = ids.get(id);
+		return list==null ? null : list.get(0);
+	}
+
+	/**
+	 * Return all objects in the Resource that have the given ID.
+	 *
+	 * @param id the ID string.
+	 * @return a new list of objects, in the order they were indexed, which may
+	 *         be empty.
+	 */
+	public synchronized List<EObject> getObjects(String id) {
+		validate(id);
+		List<EObject> list = ids.get(id);
+		if (list==null)
+			return new ArrayList<EObject>();
+		return new ArrayList<EObject>(list);
+	}
+
+	/**
+	 * Return the IDs of all objects in the Resource, and the object that uses
+	 * each of them. If there are duplicates, the first object that was indexed
+	 * is returned.
+	 *
+	 * @return a new map of IDs and objects.
+	 */
+	public synchronized Map<String, EObject> getObjects() {
+		validateReservations();
+		Map<String, EObject> result = new LinkedHashMap<String, EObject>();
+		for (String id : new ArrayList<String>(ids.keySet())) {
+			EObject object = getObject(id);
+			if (object!=null)
+				result.put(id, object);
+		}
+		return result;
+	}
+
+	/**
+	 * Generate a new ID that is not in use, and reserve it for the given
+	 * object. If a base ID is given, it is used as-is if it is still available;
+	 * otherwise a sequence number is appended to the prefix.
+	 *
+	 * @param object the object that will be assigned the new ID.
+	 * @param prefix the ID prefix, typically the object's type name.
+	 * @param baseId an ID to try first, or null.
+	 * @return the new ID.
+	 */
+	public synchronized String generateID(EObject object, String prefix, String baseId) {
+		if (baseId!=null && !contains(baseId)) {
+			register(baseId, object);
+			return baseId;
+		}
+		Integer next = nextIds.get(prefix);
+		int i = next==null ? 1 : next.intValue();
+		String id = prefix + "_" + i; //$NON-NLS-1$
+		while (contains(id)) {
+			id = prefix + "_" + (++i); //$NON-NLS-1$
+		}
+		register(id, object);
+		return id;
+	}
+
+	/**
+	 * Add an ID to the index. This must be called for every ID that is
+	 * assigned to an object in the Resource, or reserved for an object that
+	 * will be added to the Resource. A reservation is kept until the object
+	 * has been added with that ID, or has been garbage collected.
+	 *
+	 * @param id the ID string.
+	 * @param object the object that owns the ID.
+	 */
+	public synchronized void register(String id, EObject object) {
+		if (id==null)
+			return;
+		expungeReservations();
+		if (object.eResource()==resource) {
+			add(id, object);
+		}
+		else {
+			reservations.put(id, new Reservation(id, object, releasedReservations));
+			updateNextId(id);
+		}
+	}
+
+	/**
+	 * Remove an object's ID from the index.
+	 *
+	 * @param id the ID string.
+	 * @param object the object that owns the ID.
+	 */
+	public synchronized void unregister(String id, EObject object) {
+		if (id==null)
+			return;
+		List<EObject> list = ids.get(id);
+		if (list!=null) {
+			list.remove(object);
+			if (list.isEmpty())
+				ids.remove(id);
+			if (list.size()<2)
+				duplicateIds.remove(id);
+		}
+		Reservation r = reservations.get(id);
+		if (r!=null && r.get()==object)
+			reservations.remove(id);
+	}
+
+	/**
+	 * Return all pairs of BaseElements in the Resource that have the same ID.
+	 * The first element of each pair is the one that was indexed later.
+	 *
+	 * @return a list of duplicates, which may be empty.
+	 */
+	public synchronized List<Tuple<EObject,EObject>> getDuplicates() {
+		validateReservations();
+		List<Tuple<EObject,EObject>> result = new ArrayList<Tuple<EObject,EObject>>();
+		for (String id : new ArrayList<String>(duplicateIds)) {
+			validate(id);
+			List<EObject> list = ids.get(id);
+			if (list==null)
+				continue;
+			EObject previous = null;
+			for (EObject o : list) {
+				if (!(o instanceof BaseElement))
+					continue;
+				if (previous!=null)
+					result.add(new Tuple<EObject,EObject>(o, previous));
+				previous = o;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the objects in the Resource that have no ID. This visits the
+	 * Resource only on the first call, which is expected right after the
+	 * Resource has been loaded; later calls return an empty list, because
+	 * objects that are added later are given an ID when they are created.
+	 * <p>
+	 * The caller is expected to generate IDs for these objects inside a write
+	 * transaction, see {@link org.eclipse.bpmn2.modeler.core.utils.ModelUtil#setMissingIDs(Resource)}.
+	 *
+	 * @return a list of objects, which may be empty.
+	 */
+	public synchronized List<EObject> takeObjectsWithoutId() {
+		List<EObject> result = new ArrayList<EObject>();
+		if (!objectsWithoutIdTaken) {
+			objectsWithoutIdTaken = true;
+			for (Iterator<EObject> iter = resource.getAllContents(); iter.hasNext();) {
+				EObject o = iter.next();
+				EStructuralFeature feature = getIdFeature(o);
+				if (feature!=null && o.eGet(feature)==null)
+					result.add(o);
+			}
+		}
+		return result;
+	}
+
+	public synchronized void clear() {
+		ids.clear();
+		reservations.clear();
+		nextIds.clear();
+		duplicateIds.clear();
+		objectsWithoutIdTaken = true;
+	}
+
+	private void add(String id, EObject object) {
+		List<EObject> list = ids.get(id);
+		if (list==null) {
+			list = new ArrayList<EObject>(1);
+			ids.put(id, list);
+		}
+		else if (list.contains(object)) {
+			return;
+		}
+		list.add(object);
+		if (list.size()>1)
+			duplicateIds.add(id);
+		updateNextId(id);
+	}
+
+	/**
+	 * Drop the entries for the given ID whose objects have left the Resource
+	 * or use a different ID now, and turn a reservation into an entry once its
+	 * object has been added to the Resource.
+	 */
+	private void validate(String id) {
+		expungeReservations();
+		List<EObject> list = ids.get(id);
+		if (list!=null) {
+			for (Iterator<EObject> iter = list.iterator(); iter.hasNext();) {
+				EObject o = iter.next();
+				if (o.eResource()==resource && id.equals(getId(o)))
+					continue;
+				iter.remove();
+				if (o.eResource()==null && id.equals(getId(o)) && !reservations.containsKey(id))
+					reservations.put(id, new Reservation(id, o, releasedReservations));
+			}
+			if (list.isEmpty())
+				ids.remove(id);
+			if (list.size()<2)
+				duplicateIds.remove(id);
+		}
+		Reservation r = reservations.get(id);
+		EObject o = r==null ? null : r.get();
+		if (r!=null && o==null) {
+			reservations.remove(id);
+		}
+		else if (o!=null) {
+			String current = getId(o);
+			if (o.eResource()!=null) {
+				// the object has been added to a Resource
+				reservations.remove(id);
+				if (o.eResource()==resource && id.equals(current))
+					add(id, o);
+			}
+			else if (current!=null && !id.equals(current)) {
+				// the object has been given a different ID
+				reservations.remove(id);
+			}
+		}
+	}
+
+	private void validateReservations() {
+		for (String id : new ArrayList<String>(reservations.keySet()))
+			validate(id);
+	}
+
+	private void expungeReservations() {
+		Reservation r;
+		while ((r = (Reservation) releasedReservations.poll()) != null) {
+			if (reservations.get(r.id)==r)
+				reservations.remove(r.id);
+		}
+	}
+
+	private void updateNextId(String id) {
+		int i = id.lastIndexOf('_');
+		if (i>0 && i<id.length()-1) {
+			int n = 0;
+			for (int j=i+1; j<id.length(); ++j) {
+				char c = id.charAt(j);
+				if (c<'0' || c>'9' || n>Integer.MAX_VALUE/10 - 1)
+					return;
+				n = n*10 + (c - '0');
+			}
+			String prefix = id.substring(0, i);
+			Integer next = nextIds.get(prefix);
+			if (next==null || next.intValue()<=n)
+				nextIds.put(prefix, Integer.valueOf(n+1));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#notifyChanged(org.eclipse.emf.common.notify.Notification)
+	 */
+	@Override
+	public void notifyChanged(Notification notification) {
+		if (notification.getNotifier()==resource &&
+				notification.getFeatureID(Resource.class)==Resource.RESOURCE__IS_LOADED &&
+				!notification.getNewBooleanValue()) {
+			// the Resource was unloaded
+			clear();
+		}
+	}
+}
@@ -11,8 +11,10 @@
 package org.eclipse.bpmn2.modeler.core.builder;
 
 import java.io.FileInputStream;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -23,7 +25,9 @@ import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
 import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
 import org.eclipse.bpmn2.modeler.core.runtime.XMLConfigElement;
 import org.eclipse.bpmn2.modeler.core.utils.ErrorDialog;
+import org.eclipse.bpmn2.modeler.core.utils.ProjectSymbolIndex;
 import org.eclipse.bpmn2.modeler.core.validation.BPMN2ProjectValidator;
+import org.eclipse.bpmn2.modeler.core.validation.ProjectValidationEngine;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -55,6 +59,7 @@ public class BPMN2Builder extends IncrementalProjectBuilder {
 
 	class BPMN2DeltaVisitor implements IResourceDeltaVisitor {
 		IProgressMonitor monitor;
+		Set<IFile> files = new HashSet<IFile>();
 
 		public BPMN2DeltaVisitor(IProgressMonitor monitor) {
 			this.monitor = monitor;
@@ -70,6 +75,7 @@ public class BPMN2Builder extends IncrementalProjectBuilder {
 		public boolean visit(IResourceDelta delta) throws CoreException {
 			IResource resource = delta.getResource();
 			if (resource instanceof IFile) {
+				ProjectSymbolIndex.getIndex(getProject()).update(delta);
 				IContainer container = resource.getParent();
 				if (CONFIG_FOLDER.equals(container.getName()) && container.getParent() instanceof IProject) {
 					int kind = delta.getKind();
@@ -87,15 +93,16 @@ public class BPMN2Builder extends IncrementalProjectBuilder {
 			case IResourceDelta.ADDED:
 				// handle added resource
 				// checkXML(resource);
-				validate(delta, monitor);
+				validate(delta, files);
 				break;
 			case IResourceDelta.REMOVED:
 				// handle removed resource
+				validate(delta, files);
 				break;
 			case IResourceDelta.CHANGED:
 				// handle changed resource
 				// checkXML(resource);
-				validate(delta, monitor);
+				validate(delta, files);
 				break;
 			}
 			// return true to continue visiting children.
@@ -105,6 +112,7 @@ public class BPMN2Builder extends IncrementalProjectBuilder {
 
 	class BPMN2ResourceVisitor implements IResourceVisitor {
 		IProgressMonitor monitor;
+		Set<IFile> files = new HashSet<IFile>();
 
 		public BPMN2ResourceVisitor(IProgressMonitor monitor) {
 			this.monitor = monitor;
@@ -112,7 +120,7 @@ public class BPMN2Builder extends IncrementalProjectBuilder {
 
 		public boolean visit(IResource resource) {
 			// checkXML(resource);
-			validate(resource, monitor);
+			validate(resource, files);
 			// return true to continue visiting children.
 			return true;
 		}
@@ -135,30 +143,80 @@ public class BPMN2Builder extends IncrementalProjectBuilder {
 				incrementalBuild(delta, monitor);
 			}
 		}
+		ProjectSymbolIndex.getIndex(getProject()).save();
 		return null;
 	}
 
 	protected void incrementalBuild(IResourceDelta delta, IProgressMonitor monitor) throws CoreException {
 		// the visitor does the work.
-		delta.accept(new BPMN2DeltaVisitor(monitor));
+		BPMN2DeltaVisitor visitor = new BPMN2DeltaVisitor(monitor);
+		delta.accept(visitor);
+		validate(visitor.files, monitor);
 	}
 
-	void validate(IResourceDelta delta, IProgressMonitor monitor) {
-		// This project builder should not be doing validation.
-		// Validation is being handled by the Eclipse Validation Builder
-		// and can be enabled/disabled from the User Preferences -> Validation page.
-//		BPMN2ProjectValidator.validate(delta, monitor);
+	/**
+	 * Collect the BPMN2 files that need to be validated because of the given
+	 * resource change: the changed file itself, if it is a BPMN2 file, and all
+	 * files that were validated against it, e.g. because they import it.
+	 */
+	void validate(IResourceDelta delta, Set<IFile> files) {
+		IResource resource = delta.getResource();
+		if (resource instanceof IFile) {
+			if (delta.getKind()==IResourceDelta.CHANGED &&
+					(delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING))==0) {
+				// e.g. only the markers have changed
+				return;
+			}
+			IFile file = (IFile) resource;
+			ProjectValidationEngine engine = ProjectValidationEngine.getEngine(getProject());
+			if (delta.getKind()==IResourceDelta.REMOVED) {
+				engine.remove(file);
+				files.remove(file);
+			}
+			else {
+				validate(file, files);
+			}
+			for (IFile dependent : engine.getDependents(file)) {
+				if (dependent.exists())
+					files.add(dependent);
+			}
+		}
+	}
+
+	void validate(IResource resource, Set<IFile> files) {
+		if (BPMN2ProjectValidator.isBPMN2File(resource)) {
+			files.add((IFile) resource);
+		}
 	}
 
-	void validate(IResource resource, IProgressMonitor monitor) {
-//		BPMN2ProjectValidator.validate(resource, monitor);
+	/**
+	 * Validate the collected BPMN2 files. This is done only if the BPMN2
+	 * Validator is enabled for build validation in the User Preferences or
+	 * Project Properties -> Validation page. Files whose content and
+	 * dependencies have not changed since they were last validated are skipped.
+	 */
+	void validate(Set<IFile> files, IProgressMonitor monitor) {
+		if (!files.isEmpty() && ProjectValidationEngine.isValidationEnabled(getProject())) {
+			ProjectValidationEngine.getEngine(getProject()).validate(files, monitor);
+		}
 	}
 
 	protected void fullBuild(final IProgressMonitor monitor) throws CoreException {
+		ProjectSymbolIndex.getIndex(getProject()).rebuild();
+		BPMN2ResourceVisitor visitor = new BPMN2ResourceVisitor(monitor);
 		try {
-			getProject().accept(new BPMN2ResourceVisitor(monitor));
+			getProject().accept(visitor);
 		} catch (CoreException e) {
 		}
+		validate(visitor.files, monitor);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.resources.IncrementalProjectBuilder#clean(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected void clean(IProgressMonitor monitor) throws CoreException {
+		ProjectValidationEngine.getEngine(getProject()).clear();
 	}
 
 	/**
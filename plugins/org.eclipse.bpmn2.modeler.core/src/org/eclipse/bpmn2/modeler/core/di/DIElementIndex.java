@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.di;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.DocumentRoot;
+import org.eclipse.bpmn2.di.BPMNDiagram;
+import org.eclipse.bpmn2.di.BPMNPlane;
+import org.eclipse.dd.di.DiagramElement;
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
+import org.eclipse.graphiti.mm.pictograms.PictogramElement;
+import org.eclipse.graphiti.mm.pictograms.PictogramLink;
+import org.eclipse.graphiti.mm.pictograms.PictogramsPackage;
+
+/**
+ * An index of the diagram elements in a single Resource, keyed by the model
+ * elements they represent.
+ * <p>
+ * Two kinds of diagram elements are indexed:
+ * <ul>
+ * <li>BPMN DI elements (BPMNShape, BPMNEdge) contained in the BPMNPlane of any
+ * BPMNDiagram, keyed by their "bpmnElement" reference</li>
+ * <li>Graphiti PictogramLinks contained in any Diagram, keyed by each of their
+ * business objects</li>
+ * </ul>
+ * An element may be represented in more than one BPMNDiagram or Graphiti
+ * Diagram, so every key maps to a list of diagram elements.
+ * <p>
+ * The index is attached to the Resource as a content adapter, so it is kept
+ * consistent by EMF notifications, whether the model is changed by an editor
+ * command or by undo/redo. Only the containment paths that lead to indexed
+ * elements are adapted; the semantic model elements, DI bounds and waypoints,
+ * and the Graphiti shape hierarchy are never visited. The index is discarded
+ * along with the Resource, or when the Resource is unloaded.
+ * <p>
+ * Keys are compared by identity. Unresolved proxies are indexed as-is and are
+ * re-indexed when they are resolved.
+ */
+public class DIElementIndex extends EContentAdapter {
+
+	private static final String BPMN_ELEMENT_FEATURE_NAME = "bpmnElement"; //$NON-NLS-1$
+
+	private final Resource resource;
+	private final Map<EObject, List<DiagramElement>> diagramElements = new HashMap<EObject, List<DiagramElement>>();
+	private final Map<EObject, List<PictogramLink>> pictogramLinks = new HashMap<EObject, List<PictogramLink>>();
+	private final Map<EObject, List<EObject>> keys = new HashMap<EObject, List<EObject>>();
+
+	private DIElementIndex(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * Return the DI element index for the given Resource, creating and
+	 * attaching it if necessary.
+	 *
+	 * @param resource the Resource.
+	 * @return the Resource's DI element index, or null if the resource is null.
+	 */
+	public static DIElementIndex getIndex(Resource resource) {
+		if (resource==null)
+			return null;
+		synchronized (resource) {
+			DIElementIndex index = findIndex(resource);
+			if (index==null) {
+				index = new DIElementIndex(resource);
+				resource.eAdapters().add(index);
+			}
+			return index;
+		}
+	}
+
+	private static DIElementIndex findIndex(Resource resource) {
+		for (Adapter a : resource.eAdapters()) {
+			if (a instanceof DIElementIndex)
+				return (DIElementIndex) a;
+		}
+		return null;
+	}
+
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * Return all BPMN DI elements that reference the given model element, in
+	 * all BPMNDiagrams of the Resource.
+	 *
+	 * @param bpmnElement the model element.
+	 * @return a list of BPMNShapes and BPMNEdges, which may be empty.
+	 */
+	public synchronized List<DiagramElement> getDiagramElements(EObject bpmnElement) {
+		List<DiagramElement> list = diagramElements.get(bpmnElement);
+		if (list==null)
+			return Collections.emptyList();
+		return new ArrayList<DiagramElement>(list);
+	}
+
+	/**
+	 * Return all PictogramElements that are linked to the given business
+	 * object, in all Graphiti Diagrams of the Resource.
+	 *
+	 * @param businessObject the linked object.
+	 * @return a list of PictogramElements, which may be empty.
+	 */
+	public List<PictogramElement> getPictogramElements(EObject businessObject) {
+		return getPictogramElements(null, businessObject);
+	}
+
+	/**
+	 * Return all PictogramElements in the given Graphiti Diagram that are
+	 * linked to the given business object.
+	 *
+	 * @param diagram the Diagram, or null to search all Diagrams of the
+	 *            Resource.
+	 * @param businessObject the linked object.
+	 * @return a list of PictogramElements, which may be empty.
+	 */
+	public synchronized List<PictogramElement> getPictogramElements(Diagram diagram, EObject businessObject) {
+		List<PictogramLink> list = pictogramLinks.get(businessObject);
+		if (list==null)
+			return Collections.emptyList();
+		List<PictogramElement> result = new ArrayList<PictogramElement>(list.size());
+		for (PictogramLink link : list) {
+			if (diagram!=null && link.eContainer()!=diagram)
+				continue;
+			PictogramElement pe = link.getPictogramElement();
+			if (pe!=null && !result.contains(pe))
+				result.add(pe);
+		}
+		return result;
+	}
+
+	public synchronized void clear() {
+		diagramElements.clear();
+		pictogramLinks.clear();
+		keys.clear();
+	}
+
+	/**
+	 * Check if the given object is one of the indexed elements, or is on the
+	 * containment path from the Resource to an indexed element.
+	 *
+	 * @param notifier the object.
+	 * @return true if the index must be attached to the object.
+	 */
+	protected boolean isIndexed(Notifier notifier) {
+		if (notifier instanceof DocumentRoot ||
+				notifier instanceof Definitions ||
+				notifier instanceof BPMNDiagram ||
+				notifier instanceof Diagram ||
+				notifier instanceof PictogramLink) {
+			return true;
+		}
+		if (notifier instanceof DiagramElement) {
+			// this includes the BPMNPlane of a BPMNDiagram, and any
+			// BPMNPlanes nested in it, but not BPMNLabels
+			EObject container = ((EObject)notifier).eContainer();
+			return container instanceof BPMNPlane || container instanceof BPMNDiagram;
+		}
+		return false;
+	}
+
+	private static EStructuralFeature getBpmnElementFeature(EObject object) {
+		return object.eClass().getEStructuralFeature(BPMN_ELEMENT_FEATURE_NAME);
+	}
+
+	private void index(EObject object) {
+		if (object instanceof DiagramElement) {
+			if (object instanceof BPMNPlane || !(object.eContainer() instanceof BPMNPlane))
+				return;
+			EStructuralFeature feature = getBpmnElementFeature(object);
+			if (feature!=null) {
+				Object value = object.eGet(feature);
+				if (value instanceof EObject) {
+					register(diagramElements, (EObject) value, (DiagramElement) object);
+					keys.put(object, Collections.singletonList((EObject) value));
+				}
+			}
+		}
+		else if (object instanceof PictogramLink) {
+			List<EObject> businessObjects = new ArrayList<EObject>(((PictogramLink) object).getBusinessObjects());
+			for (EObject bo : businessObjects) {
+				register(pictogramLinks, bo, (PictogramLink) object);
+			}
+			if (!businessObjects.isEmpty())
+				keys.put(object, businessObjects);
+		}
+	}
+
+	private void unindex(EObject object) {
+		List<EObject> list = keys.remove(object);
+		if (list!=null) {
+			for (EObject key : list) {
+				if (object instanceof DiagramElement)
+					unregister(diagramElements, key, (DiagramElement) object);
+				else
+					unregister(pictogramLinks, key, (PictogramLink) object);
+			}
+		}
+	}
+
+	private static <T> void register(Map<EObject, List<T>> map, EObject key, T value) {
+		List<T> list = map.get(key);
+		if (list==null) {
+			list = new ArrayList<T>(1);
+			map.put(key, list);
+		}
+		else if (list.contains(value)) {
+			return;
+		}
+		list.add(value);
+	}
+
+	private static <T> void unregister(Map<EObject, List<T>> map, EObject key, T value) {
+		List<T> list = map.get(key);
+		if (list!=null) {
+			list.remove(value);
+			if (list.isEmpty())
+				map.remove(key);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.ecore.util.EContentAdapter#notifyChanged(org.eclipse.emf.common.notify.Notification)
+	 */
+	@Override
+	public void notifyChanged(Notification notification) {
+		synchronized (this) {
+			super.notifyChanged(notification);
+			Object notifier = notification.getNotifier();
+			if (notifier instanceof EObject) {
+				if (notification.getEventType()==Notification.REMOVING_ADAPTER)
+					return;
+				EObject object = (EObject) notifier;
+				Object feature = notification.getFeature();
+				boolean reindex = false;
+				if (object instanceof PictogramLink)
+					reindex = feature==PictogramsPackage.Literals.PICTOGRAM_LINK__BUSINESS_OBJECTS;
+				else if (object instanceof DiagramElement)
+					reindex = feature!=null && feature==getBpmnElementFeature(object);
+				if (reindex) {
+					unindex(object);
+					index(object);
+				}
+			}
+			else if (notifier==resource &&
+					notification.getFeatureID(Resource.class)==Resource.RESOURCE__IS_LOADED &&
+					!notification.getNewBooleanValue()) {
+				// the Resource was unloaded
+				clear();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.ecore.util.EContentAdapter#addAdapter(org.eclipse.emf.common.notify.Notifier)
+	 */
+	@Override
+	protected void addAdapter(Notifier notifier) {
+		if (isIndexed(notifier))
+			super.addAdapter(notifier);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.ecore.util.EContentAdapter#setTarget(org.eclipse.emf.ecore.EObject)
+	 */
+	@Override
+	protected void setTarget(EObject target) {
+		super.setTarget(target);
+		index(target);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.ecore.util.EContentAdapter#unsetTarget(org.eclipse.emf.ecore.EObject)
+	 */
+	@Override
+	protected void unsetTarget(EObject target) {
+		super.unsetTarget(target);
+		unindex(target);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.ecore.util.EContentAdapter#setTarget(org.eclipse.emf.common.notify.Notifier)
+	 */
+	@Override
+	public void setTarget(Notifier target) {
+		synchronized (this) {
+			super.setTarget(target);
+		}
+	}
+}
@@ -52,6 +52,8 @@ import org.eclipse.bpmn2.di.BPMNPlane;
 import org.eclipse.bpmn2.di.BPMNShape;
 import org.eclipse.bpmn2.di.BpmnDiFactory;
 import org.eclipse.bpmn2.modeler.core.features.GraphitiConstants;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Span;
 import org.eclipse.bpmn2.modeler.core.model.ModelHandler;
 import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
 import org.eclipse.bpmn2.modeler.core.preferences.ShapeStyle;
@@ -116,6 +118,8 @@ public class DIImport {
 	 * NB! Currently only first found diagram is generated.
 	 */
 	public void generateFromDI() {
+		Span span = Instrumentation.start("import"); //$NON-NLS-1$
+		span.setAttribute("uri", modelHandler.getResource().getURI()); //$NON-NLS-1$
 		final List<BPMNDiagram> bpmnDiagrams = modelHandler.getAll(BPMNDiagram.class);
 		
 		diagnostics = new ImportDiagnostics(modelHandler.getResource());
@@ -146,11 +150,10 @@ public class DIImport {
 					}
 					featureProvider.link(diagram, bpmnDiagrams.get(0));
 					
-					// First: add all IDs to our ID mapping table
-					TreeIterator<EObject> iter = definitions.eAllContents();
-					while (iter.hasNext()) {
-						ModelUtil.addID( iter.next() );
-					}
+					// All IDs have already been added to our ID mapping table
+					// by the editor's model loader. Objects that were loaded
+					// without an ID get one now, in this write transaction.
+					ModelUtil.setMissingIDs(modelHandler.getResource());
 					
 					// do the import
 					for (BPMNDiagram d : bpmnDiagrams) {
@@ -173,24 +176,50 @@ public class DIImport {
 						elements.put(plane.getBpmnElement(), diagram);
 						List<DiagramElement> ownedElement = plane.getPlaneElement();
 	
-						importShapes(ownedElement);
-						importConnections(ownedElement);
+						Span phase = Instrumentation.start("import.shapes"); //$NON-NLS-1$
+						try {
+							importShapes(ownedElement);
+						}
+						finally {
+							phase.end();
+						}
+						phase = Instrumentation.start("import.connections"); //$NON-NLS-1$
+						try {
+							importConnections(ownedElement);
+						}
+						finally {
+							phase.end();
+						}
 	
 	//					relayoutLanes(ownedElement);
 						
 						// search for BPMN elements that do not have the DI elements
 						// needed to render them in the editor
 					}
-					DIGenerator generator = new DIGenerator(DIImport.this);
-					generator.generateMissingDIElements();
+					Span phase = Instrumentation.start("import.generateMissingDI"); //$NON-NLS-1$
+					try {
+						DIGenerator generator = new DIGenerator(DIImport.this);
+						generator.generateMissingDIElements();
+					}
+					finally {
+						phase.end();
+					}
 					
-					layoutAll();
+					phase = Instrumentation.start("import.layout"); //$NON-NLS-1$
+					try {
+						layoutAll();
+					}
+					finally {
+						phase.end();
+					}
+					Instrumentation.count("import.elements", elements.size()); //$NON-NLS-1$
 				}
 	
 			});
 		}
 		finally {
 			prefs.setEnableConnectionRouting(true);
+			span.end();
 		}
 
 		diagnostics.report();
@@ -402,9 +402,9 @@ public class DIUtils {
 	
 	public static DiagramElement findDiagramElement(List<BPMNDiagram> diagrams, BaseElement bpmnElement) {
 		for (BPMNDiagram d : diagrams) {
-			BPMNPlane plane = d.getPlane();
-			List<DiagramElement> planeElements = plane.getPlaneElement();
-			return findPlaneElement(planeElements, bpmnElement);
+			DiagramElement de = findDiagramElement(d, bpmnElement);
+			if (de!=null)
+				return de;
 		}
 		return null;
 	}
@@ -744,69 +744,83 @@ public class DIUtils {
 	 */
 	public static BPMNShape findBPMNShape(BaseElement baseElement) {
 		Definitions definitions = ModelUtil.getDefinitions(baseElement);
-		if (definitions!=null) {
-			for (BPMNDiagram d : definitions.getDiagrams()) {
-				BPMNShape bpmnShape = findBPMNShape(d, baseElement);
-				if (bpmnShape!=null)
-					return bpmnShape;
-			}
-		}
+		if (definitions!=null)
+			return findDiagramElement(definitions, null, baseElement, BPMNShape.class);
 		return null;
 	}
 	
 	public static BPMNShape findBPMNShape(BPMNDiagram bpmnDiagram, BaseElement baseElement) {
-		for (DiagramElement de : bpmnDiagram.getPlane().getPlaneElement()) {
-			if (de instanceof BPMNShape) {
-				if (((BPMNShape)de).getBpmnElement() == baseElement)
-					return (BPMNShape)de;
-			}
-		}
-		return null;
+		return findDiagramElement(null, bpmnDiagram, baseElement, BPMNShape.class);
 	}
 	
 	public static BPMNEdge findBPMNEdge(EObject baseElement) {
 		Definitions definitions = ModelUtil.getDefinitions(baseElement);
-		if (definitions!=null) {
-			for (BPMNDiagram d : definitions.getDiagrams()) {
-				BPMNEdge bpmnEdge = findBPMNEdge(d, baseElement);
-				if (bpmnEdge!=null)
-					return bpmnEdge;
-			}
-		}
+		if (definitions!=null)
+			return findDiagramElement(definitions, null, baseElement, BPMNEdge.class);
 		return null;
 	}
 	
 	public static BPMNEdge findBPMNEdge(BPMNDiagram bpmnDiagram, EObject baseElement) {
-		for (DiagramElement de : bpmnDiagram.getPlane().getPlaneElement()) {
-			if (de instanceof BPMNEdge) {
-				if (((BPMNEdge)de).getBpmnElement() == baseElement)
-					return (BPMNEdge)de;
-			}
-		}
-		return null;
+		return findDiagramElement(null, bpmnDiagram, baseElement, BPMNEdge.class);
 	}
 	
 	public static DiagramElement findDiagramElement(EObject object) {
 		Definitions definitions = ModelUtil.getDefinitions(object);
-		if (definitions!=null) {
-			for (BPMNDiagram d : definitions.getDiagrams()) {
-				DiagramElement de = findDiagramElement(d, object);
-				if (de!=null)
-					return de;
-			}
-		}
+		if (definitions!=null)
+			return findDiagramElement(definitions, null, object, DiagramElement.class);
 		return null;
 	}
 	
 	public static DiagramElement findDiagramElement(BPMNDiagram bpmnDiagram, EObject object) {
-		for (DiagramElement de : bpmnDiagram.getPlane().getPlaneElement()) {
-			EStructuralFeature f = de.eClass().getEStructuralFeature("bpmnElement"); //$NON-NLS-1$
-			if (f!=null) {
-				if (de.eGet(f) == object)
-					return de;
+		return findDiagramElement(null, bpmnDiagram, object, DiagramElement.class);
+	}
+	
+	/**
+	 * Look up the DI element of the given type that references a model object,
+	 * using the {@link DIElementIndex} of the Resource that contains the BPMN
+	 * DI. If the model object is represented in more than one BPMNDiagram, the
+	 * element in the first of the Definitions' diagrams is returned.
+	 * 
+	 * @param definitions the Definitions whose diagrams are searched, or null
+	 *            if only the given BPMNDiagram is searched.
+	 * @param bpmnDiagram the BPMNDiagram to search, or null to search all
+	 *            diagrams of the Definitions.
+	 * @param object the model object referenced by the DI element.
+	 * @param type the DI element type.
+	 * @return the DI element or null if none was found.
+	 */
+	private static <T extends DiagramElement> T findDiagramElement(Definitions definitions, BPMNDiagram bpmnDiagram, EObject object, Class<T> type) {
+		Resource resource = definitions!=null ? definitions.eResource() : bpmnDiagram.eResource();
+		if (resource==null) {
+			// not yet part of a Resource, so there is nothing to index
+			if (bpmnDiagram==null || bpmnDiagram.getPlane()==null)
+				return null;
+			for (DiagramElement de : bpmnDiagram.getPlane().getPlaneElement()) {
+				EStructuralFeature f = de.eClass().getEStructuralFeature("bpmnElement"); //$NON-NLS-1$
+				if (f!=null && type.isInstance(de) && de.eGet(f) == object)
+					return type.cast(de);
 			}
+			return null;
 		}
-		return null;
+		T result = null;
+		int resultIndex = Integer.MAX_VALUE;
+		for (DiagramElement de : DIElementIndex.getIndex(resource).getDiagramElements(object)) {
+			if (!type.isInstance(de))
+				continue;
+			BPMNDiagram d = getBPMNDiagram(de);
+			if (bpmnDiagram!=null) {
+				if (d==bpmnDiagram)
+					return type.cast(de);
+			}
+			else {
+				int i = definitions.getDiagrams().indexOf(d);
+				if (i>=0 && i<resultIndex) {
+					result = type.cast(de);
+					resultIndex = i;
+				}
+			}
+		}
+		return result;
 	}
 	
 	/**
@@ -817,7 +831,7 @@ public class DIUtils {
 	 */
 	public static BPMNDiagram getBPMNDiagram(DiagramElement de) {
 		EObject container = de.eContainer();
-		while (!(container instanceof Definitions)) {
+		while (container!=null && !(container instanceof Definitions)) {
 			if (container instanceof BPMNDiagram)
 				return (BPMNDiagram)container;
 			container = container.eContainer();
@@ -911,14 +925,29 @@ public class DIUtils {
 		for (Resource r : resourceSet.getResources()) {
 			for (EObject o : r.getContents()) {
 				if (o instanceof Diagram) {
-					Diagram diagram = (Diagram)o;
-					elements.addAll( Graphiti.getLinkService().getPictogramElements(diagram, baseElement) );
+					// the index covers all Diagrams in this Resource
+					elements.addAll( DIElementIndex.getIndex(r).getPictogramElements(baseElement) );
+					break;
 				}
 			}
 		}
 		return elements;
 	}
 	
+	/**
+	 * Returns a list of all PictogramElements in the given Graphiti Diagram that reference the given object.
+	 * 
+	 * @param diagram
+	 * @param businessObject
+	 * @return
+	 */
+	public static List<PictogramElement> getPictogramElements(Diagram diagram, EObject businessObject) {
+		Resource resource = diagram.eResource();
+		if (resource==null)
+			return Graphiti.getLinkService().getPictogramElements(diagram, businessObject);
+		return DIElementIndex.getIndex(resource).getPictogramElements(diagram, businessObject);
+	}
+	
 	/**
 	 * Convenience method to return only the Graphiti ContainerShapes that reference the given BaseElement
 	 * in all Diagrams of the given ResourceSet
@@ -950,7 +979,7 @@ public class DIUtils {
 		DiagramEditor diagramEditor = ModelUtil.getDiagramEditor(baseElement);
 		if (diagramEditor!=null) {
 			Diagram diagram = diagramEditor.getDiagramTypeProvider().getDiagram();
-			for (PictogramElement pe : Graphiti.getLinkService().getPictogramElements(diagram, baseElement)) {
+			for (PictogramElement pe : getPictogramElements(diagram, baseElement)) {
 				if (pe instanceof ContainerShape && BusinessObjectUtil.getFirstElementOfType(pe, BPMNShape.class)!=null) {
 					return (ContainerShape) pe;
 				}
@@ -990,10 +1019,11 @@ public class DIUtils {
 		DiagramEditor diagramEditor = ModelUtil.getDiagramEditor(baseElement);
 		if (diagramEditor!=null) {
 			Diagram diagram = diagramEditor.getDiagramTypeProvider().getDiagram();
-			for (Connection c : diagram.getConnections()) {
-				if ( BusinessObjectUtil.getFirstBaseElement(c) == baseElement &&
-						BusinessObjectUtil.getFirstElementOfType(c, BPMNEdge.class)!=null) {
-					return c;
+			for (PictogramElement pe : getPictogramElements(diagram, baseElement)) {
+				if (pe instanceof Connection &&
+						BusinessObjectUtil.getFirstBaseElement(pe) == baseElement &&
+						BusinessObjectUtil.getFirstElementOfType(pe, BPMNEdge.class)!=null) {
+					return (Connection) pe;
 				}
 			}
 		}
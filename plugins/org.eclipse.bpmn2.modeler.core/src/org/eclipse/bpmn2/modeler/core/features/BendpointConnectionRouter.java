@@ -20,6 +20,7 @@ import org.eclipse.bpmn2.modeler.core.utils.AnchorUtil;
 import org.eclipse.bpmn2.modeler.core.utils.BoundaryEventPositionHelper;
 import org.eclipse.bpmn2.modeler.core.utils.BoundaryEventPositionHelper.PositionOnLine;
 import org.eclipse.bpmn2.modeler.core.utils.BusinessObjectUtil;
+import org.eclipse.bpmn2.modeler.core.utils.DiagramSpatialIndex;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.graphiti.datatypes.IDimension;
@@ -83,10 +84,10 @@ public class BendpointConnectionRouter extends DefaultConnectionRouter {
 			movedBendpoint = getAddedBendpoint(ffc);
 		removedBendpoint = getRemovedBendpoint(ffc);
 
-		findAllShapes();
 		if (movedBendpoint!=null) {
-			for (ContainerShape shape : allShapes) {
-				if (GraphicsUtil.contains(shape, movedBendpoint)) {
+			DiagramSpatialIndex index = getSpatialIndex();
+			for (ContainerShape shape : index.findShapes(movedBendpoint, movedBendpoint)) {
+				if (isCollisionCandidate(shape) && index.contains(shape, movedBendpoint)) {
 					movedBendpoint = null;
 					break;
 				}
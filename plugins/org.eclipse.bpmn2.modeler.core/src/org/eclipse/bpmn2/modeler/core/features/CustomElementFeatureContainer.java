@@ -187,13 +187,11 @@ public class CustomElementFeatureContainer implements ICustomElementFeatureConta
 			TargetRuntime rt = TargetRuntime.getCurrentRuntime();
 			Object newObject = ((IAddContext)context).getNewObject();
 			if (newObject instanceof EObject ) {
-				for (CustomTaskDescriptor ctd : rt.getCustomTaskDescriptors()) {
-					// FIXME: {@see ICustomElementFeatureContainer#getId(EObject)}
-					id = ctd.getFeatureContainer().getId((EObject) newObject);
-					if (ctd.getId().equals(id)) {
-						context.putProperty(GraphitiConstants.CUSTOM_ELEMENT_ID, id);
-						return (String)id;
-					}
+				// FIXME: {@see ICustomElementFeatureContainer#getId(EObject)}
+				id = rt.getCustomTaskId((EObject) newObject);
+				if (id!=null) {
+					context.putProperty(GraphitiConstants.CUSTOM_ELEMENT_ID, id);
+					return (String)id;
 				}
 			}
 		}
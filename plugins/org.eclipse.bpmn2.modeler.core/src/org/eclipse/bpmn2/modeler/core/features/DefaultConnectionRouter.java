@@ -17,16 +17,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
-import org.eclipse.bpmn2.BaseElement;
 import org.eclipse.bpmn2.FlowElementsContainer;
-import org.eclipse.bpmn2.Lane;
-import org.eclipse.bpmn2.di.BPMNShape;
 import org.eclipse.bpmn2.modeler.core.utils.AnchorType;
 import org.eclipse.bpmn2.modeler.core.utils.AnchorUtil;
 import org.eclipse.bpmn2.modeler.core.utils.BusinessObjectUtil;
+import org.eclipse.bpmn2.modeler.core.utils.DiagramSpatialIndex;
 import org.eclipse.bpmn2.modeler.core.utils.FeatureSupport;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
-import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.graphiti.features.IFeatureProvider;
 import org.eclipse.graphiti.features.context.IAddConnectionContext;
@@ -159,36 +156,42 @@ public class DefaultConnectionRouter extends AbstractConnectionRouter {
 		if (allShapes!=null)
 			return allShapes;
 		allShapes = new ArrayList<ContainerShape>();
-		Diagram diagram = fp.getDiagramTypeProvider().getDiagram();
-		TreeIterator<EObject> iter = diagram.eAllContents();
-		while (iter.hasNext()) {
-			EObject o = iter.next();
-			if (o instanceof ContainerShape) {
-				// this is a potential collision shape
-				ContainerShape shape = (ContainerShape)o;
-				BPMNShape bpmnShape = BusinessObjectUtil.getFirstElementOfType(shape, BPMNShape.class);
-				if (bpmnShape==null)
-					continue;
-//				if (shape==source || shape==target)
-//					continue;
-				// ignore containers (like Lane, SubProcess, etc.) if the source
-				// or target shapes are children of the container's hierarchy
-				if (shape==source.eContainer() || shape==target.eContainer())
-					continue;
-				
-				// ignore some containers altogether
-				BaseElement be = bpmnShape.getBpmnElement();
-				if (be instanceof Lane)
-					continue;
-				// TODO: other criteria here?
-	
+		for (ContainerShape shape : getSpatialIndex().getShapes()) {
+			if (isCollisionCandidate(shape))
 				allShapes.add(shape);
-			}
 		}
 //		GraphicsUtil.dump("All Shapes", allShapes); //$NON-NLS-1$
 		return allShapes;
 	}
 
+	/**
+	 * Return the spatial index of the shapes in the Diagram. The index is
+	 * maintained by the Diagram itself, so it can be shared by all routers.
+	 *
+	 * @return the Diagram's spatial index
+	 */
+	protected DiagramSpatialIndex getSpatialIndex() {
+		return DiagramSpatialIndex.getIndex(fp.getDiagramTypeProvider().getDiagram());
+	}
+
+	/**
+	 * Check if the given shape can be an obstacle for the connection being
+	 * routed. All shapes in the spatial index are potential collision shapes.
+	 *
+	 * @param shape a shape from the spatial index
+	 * @return true if the connection must be routed around the shape
+	 */
+	protected boolean isCollisionCandidate(ContainerShape shape) {
+//		if (shape==source || shape==target)
+//			return false;
+		// ignore containers (like Lane, SubProcess, etc.) if the source
+		// or target shapes are children of the container's hierarchy
+		if (shape==source.eContainer() || shape==target.eContainer())
+			return false;
+		// TODO: other criteria here?
+		return true;
+	}
+
 	/**
 	 * Gets the collision edge.
 	 *
@@ -230,19 +233,20 @@ public class DefaultConnectionRouter extends AbstractConnectionRouter {
 	 */
 	protected List<ContainerShape> findCollisions(Point p1, Point p2) {
 		List<ContainerShape> collisions = new ArrayList<ContainerShape>();
-		if (allShapes==null)
-			findAllShapes();
-		for (ContainerShape shape : allShapes) {
+		DiagramSpatialIndex index = getSpatialIndex();
+		for (ContainerShape shape : index.findShapes(p1, p2)) {
+			if (!isCollisionCandidate(shape))
+				continue;
 			if (!FeatureSupport.isGroupShape(shape) && !FeatureSupport.isLabelShape(shape) ) {
 				EObject bo = BusinessObjectUtil.getBusinessObjectForPictogramElement(shape);
 				if (bo instanceof FlowElementsContainer) {
 					// it's not a collision if the shape is a SubProcess and
 					// both source and target connection points lie inside the SubProcess
-					if (GraphicsUtil.contains(shape, p1) || GraphicsUtil.contains(shape, p2))
+					if (index.contains(shape, p1) || index.contains(shape, p2))
 						continue;
 				}
 				
-				if (GraphicsUtil.intersectsLine(shape, p1, p2))
+				if (index.intersectsLine(shape, p1, p2))
 					collisions.add(shape);
 //				else {
 //					int min = 2;
@@ -17,6 +17,8 @@ import java.util.Hashtable;
 import org.eclipse.bpmn2.BaseElement;
 import org.eclipse.bpmn2.modeler.core.LifecycleEvent;
 import org.eclipse.bpmn2.modeler.core.LifecycleEvent.EventType;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Span;
 import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
 import org.eclipse.bpmn2.modeler.core.preferences.ShapeStyle;
 import org.eclipse.bpmn2.modeler.core.preferences.ShapeStyle.RoutingStyle;
@@ -98,27 +100,36 @@ public class DefaultLayoutBPMNConnectionFeature extends AbstractLayoutFeature {
 			// limit the number of iterations for recalculating other connections
 			int iterations = 0;
 			boolean repeat;
-			do {
-				repeat = false;
-				IConnectionRouter router = getRouter(connection);
-				if (router.canRoute(connection) && router.routingNeeded(connection))
-					hasDoneChanges |= router.route(connection);
-
-				UpdateContext uc = new UpdateContext(connection);
-				getFeatureProvider().updateIfPossible(uc);
-				for (Connection c : diagram.getConnections()) {
-					router = getRouter(c);
-					if (router.canRoute(c) && router.routingNeeded(c)) {
-						router.route(c);
-
-						uc = new UpdateContext(c);
-						getFeatureProvider().updateIfPossible(uc);
-
-						repeat = true;
+			Span span = Instrumentation.start("routing"); //$NON-NLS-1$
+			try {
+				do {
+					repeat = false;
+					IConnectionRouter router = getRouter(connection);
+					if (router.canRoute(connection) && router.routingNeeded(connection)) {
+						hasDoneChanges |= router.route(connection);
+						Instrumentation.count("routing.routes"); //$NON-NLS-1$
+					}
+	
+					UpdateContext uc = new UpdateContext(connection);
+					getFeatureProvider().updateIfPossible(uc);
+					for (Connection c : diagram.getConnections()) {
+						router = getRouter(c);
+						if (router.canRoute(c) && router.routingNeeded(c)) {
+							router.route(c);
+							Instrumentation.count("routing.routes"); //$NON-NLS-1$
+	
+							uc = new UpdateContext(c);
+							getFeatureProvider().updateIfPossible(uc);
+	
+							repeat = true;
+						}
 					}
 				}
+				while (repeat && ++iterations < 3);
+			}
+			finally {
+				span.end();
 			}
-			while (repeat && ++iterations < 3);
 			Graphiti.getPeService().removeProperty(connection, GraphitiConstants.INITIAL_UPDATE);
 		}
 		return hasDoneChanges;
@@ -12,9 +12,13 @@ package org.eclipse.bpmn2.modeler.core.features;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.eclipse.bpmn2.Activity;
 import org.eclipse.bpmn2.Association;
@@ -37,6 +41,7 @@ import org.eclipse.bpmn2.SequenceFlow;
 import org.eclipse.bpmn2.di.BPMNDiagram;
 import org.eclipse.bpmn2.di.BPMNEdge;
 import org.eclipse.bpmn2.di.BPMNShape;
+import org.eclipse.bpmn2.modeler.core.Activator;
 import org.eclipse.bpmn2.modeler.core.di.DIUtils;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerFactory;
 import org.eclipse.bpmn2.modeler.core.utils.AnchorUtil;
@@ -44,6 +49,8 @@ import org.eclipse.bpmn2.modeler.core.utils.BusinessObjectUtil;
 import org.eclipse.bpmn2.modeler.core.utils.FeatureSupport;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
@@ -71,10 +78,19 @@ import org.eclipse.graphiti.mm.pictograms.Shape;
 import org.eclipse.graphiti.services.Graphiti;
 import org.eclipse.graphiti.ui.editor.DiagramEditor;
 import org.eclipse.graphiti.ui.features.AbstractPasteFeature;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * Default Graphiti {@code PasteFeature} class for Shapes.
  * <p>
+ * All lookups needed while pasting are done through maps that are built once
+ * per paste operation: copied objects are found by their original ID, copied
+ * IDs are kept in a set, and the Boundary Events of the Resource are grouped
+ * by the Activity they are attached to. Shapes are created first, then all
+ * connections whose source and target shapes exist, and finally the
+ * connections that had to be deferred. The time spent in each of these
+ * phases is written to the error log when the plug-in is running in debug
+ * mode.
  */
 public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 
@@ -90,6 +106,18 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 	 */
 	protected Hashtable<String, String> idMap;
 	
+	/**
+	 * Maps the ID strings of the original BPMN2 elements to the objects they
+	 * were mapped to in {@link #idMap}.
+	 */
+	protected Map<String, EObject> objectMap;
+	
+	/** All ID strings that are values in {@link #idMap}. */
+	protected Set<String> mappedIds;
+	
+	/** The Boundary Events in the Resource, grouped by their attachedToRef. */
+	protected Map<Activity, List<BoundaryEvent>> boundaryEventMap;
+	
 	/** The shape map. */
 	protected HashMap<ContainerShape, ContainerShape> shapeMap;
 	
@@ -105,6 +133,10 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 	/** The diagram. */
 	protected Diagram diagram;
 
+	private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+	private String currentPhase;
+	private long phaseStart;
+
 	/**
 	 * Instantiates a new default {@code PasteFeature).
 	 *
@@ -185,6 +217,10 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 		resource = targetContainerObject.eResource();
 		definitions = ModelUtil.getDefinitions(resource);
 		idMap = new Hashtable<String, String>();
+		objectMap = new HashMap<String, EObject>();
+		mappedIds = new HashSet<String>();
+		boundaryEventMap = null;
+		timings.clear();
 		shapeMap = new HashMap<ContainerShape, ContainerShape>();
 		connectionMap = new HashMap<Connection, Connection>();
 		xReference = 0;
@@ -219,6 +255,7 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 
 		// First create all shapes. This creates a lookup map of old to new
 		// ContainerShape objects.
+		startPhase(Messages.DefaultPasteBPMNElementFeature_Shapes_Phase);
 		for (Object object : fromClipboard) {
 			if (object instanceof ContainerShape) {
 				copyShape((ContainerShape) object, targetContainerShape, x, y);
@@ -226,6 +263,7 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 		}
 
 		// Handle connections now that we know all shapes have been created
+		startPhase(Messages.DefaultPasteBPMNElementFeature_Connections_Phase);
 		x = context.getX(); // Connection bendpoint coordinates are always
 							// relative to diagram
 		y = context.getY();
@@ -236,11 +274,18 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 		}
 		
 		// handle any connections that were not created because of missing source/target
+		startPhase(Messages.DefaultPasteBPMNElementFeature_Deferred_Connections_Phase);
+		List<Connection> deferred = new ArrayList<Connection>();
 		for (Entry<Connection, Connection> entry : connectionMap.entrySet()) {
 			if (entry.getValue()==null) {
-				copyConnection(entry.getKey(), targetContainerShape, x, y);
+				deferred.add(entry.getKey());
 			}
 		}
+		for (Connection c : deferred) {
+			copyConnection(c, targetContainerShape, x, y);
+		}
+
+		startPhase(Messages.DefaultPasteBPMNElementFeature_Selection_Phase);
 		PictogramElement newPes[] = new PictogramElement[shapeMap.size()];
 		int i = 0;
 		for (Entry<ContainerShape, ContainerShape> entry : shapeMap.entrySet()) {
@@ -248,6 +293,61 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 		}
 		
 		getDiagramEditor().setPictogramElementsForSelection(newPes);
+		endPhase();
+		report(shapeMap.size() + connectionMap.size());
+
+		// release the per-paste lookup maps
+		objectMap.clear();
+		mappedIds.clear();
+		boundaryEventMap = null;
+	}
+
+	/**
+	 * Start timing a paste phase. Any phase that is still running is stopped.
+	 *
+	 * @param phase the phase name.
+	 */
+	protected void startPhase(String phase) {
+		endPhase();
+		currentPhase = phase;
+		phaseStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * Stop timing the current paste phase.
+	 */
+	protected void endPhase() {
+		if (currentPhase!=null) {
+			Long previous = timings.get(currentPhase);
+			long elapsed = System.currentTimeMillis() - phaseStart;
+			timings.put(currentPhase, (previous==null ? 0 : previous.longValue()) + elapsed);
+			currentPhase = null;
+		}
+	}
+
+	/**
+	 * Return the time, in milliseconds, spent in each phase of the last paste
+	 * operation.
+	 *
+	 * @return a map of phase names to elapsed times, in the order in which the
+	 *         phases were run.
+	 */
+	public Map<String, Long> getTimings() {
+		return timings;
+	}
+
+	private void report(int count) {
+		if (Activator.getDefault()!=null && Activator.getDefault().isDebugging()) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(NLS.bind(Messages.DefaultPasteBPMNElementFeature_Timing_Report, count));
+			long total = 0;
+			for (Entry<String, Long> e : timings.entrySet()) {
+				sb.append("\n  "+e.getKey()+": "+e.getValue()+" ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				total += e.getValue().longValue();
+			}
+			sb.append("\n  Total: "+total+" ms"); //$NON-NLS-1$ //$NON-NLS-2$
+			Activator.logStatus(new Status(IStatus.INFO, Activator.PLUGIN_ID, sb.toString()));
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -419,14 +519,14 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 					if (oldId!=null) {
 						String newId = idMap.get(oldId);
 						if (newId!=null) {
-							EObject newRefObject = findObjectById(newId);
+							EObject newRefObject = objectMap.get(oldId);
 							newObject.eSet(ref, newRefObject);
 						}
 						else if (newObject.eGet(ref) != null){
 							EObject newRefObject = (EObject) newObject.eGet(ref);
 							newId = getId(newRefObject);
 							if (newId!=null)
-								idMap.put(oldId, newId);
+								mapId(oldId, newId, newRefObject);
 						}
 					}
 				}
@@ -449,43 +549,63 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 		EStructuralFeature feature = newObject.eClass().getEStructuralFeature("id"); //$NON-NLS-1$
 		if (feature != null) {
 			oldId = (String) newObject.eGet(feature);
-			if (idMap.contains(oldId)) {
+			if (mappedIds.contains(oldId)) {
 				newId = idMap.get(oldId);
 				newObject.eSet(feature, newId);
 			}
 			else {
 				newObject.eUnset(feature);
-				newId = ModelUtil.setID(newObject);
-				idMap.put(oldId, newId);
+				// IDs are allocated by the Resource's ID index, which does not
+				// need to search the model for conflicts
+				newId = ModelUtil.setID(newObject, resource);
+				mapId(oldId, newId, newObject);
 			}
 		}
 		return oldId;
 	}
 
+	private void mapId(String oldId, String newId, EObject newObject) {
+		if (oldId==null || newId==null)
+			return;
+		idMap.put(oldId, newId);
+		objectMap.put(oldId, newObject);
+		mappedIds.add(newId);
+	}
+
 	private boolean wasCopied(EObject object) {
 		String id = getId(object);
 		if (id!=null) {
-			return idMap.containsValue(id);
+			return mappedIds.contains(id);
 		}
 		return false;
 	}
-	
-	private EObject findObjectById(String id) {
-		TreeIterator<EObject> iter = definitions.eAllContents();
-		while (iter.hasNext()) {
-			EObject o = iter.next();
-			EStructuralFeature feature = o.eClass().getEStructuralFeature("id"); //$NON-NLS-1$
-			if (feature != null) {
-				String thisId = (String) o.eGet(feature);
-				if (thisId != null && !thisId.isEmpty() && thisId.equals(id))
-					return o;
+
+	private List<BoundaryEvent> getBoundaryEvents(Activity activity) {
+		if (boundaryEventMap==null) {
+			// a single pass over the model for the whole paste operation
+			boundaryEventMap = new HashMap<Activity, List<BoundaryEvent>>();
+			TreeIterator<EObject> iter = definitions.eAllContents();
+			while (iter.hasNext()) {
+				EObject o = iter.next();
+				if (o instanceof BoundaryEvent && ((BoundaryEvent)o).getAttachedToRef()!=null) {
+					Activity a = ((BoundaryEvent)o).getAttachedToRef();
+					List<BoundaryEvent> list = boundaryEventMap.get(a);
+					if (list==null) {
+						list = new ArrayList<BoundaryEvent>();
+						boundaryEventMap.put(a, list);
+					}
+					list.add((BoundaryEvent)o);
+				}
 			}
 		}
-		return null;
+		List<BoundaryEvent> list = boundaryEventMap.get(activity);
+		if (list==null)
+			return new ArrayList<BoundaryEvent>();
+		return list;
 	}
 
 	private ContainerShape findShape(EObject object) {
-		List<PictogramElement> pes = Graphiti.getLinkService().getPictogramElements(diagram, object);
+		List<PictogramElement> pes = DIUtils.getPictogramElements(diagram, object);
 		for (PictogramElement pe : pes) {
 			if (pe instanceof ContainerShape)
 				return (ContainerShape) pe;
@@ -494,7 +614,7 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 	}
 
 	private Connection findConnection(EObject object) {
-		List<PictogramElement> pes = Graphiti.getLinkService().getPictogramElements(diagram, object);
+		List<PictogramElement> pes = DIUtils.getPictogramElements(diagram, object);
 		for (PictogramElement pe : pes) {
 			if (pe instanceof Connection)
 				return (Connection) pe;
@@ -623,19 +743,12 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 		uc.putProperty(GraphitiConstants.FORCE_UPDATE_ALL, Boolean.TRUE);
 		uf.update(uc);
 		
-		if (newObject instanceof Activity) {
+		if (newObject instanceof Activity && oldObject instanceof Activity) {
 			// copy the Activity's Boundary Events if it has any
-			TreeIterator<EObject> i = definitions.eAllContents();
-			while (i.hasNext()) {
-				EObject o = i.next();
-				if (o instanceof BoundaryEvent) {
-					BoundaryEvent oldBeObject = (BoundaryEvent)o;
-					if (oldBeObject.getAttachedToRef() == oldObject) {
-						// here's one...
-						ContainerShape oldBeShape = findShape(oldBeObject);
-						copyShape(oldBeShape, targetContainerShape, x, y);
-					}
-				}
+			for (BoundaryEvent oldBeObject : getBoundaryEvents((Activity)oldObject)) {
+				ContainerShape oldBeShape = findShape(oldBeObject);
+				if (oldBeShape!=null)
+					copyShape(oldBeShape, targetContainerShape, x, y);
 			}
 		}
 
@@ -646,19 +759,20 @@ public class DefaultPasteBPMNElementFeature extends AbstractPasteFeature {
 		if (connectionMap.get(oldConnection)!=null)
 			return null;
 		
-		BaseElement targetContainerObject = getContainerObject(targetContainerShape);
-		BaseElement oldObject = BusinessObjectUtil.getFirstBaseElement(oldConnection);
-		BaseElement newObject = createNewObject(oldObject, targetContainerObject);
-
 		Anchor oldStart = oldConnection.getStart();
 		Anchor oldEnd = oldConnection.getEnd();
 		ContainerShape newSource = shapeMap.get(oldStart.getParent());
 		ContainerShape newTarget = shapeMap.get(oldEnd.getParent());
 		if (newSource==null || newTarget==null) {
-			// source or target does not exist yet - handle this connection later
+			// source or target does not exist yet - handle this connection later,
+			// and don't copy the business object until then
 			connectionMap.put(oldConnection, null);
 			return null;
 		}
+
+		BaseElement targetContainerObject = getContainerObject(targetContainerShape);
+		BaseElement oldObject = BusinessObjectUtil.getFirstBaseElement(oldConnection);
+		BaseElement newObject = createNewObject(oldObject, targetContainerObject);
 		
 		Anchor newStart;
 		Anchor newEnd;
@@ -13,7 +13,9 @@ package org.eclipse.bpmn2.modeler.core.features;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.bpmn2.modeler.core.utils.DiagramSpatialIndex;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
+import org.eclipse.draw2d.geometry.Rectangle;
 import org.eclipse.graphiti.datatypes.IDimension;
 import org.eclipse.graphiti.datatypes.ILocation;
 import org.eclipse.graphiti.mm.algorithms.styles.Point;
@@ -93,12 +95,28 @@ public class DetourPoints {
 	 * @param shape the shape
 	 */
 	protected void calculate(Shape shape) {
-		ILocation loc = BendpointConnectionRouter.peService.getLocationRelativeToDiagram(shape);
-		IDimension size = GraphicsUtil.calculateSize(shape);
-		topLeft = GraphicsUtil.createPoint(loc.getX() - leftMargin, loc.getY() - topMargin);
-		topRight = GraphicsUtil.createPoint(loc.getX() + size.getWidth() + rightMargin, loc.getY() - topMargin);
-		bottomLeft = GraphicsUtil.createPoint(loc.getX() - leftMargin, loc.getY() + size.getHeight() + bottomMargin);
-		bottomRight = GraphicsUtil.createPoint(loc.getX() + size.getWidth() + leftMargin, loc.getY() + size.getHeight() + bottomMargin);
+		// use the cached shape bounds from the Diagram's spatial index if possible
+		Rectangle bounds = DiagramSpatialIndex.findBounds(shape);
+		if (bounds==null) {
+			ILocation loc = BendpointConnectionRouter.peService.getLocationRelativeToDiagram(shape);
+			IDimension size = GraphicsUtil.calculateSize(shape);
+			bounds = new Rectangle(loc.getX(), loc.getY(), size.getWidth(), size.getHeight());
+		}
+		topLeft = GraphicsUtil.createPoint(bounds.x - leftMargin, bounds.y - topMargin);
+		topRight = GraphicsUtil.createPoint(bounds.x + bounds.width + rightMargin, bounds.y - topMargin);
+		bottomLeft = GraphicsUtil.createPoint(bounds.x - leftMargin, bounds.y + bounds.height + bottomMargin);
+		bottomRight = GraphicsUtil.createPoint(bounds.x + bounds.width + leftMargin, bounds.y + bounds.height + bottomMargin);
+	}
+
+	/**
+	 * Gets the bounding rectangle of the detour, e.g. for querying the
+	 * Diagram's spatial index for neighboring shapes.
+	 *
+	 * @return the bounds
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(topLeft.getX(), topLeft.getY(),
+				topRight.getX() - topLeft.getX(), bottomLeft.getY() - topLeft.getY());
 	}
 
 	/**
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.core.features;
+
+import java.util.Collection;
+
+import org.eclipse.bpmn2.modeler.core.runtime.CustomTaskIndex;
+
+/**
+ * Optional interface for {@link ICustomElementFeatureContainer}s that
+ * recognize their Custom Elements by the value of a single extension
+ * attribute, for example the jBPM "drools:taskName" attribute.
+ * <p>
+ * {@link ICustomElementFeatureContainer#getId(org.eclipse.emf.ecore.EObject)}
+ * must return this container's ID for an object only if the object has an
+ * extension attribute named {@link #getDiscriminatorName()} whose value is one
+ * of the {@link #getDiscriminatorValues()}. This allows the
+ * {@link CustomTaskIndex} to classify objects, and even XML elements before
+ * their objects are constructed, without asking every feature container.
+ */
+public interface ICustomElementDiscriminator {
+
+	/**
+	 * @return the local name of the extension attribute that identifies the
+	 *         Custom Element.
+	 */
+	public String getDiscriminatorName();
+
+	/**
+	 * @return the attribute values that identify the Custom Element. The
+	 *         values must not change after the Custom Task Descriptor has been
+	 *         added to its Target Runtime.
+	 */
+	public Collection<String> getDiscriminatorValues();
+}
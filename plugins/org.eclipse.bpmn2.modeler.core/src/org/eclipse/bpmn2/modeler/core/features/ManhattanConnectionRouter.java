@@ -19,6 +19,8 @@ import java.util.List;
 import org.eclipse.bpmn2.modeler.core.utils.AnchorSite;
 import org.eclipse.bpmn2.modeler.core.utils.AnchorType;
 import org.eclipse.bpmn2.modeler.core.utils.AnchorUtil;
+import org.eclipse.bpmn2.modeler.core.utils.DiagramSpatialIndex;
+import org.eclipse.bpmn2.modeler.core.utils.FeatureSupport;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil.LineSegment;
 import org.eclipse.graphiti.datatypes.IDimension;
@@ -27,6 +29,7 @@ import org.eclipse.graphiti.mm.algorithms.styles.Point;
 import org.eclipse.graphiti.mm.pictograms.Anchor;
 import org.eclipse.graphiti.mm.pictograms.Connection;
 import org.eclipse.graphiti.mm.pictograms.ContainerShape;
+import org.eclipse.graphiti.mm.pictograms.FixPointAnchor;
 import org.eclipse.graphiti.mm.pictograms.FreeFormConnection;
 
 /**
@@ -43,8 +46,11 @@ public class ManhattanConnectionRouter extends BendpointConnectionRouter {
 	/** The Constant offset. */
 	static final int margin = 20;
 	
-	/** The test route solver. */
-	static boolean testRouteSolver = false;
+	/**
+	 * If set, routes are calculated by the A* {@link RouteSolver}; the
+	 * permutation search of this router is only used if the solver fails.
+	 */
+	static boolean useRouteSolver = true;
 	
 	/**
 	 * The connection routing directions.
@@ -257,12 +263,6 @@ public class ManhattanConnectionRouter extends BendpointConnectionRouter {
 		Point start = null;
 		Point end = null;
 
-		if (testRouteSolver) {
-			RouteSolver solver = new RouteSolver(fp, allShapes);
-			boolean b = solver.solve(source, target);
-			if (b) return null;
-		}
-		
 		// The list of all possible routes. The shortest will be used.
 		List<ConnectionRoute> allRoutes = new ArrayList<ConnectionRoute>();
 		AnchorSite sourceSite = AnchorSite.getSite(sourceAnchor);
@@ -426,6 +426,15 @@ public class ManhattanConnectionRouter extends BendpointConnectionRouter {
 			}
 		}
 		
+		// If the existing route could not be fixed, let the RouteSolver find
+		// the cheapest route between the current anchors. The permutation
+		// search below is the fallback if that fails or runs out of time.
+		if (allRoutes.isEmpty() && useRouteSolver && movedBendpoint==null) {
+			ConnectionRoute route = solveRoute();
+			if (route!=null)
+				return route;
+		}
+		
 		// Calculate all possible routes: this iterates over every permutation
 		// of 4 sides for both source and target shape
 		for (int i=0; i<16; ++i) {
@@ -542,6 +551,76 @@ public class ManhattanConnectionRouter extends BendpointConnectionRouter {
 		return route;
 	}
 	
+	/**
+	 * Calculate a route between the current source and target anchors with the
+	 * A* RouteSolver. Anchors that are attached to Pools or Connections are
+	 * not handled by the solver because their location depends on the route;
+	 * for these null is returned, so that the caller falls back to the
+	 * permutation search over anchor sites.
+	 * <p>
+	 * All shapes in the Diagram are passed to the solver, not only the ones
+	 * that are collision candidates for this connection, so that the solver
+	 * can reuse the Routing Nets it calculated for other connections. The
+	 * solver itself ignores the containers of the source and target.
+	 *
+	 * @return the route, or null if the solver could not find one.
+	 */
+	protected ConnectionRoute solveRoute() {
+		AnchorSite sourceSite = AnchorSite.getSite(sourceAnchor);
+		AnchorSite targetSite = AnchorSite.getSite(targetAnchor);
+		if (Direction.get(sourceSite)==Direction.NONE || Direction.get(targetSite)==Direction.NONE)
+			return null;
+		AnchorType sourceType = AnchorType.getType(sourceAnchor);
+		AnchorType targetType = AnchorType.getType(targetAnchor);
+		if (sourceType==AnchorType.POOL || targetType==AnchorType.POOL ||
+				sourceType==AnchorType.CONNECTION || targetType==AnchorType.CONNECTION)
+			return null;
+		
+		List<ContainerShape> obstacles = new ArrayList<ContainerShape>();
+		for (ContainerShape shape : getSpatialIndex().getShapes()) {
+			if (!FeatureSupport.isGroupShape(shape) && !FeatureSupport.isLabelShape(shape))
+				obstacles.add(shape);
+		}
+		RouteSolver solver = new RouteSolver(fp, obstacles);
+		solver.setCostModel(getCostModel());
+		solver.setMargin(margin);
+		if (solver.getCostModel().getCrossingPenalty()!=0) {
+			List<FixPointAnchor> connectionAnchors = AnchorUtil.getAnchors(connection);
+			for (Connection c : fp.getDiagramTypeProvider().getDiagram().getConnections()) {
+				if (c==connection || peService.getProperty(c, RoutingNet.CONNECTION)!=null)
+					continue;
+				if (connectionAnchors.contains(c.getStart()) || connectionAnchors.contains(c.getEnd()))
+					continue;
+				solver.addConnection(c);
+			}
+		}
+		
+		List<Point> points = solver.solve(createPoint(sourceAnchor), sourceSite, createPoint(targetAnchor), targetSite);
+		if (points==null)
+			return null;
+		
+		ConnectionRoute route = new ConnectionRoute(this, 0, source, target);
+		route.setSourceAnchor(sourceAnchor);
+		route.setTargetAnchor(targetAnchor);
+		for (Point p : points)
+			route.add(p);
+		if (!route.isValid())
+			return null;
+		GraphicsUtil.dump("Solved route: "+route.toString()); //$NON-NLS-1$
+		return route;
+	}
+
+	/**
+	 * Return the cost model used by the RouteSolver. Subclasses may override
+	 * this to change the weights of route length, bends and crossings, or the
+	 * time budget for each route.
+	 *
+	 * @return the cost model
+	 */
+	protected RouteSolver.CostModel getCostModel() {
+		return new RouteSolver.CostModel();
+	}
+	
 	/**
 	 * Calculate route.
 	 *
@@ -905,17 +984,23 @@ public class ManhattanConnectionRouter extends BendpointConnectionRouter {
 	
 	DetourPoints getDetourPoints(ContainerShape shape) {
 		DetourPoints detour = new DetourPoints(shape, margin);
-		if (allShapes==null)
-			findAllShapes();
+		DiagramSpatialIndex index = getSpatialIndex();
 
-		for (int i=0; i<allShapes.size(); ++i) {
-			ContainerShape s = allShapes.get(i);
-			if (shape==s || shape==source || shape==target)
-				continue;
-			DetourPoints d = new DetourPoints(s, margin);
-			if (detour.intersects(d) && !detour.contains(d)) {
-				detour.merge(d);
-				i = -1;
+		// merge the detours of all neighboring shapes that overlap this
+		// detour; the detour grows with each merge, so look again until
+		// no more overlapping shapes are found
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (ContainerShape s : index.findShapes(detour.getBounds())) {
+				if (shape==s || shape==source || shape==target || !isCollisionCandidate(s))
+					continue;
+				DetourPoints d = new DetourPoints(s, margin);
+				if (detour.intersects(d) && !detour.contains(d)) {
+					detour.merge(d);
+					merged = true;
+					break;
+				}
 			}
 		}
 
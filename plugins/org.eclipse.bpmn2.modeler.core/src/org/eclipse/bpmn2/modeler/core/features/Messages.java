@@ -59,6 +59,12 @@ public class Messages extends NLS {
 	
 	/** The Custom element feature container_ create. */
 	public static String CustomElementFeatureContainer_Create;
+
+	public static String DefaultPasteBPMNElementFeature_Connections_Phase;
+	public static String DefaultPasteBPMNElementFeature_Deferred_Connections_Phase;
+	public static String DefaultPasteBPMNElementFeature_Selection_Phase;
+	public static String DefaultPasteBPMNElementFeature_Shapes_Phase;
+	public static String DefaultPasteBPMNElementFeature_Timing_Report;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
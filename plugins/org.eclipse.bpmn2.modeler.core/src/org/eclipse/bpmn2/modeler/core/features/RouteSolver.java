@@ -11,23 +11,53 @@
 package org.eclipse.bpmn2.modeler.core.features;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.eclipse.bpmn2.modeler.core.features.ManhattanConnectionRouter.Direction;
+import org.eclipse.bpmn2.modeler.core.utils.AnchorSite;
+import org.eclipse.bpmn2.modeler.core.utils.DiagramSpatialIndex;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
 import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
 import org.eclipse.graphiti.features.IFeatureProvider;
 import org.eclipse.graphiti.mm.algorithms.styles.Point;
+import org.eclipse.graphiti.mm.pictograms.Connection;
 import org.eclipse.graphiti.mm.pictograms.ContainerShape;
-import org.eclipse.graphiti.mm.pictograms.Shape;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
+import org.eclipse.graphiti.mm.pictograms.FreeFormConnection;
 import org.eclipse.graphiti.services.Graphiti;
 import org.eclipse.graphiti.services.IGaService;
 import org.eclipse.graphiti.services.IPeService;
 
-// TODO: Auto-generated Javadoc
 /**
- * The Class RouteSolver.
+ * Calculates orthogonal connection routes with an A* search.
+ * <p>
+ * The free space between the shapes in the diagram is sliced into a vertical
+ * and a horizontal {@link RoutingNet}; the center lines of these Routing Lanes,
+ * together with the shape edges (offset by a margin) and the connection
+ * endpoints, define a sparse grid of candidate routing lines. The A* search
+ * walks this grid from the source to the target anchor, and the cost of a
+ * route is computed by a configurable {@link CostModel} from its length, the
+ * number of bends and the number of crossings with other connections.
+ * <p>
+ * The Routing Nets and shape bounds only depend on the layout of the shapes,
+ * so they are calculated once and shared by all solvers of a Diagram until a
+ * shape is added, removed, moved or resized, as reported by the Diagram's
+ * {@link DiagramSpatialIndex}.
+ * <p>
+ * The search is limited by a time budget, which also includes the time taken
+ * to set up the solver; if no route can be found within that time,
+ * {@link #solve(Point, AnchorSite, Point, AnchorSite)} returns null and the
+ * caller is expected to fall back to a simpler routing strategy.
  */
 public class RouteSolver {
 
@@ -49,18 +79,74 @@ public class RouteSolver {
 	/** The Constant rightMargin. */
 	static final int rightMargin = 50;
 
+	/** The number of search steps between checks of the time budget. */
+	static final int BUDGET_CHECK_INTERVAL = 128;
+
+	/** The size of the cells used to look up obstacles and connection segments. */
+	static final int CELL_SIZE = 128;
+
+	/**
+	 * The cost model used to rank routes. The total cost of a route is
+	 * <pre>
+	 *   length * lengthWeight + bends * bendPenalty + crossings * crossingPenalty
+	 * </pre>
+	 */
+	public static class CostModel {
+		
+		/** The cost of each pixel of route length. */
+		protected double lengthWeight = 1.0;
+		
+		/** The cost of each bend in the route. */
+		protected double bendPenalty = 40.0;
+		
+		/** The cost of each crossing with another connection. */
+		protected double crossingPenalty = 100.0;
+		
+		/**
+		 * The maximum time, in milliseconds, allowed for one route, including
+		 * the time taken to set up the solver.
+		 */
+		protected long timeBudget = 50;
+
+		public double getLengthWeight() {
+			return lengthWeight;
+		}
+
+		public void setLengthWeight(double lengthWeight) {
+			this.lengthWeight = lengthWeight;
+		}
+
+		public double getBendPenalty() {
+			return bendPenalty;
+		}
+
+		public void setBendPenalty(double bendPenalty) {
+			this.bendPenalty = bendPenalty;
+		}
+
+		public double getCrossingPenalty() {
+			return crossingPenalty;
+		}
+
+		public void setCrossingPenalty(double crossingPenalty) {
+			this.crossingPenalty = crossingPenalty;
+		}
+
+		public long getTimeBudget() {
+			return timeBudget;
+		}
+
+		public void setTimeBudget(long timeBudget) {
+			this.timeBudget = timeBudget;
+		}
+	}
+
 	/** The fp. */
 	IFeatureProvider fp;
 	
 	/** The all shapes. */
 	List<ContainerShape> allShapes;
 	
-	/** The source. */
-	Shape source; 
-	
-	/** The target. */
-	Shape target;
-	
 	/** The right. */
 	int top, left, bottom, right;
 	
@@ -70,6 +156,30 @@ public class RouteSolver {
 	/** The horizontal net. */
 	RoutingNet horizontalNet;
 	private boolean rotate = false;
+
+	/** The cost model. */
+	protected CostModel costModel = new CostModel();
+	
+	/** The minimum distance of a route from the shapes it passes. */
+	protected int margin = 20;
+	
+	/** Line segments of other connections, as {x1,y1,x2,y2} */
+	protected List<int[]> connectionSegments = new ArrayList<int[]>();
+
+	/** The shape bounds and Routing Nets, possibly shared with other solvers. */
+	private RoutingGrid grid;
+	
+	/** The time at which set up of this solver started, until the first route is solved. */
+	private long setupTime;
+
+	// search state, only valid during solve()
+	private int[] xs;
+	private int[] ys;
+	private boolean[] excluded;
+	private CellGrid segmentCells;
+	private int[] segmentMarks;
+	private int segmentMark;
+	private Map<Integer, Node> nodes;
 	
 	/**
 	 * RouteSolver constructor.
@@ -78,67 +188,475 @@ public class RouteSolver {
 	 * @param allShapes - a list of all shapes that are considered in the routing solution.
 	 */
 	public RouteSolver(IFeatureProvider fp, List<ContainerShape> allShapes) {
+		setupTime = System.currentTimeMillis();
 		this.fp = fp;
 		this.allShapes = new ArrayList<ContainerShape>();
 		this.allShapes.addAll(allShapes);
 		initialize();
 	}
+
+	/**
+	 * Sets the cost model.
+	 *
+	 * @param costModel the new cost model
+	 */
+	public void setCostModel(CostModel costModel) {
+		this.costModel = costModel;
+	}
 	
 	/**
-	 * Solve.
+	 * Gets the cost model.
 	 *
-	 * @param source the source
-	 * @param target the target
-	 * @return true, if successful
+	 * @return the cost model
 	 */
-	public boolean solve(Shape source, Shape target) {
-		this.source = source;
-		this.target = target;
-		List< List<RoutingLane> > verticalSolutions = null;
-		List< List<RoutingLane> > horizontalSolutions = null;
-		
-		verticalNet.eraseLanes();
-		horizontalNet.eraseLanes();
+	public CostModel getCostModel() {
+		return costModel;
+	}
+
+	/**
+	 * Sets the minimum distance between a route and the shapes it passes.
+	 *
+	 * @param margin the new margin
+	 */
+	public void setMargin(int margin) {
+		this.margin = margin;
+	}
+
+	/**
+	 * Add a connection whose line segments should be avoided by the route.
+	 * Each crossing of one of its segments is penalized by the cost model.
+	 *
+	 * @param connection the connection
+	 */
+	public void addConnection(Connection connection) {
+		Point p1 = GraphicsUtil.createPoint(connection.getStart());
+		if (connection instanceof FreeFormConnection) {
+			for (Point p2 : ((FreeFormConnection)connection).getBendpoints()) {
+				connectionSegments.add(new int[] {p1.getX(), p1.getY(), p2.getX(), p2.getY()});
+				p1 = p2;
+			}
+		}
+		Point p2 = GraphicsUtil.createPoint(connection.getEnd());
+		connectionSegments.add(new int[] {p1.getX(), p1.getY(), p2.getX(), p2.getY()});
+	}
+	
+	/**
+	 * Find the cheapest orthogonal route between two anchor points. The route
+	 * leaves the source in the direction of the source anchor site and enters
+	 * the target from the direction of the target anchor site.
+	 *
+	 * @param start the source anchor location
+	 * @param sourceSite the edge of the source shape on which the anchor lies
+	 * @param end the target anchor location
+	 * @param targetSite the edge of the target shape on which the anchor lies
+	 * @return the route points, including the start and end points, or null if
+	 *         no route could be found within the time budget.
+	 */
+	public List<Point> solve(Point start, AnchorSite sourceSite, Point end, AnchorSite targetSite) {
+		// the first route is also charged for the time taken to set up the solver
+		long now = System.currentTimeMillis();
+		long deadline = (setupTime!=0 ? setupTime : now) + costModel.getTimeBudget();
+		setupTime = 0;
+		if (now>deadline)
+			return null;
+		Direction sourceDirection = Direction.get(sourceSite);
+		Direction targetDirection = Direction.reverse(Direction.get(targetSite));
+		if (sourceDirection==Direction.NONE || targetDirection==Direction.NONE)
+			return null;
 		
-		Point ps = GraphicsUtil.getShapeCenter(source);
-		Point pt = GraphicsUtil.getShapeCenter(target);
+		int[] sourcePort = move(start.getX(), start.getY(), sourceDirection, margin);
+		int[] targetPort = move(end.getX(), end.getY(), Direction.reverse(targetDirection), margin);
 		
-		int dx = ps.getX() - pt.getX();
-		int dy = ps.getY() - pt.getY();
-		if (Math.abs(dy) > Math.abs(dx)) {
-			verticalSolutions = verticalNet.findSolutions(source, target);
-			verticalNet.drawLanes();
-//			verticalNet.drawConnections();
-		}
-		else {
-			horizontalSolutions = horizontalNet.findSolutions(source, target);
-			horizontalNet.drawLanes();
-//			horizontalNet.drawConnections();
+		try {
+			calculateGrid(start, end, sourcePort, targetPort);
+			int sx = Arrays.binarySearch(xs, sourcePort[0]);
+			int sy = Arrays.binarySearch(ys, sourcePort[1]);
+			int tx = Arrays.binarySearch(xs, targetPort[0]);
+			int ty = Arrays.binarySearch(ys, targetPort[1]);
+			
+			Node goal = search(sx, sy, sourceDirection, tx, ty, targetDirection, deadline);
+			if (goal==null)
+				return null;
+	
+			// collect the grid points of the route, in reverse order
+			List<Point> points = new ArrayList<Point>();
+			points.add(GraphicsUtil.createPoint(end));
+			points.add(GraphicsUtil.createPoint(targetPort[0], targetPort[1]));
+			for (Node n = goal; n!=null; n = n.parent)
+				points.add(GraphicsUtil.createPoint(xs[n.x], ys[n.y]));
+			points.add(GraphicsUtil.createPoint(start));
+			Collections.reverse(points);
+			removeRedundantPoints(points);
+			return points;
+		}
+		finally {
+			xs = null;
+			ys = null;
+			excluded = null;
+			segmentCells = null;
+			segmentMarks = null;
+			nodes = null;
+		}
+	}
+
+	/**
+	 * A search node: a grid point together with the direction in which it was
+	 * entered. The direction is part of the node because the cost of
+	 * continuing from a grid point depends on it.
+	 */
+	private static class Node {
+		final int x, y;
+		final Direction direction;
+		Node parent;
+		double cost = Double.MAX_VALUE;
+
+		Node(int x, int y, Direction direction) {
+			this.x = x;
+			this.y = y;
+			this.direction = direction;
+		}
+	}
+
+	/**
+	 * An entry in the A* open list. Nodes are not updated in place while they
+	 * are queued; instead a new entry is added whenever a cheaper path to a
+	 * node is found, and outdated entries are skipped.
+	 */
+	private static class OpenEntry implements Comparable<OpenEntry> {
+		final Node node;
+		final double cost;
+		final double priority;
+		final long sequence;
+
+		OpenEntry(Node node, double estimate, long sequence) {
+			this.node = node;
+			this.cost = node.cost;
+			this.priority = node.cost + estimate;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(OpenEntry that) {
+			if (this.priority<that.priority)
+				return -1;
+			if (this.priority>that.priority)
+				return 1;
+			// break ties in insertion order so the search is deterministic
+			return this.sequence<that.sequence ? -1 : this.sequence>that.sequence ? 1 : 0;
 		}
+	}
+
+	private Node search(int sx, int sy, Direction sourceDirection, int tx, int ty, Direction targetDirection, long deadline) {
+		nodes = new HashMap<Integer, Node>();
+		PriorityQueue<OpenEntry> open = new PriorityQueue<OpenEntry>();
+		long sequence = 0;
 		
-//		if (verticalSolutions!=null && verticalSolutions.size()>0) {
-//			for (int i=0; i<verticalSolutions.size(); ++i) {
-//				verticalNet.drawSolution(verticalSolutions.get(i), i);
-//				if (i>16)
-//					break;
-//			}
-//		}
-//		if (horizontalSolutions!=null && horizontalSolutions.size()>0) {
-//			for (int i=0; i<horizontalSolutions.size(); ++i) {
-//				horizontalNet.drawSolution(horizontalSolutions.get(i), i);
-//				if (i>16)
-//					break;
-//			}
-//		}
-		return true;
+		Node startNode = getNode(sx, sy, sourceDirection);
+		startNode.cost = margin * costModel.getLengthWeight();
+		open.add(new OpenEntry(startNode, estimate(sx, sy, sourceDirection, tx, ty, targetDirection), sequence++));
+
+		int steps = 0;
+		while (!open.isEmpty()) {
+			if (++steps % BUDGET_CHECK_INTERVAL == 0 && System.currentTimeMillis() > deadline)
+				return null;
+			
+			OpenEntry entry = open.poll();
+			Node node = entry.node;
+			if (entry.cost>node.cost)
+				continue;
+			if (node.x==tx && node.y==ty && node.direction==targetDirection)
+				return node;
+			
+			for (Direction d : Direction.values()) {
+				if (d==Direction.NONE || d==Direction.reverse(node.direction))
+					continue;
+				int nx = node.x;
+				int ny = node.y;
+				switch (d) {
+				case LEFT:	--nx; break;
+				case RIGHT:	++nx; break;
+				case UP:	--ny; break;
+				case DOWN:	++ny; break;
+				}
+				if (nx<0 || nx>=xs.length || ny<0 || ny>=ys.length)
+					continue;
+				double cost = getCost(node, nx, ny, d);
+				if (cost<0)
+					continue;
+				
+				Node next = getNode(nx, ny, d);
+				if (cost<next.cost) {
+					next.parent = node;
+					next.cost = cost;
+					open.add(new OpenEntry(next, estimate(nx, ny, d, tx, ty, targetDirection), sequence++));
+				}
+			}
+		}
+		return null;
+	}
+
+	private Node getNode(int x, int y, Direction direction) {
+		Integer key = Integer.valueOf(((x * ys.length) + y) * 4 + (direction.ordinal() - 1));
+		Node node = nodes.get(key);
+		if (node==null) {
+			node = new Node(x, y, direction);
+			nodes.put(key, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Return the total cost of the route up to and including the step from the
+	 * given node to the adjacent grid point, or -1 if the step is blocked by a
+	 * shape.
+	 */
+	private double getCost(Node node, int nx, int ny, Direction d) {
+		int x1 = xs[node.x];
+		int y1 = ys[node.y];
+		int x2 = xs[nx];
+		int y2 = ys[ny];
+		if (isBlocked(x1, y1, x2, y2))
+			return -1;
+		double cost = node.cost + costModel.getLengthWeight() * (Math.abs(x2-x1) + Math.abs(y2-y1));
+		if (d!=node.direction)
+			cost += costModel.getBendPenalty();
+		if (costModel.getCrossingPenalty()!=0)
+			cost += costModel.getCrossingPenalty() * countCrossings(x1, y1, x2, y2);
+		return cost;
+	}
+
+	/**
+	 * A lower bound for the cost from the given grid point to the target port:
+	 * the Manhattan distance, plus one bend unless the target port lies
+	 * straight ahead and is entered in the current direction.
+	 */
+	private double estimate(int x, int y, Direction d, int tx, int ty, Direction targetDirection) {
+		int dx = xs[tx] - xs[x];
+		int dy = ys[ty] - ys[y];
+		double estimate = costModel.getLengthWeight() * (Math.abs(dx) + Math.abs(dy));
+		boolean straightAhead = false;
+		if (d==targetDirection) {
+			switch (d) {
+			case LEFT:	straightAhead = dy==0 && dx<=0; break;
+			case RIGHT:	straightAhead = dy==0 && dx>=0; break;
+			case UP:	straightAhead = dx==0 && dy<=0; break;
+			case DOWN:	straightAhead = dx==0 && dy>=0; break;
+			}
+		}
+		if (!straightAhead)
+			estimate += costModel.getBendPenalty();
+		return estimate;
+	}
+
+	/**
+	 * Check if the horizontal or vertical line segment passes through the
+	 * interior of any of the obstacle shapes. Only the shapes in the cells
+	 * covered by the line segment are tested.
+	 */
+	private boolean isBlocked(int x1, int y1, int x2, int y2) {
+		int minX = Math.min(x1, x2);
+		int maxX = Math.max(x1, x2);
+		int minY = Math.min(y1, y2);
+		int maxY = Math.max(y1, y2);
+		for (int col=CellGrid.cell(minX); col<=CellGrid.cell(maxX); ++col) {
+			for (int row=CellGrid.cell(minY); row<=CellGrid.cell(maxY); ++row) {
+				List<Integer> items = grid.shapeCells.get(col, row);
+				if (items==null)
+					continue;
+				for (Integer i : items) {
+					if (excluded[i])
+						continue;
+					Rectangle r = grid.bounds[i];
+					if (y1==y2) {
+						if (r.y<y1 && y1<r.bottom() && Math.max(minX, r.x) < Math.min(maxX, r.right()))
+							return true;
+					}
+					else {
+						if (r.x<x1 && x1<r.right() && Math.max(minY, r.y) < Math.min(maxY, r.bottom()))
+							return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Count the connection segments crossed by the line segment. Only the
+	 * connection segments in the cells covered by the line segment are
+	 * tested, and each of them only once.
+	 */
+	private int countCrossings(int x1, int y1, int x2, int y2) {
+		int count = 0;
+		++segmentMark;
+		for (int col=CellGrid.cell(Math.min(x1, x2)); col<=CellGrid.cell(Math.max(x1, x2)); ++col) {
+			for (int row=CellGrid.cell(Math.min(y1, y2)); row<=CellGrid.cell(Math.max(y1, y2)); ++row) {
+				List<Integer> items = segmentCells.get(col, row);
+				if (items==null)
+					continue;
+				for (Integer i : items) {
+					if (segmentMarks[i]==segmentMark)
+						continue;
+					segmentMarks[i] = segmentMark;
+					int[] s = connectionSegments.get(i);
+					if (segmentsCross(x1, y1, x2, y2, s[0], s[1], s[2], s[3]))
+						++count;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static boolean segmentsCross(int x1, int y1, int x2, int y2, int x3, int y3, int x4, int y4) {
+		if (Math.max(x1,x2)<Math.min(x3,x4) || Math.max(x3,x4)<Math.min(x1,x2) ||
+				Math.max(y1,y2)<Math.min(y3,y4) || Math.max(y3,y4)<Math.min(y1,y2))
+			return false;
+		long d1 = orientation(x3, y3, x4, y4, x1, y1);
+		long d2 = orientation(x3, y3, x4, y4, x2, y2);
+		long d3 = orientation(x1, y1, x2, y2, x3, y3);
+		long d4 = orientation(x1, y1, x2, y2, x4, y4);
+		return ((d1>0 && d2<0) || (d1<0 && d2>0)) && ((d3>0 && d4<0) || (d3<0 && d4>0));
+	}
+
+	private static long orientation(int x1, int y1, int x2, int y2, int x, int y) {
+		return (long)(x2-x1) * (long)(y-y1) - (long)(y2-y1) * (long)(x-x1);
+	}
+
+	/**
+	 * Set up the sparse routing grid from the cached grid lines of the Routing
+	 * Lanes and shape margins, and the source and target ports. Also find the
+	 * obstacles that must be ignored, and index the connection segments.
+	 */
+	private void calculateGrid(Point start, Point end, int[] sourcePort, int[] targetPort) {
+		xs = insert(insert(grid.getXs(margin), sourcePort[0]), targetPort[0]);
+		ys = insert(insert(grid.getYs(margin), sourcePort[1]), targetPort[1]);
+
+		// ignore containers of the source or target; anchors lie on the
+		// edge of their own shape, so only containers enclose them
+		excluded = new boolean[grid.bounds.length];
+		excludeContainers(start.getX(), start.getY());
+		excludeContainers(end.getX(), end.getY());
+
+		segmentCells = new CellGrid();
+		segmentMarks = new int[connectionSegments.size()];
+		segmentMark = 0;
+		for (int i=0; i<connectionSegments.size(); ++i) {
+			int[] s = connectionSegments.get(i);
+			segmentCells.add(i, s[0], s[1], s[2], s[3]);
+		}
+	}
+
+	private void excludeContainers(int x, int y) {
+		List<Integer> items = grid.shapeCells.get(CellGrid.cell(x), CellGrid.cell(y));
+		if (items!=null) {
+			for (Integer i : items) {
+				if (containsPoint(grid.bounds[i], x, y))
+					excluded[i] = true;
+			}
+		}
 	}
 	
+	private static boolean containsPoint(Rectangle r, int x, int y) {
+		return r.x<x && x<r.right() && r.y<y && y<r.bottom();
+	}
+
+	private static int[] toArray(Set<Integer> set) {
+		int[] a = new int[set.size()];
+		int i = 0;
+		for (Integer v : set)
+			a[i++] = v.intValue();
+		return a;
+	}
+
 	/**
-	 * Initialize.
+	 * Return a copy of the sorted array with the value inserted, or the array
+	 * itself if it already contains the value.
+	 */
+	private static int[] insert(int[] a, int value) {
+		int i = Arrays.binarySearch(a, value);
+		if (i>=0)
+			return a;
+		i = -(i + 1);
+		int[] b = new int[a.length + 1];
+		System.arraycopy(a, 0, b, 0, i);
+		b[i] = value;
+		System.arraycopy(a, i, b, i + 1, a.length - i);
+		return b;
+	}
+
+	private static int[] move(int x, int y, Direction d, int distance) {
+		switch (d) {
+		case UP:	y -= distance; break;
+		case DOWN:	y += distance; break;
+		case LEFT:	x -= distance; break;
+		case RIGHT:	x += distance; break;
+		}
+		return new int[] {x, y};
+	}
+
+	/**
+	 * Remove duplicate points and the inner points of straight line segments
+	 * from the route.
+	 */
+	private static void removeRedundantPoints(List<Point> points) {
+		int i = 1;
+		while (i<points.size()) {
+			Point p0 = points.get(i-1);
+			Point p1 = points.get(i);
+			if (GraphicsUtil.pointsEqual(p0, p1)) {
+				points.remove(i);
+				continue;
+			}
+			if (i+1<points.size()) {
+				Point p2 = points.get(i+1);
+				if ((p0.getX()==p1.getX() && p1.getX()==p2.getX()) ||
+						(p0.getY()==p1.getY() && p1.getY()==p2.getY())) {
+					points.remove(i);
+					continue;
+				}
+			}
+			++i;
+		}
+	}
+	
+	/**
+	 * Initialize the Routing Nets and shape bounds, or reuse the ones that
+	 * were calculated for the same shapes by another solver if the shapes
+	 * have not changed since.
 	 *
 	 * @return true, if successful
 	 */
 	public boolean initialize() {
+		Diagram diagram = allShapes.isEmpty() ? null : peService.getDiagramForShape(allShapes.get(0));
+		if (diagram==null) {
+			grid = createGrid(-1);
+			return verticalNet!=null;
+		}
+		long modificationCount = DiagramSpatialIndex.getIndex(diagram).getModificationCount();
+		RoutingGridCache cache = RoutingGridCache.getCache(diagram);
+		grid = cache.grid;
+		if (grid==null || grid.modificationCount!=modificationCount || !grid.shapes.equals(allShapes)) {
+			grid = createGrid(modificationCount);
+			cache.grid = grid;
+		}
+		verticalNet = grid.verticalNet;
+		horizontalNet = grid.horizontalNet;
+		return verticalNet!=null;
+	}
+
+	private RoutingGrid createGrid(long modificationCount) {
+		// the Routing Nets calculation sorts allShapes
+		List<ContainerShape> shapes = new ArrayList<ContainerShape>(allShapes);
+		calculateRoutingNets();
+		return new RoutingGrid(shapes, modificationCount, verticalNet, horizontalNet);
+	}
+
+	/**
+	 * Calculate the vertical and horizontal Routing Nets.
+	 *
+	 * @return true, if successful
+	 */
+	protected boolean calculateRoutingNets() {
 		
 		if (allShapes.size()<2)
 			return false;
@@ -218,11 +736,6 @@ public class RouteSolver {
 		net.add(left, top, leftMargin, bottom-top);
 		for (int i=0; i<allShapes.size(); ++i) {
 			ContainerShape shape = allShapes.get(i);
-			if (GraphicsUtil.getDebugText(shape).contains("Task_1")) { //$NON-NLS-1$
-				GraphicsUtil.debug = true;
-			}
-			else
-				GraphicsUtil.debug = false;
 
 			// get bounding rectangle for current shape
 			Rectangle shapeBounds = getBounds(shape);
@@ -456,6 +969,127 @@ public class RouteSolver {
 		return shapes;
 	}
 	
+	/**
+	 * A uniform grid of cells, each of which lists the items whose bounding
+	 * boxes cover it. This is used to find the shapes and connection segments
+	 * near one step of the search without testing all of them.
+	 */
+	private static class CellGrid {
+		private final Map<Long, List<Integer>> cells = new HashMap<Long, List<Integer>>();
+
+		void add(int item, int x1, int y1, int x2, int y2) {
+			for (int col=cell(Math.min(x1, x2)); col<=cell(Math.max(x1, x2)); ++col) {
+				for (int row=cell(Math.min(y1, y2)); row<=cell(Math.max(y1, y2)); ++row) {
+					Long key = key(col, row);
+					List<Integer> list = cells.get(key);
+					if (list==null) {
+						list = new ArrayList<Integer>();
+						cells.put(key, list);
+					}
+					list.add(Integer.valueOf(item));
+				}
+			}
+		}
+
+		List<Integer> get(int col, int row) {
+			return cells.get(key(col, row));
+		}
+
+		static int cell(int coordinate) {
+			return (int) Math.floor((double) coordinate / CELL_SIZE);
+		}
+
+		private static Long key(int col, int row) {
+			return Long.valueOf(((long) col << 32) | (row & 0xffffffffL));
+		}
+	}
+
+	/**
+	 * The part of the routing grid that only depends on the shapes: their
+	 * bounds and the Routing Nets between them.
+	 */
+	private static class RoutingGrid {
+		final List<ContainerShape> shapes;
+		final long modificationCount;
+		final RoutingNet verticalNet;
+		final RoutingNet horizontalNet;
+		final Rectangle[] bounds;
+		final CellGrid shapeCells = new CellGrid();
+		// the grid lines for the most recently used margin
+		private int margin = -1;
+		private int[] xs;
+		private int[] ys;
+
+		RoutingGrid(List<ContainerShape> shapes, long modificationCount, RoutingNet verticalNet, RoutingNet horizontalNet) {
+			this.shapes = shapes;
+			this.modificationCount = modificationCount;
+			this.verticalNet = verticalNet;
+			this.horizontalNet = horizontalNet;
+			bounds = new Rectangle[shapes.size()];
+			for (int i=0; i<bounds.length; ++i) {
+				Rectangle r = RoutingNet.getBounds(false, shapes.get(i));
+				bounds[i] = r;
+				shapeCells.add(i, r.x, r.y, r.right(), r.bottom());
+			}
+		}
+
+		int[] getXs(int margin) {
+			calculateLines(margin);
+			return xs;
+		}
+
+		int[] getYs(int margin) {
+			calculateLines(margin);
+			return ys;
+		}
+
+		/**
+		 * Calculate the grid lines along the center lines of the Routing Lanes
+		 * and the shape edges offset by the given margin.
+		 */
+		private void calculateLines(int margin) {
+			if (this.margin==margin)
+				return;
+			Set<Integer> xset = new TreeSet<Integer>();
+			Set<Integer> yset = new TreeSet<Integer>();
+			if (verticalNet!=null) {
+				for (RoutingLane lane : verticalNet)
+					xset.add(lane.getX() + lane.getWidth()/2);
+			}
+			if (horizontalNet!=null) {
+				// the lanes of the horizontal net are rotated
+				for (RoutingLane lane : horizontalNet)
+					yset.add(lane.getX() + lane.getWidth()/2);
+			}
+			for (Rectangle r : bounds) {
+				xset.add(r.x - margin);
+				xset.add(r.right() + margin);
+				yset.add(r.y - margin);
+				yset.add(r.bottom() + margin);
+			}
+			xs = toArray(xset);
+			ys = toArray(yset);
+			this.margin = margin;
+		}
+	}
+
+	/**
+	 * Holds the RoutingGrid that was calculated last for a Diagram.
+	 */
+	private static class RoutingGridCache extends AdapterImpl {
+		RoutingGrid grid;
+
+		static RoutingGridCache getCache(Diagram diagram) {
+			for (Adapter a : diagram.eAdapters()) {
+				if (a instanceof RoutingGridCache)
+					return (RoutingGridCache) a;
+			}
+			RoutingGridCache cache = new RoutingGridCache();
+			diagram.eAdapters().add(cache);
+			return cache;
+		}
+	}
+	
 	/**
 	 * The Class Slice.
 	 */
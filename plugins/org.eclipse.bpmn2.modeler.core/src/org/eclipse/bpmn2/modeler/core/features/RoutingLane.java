@@ -309,28 +309,4 @@ public class RoutingLane {
 	public void rotate(boolean b) {
 		RoutingNet.rotateRectangle(rect);
 	}
-
-	/**
-	 * Navigate to.
-	 *
-	 * @param ta the ta
-	 * @param owner the owner
-	 */
-	public void navigateTo(RoutingLane ta, RoutingNet owner) {
-		owner.push(this);
-		if (this==ta) {
-			owner.solutionFound();
-		}
-		else {
-			for (RoutingLane a : getRight()) {
-				if (!owner.visited(a))
-					a.navigateTo(ta, owner);
-			}
-			for (RoutingLane a : getLeft()) {
-				if (!owner.visited(a))
-					a.navigateTo(ta, owner);
-			}
-		}
-		owner.pop();
-	}
 }
@@ -11,12 +11,10 @@
 package org.eclipse.bpmn2.modeler.core.features;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Stack;
 
 import org.eclipse.bpmn2.modeler.core.features.RoutingLane.Adjacence;
+import org.eclipse.bpmn2.modeler.core.utils.DiagramSpatialIndex;
 import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
 import org.eclipse.draw2d.geometry.Rectangle;
 import org.eclipse.emf.common.util.TreeIterator;
@@ -31,7 +29,6 @@ import org.eclipse.graphiti.features.context.impl.DeleteContext;
 import org.eclipse.graphiti.features.impl.AbstractAddShapeFeature;
 import org.eclipse.graphiti.mm.algorithms.Polyline;
 import org.eclipse.graphiti.mm.algorithms.RoundedRectangle;
-import org.eclipse.graphiti.mm.algorithms.styles.Point;
 import org.eclipse.graphiti.mm.pictograms.Anchor;
 import org.eclipse.graphiti.mm.pictograms.Connection;
 import org.eclipse.graphiti.mm.pictograms.ConnectionDecorator;
@@ -85,15 +82,6 @@ public class RoutingNet extends ArrayList<RoutingLane> {
 	/** The target adjacent lanes. */
 	List<RoutingLane> targetAdjacentLanes = new ArrayList<RoutingLane>();
 	
-	/** The solution stack. */
-	Stack<RoutingLane> solutionStack;
-	
-	/** The all solutions. */
-	List< List<RoutingLane> > allSolutions;
-	
-	/** The min dist. */
-	int minDist = Integer.MAX_VALUE;
-	
 	/** The fp. */
 	IFeatureProvider fp;
 	
@@ -170,31 +158,25 @@ public class RoutingNet extends ArrayList<RoutingLane> {
 		super.clear();
 		sourceAdjacentLanes.clear();
 		targetAdjacentLanes.clear();
-		if (solutionStack!=null)
-			solutionStack.clear();
-		if (allSolutions!=null)
-			allSolutions.clear();
 	}
 	
 	/**
-	 * Find solutions.
+	 * Set the source and target shapes of the connection being routed and
+	 * find the Routing Lanes adjacent to them.
 	 *
-	 * @param source2 the source2
-	 * @param target2 the target2
-	 * @return the list
+	 * @param source2 the source shape
+	 * @param target2 the target shape
 	 */
-	public List< List<RoutingLane> > findSolutions(Shape source2, Shape target2) {
-		allSolutions = new ArrayList< List<RoutingLane> >();
+	public void setEndpoints(Shape source2, Shape target2) {
 		this.source = source2;
 		this.target = target2;
-		if (source2==null || target2==null) {
-			return allSolutions;
-		}
-		Rectangle sourceBounds = getBounds(false, source2);
-		Rectangle targetBounds = getBounds(false, target2);
 		sourceAdjacentLanes.clear();
 		targetAdjacentLanes.clear();
+		if (source2==null || target2==null)
+			return;
 		
+		Rectangle sourceBounds = getBounds(false, source2);
+		Rectangle targetBounds = getBounds(false, target2);
 		for (RoutingLane a1 : this) {
 			if (a1.adjacent(sourceBounds) != RoutingLane.Adjacence.NONE) {
 				sourceAdjacentLanes.add(a1);
@@ -203,273 +185,6 @@ public class RoutingNet extends ArrayList<RoutingLane> {
 				targetAdjacentLanes.add(a1);
 			}
 		}
-		
-		solutionStack = new Stack<RoutingLane>();
-		minDist = Integer.MAX_VALUE;
-		
-		for (RoutingLane sa : sourceAdjacentLanes) {
-			for (RoutingLane ta : targetAdjacentLanes) {
-				sa.navigateTo(ta, this);
-			}
-		}
-		Collections.sort(allSolutions, new Comparator<List<RoutingLane>>() {
-			@Override
-			public int compare(List<RoutingLane> arg0, List<RoutingLane> arg1) {
-				int i;
-				double m0 = merit(arg0);
-				double m1 = merit(arg1);
-				if (m0<m1)
-					i = 1;
-				else if (m0>m1)
-					i = -1;
-				else
-					i = 0;
-				if (true)
-					return i;
-				
-				i = getManhattanDistance(arg0) - getManhattanDistance(arg1);
-				if (i==0) {
-					// find the lane with the easiest passage
-					int arg0min = Integer.MAX_VALUE;
-					int arg1min = Integer.MAX_VALUE;
-					if (isRotated) {
-						for (RoutingLane a : arg0) {
-							int d = a.getHeight();
-							if (d<arg0min)
-								arg0min = d;
-						}
-						for (RoutingLane a : arg1) {
-							int d = a.getHeight();
-							if (d<arg1min)
-								arg1min = d;
-						}
-					}
-					else {
-						for (RoutingLane a : arg0) {
-							int d = a.getWidth();
-							if (d<arg0min)
-								arg0min = d;
-						}
-						for (RoutingLane a : arg1) {
-							int d = a.getWidth();
-							if (d<arg1min)
-								arg1min = d;
-						}
-					}
-					i = arg1min - arg0min;
-				}
-				return i;
-			}
-		});
-		return allSolutions;
-	}
-	
-	/**
-	 * Merit.
-	 *
-	 * @param list the list
-	 * @return the double
-	 */
-	public double merit(List<RoutingLane> list) {
-		ILocation sourceLoc = Graphiti.getPeService().getLocationRelativeToDiagram(source);
-		IDimension sourceSize = GraphicsUtil.calculateSize(source);
-		ILocation targetLoc = Graphiti.getPeService().getLocationRelativeToDiagram(target);
-		IDimension targetSize = GraphicsUtil.calculateSize(target);
-		Point p1 = GraphicsUtil.getShapeCenter(source);
-		Point p2 = GraphicsUtil.getShapeCenter(target);
-		if (isRotated) {
-			if (sourceLoc.getY() + sourceSize.getHeight() < targetLoc.getY()) {
-				p1.setY(sourceLoc.getY() + sourceSize.getHeight());
-				p2.setY(targetLoc.getY() );
-			}
-			else if (targetLoc.getY() + targetSize.getHeight() < sourceLoc.getY()) {
-				p1.setY(sourceLoc.getY());
-				p2.setY(targetLoc.getY() + targetSize.getHeight());
-			}
-		}
-		else {
-			if (sourceLoc.getX() + sourceSize.getWidth() < targetLoc.getX()) {
-				p1.setX(sourceLoc.getX() + sourceSize.getWidth());
-				p2.setX(targetLoc.getX() );
-			}
-			else if (targetLoc.getX() + targetSize.getWidth() < sourceLoc.getX()) {
-				p1.setX(sourceLoc.getX());
-				p2.setX(targetLoc.getX() + targetSize.getWidth());
-			}
-		}
-		int i = 0;
-		double length = GraphicsUtil.getLength(p1, p2);
-		for (RoutingLane rl : list) {
-			if ( GraphicsUtil.RectangleIntersectsLine.intersectsLine(
-					p1.getX(), p1.getY(), p2.getX(), p2.getY(),
-					rl.rect.x, rl.rect.y, rl.rect.width, rl.rect.height)) {
-				i += length;
-			}
-			else 
-			{
-				Point c = GraphicsUtil.createPoint(rl.rect.getCenter().x, rl.rect.getCenter().y);
-				double d = pointToLineDistance(p1, p2, c);
-				i += length / d;
-			}
-		}
-		return (double) i / (double)(length * list.size());
-	}
-
-	/**
-	 * Point to line distance.
-	 *
-	 * @param p1 the p1
-	 * @param p2 the p2
-	 * @param p the p
-	 * @return the double
-	 */
-	public double pointToLineDistance(Point p1, Point p2, Point p) {
-		double normalLength = Math.sqrt((p2.getX() - p1.getX()) * (p2.getX() - p1.getX()) + (p2.getY() - p1.getY()) * (p2.getY() - p1.getY()));
-		return Math.abs((p.getX() - p1.getX()) * (p2.getY() - p1.getY()) - (p.getY() - p1.getY()) * (p2.getX() - p1.getX())) / normalLength;
-	}
-
-	/**
-	 * Pop.
-	 */
-	public void pop() {
-		solutionStack.pop();
-	}
-
-	/**
-	 * Visited.
-	 *
-	 * @param lane the lane
-	 * @return true, if successful
-	 */
-	public boolean visited(RoutingLane lane) {
-		return solutionStack.contains(lane);
-	}
-
-	/**
-	 * Push.
-	 *
-	 * @param lane the lane
-	 */
-	public void push(RoutingLane lane) {
-		solutionStack.push(lane);
-	}
-
-	/**
-	 * Gets the manhattan distance.
-	 *
-	 * @param lanes the lanes
-	 * @return the manhattan distance
-	 */
-	public int getManhattanDistance(List<RoutingLane> lanes) {
-		int dist = 0;
-		Rectangle r0 = getBounds(false, source);
-		int x0 = r0.x + r0.width/2;
-		int y0 = r0.y + r0.height/2;
-		Rectangle r1 = getBounds(false, target);
-		int x1 = r1.x + r1.width/2;
-		int y1 = r1.y + r1.height/2;
-		int dx = Math.abs(x0 - x1);
-		int dy = Math.abs(y0 - y1);
-
-		RoutingLane a0 = lanes.get(0);
-		RoutingLane a1;
-		RoutingLane a2 = null;
-
-		if (isRotated) {
-			if (dy>a0.getHeight())
-				dist += a0.getHeight();
-			dist += dx;
-			for (int i=1; i<lanes.size(); ++i) {
-				a1 = lanes.get(i);
-				int d = 0;
-				if (dy>a1.getHeight())
-					d = a1.getHeight();
-				else
-					d = dy;
-				if (i+1<lanes.size()) {
-					a2 = lanes.get(i+1);
-					if (a0.getRight().contains(a1) && a1.getRight().contains(a2) ||
-							a0.getLeft().contains(a1) && a1.getLeft().contains(a2)) {
-						dist += d;
-					}
-				}
-				else  {
-					dist += d;
-				}
-				
-				d = 0;
-				int right = a1.getX() + a1.getWidth();
-				int left = a1.getX();
-				if (right < x0) {
-					d = x0 - right;
-					x0 = right;
-				}
-				else if (left > x0) {
-					d = left - x0;
-					x0 = left;
-				}
-				dist += d;
-				a0 = a1;
-			}
-		}
-		else {
-			if (dx>a0.getWidth())
-				dist += a0.getWidth();
-			double dd = (double) a0.getWidth() / (double) a0.getHeight();
-			dist += dy;
-			for (int i=1; i<lanes.size(); ++i) {
-				a1 = lanes.get(i);
-				int d = 0;
-				if (dx>a1.getWidth())
-					d = a1.getWidth();
-				else
-					d = dx;
-				if (i+1<lanes.size()) {
-					a2 = lanes.get(i+1);
-					if (a0.getRight().contains(a1) && a1.getRight().contains(a2) ||
-							a0.getLeft().contains(a1) && a1.getLeft().contains(a2)) {
-						dist += d;
-					}
-				}
-				else  {
-					dist += d;
-				}
-				
-				d = 0;
-				int bottom = a1.getY() + a1.getHeight();
-				int top = a1.getY();
-				if (bottom < y0) {
-					d = y0 - bottom;
-					y0 = bottom;
-				}
-				else if (top > y0) {
-					d = top - y0;
-					y0 = top;
-				}
-				dist += d;
-				a0 = a1;
-			}
-		}
-		return dist;
-	}
-	
-	/**
-	 * Solution found.
-	 *
-	 * @return true, if successful
-	 */
-	public boolean solutionFound() {
-		
-		if (!allSolutions.contains(solutionStack)) {
-//			int d = getManhattanDistance(solutionStack);
-//			if (d - 0.5 * minDist < minDist) {
-//				if (d < minDist)
-//					minDist = d;
-				List<RoutingLane> solution = new ArrayList<RoutingLane>(solutionStack);
-				allSolutions.add(solution);
-//			}
-		}
-		return true;
 	}
 	
 	/**
@@ -525,12 +240,16 @@ public class RoutingNet extends ArrayList<RoutingLane> {
 	 * @return the bounds
 	 */
 	protected static Rectangle getBounds(boolean rotate, Shape source2) {
-		ILocation loc = peService.getLocationRelativeToDiagram(source2);
-		IDimension size = GraphicsUtil.calculateSize(source2);
+		Rectangle bounds = DiagramSpatialIndex.findBounds(source2);
+		if (bounds==null) {
+			ILocation loc = peService.getLocationRelativeToDiagram(source2);
+			IDimension size = GraphicsUtil.calculateSize(source2);
+			bounds = new Rectangle(loc.getX(), loc.getY(), size.getWidth(), size.getHeight());
+		}
 		if (rotate) {
-			return rotateRectangle(loc.getX(), loc.getY(), size.getWidth(), size.getHeight());
+			return rotateRectangle(bounds);
 		}
-		return new Rectangle(loc.getX(), loc.getY(), size.getWidth(), size.getHeight());
+		return bounds;
 	}
 
 	/**
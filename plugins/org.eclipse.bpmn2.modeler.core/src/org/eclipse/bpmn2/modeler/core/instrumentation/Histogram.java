@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe distribution of non-negative long values, such as durations
+ * or sizes. Values are counted in power-of-two buckets, so percentiles are
+ * approximate: they are reported as the upper bound of the bucket that
+ * contains them, and are never more than twice the actual value.
+ */
+public class Histogram {
+
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+	// bucket 0 holds values <= 0, bucket i holds values in [2^(i-1), 2^i)
+	private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+	Histogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Add a value to the distribution.
+	 *
+	 * @param value the value; negative values are counted as 0.
+	 */
+	public void record(long value) {
+		if (value<0)
+			value = 0;
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+		long m;
+		while (value < (m = min.get()) && !min.compareAndSet(m, value));
+		while (value > (m = max.get()) && !max.compareAndSet(m, value));
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * @return the smallest value, or 0 if no values were recorded.
+	 */
+	public long getMin() {
+		return count.get()==0 ? 0 : min.get();
+	}
+
+	/**
+	 * @return the largest value, or 0 if no values were recorded.
+	 */
+	public long getMax() {
+		return count.get()==0 ? 0 : max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n==0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Return an approximate percentile of the recorded values.
+	 *
+	 * @param percentile the percentile, between 0 and 100.
+	 * @return the upper bound of the bucket containing the percentile, limited
+	 *         to the largest recorded value, or 0 if no values were recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.get();
+		if (n==0)
+			return 0;
+		long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * n);
+		long seen = 0;
+		for (int i=0; i<buckets.length(); ++i) {
+			seen += buckets.get(i);
+			if (seen>=rank && seen>0) {
+				long upper = i==0 ? 0 : (i==64 ? Long.MAX_VALUE : (1L << i) - 1);
+				return Math.min(upper, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	void reset() {
+		count.set(0);
+		sum.set(0);
+		min.set(Long.MAX_VALUE);
+		max.set(Long.MIN_VALUE);
+		for (int i=0; i<buckets.length(); ++i)
+			buckets.set(i, 0);
+	}
+
+	@Override
+	public String toString() {
+		return name + ": count=" + getCount() + " mean=" + getMean() + " max=" + getMax(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
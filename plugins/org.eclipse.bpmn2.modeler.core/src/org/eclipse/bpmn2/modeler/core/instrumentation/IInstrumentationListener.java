@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.instrumentation;
+
+/**
+ * Receives notification of spans as they are started and ended. Listeners
+ * are called on the thread that owns the span, so implementations must be
+ * thread-safe and fast.
+ *
+ * @see Instrumentation#addListener(IInstrumentationListener)
+ */
+public interface IInstrumentationListener {
+
+	/**
+	 * Called when a span has been started.
+	 *
+	 * @param span the new span.
+	 */
+	void spanStarted(Span span);
+
+	/**
+	 * Called when a span has ended. Its duration and attributes are final.
+	 *
+	 * @param span the ended span.
+	 */
+	void spanEnded(Span span);
+}
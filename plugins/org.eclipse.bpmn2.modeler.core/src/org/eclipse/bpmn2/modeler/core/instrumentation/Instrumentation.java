@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.instrumentation;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.bpmn2.modeler.core.Activator;
+
+/**
+ * Thread-safe instrumentation of the editor's load, import, routing,
+ * validation and save phases.
+ * <p>
+ * Three kinds of measurements are collected:
+ * <ul>
+ * <li>{@link Span}s: named, nested intervals of work. The duration of every
+ * ended span is also added, in microseconds, to the histogram of the same
+ * name.</li>
+ * <li>counters: named totals, e.g. the number of shapes imported.</li>
+ * <li>{@link Histogram}s: named distributions of values.</li>
+ * </ul>
+ * Instrumentation is disabled by default, in which case all methods return
+ * immediately. It is enabled while any {@link IInstrumentationListener} is
+ * registered, while spans are being recorded for a trace, or explicitly with
+ * {@link #setEnabled(boolean)}. Setting the system property
+ * {@value #TRACE_FILE_PROPERTY} to a file name records all spans from startup
+ * and writes them as a JSON trace when the plug-in is stopped.
+ */
+public final class Instrumentation {
+
+	/** system property naming the file to which a trace is written on shutdown */
+	public static final String TRACE_FILE_PROPERTY = "org.eclipse.bpmn2.modeler.trace"; //$NON-NLS-1$
+	/** the largest number of spans kept for a trace; later spans are dropped */
+	public static final int MAX_TRACE_SPANS = 100000;
+
+	private static final long EPOCH = System.nanoTime();
+	private static final ThreadLocal<Span> current = new ThreadLocal<Span>();
+	private static final List<IInstrumentationListener> listeners = new CopyOnWriteArrayList<IInstrumentationListener>();
+	private static final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentLinkedQueue<Span> trace = new ConcurrentLinkedQueue<Span>();
+	private static final AtomicInteger traceSize = new AtomicInteger();
+	private static volatile boolean forceEnabled;
+	private static volatile boolean recording;
+	private static volatile boolean enabled;
+
+	private Instrumentation() {
+	}
+
+	/**
+	 * @return true if measurements are being collected.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Collect measurements even if there are no listeners and no trace is
+	 * being recorded, e.g. to read the counters and histograms later.
+	 *
+	 * @param enable true to enable.
+	 */
+	public static void setEnabled(boolean enable) {
+		forceEnabled = enable;
+		update();
+	}
+
+	private static void update() {
+		enabled = forceEnabled || recording || !listeners.isEmpty();
+	}
+
+	public static void addListener(IInstrumentationListener listener) {
+		if (!listeners.contains(listener))
+			listeners.add(listener);
+		update();
+	}
+
+	public static void removeListener(IInstrumentationListener listener) {
+		listeners.remove(listener);
+		update();
+	}
+
+	/**
+	 * Start a span, nested in the span that is currently open on this thread.
+	 *
+	 * @param name the span name. Names are dot-separated, starting with the
+	 *            phase, e.g. "load.parse".
+	 * @return the new span, or an inactive span if instrumentation is
+	 *         disabled. Never null.
+	 */
+	public static Span start(String name) {
+		if (!enabled)
+			return Span.NONE;
+		Span span = new Span(name, current.get(), System.nanoTime() - EPOCH);
+		current.set(span);
+		for (IInstrumentationListener l : listeners) {
+			try {
+				l.spanStarted(span);
+			}
+			catch (Exception e) {
+				Activator.logError(e);
+			}
+		}
+		return span;
+	}
+
+	/**
+	 * @return the innermost span that is open on this thread, or null.
+	 */
+	public static Span getCurrentSpan() {
+		return current.get();
+	}
+
+	static void end(Span span) {
+		long now = System.nanoTime() - EPOCH;
+		// end any children that were left open, e.g. because of an exception
+		Span open = current.get();
+		boolean nested = false;
+		for (Span s = open; s!=null; s = s.getParent()) {
+			if (s==span) {
+				nested = true;
+				break;
+			}
+		}
+		if (nested) {
+			for (Span s = open; s!=span; s = s.getParent())
+				finish(s, now);
+			current.set(span.getParent());
+		}
+		finish(span, now);
+	}
+
+	private static void finish(Span span, long now) {
+		if (!span.setEndTime(now))
+			return;
+		getHistogram(span.getName()).record(span.getDuration() / 1000);
+		if (recording && traceSize.incrementAndGet()<=MAX_TRACE_SPANS)
+			trace.add(span);
+		for (IInstrumentationListener l : listeners) {
+			try {
+				l.spanEnded(span);
+			}
+			catch (Exception e) {
+				Activator.logError(e);
+			}
+		}
+	}
+
+	/**
+	 * Increment a counter by one.
+	 *
+	 * @param name the counter name.
+	 */
+	public static void count(String name) {
+		count(name, 1);
+	}
+
+	/**
+	 * Add a value to a counter.
+	 *
+	 * @param name the counter name.
+	 * @param delta the value to add.
+	 */
+	public static void count(String name, long delta) {
+		if (!enabled)
+			return;
+		AtomicLong c = counters.get(name);
+		if (c==null) {
+			AtomicLong n = new AtomicLong();
+			c = counters.putIfAbsent(name, n);
+			if (c==null)
+				c = n;
+		}
+		c.addAndGet(delta);
+	}
+
+	/**
+	 * Add a value to a histogram.
+	 *
+	 * @param name the histogram name.
+	 * @param value the value.
+	 */
+	public static void record(String name, long value) {
+		if (!enabled)
+			return;
+		getHistogram(name).record(value);
+	}
+
+	/**
+	 * @param name the counter name.
+	 * @return the current value of the counter, 0 if it does not exist.
+	 */
+	public static long getCounter(String name) {
+		AtomicLong c = counters.get(name);
+		return c==null ? 0 : c.get();
+	}
+
+	/**
+	 * @return a snapshot of all counters, sorted by name.
+	 */
+	public static Map<String, Long> getCounters() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Entry<String, AtomicLong> e : counters.entrySet())
+			result.put(e.getKey(), e.getValue().get());
+		return result;
+	}
+
+	/**
+	 * Return the histogram with the given name, creating it if necessary.
+	 *
+	 * @param name the histogram name.
+	 * @return the histogram, never null.
+	 */
+	public static Histogram getHistogram(String name) {
+		Histogram h = histograms.get(name);
+		if (h==null) {
+			Histogram n = new Histogram(name);
+			h = histograms.putIfAbsent(name, n);
+			if (h==null)
+				h = n;
+		}
+		return h;
+	}
+
+	/**
+	 * @return all histograms, sorted by name.
+	 */
+	public static Map<String, Histogram> getHistograms() {
+		return new TreeMap<String, Histogram>(histograms);
+	}
+
+	/**
+	 * Start keeping ended spans so that they can be exported as a trace.
+	 * Spans that were already recorded are discarded.
+	 */
+	public static void startRecording() {
+		trace.clear();
+		traceSize.set(0);
+		recording = true;
+		update();
+	}
+
+	/**
+	 * Stop keeping ended spans. The spans recorded so far are kept until the
+	 * next call to {@link #startRecording()} or {@link #reset()}.
+	 */
+	public static void stopRecording() {
+		recording = false;
+		update();
+	}
+
+	public static boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * @return the recorded spans, in the order in which they ended.
+	 */
+	public static List<Span> getRecordedSpans() {
+		return new ArrayList<Span>(trace);
+	}
+
+	/**
+	 * Discard all counters, histograms and recorded spans.
+	 */
+	public static void reset() {
+		counters.clear();
+		for (Histogram h : histograms.values())
+			h.reset();
+		histograms.clear();
+		trace.clear();
+		traceSize.set(0);
+	}
+
+	/**
+	 * Write the recorded spans, counters and histograms as a JSON trace in
+	 * the Trace Event Format, which can be opened with e.g. chrome://tracing.
+	 *
+	 * @param out the stream to write to; it is not closed.
+	 * @throws IOException
+	 */
+	public static void writeTrace(OutputStream out) throws IOException {
+		new TraceWriter(out).write(getRecordedSpans(), getCounters(), getHistograms());
+	}
+
+	/**
+	 * Write the JSON trace to a file.
+	 *
+	 * @param file the file, which is replaced if it exists.
+	 * @throws IOException
+	 * @see #writeTrace(OutputStream)
+	 */
+	public static void writeTrace(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			writeTrace(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+}
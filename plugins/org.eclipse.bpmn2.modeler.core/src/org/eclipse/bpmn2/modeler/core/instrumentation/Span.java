@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.instrumentation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A named, timed interval of work. Spans are created by
+ * {@link Instrumentation#start(String)} and nest within the span that is
+ * currently open on the same thread. A span must be ended on the thread that
+ * started it, typically in a finally block:
+ *
+ * <pre>
+ * Span span = Instrumentation.start("load.parse");
+ * try {
+ * 	...
+ * }
+ * finally {
+ * 	span.end();
+ * }
+ * </pre>
+ *
+ * If instrumentation is disabled, a shared inactive span is returned whose
+ * methods do nothing.
+ */
+public class Span {
+
+	static final Span NONE = new Span();
+
+	private final String name;
+	private final Span parent;
+	private final long threadId;
+	private final String threadName;
+	private final long startTime;
+	private volatile long endTime = -1;
+	private Map<String, String> attributes;
+
+	private Span() {
+		name = ""; //$NON-NLS-1$
+		parent = null;
+		threadId = 0;
+		threadName = ""; //$NON-NLS-1$
+		startTime = 0;
+	}
+
+	Span(String name, Span parent, long startTime) {
+		Thread thread = Thread.currentThread();
+		this.name = name;
+		this.parent = parent;
+		this.threadId = thread.getId();
+		this.threadName = thread.getName();
+		this.startTime = startTime;
+	}
+
+	/**
+	 * @return false if this is the inactive span returned while
+	 *         instrumentation is disabled.
+	 */
+	public boolean isActive() {
+		return this!=NONE;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the span that was open on the same thread when this one was
+	 *         started, or null.
+	 */
+	public Span getParent() {
+		return parent;
+	}
+
+	public long getThreadId() {
+		return threadId;
+	}
+
+	public String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * @return the start time in nanoseconds, relative to the time the
+	 *         instrumentation was initialized.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the duration in nanoseconds, or -1 if the span has not ended.
+	 */
+	public long getDuration() {
+		long t = endTime;
+		return t<0 ? -1 : t - startTime;
+	}
+
+	public boolean isEnded() {
+		return endTime>=0;
+	}
+
+	/**
+	 * Attach a value to this span, for example the name of the file being
+	 * loaded. Attributes are included in the exported trace.
+	 *
+	 * @param key the attribute name.
+	 * @param value the attribute value, converted to a String.
+	 * @return this span.
+	 */
+	public synchronized Span setAttribute(String key, Object value) {
+		if (this!=NONE) {
+			if (attributes==null)
+				attributes = new LinkedHashMap<String, String>();
+			attributes.put(key, String.valueOf(value));
+		}
+		return this;
+	}
+
+	/**
+	 * @return a copy of the attributes of this span.
+	 */
+	public synchronized Map<String, String> getAttributes() {
+		if (attributes==null)
+			return Collections.emptyMap();
+		return new LinkedHashMap<String, String>(attributes);
+	}
+
+	/**
+	 * End this span. Spans that are still open inside this one are ended as
+	 * well. Ending a span more than once has no effect.
+	 */
+	public void end() {
+		if (this!=NONE)
+			Instrumentation.end(this);
+	}
+
+	boolean setEndTime(long time) {
+		synchronized (this) {
+			if (endTime>=0)
+				return false;
+			endTime = time;
+			return true;
+		}
+	}
+
+	@Override
+	public String toString() {
+		long d = getDuration();
+		return name + (d<0 ? "" : " " + (d / 1000) + " us"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
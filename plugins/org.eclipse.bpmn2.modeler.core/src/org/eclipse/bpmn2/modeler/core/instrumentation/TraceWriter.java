@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.instrumentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Writes spans as "complete" events of the Trace Event Format. Counters and
+ * histograms are added as extra top-level members, which trace viewers
+ * ignore.
+ */
+class TraceWriter {
+
+	private final Writer writer;
+
+	TraceWriter(OutputStream out) throws IOException {
+		writer = new OutputStreamWriter(out, "UTF-8"); //$NON-NLS-1$
+	}
+
+	void write(List<Span> spans, Map<String, Long> counters, Map<String, Histogram> histograms) throws IOException {
+		writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["); //$NON-NLS-1$
+		boolean first = true;
+		for (Span span : spans) {
+			if (!first)
+				writer.write(',');
+			first = false;
+			writer.write("\n{\"name\":"); //$NON-NLS-1$
+			string(span.getName());
+			writer.write(",\"cat\":\"bpmn2\",\"ph\":\"X\",\"pid\":1,\"tid\":"); //$NON-NLS-1$
+			writer.write(Long.toString(span.getThreadId()));
+			writer.write(",\"ts\":"); //$NON-NLS-1$
+			writer.write(micros(span.getStartTime()));
+			writer.write(",\"dur\":"); //$NON-NLS-1$
+			writer.write(micros(Math.max(0, span.getDuration())));
+			Map<String, String> attributes = span.getAttributes();
+			if (!attributes.isEmpty()) {
+				writer.write(",\"args\":{"); //$NON-NLS-1$
+				boolean firstArg = true;
+				for (Entry<String, String> e : attributes.entrySet()) {
+					if (!firstArg)
+						writer.write(',');
+					firstArg = false;
+					string(e.getKey());
+					writer.write(':');
+					string(e.getValue());
+				}
+				writer.write('}');
+			}
+			writer.write('}');
+		}
+		writer.write("\n],\n\"counters\":{"); //$NON-NLS-1$
+		first = true;
+		for (Entry<String, Long> e : counters.entrySet()) {
+			if (!first)
+				writer.write(',');
+			first = false;
+			writer.write('\n');
+			string(e.getKey());
+			writer.write(':');
+			writer.write(e.getValue().toString());
+		}
+		writer.write("\n},\n\"histograms\":{"); //$NON-NLS-1$
+		first = true;
+		for (Histogram h : histograms.values()) {
+			if (!first)
+				writer.write(',');
+			first = false;
+			writer.write('\n');
+			string(h.getName());
+			writer.write(":{\"count\":" + h.getCount() //$NON-NLS-1$
+					+ ",\"sum\":" + h.getSum() //$NON-NLS-1$
+					+ ",\"min\":" + h.getMin() //$NON-NLS-1$
+					+ ",\"max\":" + h.getMax() //$NON-NLS-1$
+					+ ",\"p50\":" + h.getPercentile(50) //$NON-NLS-1$
+					+ ",\"p90\":" + h.getPercentile(90) //$NON-NLS-1$
+					+ ",\"p99\":" + h.getPercentile(99) //$NON-NLS-1$
+					+ "}"); //$NON-NLS-1$
+		}
+		writer.write("\n}}\n"); //$NON-NLS-1$
+		writer.flush();
+	}
+
+	private static String micros(long nanos) {
+		long fraction = nanos % 1000;
+		return (nanos / 1000) + (fraction<10 ? ".00" : (fraction<100 ? ".0" : ".")) + fraction; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private void string(String s) throws IOException {
+		writer.write('"');
+		for (int i=0; i<s.length(); ++i) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\""); //$NON-NLS-1$
+				break;
+			case '\\':
+				writer.write("\\\\"); //$NON-NLS-1$
+				break;
+			case '\n':
+				writer.write("\\n"); //$NON-NLS-1$
+				break;
+			case '\r':
+				writer.write("\\r"); //$NON-NLS-1$
+				break;
+			case '\t':
+				writer.write("\\t"); //$NON-NLS-1$
+				break;
+			default:
+				if (c<0x20)
+					writer.write("\\u00" + (c<0x10 ? "0" : "") + Integer.toHexString(c)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				else
+					writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+}
@@ -0,0 +1,638 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.modeler.core.Activator;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Span;
+import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
+import org.eclipse.bpmn2.modeler.core.runtime.BaseRuntimeExtensionDescriptor;
+import org.eclipse.bpmn2.modeler.core.runtime.ModelExtensionDescriptor;
+import org.eclipse.bpmn2.modeler.core.runtime.ModelExtensionDescriptor.Property;
+import org.eclipse.bpmn2.modeler.core.runtime.ModelExtensionDescriptor.Value;
+import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EEnumLiteral;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.util.FeatureMap;
+import org.eclipse.emf.ecore.util.FeatureMapUtil;
+import org.eclipse.emf.ecore.xml.type.XMLTypePackage;
+
+/**
+ * A cache of fully loaded BPMN2 Resources in EMF's binary format, kept in the
+ * plug-in's state location. Reopening an unchanged file from a snapshot skips
+ * XML parsing, QName and forward reference resolution and the creation of
+ * extension objects.
+ * <p>
+ * A snapshot is identified by a hash of the file content, the Resource URI and
+ * implementation class, the Target Runtime and its model extension
+ * configuration, and the preferences that change how a file is loaded, so it
+ * is never used for a file or configuration that has changed since it was
+ * written. Snapshots are only written for models that can
+ * be restored exactly from the binary format alone:
+ * <ul>
+ * <li>the load produced no errors or warnings</li>
+ * <li>the model has no Imports, and no other Resources were loaded with it</li>
+ * <li>all objects and extension attributes belong to registered EPackages or
+ * to dynamic ModelDecorator EPackages whose namespace is not also used by a
+ * registered EPackage. Models that add dynamic features to the namespace of a
+ * generated EPackage are always parsed, because the binary format identifies
+ * packages by namespace only.</li>
+ * </ul>
+ * The dynamic classes and features of the ModelDecorator EPackages used by a
+ * model are written ahead of the model, and are created again before the model
+ * is restored, so a snapshot can be used before the Target Runtime has defined
+ * them in the current session.
+ * The snapshot also holds the XML line number of every object, in the order
+ * of {@link Resource#getAllContents()}, so that markers created for a restored
+ * model still point at the right line.
+ * <p>
+ * Snapshots are disabled by default. They are enabled with the load option
+ * {@link #OPTION_USE_SNAPSHOT} or the system property
+ * {@value #SNAPSHOT_PROPERTY}.
+ */
+public class BinarySnapshotCache {
+
+	/** load option: Boolean.TRUE to use snapshots, Boolean.FALSE to never use them */
+	public static final String OPTION_USE_SNAPSHOT = "bpmn2.modeler.use.snapshot"; //$NON-NLS-1$
+	/** system property: "true" to use snapshots unless disabled by the load option */
+	public static final String SNAPSHOT_PROPERTY = "org.eclipse.bpmn2.modeler.snapshots"; //$NON-NLS-1$
+	/** the largest number of snapshots kept; the least recently used are deleted */
+	public static final int MAX_SNAPSHOTS = 32;
+
+	// kinds of dynamic classifiers and features in a snapshot
+	private static final int ECLASS = 0;
+	private static final int EDATATYPE = 1;
+	private static final int EENUM = 2;
+	private static final int EATTRIBUTE = 0;
+	private static final int EREFERENCE = 1;
+
+	// change this whenever the contents or interpretation of a snapshot change
+	private static final String FORMAT_VERSION = "3"; //$NON-NLS-1$
+	private static final String SNAPSHOT_FOLDER = "snapshots"; //$NON-NLS-1$
+	private static final String SNAPSHOT_EXTENSION = ".bin"; //$NON-NLS-1$
+
+	private static BinarySnapshotCache instance;
+
+	private final File folder;
+
+	private BinarySnapshotCache(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Return the snapshot cache, or null if there is no state location, e.g.
+	 * when running outside of the workbench.
+	 */
+	public static synchronized BinarySnapshotCache getInstance() {
+		if (instance==null && Activator.getDefault()!=null) {
+			File folder = Activator.getDefault().getStateLocation().append(SNAPSHOT_FOLDER).toFile();
+			instance = new BinarySnapshotCache(folder);
+		}
+		return instance;
+	}
+
+	/**
+	 * Check if snapshots should be used for a load with the given options.
+	 */
+	public static boolean isEnabled(Map<?, ?> options) {
+		Object value = options==null ? null : options.get(OPTION_USE_SNAPSHOT);
+		if (value instanceof Boolean)
+			return ((Boolean) value).booleanValue();
+		return Boolean.getBoolean(SNAPSHOT_PROPERTY);
+	}
+
+	/**
+	 * Compute the key of the snapshot for the given file content.
+	 *
+	 * @param resource the Resource being loaded.
+	 * @param content the file content.
+	 * @param rt the Target Runtime used to load the file.
+	 * @return the key, or null if no key can be computed.
+	 */
+	public String getKey(Resource resource, byte[] content, TargetRuntime rt) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			update(md, FORMAT_VERSION);
+			update(md, resource.getClass().getName());
+			update(md, String.valueOf(resource.getURI()));
+			update(md, Activator.getDefault().getBundle().getVersion().toString());
+			if (rt!=null) {
+				update(md, rt.getId());
+				for (ModelExtensionDescriptor med : rt.getAllModelExtensionDescriptors())
+					update(md, med);
+			}
+			update(md, Bpmn2Preferences.getInstance(resource));
+			md.update(content);
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest()) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		catch (UnsupportedEncodingException e) {
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest md, String s) throws UnsupportedEncodingException {
+		md.update(String.valueOf(s).getBytes("UTF-8")); //$NON-NLS-1$
+		md.update((byte) 0);
+	}
+
+	private static void update(MessageDigest md, ModelExtensionDescriptor med) throws UnsupportedEncodingException {
+		update(md, med.getClass().getName());
+		update(md, med.getId());
+		update(md, med.getType());
+		BaseRuntimeExtensionDescriptor d = med;
+		if (d.getConfigFile()!=null) {
+			update(md, d.getConfigFile().getFullPath().toString());
+			update(md, Long.toString(d.getConfigFileTimestamp()));
+		}
+		for (Property p : med.getProperties())
+			update(md, p);
+	}
+
+	private static void update(MessageDigest md, Bpmn2Preferences preferences) throws UnsupportedEncodingException {
+		// the preferences used by the XML handler while loading
+		update(md, String.valueOf(preferences.getIsHorizontal()));
+		update(md, String.valueOf(preferences.getIsExpanded()));
+		update(md, String.valueOf(preferences.getIsMessageVisible()));
+		update(md, String.valueOf(preferences.getIsMarkerVisible()));
+		update(md, Integer.toString(preferences.getResolveExternals()));
+	}
+
+	private static void update(MessageDigest md, Property p) throws UnsupportedEncodingException {
+		update(md, p.name);
+		update(md, p.type);
+		update(md, p.ref);
+		update(md, p.getValues());
+	}
+
+	private static void update(MessageDigest md, List<Object> values) throws UnsupportedEncodingException {
+		for (Object v : values) {
+			if (v instanceof Property)
+				update(md, (Property) v);
+			else if (v instanceof Value)
+				update(md, ((Value) v).getValues());
+			else
+				update(md, String.valueOf(v));
+		}
+		update(md, "/"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Load the Resource from its snapshot.
+	 *
+	 * @param resource an empty Resource.
+	 * @param key the snapshot key.
+	 * @return true if the Resource was loaded, false if there is no usable
+	 *         snapshot, in which case the Resource is still empty.
+	 */
+	public boolean load(Resource resource, String key) {
+		File file = getFile(key);
+		if (!file.isFile()) {
+			Instrumentation.count("load.snapshot.misses"); //$NON-NLS-1$
+			return false;
+		}
+		Span span = Instrumentation.start("load.snapshot"); //$NON-NLS-1$
+		InputStream in = null;
+		List<String> registered = new ArrayList<String>();
+		boolean enableModelExtensions = Bpmn2ModelerFactory.getEnableModelExtensions();
+		Bpmn2ModelerFactory.setEnableModelExtensions(false);
+		try {
+			in = new BufferedInputStream(new FileInputStream(file));
+			BinaryResourceImpl.EObjectInputStream eIn = new BinaryResourceImpl.EObjectInputStream(in, null);
+			readDynamicPackages(eIn, resource.getResourceSet(), registered);
+			eIn.loadResource(resource);
+			readLineNumbers(eIn, resource);
+			file.setLastModified(System.currentTimeMillis());
+			Instrumentation.count("load.snapshot.hits"); //$NON-NLS-1$
+			return true;
+		}
+		catch (Exception e) {
+			// the snapshot is unreadable, e.g. because a model has changed:
+			// discard it and parse the file instead
+			resource.getContents().clear();
+			close(in);
+			in = null;
+			file.delete();
+			Instrumentation.count("load.snapshot.misses"); //$NON-NLS-1$
+			return false;
+		}
+		finally {
+			// the binary format resolves packages through the ResourceSet
+			// only while it is loading
+			for (String nsURI : registered)
+				resource.getResourceSet().getPackageRegistry().remove(nsURI);
+			Bpmn2ModelerFactory.setEnableModelExtensions(enableModelExtensions);
+			close(in);
+			span.end();
+		}
+	}
+
+	/**
+	 * Write a snapshot of the given Resource, if its model can be restored
+	 * from one.
+	 *
+	 * @param resource a Resource that has just been loaded from XML.
+	 * @param key the snapshot key.
+	 * @param otherResources true if other Resources were loaded into the
+	 *            ResourceSet while loading this one.
+	 */
+	public void save(Resource resource, String key, boolean otherResources) {
+		Set<EPackage> dynamicPackages = new LinkedHashSet<EPackage>();
+		if (otherResources || !isSnapshotSafe(resource, dynamicPackages))
+			return;
+		Span span = Instrumentation.start("load.snapshot.write"); //$NON-NLS-1$
+		File file = getFile(key);
+		File temp = new File(folder, key + ".tmp" + Thread.currentThread().getId()); //$NON-NLS-1$
+		OutputStream out = null;
+		try {
+			folder.mkdirs();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			BinaryResourceImpl.EObjectOutputStream eOut = new BinaryResourceImpl.EObjectOutputStream(bytes, null);
+			writeDynamicPackages(eOut, dynamicPackages);
+			eOut.saveResource(resource);
+			writeLineNumbers(eOut, resource);
+			eOut.flush();
+			out = new BufferedOutputStream(new FileOutputStream(temp));
+			bytes.writeTo(out);
+			out.close();
+			out = null;
+			// another thread may have written the same snapshot already
+			if (!temp.renameTo(file))
+				temp.delete();
+			evict();
+		}
+		catch (Exception e) {
+			close(out);
+			temp.delete();
+			Activator.logError(e);
+		}
+		finally {
+			span.end();
+		}
+	}
+
+	private static void writeDynamicPackages(BinaryResourceImpl.EObjectOutputStream eOut, Set<EPackage> packages) throws IOException {
+		eOut.writeCompressedInt(packages.size());
+		for (EPackage pkg : packages) {
+			eOut.writeString(pkg.getName());
+			eOut.writeString(pkg.getNsPrefix());
+			eOut.writeString(pkg.getNsURI());
+			List<EClass> eClasses = new ArrayList<EClass>();
+			eOut.writeCompressedInt(pkg.getEClassifiers().size());
+			for (EClassifier c : pkg.getEClassifiers()) {
+				if (c instanceof EClass) {
+					eClasses.add((EClass) c);
+					eOut.writeCompressedInt(ECLASS);
+					eOut.writeString(getTypeString((EClass) c));
+				}
+				else if (c instanceof EEnum) {
+					eOut.writeCompressedInt(EENUM);
+					eOut.writeString(c.getName());
+					List<EEnumLiteral> literals = ((EEnum) c).getELiterals();
+					eOut.writeCompressedInt(literals.size());
+					for (EEnumLiteral l : literals)
+						eOut.writeString(l.getLiteral());
+				}
+				else {
+					eOut.writeCompressedInt(EDATATYPE);
+					eOut.writeString(c.getName());
+				}
+			}
+			// features are written after all classifiers because their types
+			// may be any of the package's classifiers
+			for (EClass c : eClasses) {
+				eOut.writeCompressedInt(c.getEStructuralFeatures().size());
+				for (EStructuralFeature f : c.getEStructuralFeatures()) {
+					eOut.writeCompressedInt(f instanceof EReference ? EREFERENCE : EATTRIBUTE);
+					eOut.writeString(f.getName());
+					eOut.writeString(f.getEType().getName());
+					eOut.writeString(f.getEType().getEPackage().getNsURI());
+					eOut.writeBoolean(f instanceof EReference && ((EReference) f).isContainment());
+					eOut.writeBoolean(f.isMany());
+					eOut.writeString(f instanceof EAttribute ? f.getDefaultValueLiteral() : null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the type string for a dynamic EClass that ModelDecorator uses to
+	 * create it, i.e. the class name followed by its supertypes.
+	 */
+	private static String getTypeString(EClass eClass) {
+		StringBuilder sb = new StringBuilder(eClass.getName());
+		String separator = ":"; //$NON-NLS-1$
+		for (EClass st : eClass.getESuperTypes()) {
+			if (st!=XMLTypePackage.eINSTANCE.getAnyType()) {
+				sb.append(separator).append(st.getName());
+				separator = ","; //$NON-NLS-1$
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Create the dynamic classes and features of a snapshot that do not exist
+	 * yet, and register their EPackages with the ResourceSet so the binary
+	 * format can resolve them.
+	 */
+	private static void readDynamicPackages(BinaryResourceImpl.EObjectInputStream eIn, ResourceSet rs, List<String> registered) throws IOException {
+		int packageCount = eIn.readCompressedInt();
+		if (packageCount>0 && rs==null)
+			throw new IOException("Dynamic packages require a ResourceSet"); //$NON-NLS-1$
+		for (int p=0; p<packageCount; ++p) {
+			String name = eIn.readString();
+			String nsPrefix = eIn.readString();
+			String nsURI = eIn.readString();
+			if (rs.getPackageRegistry().get(nsURI)!=null)
+				throw new IOException("Namespace is already registered: "+nsURI); //$NON-NLS-1$
+			ModelDecorator md = ModelDecorator.getModelDecorator(nsURI);
+			if (md==null)
+				md = new ModelDecorator(name, nsPrefix, nsURI);
+			EPackage pkg = md.getEPackage();
+			if (!nsURI.equals(pkg.getNsURI()))
+				throw new IOException("No dynamic package for "+nsURI); //$NON-NLS-1$
+			List<String> eClasses = new ArrayList<String>();
+			int classifierCount = eIn.readCompressedInt();
+			for (int c=0; c<classifierCount; ++c) {
+				int kind = eIn.readCompressedInt();
+				String type = eIn.readString();
+				if (kind==ECLASS) {
+					EClass eClass = md.createEClass(type);
+					eClasses.add(eClass.getName());
+				}
+				else if (kind==EENUM) {
+					EClassifier eEnum = md.createEClassifier(type + ":EEnum"); //$NON-NLS-1$
+					if (!(eEnum instanceof EEnum))
+						throw new IOException("Not an EEnum: "+type); //$NON-NLS-1$
+					int literalCount = eIn.readCompressedInt();
+					for (int l=0; l<literalCount; ++l) {
+						String literal = eIn.readString();
+						if (((EEnum) eEnum).getEEnumLiteralByLiteral(literal)==null)
+							md.createEEnumLiteral(literal, (EEnum) eEnum);
+					}
+				}
+				else {
+					md.createEDataType(type);
+				}
+			}
+			for (String className : eClasses) {
+				int featureCount = eIn.readCompressedInt();
+				for (int f=0; f<featureCount; ++f) {
+					int kind = eIn.readCompressedInt();
+					String featureName = eIn.readString();
+					String type = eIn.readString();
+					String typeNsURI = eIn.readString();
+					boolean containment = eIn.readBoolean();
+					boolean many = eIn.readBoolean();
+					String defaultValue = eIn.readString();
+					EStructuralFeature feature;
+					if (kind==EREFERENCE) {
+						feature = md.createEReference(featureName, type, className, containment, many);
+					}
+					else {
+						// ModelDecorator would add the default value of an EEnum
+						// attribute to the literals, which already exist
+						boolean isEnum = pkg.getEClassifier(type) instanceof EEnum;
+						feature = md.createEAttribute(featureName, type, className, isEnum ? null : defaultValue);
+						if (isEnum && feature!=null && defaultValue!=null && feature.getDefaultValueLiteral()==null)
+							feature.setDefaultValueLiteral(defaultValue);
+					}
+					// the existing feature must be the one that was written
+					if (feature==null ||
+							feature.getEContainingClass()!=pkg.getEClassifier(className) ||
+							!type.equals(feature.getEType().getName()) ||
+							!typeNsURI.equals(feature.getEType().getEPackage().getNsURI()) ||
+							feature.isMany()!=many ||
+							(feature instanceof EReference && ((EReference) feature).isContainment()!=containment))
+						throw new IOException("Dynamic feature has changed: "+className+"."+featureName); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+			rs.getPackageRegistry().put(nsURI, pkg);
+			registered.add(nsURI);
+		}
+	}
+
+	private static void writeLineNumbers(BinaryResourceImpl.EObjectOutputStream eOut, Resource resource) throws IOException {
+		List<EObject> objects = getAllContents(resource);
+		eOut.writeCompressedInt(objects.size());
+		for (EObject o : objects) {
+			Integer line = Bpmn2ModelerResourceImpl.getLineNumber(o);
+			eOut.writeCompressedInt(line==null ? 0 : line.intValue());
+		}
+	}
+
+	private static void readLineNumbers(BinaryResourceImpl.EObjectInputStream eIn, Resource resource) throws IOException {
+		List<EObject> objects = getAllContents(resource);
+		if (eIn.readCompressedInt()!=objects.size())
+			throw new IOException("Line numbers do not match the model"); //$NON-NLS-1$
+		for (EObject o : objects) {
+			int line = eIn.readCompressedInt();
+			if (line>0 && resource instanceof Bpmn2ModelerResourceImpl)
+				((Bpmn2ModelerResourceImpl) resource).setLineNumber(o, line);
+		}
+	}
+
+	private static List<EObject> getAllContents(Resource resource) {
+		List<EObject> objects = new ArrayList<EObject>();
+		for (Iterator<EObject> iter = resource.getAllContents(); iter.hasNext();)
+			objects.add(iter.next());
+		return objects;
+	}
+
+	/**
+	 * Delete all snapshots.
+	 */
+	public synchronized void clear() {
+		File[] files = folder.listFiles();
+		if (files!=null) {
+			for (File f : files)
+				f.delete();
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(folder, key + SNAPSHOT_EXTENSION);
+	}
+
+	private synchronized void evict() {
+		File[] files = folder.listFiles();
+		if (files==null || files.length<=MAX_SNAPSHOTS)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long t1 = f1.lastModified();
+				long t2 = f2.lastModified();
+				return t1<t2 ? 1 : (t1==t2 ? 0 : -1);
+			}
+		});
+		for (int i=MAX_SNAPSHOTS; i<files.length; ++i)
+			files[i].delete();
+	}
+
+	/**
+	 * Check if the binary format can restore the given Resource exactly: all
+	 * objects and feature map entries must come from registered EPackages or
+	 * dynamic ModelDecorator EPackages with their own namespace, because the
+	 * binary format identifies classes and features by package namespace, and
+	 * there must be no Imports whose content may change independently of the
+	 * file.
+	 * 
+	 * @param resource the Resource to check.
+	 * @param dynamicPackages receives the dynamic EPackages used by the model.
+	 */
+	static boolean isSnapshotSafe(Resource resource, Set<EPackage> dynamicPackages) {
+		if (!resource.getErrors().isEmpty() || !resource.getWarnings().isEmpty())
+			return false;
+		Definitions definitions = ModelUtil.getDefinitions(resource);
+		if (definitions==null || !definitions.getImports().isEmpty())
+			return false;
+		ResourceSet rs = resource.getResourceSet();
+		for (Iterator<EObject> iter = resource.getAllContents(); iter.hasNext();) {
+			EObject o = iter.next();
+			if (!isRestorable(rs, o.eClass().getEPackage(), dynamicPackages))
+				return false;
+			for (EStructuralFeature f : o.eClass().getEAllStructuralFeatures()) {
+				if (FeatureMapUtil.isFeatureMap(f) && o.eIsSet(f)) {
+					for (FeatureMap.Entry entry : (List<FeatureMap.Entry>) o.eGet(f)) {
+						EStructuralFeature ef = entry.getEStructuralFeature();
+						if (ef.getEContainingClass()==null || !isRestorable(rs, ef.getEContainingClass().getEPackage(), dynamicPackages))
+							return false;
+					}
+				}
+			}
+		}
+		// the types of dynamic features must be restorable too
+		List<EPackage> packages = new ArrayList<EPackage>(dynamicPackages);
+		for (int i=0; i<packages.size(); ++i) {
+			for (EClassifier c : packages.get(i).getEClassifiers()) {
+				if (c instanceof EClass) {
+					for (EStructuralFeature f : ((EClass) c).getEStructuralFeatures()) {
+						EPackage pkg = f.getEType()==null ? null : f.getEType().getEPackage();
+						if (!isRestorable(rs, pkg, dynamicPackages))
+							return false;
+						if (!packages.contains(pkg) && dynamicPackages.contains(pkg))
+							packages.add(pkg);
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isRestorable(ResourceSet rs, EPackage pkg, Set<EPackage> dynamicPackages) {
+		if (isRegistered(rs, pkg) || dynamicPackages.contains(pkg))
+			return true;
+		if (isDynamic(rs, pkg)) {
+			dynamicPackages.add(pkg);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check if the given EPackage is a ModelDecorator's dynamic EPackage whose
+	 * namespace can be registered with the ResourceSet while a snapshot is
+	 * loaded.
+	 */
+	private static boolean isDynamic(ResourceSet rs, EPackage pkg) {
+		if (rs==null || pkg==null || pkg.getNsURI()==null)
+			return false;
+		if (rs.getPackageRegistry().get(pkg.getNsURI())!=null)
+			return false;
+		ModelDecorator md = ModelDecorator.getModelDecorator(pkg.getNsURI());
+		return md!=null && md.getEPackage()==pkg;
+	}
+
+	private static boolean isRegistered(ResourceSet rs, EPackage pkg) {
+		if (pkg==null || pkg.getNsURI()==null)
+			return false;
+		Object registered = rs!=null ?
+				rs.getPackageRegistry().get(pkg.getNsURI()) :
+				EPackage.Registry.INSTANCE.get(pkg.getNsURI());
+		return registered==pkg;
+	}
+
+	/**
+	 * Read the remainder of the given stream.
+	 */
+	public static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(8192, in.available()));
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+
+	private static void close(InputStream in) {
+		if (in!=null) {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+			}
+		}
+	}
+
+	private static void close(OutputStream out) {
+		if (out!=null) {
+			try {
+				out.close();
+			}
+			catch (IOException e) {
+			}
+		}
+	}
+}
@@ -13,7 +13,6 @@
 
 package org.eclipse.bpmn2.modeler.core.model;
 
-import java.util.List;
 import java.util.Map;
 
 import org.eclipse.bpmn2.Bpmn2Package;
@@ -25,8 +24,6 @@ import org.eclipse.bpmn2.impl.DocumentRootImpl;
 import org.eclipse.bpmn2.modeler.core.LifecycleEvent;
 import org.eclipse.bpmn2.modeler.core.LifecycleEvent.EventType;
 import org.eclipse.bpmn2.modeler.core.adapters.ExtendedPropertiesAdapter;
-import org.eclipse.bpmn2.modeler.core.adapters.ObjectPropertyProvider;
-import org.eclipse.bpmn2.modeler.core.features.GraphitiConstants;
 import org.eclipse.bpmn2.modeler.core.runtime.CustomTaskDescriptor;
 import org.eclipse.bpmn2.modeler.core.runtime.ModelExtensionDescriptor;
 import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
@@ -120,65 +117,82 @@ public class Bpmn2ModelerFactory extends Bpmn2FactoryImpl {
         return documentRoot;
     }
 
+	/**
+	 * The Resource and Custom Element ID to use for the next object created
+	 * by this factory on the current thread. Files may be loaded concurrently,
+	 * so this can not be kept on the shared factory instance.
+	 */
+	private static final ThreadLocal<PendingCreation> pendingCreation = new ThreadLocal<PendingCreation>();
+
+	private static class PendingCreation {
+		final Resource resource;
+		final String customElementId;
+
+		PendingCreation(Resource resource, String customElementId) {
+			this.resource = resource;
+			this.customElementId = customElementId;
+		}
+	}
+
+	/**
+	 * Set the Resource and the optional Custom Element ID that are used to
+	 * initialize the next object created by this factory on the calling
+	 * thread. They are consumed by the next call to {@link #create(EClass)};
+	 * callers must call {@link #clearPendingCreation()} in a finally block in
+	 * case the object is created by a different factory.
+	 * 
+	 * @param resource the Resource that will contain the new object.
+	 * @param customElementId the ID of a Custom Task or null.
+	 */
+	public static void setPendingCreation(Resource resource, String customElementId) {
+		pendingCreation.set(new PendingCreation(resource, customElementId));
+	}
+
+	/**
+	 * Discard the values set by {@link #setPendingCreation(Resource,String)}.
+	 */
+	public static void clearPendingCreation() {
+		pendingCreation.remove();
+	}
+
 	@Override
     public EObject create(EClass eClass) {
     	
 		EObject object = super.create(eClass);
 
-    	ObjectPropertyProvider adapter = ObjectPropertyProvider.getAdapter(this);
-		try {
-	    	TargetRuntime rt = TargetRuntime.getCurrentRuntime();
-	    	if (rt!=null) {
-	    		Resource resource = null;
-	    		String customElementId = null;
-	    		if (adapter!=null) {
-	    			resource = adapter.getResource();
-	    			adapter.setResource(null);
-	    			customElementId = (String)adapter.getProperty(GraphitiConstants.CUSTOM_ELEMENT_ID);
-	    			adapter.setProperty(GraphitiConstants.CUSTOM_ELEMENT_ID, null);
-	    		}
-	    		
-				String className = eClass.getName();
-	    		if (!className.equals(Bpmn2Package.eINSTANCE.getDocumentRoot().getName()) && 
-	    			rt.getModelDescriptor().getEPackage() != Bpmn2Package.eINSTANCE &&
-	    			rt.getModelDescriptor().getEPackage() != null &&
-	    			rt.getModelDescriptor().getEPackage().getEClassifier(className) != null ) {
-					EClass clazz = (EClass) rt.getModelDescriptor().getEPackage().getEClassifier(className);
-	    			object = rt.getModelDescriptor().getEFactory().create(clazz);
-				}
-	    		
-	    		// first look for Model Extension Descriptors for this specific object type
-	    		if (customElementId!=null) {
-	    			CustomTaskDescriptor ctd = rt.getCustomTask(customElementId);
-	    			if (ctd!=null)
-	    				ctd.populateObject(object, resource, enableModelExtensions);
-	    		}
-	    		else {
-		    		List<ModelExtensionDescriptor> list = rt.getModelExtensionDescriptors();
-			    	for (ModelExtensionDescriptor med : list) {
-			    		if (className.equals(med.getType())) {
-			    			med.populateObject(object, resource, enableModelExtensions);
-			    		}
-			    	}
-			    	// then check if there are any MEDs for any supertypes of this object type
-			    	for (ModelExtensionDescriptor med : list) {
-			    		for (EClass st : eClass.getEAllSuperTypes()) {
-				    		if (st.getName().equals(med.getType())) {
-				    			med.populateObject(object, resource, enableModelExtensions);
-				    		}
-			    		}
-			    	}
-	    		}
-	    		
-	    		rt.notify(new LifecycleEvent(EventType.BUSINESSOBJECT_CREATED, object));
-	    	}
-		}
-		finally {
-			if (adapter!=null) {
-    			adapter.setResource(null);
-    			adapter.setProperty(GraphitiConstants.CUSTOM_ELEMENT_ID, null);
+		// objects created while this one is initialized do not inherit these
+		PendingCreation pending = pendingCreation.get();
+		pendingCreation.remove();
+		Resource resource = pending!=null ? pending.resource : null;
+		String customElementId = pending!=null ? pending.customElementId : null;
+
+    	TargetRuntime rt = TargetRuntime.getCurrentRuntime(resource);
+    	if (rt!=null) {
+			String className = eClass.getName();
+    		if (!className.equals(Bpmn2Package.eINSTANCE.getDocumentRoot().getName()) && 
+    			rt.getModelDescriptor().getEPackage() != Bpmn2Package.eINSTANCE &&
+    			rt.getModelDescriptor().getEPackage() != null &&
+    			rt.getModelDescriptor().getEPackage().getEClassifier(className) != null ) {
+				EClass clazz = (EClass) rt.getModelDescriptor().getEPackage().getEClassifier(className);
+    			object = rt.getModelDescriptor().getEFactory().create(clazz);
 			}
-		}
+    		
+    		// first look for Model Extension Descriptors for this specific object type
+    		if (customElementId!=null) {
+    			CustomTaskDescriptor ctd = rt.getCustomTask(customElementId);
+    			if (ctd!=null)
+    				ctd.populateObject(object, resource, enableModelExtensions);
+    		}
+    		else {
+    			// the index lists the MEDs for this specific object type first,
+    			// then those for any supertypes of this object type
+		    	for (ModelExtensionDescriptor med : rt.getCustomTaskIndex().getModelExtensions(eClass)) {
+	    			med.populateObject(object, resource, enableModelExtensions);
+		    	}
+    		}
+    		
+    		rt.notify(new LifecycleEvent(EventType.BUSINESSOBJECT_CREATED, object));
+    	}
     	return object;
     }
 
@@ -229,7 +243,7 @@ public class Bpmn2ModelerFactory extends Bpmn2FactoryImpl {
 			}
 		}
 		if (newObject!=null) {
-	    	TargetRuntime rt = TargetRuntime.getCurrentRuntime();
+	    	TargetRuntime rt = TargetRuntime.getCurrentRuntime(resource);
 			rt.notify(new LifecycleEvent(EventType.BUSINESSOBJECT_CREATED, newObject));
 		}
 		return newObject;
@@ -300,7 +314,7 @@ public class Bpmn2ModelerFactory extends Bpmn2FactoryImpl {
 			}
 		}
 		if (newObject!=null) {
-	    	TargetRuntime rt = TargetRuntime.getCurrentRuntime();
+	    	TargetRuntime rt = TargetRuntime.getCurrentRuntime(resource);
 			rt.notify(new LifecycleEvent(EventType.BUSINESSOBJECT_CREATED, newObject));
 		}
 		return newObject;
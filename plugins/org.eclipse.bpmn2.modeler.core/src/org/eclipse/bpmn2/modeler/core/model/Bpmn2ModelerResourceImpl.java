@@ -12,16 +12,22 @@
  ******************************************************************************/
 package org.eclipse.bpmn2.modeler.core.model;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.eclipse.bpmn2.Assignment;
 import org.eclipse.bpmn2.BaseElement;
@@ -50,10 +56,11 @@ import org.eclipse.bpmn2.di.BpmnDiPackage;
 import org.eclipse.bpmn2.modeler.core.Activator;
 import org.eclipse.bpmn2.modeler.core.adapters.ExtendedPropertiesAdapter;
 import org.eclipse.bpmn2.modeler.core.adapters.IExtensionValueAdapter;
-import org.eclipse.bpmn2.modeler.core.adapters.ObjectPropertyProvider;
-import org.eclipse.bpmn2.modeler.core.features.GraphitiConstants;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Span;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerFactory.Bpmn2ModelerDocumentRootImpl;
 import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
+import org.eclipse.bpmn2.modeler.core.runtime.CustomTaskIndex;
 import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
 import org.eclipse.bpmn2.modeler.core.runtime.TypeLanguageDescriptor;
 import org.eclipse.bpmn2.modeler.core.utils.ImportUtil;
@@ -84,7 +91,6 @@ import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EClassifier;
-import org.eclipse.emf.ecore.EFactory;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.EReference;
@@ -108,7 +114,7 @@ import org.eclipse.emf.ecore.xmi.impl.XMLString;
 import org.eclipse.emf.ecore.xml.type.XMLTypePackage;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.osgi.util.NLS;
-import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.wst.wsdl.Definition;
 import org.eclipse.wst.wsdl.PortType;
 import org.eclipse.wst.wsdl.util.WSDLResourceImpl;
@@ -127,6 +133,9 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 	protected QNameURIHandler uriHandler;
 	public HashMap xmlNameToFeatureMap = new HashMap();
 	protected static HashSet<EStructuralFeature> qnameMap = new HashSet<EStructuralFeature>();
+	// XML line numbers of the loaded objects; these are kept here rather than in an
+	// ExtendedPropertiesAdapter so that loading does not need to adapt every object.
+	private final Map<EObject, Integer> lineNumbers = Collections.synchronizedMap(new WeakHashMap<EObject, Integer>());
 	static {
 		qnameMap.add(Bpmn2Package.eINSTANCE.getExtension_Definition());
 		qnameMap.add(Bpmn2Package.eINSTANCE.getRelationship_Sources());
@@ -274,7 +283,119 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 	public void save(Map<?, ?> options) throws IOException {
 		uriHandler.setBaseURI(getURI());
 		xmlHelper.setResource(this);
-		super.save(options);
+		Span span = Instrumentation.start("save.serialize"); //$NON-NLS-1$
+		span.setAttribute("uri", getURI()); //$NON-NLS-1$
+		TargetRuntime rt = TargetRuntime.getBoundRuntime(this);
+		TargetRuntime previous = rt==null ? null : TargetRuntime.enterRuntime(rt);
+		try {
+			super.save(options);
+		}
+		finally {
+			if (rt!=null)
+				TargetRuntime.exitRuntime(previous);
+			span.end();
+		}
+	}
+
+	/**
+	 * Load the Resource from its binary snapshot if snapshots are enabled and
+	 * the file has not changed since the snapshot was taken; otherwise parse
+	 * the XML and take a snapshot, if possible, for the next load.
+	 * 
+	 * @see BinarySnapshotCache
+	 */
+	@Override
+	public void doLoad(InputStream inputStream, Map<?, ?> options) throws IOException {
+		lineNumbers.clear();
+		// resolve extension classes from the Target Runtime of our ResourceSet,
+		// not from whichever editor happens to be active
+		TargetRuntime rt = TargetRuntime.getBoundRuntime(this);
+		TargetRuntime previous = rt==null ? null : TargetRuntime.enterRuntime(rt);
+		try {
+			doLoad(inputStream, options, rt!=null ? rt : TargetRuntime.getCurrentRuntime());
+		}
+		finally {
+			if (rt!=null)
+				TargetRuntime.exitRuntime(previous);
+		}
+	}
+
+	private void doLoad(InputStream inputStream, Map<?, ?> options, TargetRuntime rt) throws IOException {
+		BinarySnapshotCache cache = BinarySnapshotCache.isEnabled(options) ? BinarySnapshotCache.getInstance() : null;
+		if (cache==null) {
+			super.doLoad(inputStream, options);
+			return;
+		}
+		byte[] content = BinarySnapshotCache.readFully(inputStream);
+		String key = cache.getKey(this, content, rt);
+		if (key!=null && cache.load(this, key)) {
+			Definitions definitions = ModelUtil.getDefinitions(this);
+			if (definitions!=null)
+				initDiagramDescriptions(definitions);
+			return;
+		}
+		ResourceSet rs = getResourceSet();
+		int resourceCount = rs==null ? 0 : rs.getResources().size();
+		super.doLoad(new ByteArrayInputStream(content), options);
+		if (key!=null)
+			cache.save(this, key, rs!=null && rs.getResources().size()!=resourceCount);
+	}
+
+	/**
+	 * Report the number of loaded objects and of objects that carry an
+	 * ExtendedPropertiesAdapter right after loading.
+	 */
+	private static void countAdapters(Resource resource) {
+		long elements = 0;
+		long adapters = 0;
+		for (TreeIterator<EObject> iter = resource.getAllContents(); iter.hasNext();) {
+			EObject object = iter.next();
+			++elements;
+			for (Adapter a : object.eAdapters()) {
+				if (a instanceof ExtendedPropertiesAdapter) {
+					++adapters;
+					break;
+				}
+			}
+		}
+		Instrumentation.count("load.elements", elements); //$NON-NLS-1$
+		Instrumentation.count("load.propertyAdapters", adapters); //$NON-NLS-1$
+	}
+
+	/**
+	 * Return the line number in the XML document at which the given object is
+	 * defined.
+	 * 
+	 * @param object an object loaded from a BPMN2 file
+	 * @return the line number or null if the object was not loaded from XML
+	 */
+	public static Integer getLineNumber(EObject object) {
+		Resource resource = object.eResource();
+		if (resource instanceof Bpmn2ModelerResourceImpl)
+			return ((Bpmn2ModelerResourceImpl) resource).lineNumbers.get(object);
+		return null;
+	}
+
+	/**
+	 * Record the XML line number of an object restored from a binary snapshot.
+	 */
+	void setLineNumber(EObject object, int lineNumber) {
+		lineNumbers.put(object, lineNumber);
+	}
+
+	/**
+	 * Set the description of each BPMNDiagram. This must be done AFTER the
+	 * diagrams have been completely populated.
+	 * 
+	 * @param definitions the loaded Definitions
+	 */
+	static void initDiagramDescriptions(Definitions definitions) {
+		for (BPMNDiagram d : definitions.getDiagrams()) {
+			ExtendedPropertiesAdapter epa = ExtendedPropertiesAdapter.adapt(d);
+			if (epa!=null) {
+				epa.setProperty(ExtendedPropertiesAdapter.LONG_DESCRIPTION, epa.getDescription(d));
+			}
+		}
 	}
 
     @Override
@@ -300,8 +421,12 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 			
 			@Override
 			public void load(XMLResource resource, InputStream inputStream, Map<?, ?> options) throws IOException {
+				Span span = Instrumentation.start("load"); //$NON-NLS-1$
+				span.setAttribute("uri", resource.getURI()); //$NON-NLS-1$
 				try {
 					super.load(resource, inputStream, options);
+					if (Instrumentation.isEnabled())
+						countAdapters(resource);
 				}
 				catch (Exception e) {
 					BPMNDiagnostic error = new BPMNDiagnostic(e.getMessage());
@@ -312,6 +437,9 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 						resource.getErrors().add(error);
 					throw new IOException(e);
 				}
+				finally {
+					span.end();
+				}
 			}
 		};
 	}
@@ -435,6 +563,7 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 		Bpmn2Preferences preferences = null;
 		ImportUtil importHandler = new ImportUtil();
 		String targetNamespace = null;
+		Span parseSpan = null;
 
 		public Bpmn2ModelerXmlHandler(XMLResource xmiResource, XMLHelper helper, Map<?, ?> options) {
 			super(xmiResource, helper, options);
@@ -443,12 +572,17 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 		@Override
 		public void startDocument() {
 			super.startDocument();
+			parseSpan = Instrumentation.start("load.parse"); //$NON-NLS-1$
 			Bpmn2ModelerFactory.setEnableModelExtensions(false);
 			preferences = Bpmn2Preferences.getInstance(xmlResource);
 		}
 
 		@Override
 		public void endDocument() {
+			if (parseSpan!=null) {
+				parseSpan.end();
+				parseSpan = null;
+			}
 			super.endDocument();
 			// Make sure there's a namespace prefix definition for typeLanguage.
 			// We'll need that prefix to qualify data types defined in the type language.
@@ -465,6 +599,8 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
     			}
 			}
 			// Load all of the Imports and generate Interfaces, Operations, Messages, Faults and ItemDefinitions
+			Span span = Instrumentation.start("load.imports"); //$NON-NLS-1$
+			Instrumentation.count("load.imports", definitions.getImports().size()); //$NON-NLS-1$
 			for (Import imp : definitions.getImports()) {
 				try {
 	            	Object importObject = importHandler.loadImport(imp);
@@ -480,20 +616,30 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 					xmlResource.getErrors().add(error);
 				}
             }
+			span.end();
 			
 			// Fix up the descriptions for BPMNDiagrams
-			for (BPMNDiagram d : definitions.getDiagrams()) {
-	            // Set the diagram's description AFTER it has been completely populated
-				ExtendedPropertiesAdapter epa = ExtendedPropertiesAdapter.adapt(d);
-				if (epa!=null) {
-					epa.setProperty(ExtendedPropertiesAdapter.LONG_DESCRIPTION, epa.getDescription(d));
-				}
-			}
+			initDiagramDescriptions(definitions);
 			Bpmn2ModelerFactory.setEnableModelExtensions(true);
 		}
 		
 		@Override
 		protected void handleForwardReferences(boolean isEndDocument) {
+			if (!isEndDocument) {
+				resolveForwardReferences(isEndDocument);
+				return;
+			}
+			Span span = Instrumentation.start("load.forwardReferences"); //$NON-NLS-1$
+			Instrumentation.count("load.forwardReferences", forwardSingleReferences.size() + forwardManyReferences.size()); //$NON-NLS-1$
+			try {
+				resolveForwardReferences(isEndDocument);
+			}
+			finally {
+				span.end();
+			}
+		}
+
+		private void resolveForwardReferences(boolean isEndDocument) {
 			if (isEndDocument) {
 				List<SingleReference> resolved = new ArrayList<SingleReference>();
 				for (SingleReference ref : forwardSingleReferences) {
@@ -544,18 +690,25 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 			try {
 				Resource resource = referencedObject.eResource();
 				IPath path = new Path(resource.getURI().toPlatformString(true));
-				boolean doit = MessageDialog.openQuestion(new Shell(),
-						Messages.Bpmn2ModelerResourceSetImpl_External_Reference_Found_Title,
-						NLS.bind(
-								Messages.Bpmn2ModelerResourceSetImpl_External_Reference_Found_Message,
-								new Object[] {
-									referencedObject.eClass().getName(),
-									id,
-									ModelUtil.getLabel(referencingObject)+" \""+ModelUtil.getName((BaseElement)referencingObject)+"\"", //$NON-NLS-1$ //$NON-NLS-2$
-									path.toString()}
-						)
-					);
-				return doit;
+				final String message = NLS.bind(
+						Messages.Bpmn2ModelerResourceSetImpl_External_Reference_Found_Message,
+						new Object[] {
+							referencedObject.eClass().getName(),
+							id,
+							ModelUtil.getLabel(referencingObject)+" \""+ModelUtil.getName((BaseElement)referencingObject)+"\"", //$NON-NLS-1$ //$NON-NLS-2$
+							path.toString()}
+				);
+				// the editor loads the resource in a background Job, which holds
+				// no transaction, so the UI thread is free to show the question
+				final boolean doit[] = new boolean[] { true };
+				Display.getDefault().syncExec(new Runnable() {
+					public void run() {
+						doit[0] = MessageDialog.openQuestion(Display.getDefault().getActiveShell(),
+								Messages.Bpmn2ModelerResourceSetImpl_External_Reference_Found_Title,
+								message);
+					}
+				});
+				return doit[0];
 			}
 			catch (Exception e) {}
 			return true;
@@ -603,41 +756,85 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 				}
 			}
 			else {
-				newObject = super.createObjectFromFeatureType(peekObject, feature);
-				TargetRuntime rt = TargetRuntime.getCurrentRuntime();
-				String id = rt.getCustomTaskId(newObject);
+				// Use the Target Runtime's Custom Task index to decide if this may be a
+				// CustomElement at all and, if possible, which one it is before it is created.
+				CustomTaskIndex index = TargetRuntime.getCurrentRuntime(xmlResource).getCustomTaskIndex();
+				EClassifier eType = feature.getEType();
+				String id = null;
+				if (eType instanceof EClass && index.mayBeCustomTask((EClass) eType))
+					id = getCustomTaskId(index, (EClass) eType);
 				if (id!=null) {
-					// if this is a CustomElement we need to discard this object and construct it
-					// properly such that all extension attributes and elements are created and
-					// initialized.
-					EFactory factory = newObject.eClass().getEPackage().getEFactoryInstance();
-					ObjectPropertyProvider adapter = ObjectPropertyProvider.adapt(factory, xmlResource);
-					try {
-						// remove all traces of the old object
-						objects.pop();
-						mixedTargets.pop();
-						types.pop();
-						EcoreUtil.delete(newObject);
-						// set up the BPMN2 object factory to construct this CustomElement
-						adapter.setProperty(GraphitiConstants.CUSTOM_ELEMENT_ID, id);
-						newObject = super.createObjectFromFeatureType(peekObject, feature);
-					}
-					catch (Exception e) {
-						e.printStackTrace();
+					// set up the BPMN2 object factory to construct this CustomElement
+					newObject = createCustomElement(peekObject, feature, id);
+				}
+				else {
+					newObject = super.createObjectFromFeatureType(peekObject, feature);
+					if (newObject!=null && index.mayBeCustomTask(newObject.eClass()))
+						id = index.getCustomTaskId(newObject);
+					if (id!=null) {
+						// if this is a CustomElement we need to discard this object and construct it
+						// properly such that all extension attributes and elements are created and
+						// initialized.
+						try {
+							// remove all traces of the old object
+							objects.pop();
+							mixedTargets.pop();
+							types.pop();
+							EcoreUtil.delete(newObject);
+							newObject = createCustomElement(peekObject, feature, id);
+						}
+						catch (Exception e) {
+							e.printStackTrace();
+						}
 					}
 				}
 			}
 			
-			if (newObject!=null) {
-				ExtendedPropertiesAdapter epa = ExtendedPropertiesAdapter.adapt(newObject);
-				if (epa!=null) {
-					epa.setProperty(ExtendedPropertiesAdapter.LINE_NUMBER, lineNumber);
-				}
+			if (newObject!=null && xmlResource instanceof Bpmn2ModelerResourceImpl) {
+				((Bpmn2ModelerResourceImpl) xmlResource).lineNumbers.put(newObject, lineNumber);
 			}
 
 			return newObject;
 		}
+
+		/**
+		 * Construct a Custom Task for the given feature. The Resource and
+		 * Custom Task ID are handed to the BPMN2 object factory through the
+		 * current thread, since other files may be loaded at the same time.
+		 */
+		private EObject createCustomElement(EObject peekObject, EStructuralFeature feature, String id) {
+			Bpmn2ModelerFactory.setPendingCreation(xmlResource, id);
+			try {
+				return super.createObjectFromFeatureType(peekObject, feature);
+			}
+			finally {
+				Bpmn2ModelerFactory.clearPendingCreation();
+			}
+		}
 		
+		/**
+		 * Classify the element being started from its extension attributes,
+		 * without constructing an object for it.
+		 * 
+		 * @param index the Custom Task index of the current Target Runtime
+		 * @param eClass the type of object that will be constructed
+		 * @return the CustomElement ID or null if the attributes don't decide it
+		 */
+		private String getCustomTaskId(CustomTaskIndex index, EClass eClass) {
+			if (attribs!=null) {
+				for (int i = 0, size = attribs.getLength(); i < size; ++i) {
+					String name = attribs.getQName(i);
+					String localName = name.substring(name.indexOf(':') + 1);
+					if (index.isDiscriminator(localName)) {
+						String id = index.getCustomTaskId(eClass, localName, attribs.getValue(i));
+						if (id!=null)
+							return id;
+					}
+				}
+			}
+			return null;
+		}
+
 		@Override
 		protected void setFeatureValue(EObject object, EStructuralFeature feature, Object value, int position) {
 			ModelDecorator md = ModelDecorator.getModelDecorator(feature);
@@ -1206,16 +1403,13 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 		@Override
 		protected void saveContainedMany(EObject o, EStructuralFeature f) {
 			if (o instanceof BPMNPlane && f==DiPackage.eINSTANCE.getPlane_PlaneElement()) {
-				// Sort the Diagram Elements in ascending Z-order
+				// Save the Diagram Elements in ascending Z-order. The plane
+				// itself is not reordered: moving elements around in the list
+				// is quadratic and would have to be undone afterwards.
 				BPMNPlane plane = (BPMNPlane) o;
-				EList<DiagramElement> originalList = new BasicEList<DiagramElement>();
-				originalList.addAll(plane.getPlaneElement());
-				
-				plane.eSetDeliver(false);
-				ECollections.sort((EList<DiagramElement>) plane.getPlaneElement(), new DIZorderComparator());
-				super.saveContainedMany(o, f);
-				ECollections.setEList((EList)plane.getPlaneElement(),originalList);
-				plane.eSetDeliver(true);
+				for (DiagramElement de : DIZorderSorter.sort(plane.getPlaneElement())) {
+					saveElement(de, f);
+				}
 			}
 			else if (o instanceof Definitions && f==Bpmn2Package.eINSTANCE.getDefinitions_RootElements()) {
 				// Sort the Definitions Root Elements to avoid forward references
@@ -1397,10 +1591,16 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 					return features[index];
 				}
 
-				EStructuralFeature[] featureList = listFeatures(cls);
-				EStructuralFeature[] newFeatureList = featureList;
+				EStructuralFeature[] newFeatureList = SerializationPlanCache.getFeatures(
+						getPlanKey(),
+						extendedMetaData==null ? null : extendedMetaData.getClass(),
+						cls,
+						new SerializationPlanCache.PlanBuilder() {
+							public EStructuralFeature[] build(EClass eClass) {
+								return reorderFeatureList(eClass, listFeatures(eClass));
+							}
+						});
 				if (c == null) {
-					newFeatureList = reorderFeatureList(cls, featureList);
 					classes[index] = cls;
 					features[index] = newFeatureList;
 					featureKinds[index] = listKinds(newFeatureList);
@@ -1408,6 +1608,20 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 				return newFeatureList;
 			}
 
+			/**
+			 * Identifies the feature ordering rules of this Lookup, so that the
+			 * orderings computed by {@link #reorderFeatureList(EClass, EStructuralFeature[])}
+			 * can be shared with all other Lookups that use the same rules. The
+			 * default is the Lookup's class. Subclasses whose ordering depends on
+			 * instance state must return a key that reflects that state, or null
+			 * to disable sharing.
+			 * 
+			 * @return the key, or null if orderings must not be shared.
+			 */
+			protected Object getPlanKey() {
+				return getClass();
+			}
+
 			/**
 			 * Specifies the serialization order of features for a given ECLass.
 			 * Subclasses should override this behavior.
@@ -1464,34 +1678,27 @@ public class Bpmn2ModelerResourceImpl extends Bpmn2ResourceImpl {
 				EStructuralFeature[] newFeatureList = new EStructuralFeature[featureList.length];
 				// map of old to new array indexes
 				int[] indexMap = new int[featureList.length];
-				for (int i=0; i<indexMap.length; ++i)
-					indexMap[i] = -1;
-
+				// index of the first occurrence of each (case insensitive) feature name
+				Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+				Set<String> names = new HashSet<String>(Arrays.asList(featureNames));
 				int startIndex = Integer.MAX_VALUE;
 				for (int i=0; i<featureList.length; ++i) {
-					for (int j=0; j<featureNames.length; ++j) {
-						if (featureList[i].getName().equals(featureNames[j])) {
-							if (i<startIndex) {
-								startIndex = i;
-								break;
-							}
-						}
-					}
+					indexMap[i] = -1;
+					String name = featureList[i].getName();
+					String key = name.toLowerCase(Locale.ENGLISH);
+					if (!nameIndexes.containsKey(key))
+						nameIndexes.put(key, i);
+					if (startIndex==Integer.MAX_VALUE && names.contains(name))
+						startIndex = i;
 				}
 				
 				for (int newIndex=0; newIndex<featureNames.length; ++newIndex) {
-					String fn = featureNames[newIndex];
-					for (int oldIndex=0; oldIndex<featureList.length; ++oldIndex) {
-						EStructuralFeature f = featureList[oldIndex];
-						if (f.getName().equalsIgnoreCase(fn)) {
-							indexMap[oldIndex] = newIndex + startIndex;
-							break;
-						}
-					}
+					Integer oldIndex = nameIndexes.get(featureNames[newIndex].toLowerCase(Locale.ENGLISH));
+					if (oldIndex!=null)
+						indexMap[oldIndex] = newIndex + startIndex;
 				}
 				
 				for (int oldIndex=0; oldIndex<featureList.length; ++oldIndex) {
-					EStructuralFeature f = featureList[oldIndex];
 					int newIndex = indexMap[oldIndex];
 					if (newIndex>=0) {
 						newFeatureList[newIndex] = featureList[oldIndex];
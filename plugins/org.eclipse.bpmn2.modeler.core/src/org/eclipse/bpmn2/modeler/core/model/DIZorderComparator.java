@@ -24,6 +24,12 @@ import org.eclipse.bpmn2.di.BPMNEdge;
 import org.eclipse.bpmn2.di.BPMNShape;
 import org.eclipse.dd.di.DiagramElement;
 
+/**
+ * @deprecated The ordering of Diagram Elements is not a total order, so a
+ *             sort using this Comparator depends on the original list order.
+ *             Use {@link DIZorderSorter} instead.
+ */
+@Deprecated
 public final class DIZorderComparator implements Comparator<DiagramElement> {
 	@Override
 	public int compare(DiagramElement a, DiagramElement b) {
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ * All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 	Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.core.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.FlowNode;
+import org.eclipse.bpmn2.Lane;
+import org.eclipse.bpmn2.LaneSet;
+import org.eclipse.bpmn2.Participant;
+import org.eclipse.bpmn2.SubChoreography;
+import org.eclipse.bpmn2.SubProcess;
+import org.eclipse.bpmn2.di.BPMNShape;
+import org.eclipse.dd.di.DiagramElement;
+import org.eclipse.emf.ecore.EObject;
+
+/**
+ * Orders the Diagram Elements of a BPMNPlane in ascending Z-order, the way
+ * they are stacked in the editor:
+ * <ol>
+ * <li>Pools, which can only be placed on the diagram itself</li>
+ * <li>Lanes, Sub-Processes and Sub-Choreographies, each one following all of
+ * the containers that enclose it</li>
+ * <li>all other shapes</li>
+ * <li>edges and any other Diagram Elements</li>
+ * </ol>
+ * Elements keep their original relative order within each group, except where
+ * a container has to be moved in front of its contents. The containment
+ * forest is built once per call and walked depth-first, so the cost is linear
+ * in the number of elements, and the result depends only on the model: saving
+ * the same model twice produces the same element order.
+ */
+public final class DIZorderSorter {
+
+	private final List<DiagramElement> pools = new ArrayList<DiagramElement>();
+	private final List<BaseElement> containers = new ArrayList<BaseElement>();
+	private final Map<BaseElement, List<DiagramElement>> containerShapes = new HashMap<BaseElement, List<DiagramElement>>();
+	private final List<DiagramElement> shapes = new ArrayList<DiagramElement>();
+	private final List<DiagramElement> others = new ArrayList<DiagramElement>();
+	private final Set<BaseElement> visited = new HashSet<BaseElement>();
+	private final List<DiagramElement> result;
+
+	private DIZorderSorter(List<? extends DiagramElement> elements) {
+		result = new ArrayList<DiagramElement>(elements.size());
+		for (DiagramElement de : elements) {
+			if (de instanceof BPMNShape) {
+				BPMNShape shape = (BPMNShape) de;
+				BaseElement be = shape.getBpmnElement();
+				if (be instanceof Participant && shape.getChoreographyActivityShape()==null) {
+					pools.add(shape);
+				}
+				else if (isContainer(be)) {
+					List<DiagramElement> list = containerShapes.get(be);
+					if (list==null) {
+						list = new ArrayList<DiagramElement>(1);
+						containerShapes.put(be, list);
+						containers.add(be);
+					}
+					list.add(shape);
+				}
+				else {
+					shapes.add(shape);
+				}
+			}
+			else if (de!=null) {
+				// edges and any other Diagram Elements keep their order
+				others.add(de);
+			}
+		}
+	}
+
+	/**
+	 * Return the given Diagram Elements in ascending Z-order. The given list is
+	 * not modified.
+	 *
+	 * @param elements the Diagram Elements of a BPMNPlane.
+	 * @return a new list containing the same elements.
+	 */
+	public static List<DiagramElement> sort(List<? extends DiagramElement> elements) {
+		return new DIZorderSorter(elements).sort();
+	}
+
+	private List<DiagramElement> sort() {
+		result.addAll(pools);
+		for (BaseElement be : containers)
+			visit(be);
+		result.addAll(shapes);
+		result.addAll(others);
+		return result;
+	}
+
+	/**
+	 * Emit the shapes of all containers that enclose the given element, then
+	 * the shapes of the element itself. Containers that have no shape on this
+	 * plane are walked through, so that the order is still correct if an
+	 * intermediate Lane is not displayed.
+	 */
+	private void visit(BaseElement be) {
+		if (!visited.add(be))
+			return;
+		if (be instanceof FlowNode) {
+			for (Lane lane : ((FlowNode) be).getLanes())
+				visit(lane);
+		}
+		EObject container = be.eContainer();
+		if (be instanceof Lane && container instanceof LaneSet)
+			container = container.eContainer();
+		if (isContainer(container))
+			visit((BaseElement) container);
+		List<DiagramElement> list = containerShapes.get(be);
+		if (list!=null)
+			result.addAll(list);
+	}
+
+	private static boolean isContainer(Object o) {
+		return o instanceof Lane || o instanceof SubProcess || o instanceof SubChoreography;
+	}
+}
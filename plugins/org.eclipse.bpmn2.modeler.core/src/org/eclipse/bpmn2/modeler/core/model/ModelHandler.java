@@ -721,14 +721,31 @@ public class ModelHandler {
 
 	// TODO: Move all of this model handler crap into BPMN2PersistencyBehavior where it belongs
 	void loadResource() {
+		Exception error = null;
 		try {
 			resource.load(null);
+		} catch (Exception e) {
+			error = e;
+		}
+		resourceLoaded(error);
+	}
+
+	/**
+	 * Check the Resource for duplicate IDs after it has been loaded, or report
+	 * the load errors if loading failed. This must be called from the UI
+	 * thread, e.g. by an editor that loads the Resource in a background thread.
+	 * 
+	 * @param loadError the exception thrown while the Resource was being
+	 *            loaded, or null if loading was successful.
+	 */
+	public void resourceLoaded(Exception loadError) {
+		if (loadError==null) {
 			List<Tuple<EObject,EObject>> dups = ModelUtil.findDuplicateIds(resource);
 			if (dups.size()>0) {
 				FixDuplicateIdsDialog dlg = new FixDuplicateIdsDialog(dups);
 				dlg.open();
 			}
-		} catch (Exception e) {
+		} else {
 			if (!resource.getErrors().isEmpty()) {
 				ImportDiagnostics diagnostics = new ImportDiagnostics(resource);
 				for (Resource.Diagnostic error : resource.getErrors()) {
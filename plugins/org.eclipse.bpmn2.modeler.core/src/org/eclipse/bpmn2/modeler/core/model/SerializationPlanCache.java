@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ * All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 	Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.core.model;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * A cache of the serialization order of EClass features, shared by all
+ * {@link Bpmn2ModelerResourceImpl.Bpmn2ModelerXMLSave.Bpmn2Lookup} instances.
+ * <p>
+ * XMLSaveImpl creates a new Lookup table for every save, so without this cache
+ * every save of every Resource recomputes the feature order of each EClass it
+ * encounters. The order only depends on the Lookup implementation (i.e. the
+ * Target Runtime's reordering rules), the kind of ExtendedMetaData in use and
+ * the EClass itself, so it is computed once for each such combination.
+ * <p>
+ * Only EClasses of globally registered EPackages are cached; dynamic packages
+ * may be created per Resource and would never be released. A cached order is
+ * discarded if the EClass's features have changed since it was computed.
+ * The cached arrays are shared and must not be modified.
+ */
+public final class SerializationPlanCache {
+
+	private static final ConcurrentMap<Key, Plan> plans = new ConcurrentHashMap<Key, Plan>();
+
+	private static final class Key {
+		private final Object owner;
+		private final Object metaData;
+		private final EClass eClass;
+		private final int hashCode;
+
+		Key(Object owner, Object metaData, EClass eClass) {
+			this.owner = owner;
+			this.metaData = metaData;
+			this.eClass = eClass;
+			this.hashCode = (owner.hashCode() * 31 + (metaData==null ? 0 : metaData.hashCode())) * 31
+					+ eClass.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return k.owner.equals(owner) && k.eClass==eClass
+					&& (k.metaData==null ? metaData==null : k.metaData.equals(metaData));
+		}
+	}
+
+	private static final class Plan {
+		/** the feature list the order was computed from */
+		final List<EStructuralFeature> source;
+		final EStructuralFeature[] features;
+
+		Plan(List<EStructuralFeature> source, EStructuralFeature[] features) {
+			this.source = source;
+			this.features = features;
+		}
+	}
+
+	/**
+	 * Computes the serialization order of an EClass's features. This must be
+	 * a pure function of the EClass.
+	 */
+	public interface PlanBuilder {
+		EStructuralFeature[] build(EClass eClass);
+	}
+
+	private SerializationPlanCache() {
+	}
+
+	/**
+	 * Return the serialization order of the features of the given EClass,
+	 * computing it with the given builder if it has not been cached yet.
+	 *
+	 * @param owner identifies the ordering rules, typically the class of the
+	 *            Lookup that implements them.
+	 * @param metaData identifies the ExtendedMetaData used to list the
+	 *            features, typically its class; may be null.
+	 * @param eClass the EClass being saved.
+	 * @param builder computes the feature order if it is not cached.
+	 * @return the ordered features. The array is shared and must not be
+	 *         modified.
+	 */
+	public static EStructuralFeature[] getFeatures(Object owner, Object metaData, EClass eClass, PlanBuilder builder) {
+		if (owner==null || !isShareable(eClass))
+			return builder.build(eClass);
+
+		List<EStructuralFeature> source = eClass.getEAllStructuralFeatures();
+		Key key = new Key(owner, metaData, eClass);
+		Plan plan = plans.get(key);
+		if (plan==null || plan.source!=source) {
+			// if two threads get here at the same time they compute the
+			// same order, so it doesn't matter which one wins
+			plan = new Plan(source, builder.build(eClass));
+			plans.put(key, plan);
+		}
+		return plan.features;
+	}
+
+	/**
+	 * Discard all cached feature orders, for example after a Target Runtime
+	 * has been reloaded.
+	 */
+	public static void clear() {
+		plans.clear();
+	}
+
+	private static boolean isShareable(EClass eClass) {
+		EPackage pkg = eClass.getEPackage();
+		if (pkg==null || pkg.getNsURI()==null)
+			return false;
+		// don't use getEPackage() here: it would initialize packages
+		// that are only registered with a descriptor
+		return EPackage.Registry.INSTANCE.get(pkg.getNsURI())==pkg;
+	}
+}
@@ -20,6 +20,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.bpmn2.Activity;
 import org.eclipse.bpmn2.AdHocSubProcess;
@@ -159,8 +162,8 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	public final static String PREF_TEXT_LIMIT = "text.limit"; //$NON-NLS-1$
 	public final static String PREF_TEXT_LIMIT_LABEL = Messages.Bpmn2Preferences_Text_Limit;
 	
-	private static Hashtable<IProject,Bpmn2Preferences> projectPreferenceCacheMap = null;
-	private static Bpmn2Preferences instancePreferenceCache = null;
+	private static final ConcurrentMap<IProject,Bpmn2Preferences> projectPreferenceCacheMap = new ConcurrentHashMap<IProject,Bpmn2Preferences>();
+	private static volatile Bpmn2Preferences instancePreferenceCache = null;
 	private static IProject activeProject;
 	private static ListenerList preferenceChangeListeners;
 	private static IPreferenceStore preferenceStore;
@@ -170,8 +173,17 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	private IEclipsePreferences projectPreferences;
 	private static IEclipsePreferences instancePreferences;
 	private static IEclipsePreferences defaultPreferences;
-	private boolean cached;
 	private boolean dirty;
+	// incremented whenever any BPMN2 preference changes; Instance Preferences
+	// are shared by all projects, so this is not per-instance
+	private static final AtomicInteger version = new AtomicInteger();
+	private static final IPreferenceChangeListener preferenceNodeListener = new IPreferenceChangeListener() {
+		@Override
+		public void preferenceChange(PreferenceChangeEvent event) {
+			invalidate();
+		}
+	};
+	private volatile PreferencesSnapshot snapshot;
 	
 	public enum BPMNDIAttributeDefault {
 		USE_DI_VALUE,
@@ -180,28 +192,7 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 		ALWAYS_FALSE
 	};
 	
-//	private TargetRuntime targetRuntime;
-	private boolean showAdvancedPropertiesTab;
-	private boolean showDescriptions;
-	private boolean showIdAttribute;
-	private boolean checkProjectNature;
-	private boolean simplifyLists;
-	private boolean usePopupDialogForLists;
-	private boolean doCoreValidation;
-	private boolean propagateGroupCategories;
-	private boolean allowMultipleConnections;
-	private BPMNDIAttributeDefault isHorizontal;
-	private BPMNDIAttributeDefault isExpanded;
-	private BPMNDIAttributeDefault isMessageVisible;
-	private BPMNDIAttributeDefault isMarkerVisible;
-	private boolean saveBPMNLabels;
-	private int connectionTimeout;
-	private int popupConfigDialog;
-	private boolean popupConfigDialogFor[] = new boolean[6];
-	private int resolveExternals;
-	private int textLimit;
-
-	private HashMap<String, ShapeStyle> shapeStyles = new HashMap<String, ShapeStyle>();
+	private Map<String, ShapeStyle> shapeStyles = new ConcurrentHashMap<String, ShapeStyle>();
 
 	private Bpmn2Preferences(IProject project) {
 		this.project = project;
@@ -209,13 +200,16 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 		IPreferencesService preferenceService = Platform.getPreferencesService();
 		if (preferenceStore==null)
 			preferenceStore = Activator.getDefault().getPreferenceStore();
-		if (instancePreferences==null)
+		if (instancePreferences==null) {
 			instancePreferences = (IEclipsePreferences) preferenceService.getRootNode().node(InstanceScope.SCOPE).node(Activator.PLUGIN_ID);
+			instancePreferences.addPreferenceChangeListener(preferenceNodeListener);
+		}
 		if (defaultPreferences==null)
 			defaultPreferences = (IEclipsePreferences) preferenceService.getRootNode().node(DefaultScope.SCOPE).node(Activator.PLUGIN_ID);
 
 		if (project != null) {
 			projectPreferences = (IEclipsePreferences) preferenceService.getRootNode().node(ProjectScope.SCOPE).node(project.getName()).node(Activator.PLUGIN_ID);
+			projectPreferences.addPreferenceChangeListener(preferenceNodeListener);
 			preferenceStore.addPropertyChangeListener(this);
 			
 			try {
@@ -228,7 +222,6 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 		ResourcesPlugin.getWorkspace().addResourceChangeListener(this);
 
 		loadDefaults();
-		cache();
 	}
 	
 	////////////////////////////////////////////////////////////////////////////////
@@ -270,19 +263,20 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	 * @return project preferences
 	 */
 	public static Bpmn2Preferences getInstance(URI resourceURI) {
-		String filename = resourceURI.trimFragment().toPlatformString(true);
-		if (filename==null) {
+		// This is called for every validated object: the project name is
+		// the first segment of a platform resource URI, so there is no
+		// need to look up the file itself.
+		if (!resourceURI.isPlatformResource() || resourceURI.segmentCount()<2) {
 			return getInstance();
 		}
 		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
 		if (root==null) {
 			return getInstance();
 		}
-		IResource res = ResourcesPlugin.getWorkspace().getRoot().findMember(filename);
-		if (res==null) {
+		IProject project = root.getProject(URI.decode(resourceURI.segment(1)));
+		if (!project.exists()) {
 			return getInstance();
 		}
-		IProject project = res.getProject();
 		return getInstance(project);
 			
 	}
@@ -296,23 +290,28 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	public static Bpmn2Preferences getInstance(IProject project) {
 		Bpmn2Preferences pref = null;
 		if (project==null) {
-			if (instancePreferenceCache==null) {
-				// Create a cache for the Instance Preference Store.
-				instancePreferenceCache = new Bpmn2Preferences(null);
-			}
 			pref = instancePreferenceCache;
+			if (pref==null) {
+				synchronized (Bpmn2Preferences.class) {
+					if (instancePreferenceCache==null) {
+						// Create a cache for the Instance Preference Store.
+						instancePreferenceCache = new Bpmn2Preferences(null);
+					}
+					pref = instancePreferenceCache;
+				}
+			}
 		}
 		else {
-			if (projectPreferenceCacheMap==null) {
-				// Create a map that will hold the Project Preference Store cache objects.
-				projectPreferenceCacheMap = new Hashtable<IProject,Bpmn2Preferences>();
-			}
 			pref = projectPreferenceCacheMap.get(project);
 			if (pref==null) {
-				// Create a cache for the Project Preference Store.
-				pref = new Bpmn2Preferences(project);
-				pref.reload();
-				projectPreferenceCacheMap.put(project, pref);
+				synchronized (Bpmn2Preferences.class) {
+					pref = projectPreferenceCacheMap.get(project);
+					if (pref==null) {
+						// Create a cache for the Project Preference Store.
+						pref = new Bpmn2Preferences(project);
+						projectPreferenceCacheMap.put(project, pref);
+					}
+				}
 			}
 		}
 		return pref;
@@ -324,13 +323,10 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 		List<Bpmn2Preferences> prefs = new ArrayList<Bpmn2Preferences>();
 		if (instancePreferenceCache!=null && instancePreferenceCache.getRuntime().getId().equals(id))
 			prefs.add(instancePreferenceCache);
-		if (projectPreferenceCacheMap!=null) {
-			for (Entry<IProject, Bpmn2Preferences> entry : projectPreferenceCacheMap.entrySet()) {
-				Bpmn2Preferences pref = entry.getValue();
-				if (pref.getRuntime().getId().equals(id))
-					prefs.add(pref);
-			}
-			
+		for (Entry<IProject, Bpmn2Preferences> entry : projectPreferenceCacheMap.entrySet()) {
+			Bpmn2Preferences pref = entry.getValue();
+			if (pref.getRuntime().getId().equals(id))
+				prefs.add(pref);
 		}
 		return prefs;
 	}
@@ -338,11 +334,14 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	public void useProjectPreferences() {
 		Assert.isNotNull(projectPreferences);
 		useProjectPreferences = true;
+		invalidate();
 	}
 	
 	public void dispose() {
-		if (project!=null)
+		if (project!=null) {
 			projectPreferenceCacheMap.remove(project);
+			projectPreferences.removePreferenceChangeListener(preferenceNodeListener);
+		}
 		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
 		preferenceStore.removePropertyChangeListener(this);
 	}
@@ -388,6 +387,7 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 
 	public void loadDefaults(TargetRuntime rt, String key) {
+		invalidate();
 		if (key.equals(PREF_TOOL_PROFILE)) {
 			String defaultProfile = null;
 			for (ModelEnablementDescriptor med : rt.getModelEnablements()) {
@@ -443,6 +443,7 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 
 	public void unloadDefaults(TargetRuntime rt, String key) {
+		invalidate();
 		try {
 			if (key.equals(PREF_TOOL_PROFILE)) {
 				for (ModelEnablementDescriptor med : rt.getModelEnablements()) {
@@ -510,80 +511,45 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 	
 	public void reload() {
-		cached = false;
-		cache();
-	}
-	
-	private void cache() {
-		if (!cached) {
-			// cache all preferences as Bpmn2Preferences instance variables for faster access
-			showAdvancedPropertiesTab = getBoolean(PREF_SHOW_ADVANCED_PROPERTIES, false);
-			showDescriptions = getBoolean(PREF_SHOW_DESCRIPTIONS, false);
-			showIdAttribute = getBoolean(PREF_SHOW_ID_ATTRIBUTE, false);
-			checkProjectNature = getBoolean(PREF_CHECK_PROJECT_NATURE, true);
-			simplifyLists = getBoolean(PREF_SIMPLIFY_LISTS, true);
-			usePopupDialogForLists = getBoolean(PREF_USE_POPUP_DIALOG_FOR_LISTS, false);
-			isHorizontal = getBPMNDIAttributeDefault(PREF_IS_HORIZONTAL, BPMNDIAttributeDefault.USE_DI_VALUE);
-			isExpanded = getBPMNDIAttributeDefault(PREF_IS_EXPANDED, BPMNDIAttributeDefault.USE_DI_VALUE);
-			isMessageVisible = getBPMNDIAttributeDefault(PREF_IS_MESSAGE_VISIBLE, BPMNDIAttributeDefault.USE_DI_VALUE);
-			isMarkerVisible = getBPMNDIAttributeDefault(PREF_IS_MARKER_VISIBLE, BPMNDIAttributeDefault.USE_DI_VALUE);
-			saveBPMNLabels = getBoolean(PREF_SAVE_BPMNLABELS, true);
-			connectionTimeout = getInt(PREF_CONNECTION_TIMEOUT, 60000); //$NON-NLS-1$
-			resolveExternals = getInt(PREF_RESOLVE_EXTERNALS, 2); //$NON-NLS-1$
-			textLimit = getInt(PREF_TEXT_LIMIT, 255); //$NON-NLS-1$
-			
-			popupConfigDialog = getInt(PREF_POPUP_CONFIG_DIALOG, 0); // tri-state checkbox
-			popupConfigDialogFor[0] = getBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_ACTIVITIES, false);
-			popupConfigDialogFor[1] = getBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_GATEWAYS, false);
-			popupConfigDialogFor[2] = getBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_EVENTS, false);
-			popupConfigDialogFor[3] = getBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_EVENT_DEFS, false);
-			popupConfigDialogFor[4] = getBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_DATA_DEFS, false);
-			popupConfigDialogFor[5] = getBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_CONTAINERS, false);
-
-			doCoreValidation = getBoolean(PREF_DO_CORE_VALIDATION, true);
-			propagateGroupCategories = getBoolean(PREF_PROPAGATE_GROUP_CATEGORIES, true);
-			allowMultipleConnections = getBoolean(PREF_ALLOW_MULTIPLE_CONNECTIONS, false);
-			
-			cached = true;
-		}
+		invalidate();
 	}
 	
-	public synchronized void flush() throws BackingStoreException {
-		if (dirty) {
-			if (useProjectPreferences) {
-				if (projectPreferences!=null) {
-					projectPreferences.flush();
+	/**
+	 * Return the current values of the preferences. The snapshot is rebuilt
+	 * after any BPMN2 preference has changed, and is otherwise shared by all
+	 * callers without locking.
+	 * 
+	 * @return an immutable preferences snapshot
+	 */
+	public PreferencesSnapshot getSnapshot() {
+		PreferencesSnapshot s = snapshot;
+		int v = version.get();
+		if (s==null || s.getVersion()!=v) {
+			synchronized (this) {
+				s = snapshot;
+				if (s==null || s.getVersion()!=v) {
+					// a change made while this is being built will bump the
+					// version again, and the next caller rebuilds
+					s = new PreferencesSnapshot(this, v);
+					snapshot = s;
 				}
 			}
-			else {
-				putBoolean(PREF_SHOW_ADVANCED_PROPERTIES, showAdvancedPropertiesTab);
-				putBoolean(PREF_SHOW_DESCRIPTIONS, showDescriptions);
-				putBoolean(PREF_SHOW_ID_ATTRIBUTE, showIdAttribute);
-				putBoolean(PREF_CHECK_PROJECT_NATURE, checkProjectNature);
-				putBoolean(PREF_SIMPLIFY_LISTS, simplifyLists);
-				putBoolean(PREF_USE_POPUP_DIALOG_FOR_LISTS, usePopupDialogForLists);
-				setBPMNDIAttributeDefault(PREF_IS_HORIZONTAL, isHorizontal);
-	
-				setBPMNDIAttributeDefault(PREF_IS_EXPANDED, isExpanded);
-				setBPMNDIAttributeDefault(PREF_IS_MESSAGE_VISIBLE, isMessageVisible);
-				setBPMNDIAttributeDefault(PREF_IS_MARKER_VISIBLE, isMarkerVisible);
-				putBoolean(PREF_SAVE_BPMNLABELS, saveBPMNLabels);
-				
-				putInt(PREF_CONNECTION_TIMEOUT, connectionTimeout);
-				putInt(PREF_RESOLVE_EXTERNALS, resolveExternals);
-				putInt(PREF_TEXT_LIMIT, textLimit);
-	
-				putInt(PREF_POPUP_CONFIG_DIALOG, popupConfigDialog);
-				putBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_ACTIVITIES, popupConfigDialogFor[0]);
-				putBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_GATEWAYS, popupConfigDialogFor[1]);
-				putBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_EVENTS, popupConfigDialogFor[2]);
-				putBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_EVENT_DEFS, popupConfigDialogFor[3]);
-				putBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_DATA_DEFS, popupConfigDialogFor[4]);
-				putBoolean(PREF_POPUP_CONFIG_DIALOG_FOR_CONTAINERS, popupConfigDialogFor[5]);
-				putBoolean(PREF_DO_CORE_VALIDATION, doCoreValidation);
-				putBoolean(PREF_PROPAGATE_GROUP_CATEGORIES, propagateGroupCategories);
-				putBoolean(PREF_ALLOW_MULTIPLE_CONNECTIONS, allowMultipleConnections);
-			}
+		}
+		return s;
+	}
+	
+	/**
+	 * Mark the snapshots of all Bpmn2Preferences instances as stale.
+	 */
+	private static void invalidate() {
+		version.incrementAndGet();
+	}
+	
+	public synchronized void flush() throws BackingStoreException {
+		// all setters write through to the preference nodes: only the
+		// Project Preferences need to be flushed explicitly here
+		if (dirty && useProjectPreferences && projectPreferences!=null) {
+			projectPreferences.flush();
 		}
 		
 		// prevent concurrent modification of the shapeStyle cache
@@ -654,10 +620,12 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	public ShapeStyle getShapeStyle(String name) {
 		ShapeStyle ss = shapeStyles.get(name);
 		if (ss==null) {
+			Bpmn2Preferences instancePreferenceCache = Bpmn2Preferences.instancePreferenceCache;
 			if (instancePreferenceCache!=null) {
 				// check the Instance Preferences cache first
-				if (instancePreferenceCache.shapeStyles.containsKey(name)) {
-					ss = new ShapeStyle( instancePreferenceCache.shapeStyles.get(name) );
+				ShapeStyle cached = instancePreferenceCache.shapeStyles.get(name);
+				if (cached!=null) {
+					ss = new ShapeStyle(cached);
 				}
 				else {
 					// this has not been cached yet: check if contained
@@ -745,6 +713,10 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 	
 	public String getDefaultToolProfile(TargetRuntime rt) {
+		return getSnapshot().getDefaultToolProfile(rt);
+	}
+	
+	String readDefaultToolProfile(TargetRuntime rt) {
 		try {
 			Preferences prefs = null;
 			String path = getToolProfilePath(rt);
@@ -1040,9 +1012,9 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	// Getters and setters for miscellaneous preferences
 	////////////////////////////////////////////////////////////////////////////////
 
-	public synchronized TargetRuntime getRuntime() {
+	public TargetRuntime getRuntime() {
 		TargetRuntime rt = null;
-		final String id = get(PREF_TARGET_RUNTIME, null);
+		final String id = getSnapshot().getRuntimeId();
 		if (id!=null && !id.isEmpty()) {
 			rt = TargetRuntime.getRuntime(id);
 			if (rt==null) {
@@ -1080,40 +1052,35 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 	
 	public boolean getShowAdvancedPropertiesTab() {
-		return showAdvancedPropertiesTab;
+		return getSnapshot().getShowAdvancedPropertiesTab();
 	}
 	
 	public void setShowAdvancedPropertiesTab(boolean show) {
 		putBoolean(PREF_SHOW_ADVANCED_PROPERTIES, show);
-		showAdvancedPropertiesTab = show;
 	}
 	
 	public boolean getShowDescriptions() {
-		return showDescriptions;
+		return getSnapshot().getShowDescriptions();
 	}
 	
 	public void setShowDescriptions(boolean show) {
 		putBoolean(PREF_SHOW_DESCRIPTIONS, show);
-		showDescriptions = show;
 	}
 	
 	public boolean getShowIdAttribute() {
-		return showIdAttribute;
+		return getSnapshot().getShowIdAttribute();
 	}
 	
 	public void setShowIdAttribute(boolean show) {
 		putBoolean(PREF_SHOW_ID_ATTRIBUTE, show);
-		showIdAttribute = show;
 	}
 	
 	public boolean getCheckProjectNature() {
-		checkProjectNature = getBoolean(PREF_CHECK_PROJECT_NATURE, false);
-		return checkProjectNature;
+		return getSnapshot().getCheckProjectNature();
 	}
 	
 	public void setCheckProjectNature(boolean show) {
 		putBoolean(PREF_CHECK_PROJECT_NATURE, show);
-		checkProjectNature = show;
 		try {
 			projectPreferences.flush();
 		} catch (BackingStoreException e) {
@@ -1123,44 +1090,43 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 	
 	public boolean getSimplifyLists() {
-		return simplifyLists;
+		return getSnapshot().getSimplifyLists();
 	}
 	
 	public void setSimplifyLists(boolean simplify) {
 		putBoolean(PREF_SIMPLIFY_LISTS,simplify);
-		simplifyLists = simplify;
 	}
 	
 	public boolean getUsePopupDialogForLists() {
-		return usePopupDialogForLists;
+		return getSnapshot().getUsePopupDialogForLists();
 	}
 	
 	public void setUsePopupDialogForLists(boolean enable) {
 		putBoolean(PREF_USE_POPUP_DIALOG_FOR_LISTS,enable);
-		usePopupDialogForLists = enable;
 	}
 	
 	public boolean getShowPopupConfigDialog(Object context) {
-		if (popupConfigDialog!=0) {
+		PreferencesSnapshot s = getSnapshot();
+		if (s.getPopupConfigDialog()!=0) {
 			if (context instanceof Task || context instanceof ChoreographyActivity) {
-				return popupConfigDialogFor[0];
+				return s.getPopupConfigDialogFor(0);
 			}
 			if (context instanceof Gateway) {
-				return popupConfigDialogFor[1];
+				return s.getPopupConfigDialogFor(1);
 			}
 			if (context instanceof Event) {
-				return popupConfigDialogFor[2];
+				return s.getPopupConfigDialogFor(2);
 			}
 			if (context instanceof EventDefinition) {
 				if (context instanceof CancelEventDefinition || context instanceof TerminateEventDefinition)
 					return false; // these have no additional attributes
-				return popupConfigDialogFor[3];
+				return s.getPopupConfigDialogFor(3);
 			}
 			if (context instanceof ItemAwareElement || context instanceof Message) {
-				return popupConfigDialogFor[4];
+				return s.getPopupConfigDialogFor(4);
 			}
 			if (context instanceof InteractionNode || context instanceof FlowElementsContainer) {
-				return popupConfigDialogFor[5];
+				return s.getPopupConfigDialogFor(5);
 			}
 		}
 		return false;
@@ -1195,110 +1161,102 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	
 	public void setShowPopupConfigDialog(Object context, boolean value) {
 		putInt(PREF_POPUP_CONFIG_DIALOG,  value ? 1 : 0);
-		popupConfigDialog = value ? 1 : 0;
 	}
 	
 	public boolean getDoCoreValidation() {
-		return doCoreValidation;
+		return getSnapshot().getDoCoreValidation();
 	}
 	
 	public void setDoCoreValidation(boolean enable) {
 		putBoolean(PREF_DO_CORE_VALIDATION,enable);
-		doCoreValidation = enable;
 	}
 	
 	public boolean getPropagateGroupCategories() {
-		return propagateGroupCategories;
+		return getSnapshot().getPropagateGroupCategories();
 	}
 	
 	public void setPropagateGroupCategories(boolean enable) {
 		putBoolean(PREF_PROPAGATE_GROUP_CATEGORIES,enable);
-		propagateGroupCategories = enable;
 	}
 	
 	public boolean getAllowMultipleConnections() {
-		return allowMultipleConnections;
+		return getSnapshot().getAllowMultipleConnections();
 	}
 	
 	public void setAllowMultipleConnections(boolean enable) {
 		putBoolean(PREF_ALLOW_MULTIPLE_CONNECTIONS,enable);
-		allowMultipleConnections = enable;
 	}
 
 	public boolean isHorizontalDefault() {
+		BPMNDIAttributeDefault isHorizontal = getIsHorizontal();
 		return isHorizontal==BPMNDIAttributeDefault.ALWAYS_TRUE ||
 				isHorizontal==BPMNDIAttributeDefault.DEFAULT_TRUE;
 	}
 
 	public BPMNDIAttributeDefault getIsHorizontal() {
-		return isHorizontal;
+		return getSnapshot().getIsHorizontal();
 	}
 	
 	public void setIsHorizontal(BPMNDIAttributeDefault value) {
 		setBPMNDIAttributeDefault(PREF_IS_HORIZONTAL, value);
-		this.isHorizontal = value;
 	}
 
 	public boolean isExpandedDefault() {
+		BPMNDIAttributeDefault isExpanded = getIsExpanded();
 		return isExpanded==BPMNDIAttributeDefault.ALWAYS_TRUE ||
 				isExpanded==BPMNDIAttributeDefault.DEFAULT_TRUE;
 	}
 
 	public BPMNDIAttributeDefault getIsExpanded() {
-		return isExpanded;
+		return getSnapshot().getIsExpanded();
 	}
 
 	public void setIsExpanded(BPMNDIAttributeDefault value) {
 		setBPMNDIAttributeDefault(PREF_IS_EXPANDED, value);
-		this.isExpanded = value;
 	}
 
 	public BPMNDIAttributeDefault getIsMessageVisible() {
-		return isMessageVisible;
+		return getSnapshot().getIsMessageVisible();
 	}
 
 	public void setIsMessageVisible(BPMNDIAttributeDefault value) {
 		setBPMNDIAttributeDefault(PREF_IS_MESSAGE_VISIBLE, value);
-		this.isMessageVisible = value;
 	}
 
 	public BPMNDIAttributeDefault getIsMarkerVisible() {
-		return isMarkerVisible;
+		return getSnapshot().getIsMarkerVisible();
 	}
 
 	public void setIsMarkerVisible(BPMNDIAttributeDefault value) {
 		setBPMNDIAttributeDefault(PREF_IS_MARKER_VISIBLE, value);
-		this.isMarkerVisible = value;
 	}
 	
 	public boolean getSaveBPMNLabels() {
-		return saveBPMNLabels;
+		return getSnapshot().getSaveBPMNLabels();
 	}
 	
 	public void setSaveBPMNLabels(boolean enable) {
 		putBoolean(PREF_SAVE_BPMNLABELS,enable);
-		saveBPMNLabels = enable;
 	}
 
 	public int getConnectionTimeout() {
-		return connectionTimeout;
+		return getSnapshot().getConnectionTimeout();
 	}
 	
 	public void setConnectionTimeout(int value) {
 		putInt(PREF_CONNECTION_TIMEOUT, value);
-		connectionTimeout = value;
 	}
 
 	public int getResolveExternals() {
-		return resolveExternals;
+		return getSnapshot().getResolveExternals();
 	}
 	
 	public void setResolveExternals(int value) {
 		putInt(PREF_RESOLVE_EXTERNALS, value);
-		resolveExternals = value;
 	}
 
 	public int getTextLimit() {
+		int textLimit = getSnapshot().getTextLimit();
 		if (textLimit<=0)
 			return Text.LIMIT;
 		return textLimit;
@@ -1306,7 +1264,6 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	
 	public void setTextLimit(int value) {
 		putInt(PREF_TEXT_LIMIT, value);
-		textLimit = value;
 	}
 	
 	// this is temporary until the connection routing has been proven reliable
@@ -1523,6 +1480,7 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 
 	public void setToDefault(String key) {
+		invalidate();
 		try {
 			if (key.startsWith(PREF_TOOL_PROFILE)) {
 				Preferences prefs = instancePreferences.node(key);
@@ -1592,6 +1550,7 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 	
 	protected void firePreferenceEvent(Preferences node, String key, Object oldValue, Object newValue) {
+		invalidate();
 		if (preferenceChangeListeners == null)
 			return;
 		if (oldValue==null) {
@@ -1770,18 +1729,7 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 	}
 	
 	public boolean keyExists(Preferences prefs, String key) {
-		try {
-			for (String k : prefs.keys()) {
-				if (k.equals(key)) {
-					return true;
-				}
-			}
-		}
-		catch (BackingStoreException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		return false;
+		return prefs.get(key, null)!=null;
 	}
 
 	public boolean getBoolean(String key, boolean defaultValue) {
@@ -1876,12 +1824,10 @@ public class Bpmn2Preferences implements IResourceChangeListener, IPropertyChang
 		firePreferenceEvent(instancePreferences, event.getProperty(), event.getOldValue(), event.getNewValue());
 	
 		// notify all other Bpmn2Preferences instances (if any)
-		if (projectPreferenceCacheMap!=null) {
-			for (Entry<IProject, Bpmn2Preferences> entry : projectPreferenceCacheMap.entrySet()) {
-				Bpmn2Preferences pref = entry.getValue();
-				if (pref!=this)
-					pref.firePreferenceEvent(instancePreferences, event.getProperty(), event.getOldValue(), event.getNewValue());
-			}
+		for (Entry<IProject, Bpmn2Preferences> entry : projectPreferenceCacheMap.entrySet()) {
+			Bpmn2Preferences pref = entry.getValue();
+			if (pref!=this)
+				pref.firePreferenceEvent(instancePreferences, event.getProperty(), event.getOldValue(), event.getNewValue());
 		}
 	}
 }
@@ -11,11 +11,14 @@
 package org.eclipse.bpmn2.modeler.core.preferences;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.bpmn2.Bpmn2Package;
 import org.eclipse.bpmn2.di.BpmnDiPackage;
@@ -39,6 +42,9 @@ public class ModelEnablements {
 	private TargetRuntime targetRuntime = null;
 	private String id = ""; //$NON-NLS-1$
 	private int enableIdAttribute = -1;
+	// resolved enablement of all features of an EClass, indexed by feature ID
+	private final ConcurrentMap<EClass, BitSet> featureEnablements = new ConcurrentHashMap<EClass, BitSet>();
+	private volatile int modCount;
 	
 	// require a TargetRuntime!
 	@SuppressWarnings("unused")
@@ -59,6 +65,7 @@ public class ModelEnablements {
 	}
 	
 	public void setEnabledAll(boolean enabled) {
+		changed();
 		if (enabled) {
 			classes.clear();
 			final List<EClass> items = new ArrayList<EClass>();
@@ -93,9 +100,11 @@ public class ModelEnablements {
 		else {
 			classes.clear();
 		}
+		changed();
 	}
 	
 	public void copy(ModelEnablements me) {
+		changed();
 		classes.clear();
 		
 		for (Entry<String, HashSet<String>> entry : me.classes.entrySet()) {
@@ -104,6 +113,7 @@ public class ModelEnablements {
 			features.addAll(entry.getValue());
 			classes.put(className, features);
 		}
+		changed();
 	}
 	
 	private void setEnabled(List<EClass> eClasses, boolean enabled) {
@@ -171,6 +181,7 @@ public class ModelEnablements {
 	}
 	
 	private void setEnabledSingle(String className, boolean enabled) {
+		changed();
 		if (enabled) {
 			if (classes.containsKey(className))
 				return;
@@ -193,6 +204,7 @@ public class ModelEnablements {
 	 * if false, remove the element.
 	 */
 	public void setEnabled(String name, boolean enabled) {
+		changed();
 		int i = name.indexOf("."); //$NON-NLS-1$
 		if (i>0) {
 			setEnabled(name.substring(0,i), name.substring(i+1), enabled);
@@ -244,6 +256,7 @@ public class ModelEnablements {
 				}
 			}
 		}
+		changed();
 	}
 	
 	/**
@@ -256,6 +269,7 @@ public class ModelEnablements {
 	 * if false, remove the EClass and all of its referenced classes.
 	 */
 	public void setEnabledAll(EClass eClass, boolean enabled) {
+		changed();
 
 		// enable or disable the class
 		setEnabledSingle(eClass,enabled);
@@ -301,9 +315,11 @@ public class ModelEnablements {
 				}
 			}
 		}
+		changed();
 	}
 	
 	public void setEnabled(String className, String featureName, boolean enabled) {
+		changed();
 		if ("all".equals(className)) { //$NON-NLS-1$
 			// enable all model objects
 			if (featureName==null)
@@ -350,6 +366,7 @@ public class ModelEnablements {
 		}
 		else
 			setEnabled(className, enabled);
+		changed();
 	}
 
 	public boolean isEnabled(String className, String featureName) {
@@ -406,7 +423,43 @@ public class ModelEnablements {
 	public boolean isEnabled(EClass eClass, EStructuralFeature feature) {
 		if (feature==null)
 			return isEnabled(eClass);
-		return isEnabled(eClass.getName(), feature.getName());
+		int featureId = eClass.getFeatureID(feature);
+		// the "id" attribute depends on a preference, and dynamic
+		// extension features are not part of the EClass
+		if (featureId<0 || "id".equals(feature.getName())) //$NON-NLS-1$
+			return isEnabled(eClass.getName(), feature.getName());
+		return getFeatureEnablements(eClass).get(featureId);
+	}
+	
+	/**
+	 * Resolve the enablement of all features of the given EClass at once,
+	 * including those inherited from its super types, so that each lookup
+	 * is a single bit test instead of a walk over the super types.
+	 */
+	private BitSet getFeatureEnablements(EClass eClass) {
+		BitSet bits = featureEnablements.get(eClass);
+		if (bits==null) {
+			int m = modCount;
+			bits = new BitSet();
+			String className = eClass.getName();
+			EList<EStructuralFeature> features = eClass.getEAllStructuralFeatures();
+			for (int i=0; i<features.size(); ++i) {
+				if (isEnabled(className, features.get(i).getName()))
+					bits.set(i);
+			}
+			// don't keep the result if the enablements changed meanwhile
+			if (m==modCount)
+				featureEnablements.put(eClass, bits);
+		}
+		return bits;
+	}
+	
+	// Called before and after every change: a lookup that resolved the
+	// enablements while the change was in progress either sees a different
+	// modCount, or its result is discarded by the second call.
+	private void changed() {
+		++modCount;
+		featureEnablements.clear();
 	}
 	
 	public boolean isEnabled(EClass eClass) {
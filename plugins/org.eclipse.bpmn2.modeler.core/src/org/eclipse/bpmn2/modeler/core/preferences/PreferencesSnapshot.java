@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.preferences;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences.BPMNDIAttributeDefault;
+import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+
+/**
+ * The values of the preferences of one project (or of the workspace) at one
+ * point in time.
+ * <p>
+ * A snapshot never changes once it has been built, so it can be read from any
+ * thread without locking. {@link Bpmn2Preferences} builds a new snapshot,
+ * with a new version number, the first time it is asked for one after any
+ * BPMN2 preference has changed. Clients that derive their own data from the
+ * preferences can compare {@link #getVersion() versions} to find out if that
+ * data is stale.
+ */
+public final class PreferencesSnapshot {
+
+	private final int version;
+	private final String runtimeId;
+	private final boolean showAdvancedPropertiesTab;
+	private final boolean showDescriptions;
+	private final boolean showIdAttribute;
+	private final boolean checkProjectNature;
+	private final boolean simplifyLists;
+	private final boolean usePopupDialogForLists;
+	private final boolean doCoreValidation;
+	private final boolean propagateGroupCategories;
+	private final boolean allowMultipleConnections;
+	private final BPMNDIAttributeDefault isHorizontal;
+	private final BPMNDIAttributeDefault isExpanded;
+	private final BPMNDIAttributeDefault isMessageVisible;
+	private final BPMNDIAttributeDefault isMarkerVisible;
+	private final boolean saveBPMNLabels;
+	private final int connectionTimeout;
+	private final int popupConfigDialog;
+	private final boolean popupConfigDialogFor[] = new boolean[6];
+	private final int resolveExternals;
+	private final int textLimit;
+	// Target Runtime ID -> name of its default Tool Profile, filled in on demand
+	private final ConcurrentMap<String, String> defaultToolProfiles = new ConcurrentHashMap<String, String>();
+	private final Bpmn2Preferences preferences;
+
+	PreferencesSnapshot(Bpmn2Preferences preferences, int version) {
+		this.preferences = preferences;
+		this.version = version;
+		runtimeId = preferences.get(Bpmn2Preferences.PREF_TARGET_RUNTIME, null);
+		showAdvancedPropertiesTab = preferences.getBoolean(Bpmn2Preferences.PREF_SHOW_ADVANCED_PROPERTIES, false);
+		showDescriptions = preferences.getBoolean(Bpmn2Preferences.PREF_SHOW_DESCRIPTIONS, false);
+		showIdAttribute = preferences.getBoolean(Bpmn2Preferences.PREF_SHOW_ID_ATTRIBUTE, false);
+		checkProjectNature = preferences.getBoolean(Bpmn2Preferences.PREF_CHECK_PROJECT_NATURE, true);
+		simplifyLists = preferences.getBoolean(Bpmn2Preferences.PREF_SIMPLIFY_LISTS, true);
+		usePopupDialogForLists = preferences.getBoolean(Bpmn2Preferences.PREF_USE_POPUP_DIALOG_FOR_LISTS, false);
+		isHorizontal = preferences.getBPMNDIAttributeDefault(Bpmn2Preferences.PREF_IS_HORIZONTAL, BPMNDIAttributeDefault.USE_DI_VALUE);
+		isExpanded = preferences.getBPMNDIAttributeDefault(Bpmn2Preferences.PREF_IS_EXPANDED, BPMNDIAttributeDefault.USE_DI_VALUE);
+		isMessageVisible = preferences.getBPMNDIAttributeDefault(Bpmn2Preferences.PREF_IS_MESSAGE_VISIBLE, BPMNDIAttributeDefault.USE_DI_VALUE);
+		isMarkerVisible = preferences.getBPMNDIAttributeDefault(Bpmn2Preferences.PREF_IS_MARKER_VISIBLE, BPMNDIAttributeDefault.USE_DI_VALUE);
+		saveBPMNLabels = preferences.getBoolean(Bpmn2Preferences.PREF_SAVE_BPMNLABELS, true);
+		connectionTimeout = preferences.getInt(Bpmn2Preferences.PREF_CONNECTION_TIMEOUT, 60000);
+		resolveExternals = preferences.getInt(Bpmn2Preferences.PREF_RESOLVE_EXTERNALS, 2);
+		textLimit = preferences.getInt(Bpmn2Preferences.PREF_TEXT_LIMIT, 255);
+
+		popupConfigDialog = preferences.getInt(Bpmn2Preferences.PREF_POPUP_CONFIG_DIALOG, 0); // tri-state checkbox
+		popupConfigDialogFor[0] = preferences.getBoolean(Bpmn2Preferences.PREF_POPUP_CONFIG_DIALOG_FOR_ACTIVITIES, false);
+		popupConfigDialogFor[1] = preferences.getBoolean(Bpmn2Preferences.PREF_POPUP_CONFIG_DIALOG_FOR_GATEWAYS, false);
+		popupConfigDialogFor[2] = preferences.getBoolean(Bpmn2Preferences.PREF_POPUP_CONFIG_DIALOG_FOR_EVENTS, false);
+		popupConfigDialogFor[3] = preferences.getBoolean(Bpmn2Preferences.PREF_POPUP_CONFIG_DIALOG_FOR_EVENT_DEFS, false);
+		popupConfigDialogFor[4] = preferences.getBoolean(Bpmn2Preferences.PREF_POPUP_CONFIG_DIALOG_FOR_DATA_DEFS, false);
+		popupConfigDialogFor[5] = preferences.getBoolean(Bpmn2Preferences.PREF_POPUP_CONFIG_DIALOG_FOR_CONTAINERS, false);
+
+		doCoreValidation = preferences.getBoolean(Bpmn2Preferences.PREF_DO_CORE_VALIDATION, true);
+		propagateGroupCategories = preferences.getBoolean(Bpmn2Preferences.PREF_PROPAGATE_GROUP_CATEGORIES, true);
+		allowMultipleConnections = preferences.getBoolean(Bpmn2Preferences.PREF_ALLOW_MULTIPLE_CONNECTIONS, false);
+	}
+
+	/**
+	 * @return the version of the preferences this snapshot was built from.
+	 *         Versions increase with every change to any BPMN2 preference.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the ID of the configured Target Runtime, or null if none is
+	 *         configured.
+	 */
+	public String getRuntimeId() {
+		return runtimeId;
+	}
+
+	/**
+	 * Return the name of the default Tool Profile of the given Target Runtime.
+	 *
+	 * @param rt a Target Runtime.
+	 * @return the profile name, or an empty string if none is defined.
+	 */
+	public String getDefaultToolProfile(TargetRuntime rt) {
+		String profileName = defaultToolProfiles.get(rt.getId());
+		if (profileName==null) {
+			profileName = preferences.readDefaultToolProfile(rt);
+			defaultToolProfiles.put(rt.getId(), profileName);
+		}
+		return profileName;
+	}
+
+	public boolean getShowAdvancedPropertiesTab() {
+		return showAdvancedPropertiesTab;
+	}
+
+	public boolean getShowDescriptions() {
+		return showDescriptions;
+	}
+
+	public boolean getShowIdAttribute() {
+		return showIdAttribute;
+	}
+
+	public boolean getCheckProjectNature() {
+		return checkProjectNature;
+	}
+
+	public boolean getSimplifyLists() {
+		return simplifyLists;
+	}
+
+	public boolean getUsePopupDialogForLists() {
+		return usePopupDialogForLists;
+	}
+
+	public boolean getDoCoreValidation() {
+		return doCoreValidation;
+	}
+
+	public boolean getPropagateGroupCategories() {
+		return propagateGroupCategories;
+	}
+
+	public boolean getAllowMultipleConnections() {
+		return allowMultipleConnections;
+	}
+
+	public BPMNDIAttributeDefault getIsHorizontal() {
+		return isHorizontal;
+	}
+
+	public BPMNDIAttributeDefault getIsExpanded() {
+		return isExpanded;
+	}
+
+	public BPMNDIAttributeDefault getIsMessageVisible() {
+		return isMessageVisible;
+	}
+
+	public BPMNDIAttributeDefault getIsMarkerVisible() {
+		return isMarkerVisible;
+	}
+
+	public boolean getSaveBPMNLabels() {
+		return saveBPMNLabels;
+	}
+
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * @return the state of the tri-state "show popup config dialog" checkbox.
+	 */
+	public int getPopupConfigDialog() {
+		return popupConfigDialog;
+	}
+
+	/**
+	 * @param index one of 0=activities, 1=gateways, 2=events, 3=event
+	 *            definitions, 4=data items, 5=containers.
+	 * @return true if the popup config dialog is enabled for this category.
+	 */
+	public boolean getPopupConfigDialogFor(int index) {
+		return popupConfigDialogFor[index];
+	}
+
+	public int getResolveExternals() {
+		return resolveExternals;
+	}
+
+	public int getTextLimit() {
+		return textLimit;
+	}
+}
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.runtime;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.bpmn2.modeler.core.features.ICustomElementDiscriminator;
+import org.eclipse.bpmn2.modeler.core.features.ICustomElementFeatureContainer;
+import org.eclipse.bpmn2.modeler.core.model.ModelDecorator;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * A precompiled classification of the Custom Task and Model Extension
+ * Descriptors of a Target Runtime, which replaces linear searches over all
+ * descriptors when objects are created or loaded.
+ * <p>
+ * For every EClass the index remembers which Custom Tasks may apply to its
+ * objects, based on the descriptors' types, and which Model Extensions must
+ * be applied to new objects. Custom Tasks whose feature container implements
+ * {@link ICustomElementDiscriminator} are further indexed by their
+ * discriminating attribute values, so that they are found with a single map
+ * lookup; only the other feature containers are still asked for their
+ * {@link ICustomElementFeatureContainer#getId(EObject) ID}. The results are
+ * the same as those of the linear searches, including the order of
+ * precedence of the descriptors.
+ * <p>
+ * The index is a snapshot: {@link TargetRuntime#getCustomTaskIndex()} builds a
+ * new one whenever descriptors are added or removed.
+ */
+public class CustomTaskIndex {
+
+	private static final int[] NO_CANDIDATES = new int[0];
+	private static final ModelExtensionDescriptor[] NO_EXTENSIONS = new ModelExtensionDescriptor[0];
+
+	private final CustomTaskDescriptor[] customTasks;
+	private final ModelExtensionDescriptor[] modelExtensions;
+	// the discriminating attribute name of each Custom Task, or null
+	private final String[] discriminatorNames;
+	// Custom Task ID, with case folded the way String.equalsIgnoreCase() does, to descriptor
+	private final Map<String, CustomTaskDescriptor> idMap = new HashMap<String, CustomTaskDescriptor>();
+	// discriminating attribute name -> value -> indexes of all Custom Tasks identified by it
+	private final Map<String, Map<String, Set<Integer>>> discriminators = new HashMap<String, Map<String, Set<Integer>>>();
+	private final ConcurrentMap<EClass, int[]> candidates = new ConcurrentHashMap<EClass, int[]>();
+	private final ConcurrentMap<EClass, ModelExtensionDescriptor[]> extensions = new ConcurrentHashMap<EClass, ModelExtensionDescriptor[]>();
+	final int customTasksVersion;
+	final int modelExtensionsVersion;
+
+	CustomTaskIndex(List<CustomTaskDescriptor> customTasks, int customTasksVersion,
+			List<ModelExtensionDescriptor> modelExtensions, int modelExtensionsVersion) {
+		this.customTasks = customTasks.toArray(new CustomTaskDescriptor[customTasks.size()]);
+		this.modelExtensions = modelExtensions.toArray(new ModelExtensionDescriptor[modelExtensions.size()]);
+		this.customTasksVersion = customTasksVersion;
+		this.modelExtensionsVersion = modelExtensionsVersion;
+		discriminatorNames = new String[this.customTasks.length];
+		for (int i=0; i<this.customTasks.length; ++i) {
+			CustomTaskDescriptor ctd = this.customTasks[i];
+			if (ctd.getId()!=null) {
+				String key = foldCase(ctd.getId());
+				if (!idMap.containsKey(key))
+					idMap.put(key, ctd);
+			}
+			ICustomElementFeatureContainer fc = ctd.getFeatureContainer();
+			if (fc instanceof ICustomElementDiscriminator) {
+				ICustomElementDiscriminator d = (ICustomElementDiscriminator) fc;
+				String name = d.getDiscriminatorName();
+				Collection<String> values = d.getDiscriminatorValues();
+				if (name!=null && values!=null) {
+					discriminatorNames[i] = name;
+					Map<String, Set<Integer>> valueMap = discriminators.get(name);
+					if (valueMap==null) {
+						valueMap = new HashMap<String, Set<Integer>>();
+						discriminators.put(name, valueMap);
+					}
+					for (String v : values) {
+						if (v==null)
+							continue;
+						Set<Integer> set = valueMap.get(v);
+						if (set==null) {
+							set = new HashSet<Integer>();
+							valueMap.put(v, set);
+						}
+						set.add(i);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the Custom Task Descriptor with the given ID, ignoring case.
+	 *
+	 * @param id the Custom Task ID.
+	 * @return the first descriptor with this ID or null.
+	 */
+	public CustomTaskDescriptor getCustomTask(String id) {
+		if (id==null)
+			return null;
+		return idMap.get(foldCase(id));
+	}
+
+	/**
+	 * Check if objects of the given type may be Custom Tasks. Objects of any
+	 * other type never need to be classified.
+	 *
+	 * @param eClass the object type.
+	 * @return true if at least one Custom Task Descriptor applies to the type.
+	 */
+	public boolean mayBeCustomTask(EClass eClass) {
+		return getCandidates(eClass).length>0;
+	}
+
+	/**
+	 * Return the ID of the Custom Task that the given object represents.
+	 *
+	 * @param object the object to classify.
+	 * @return the Custom Task ID or null if the object is not a Custom Task.
+	 * @see TargetRuntime#getCustomTaskId(EObject)
+	 */
+	public String getCustomTaskId(EObject object) {
+		if (object==null)
+			return null;
+		int[] c = getCandidates(object.eClass());
+		if (c.length==0)
+			return null;
+		Set<Integer> matched = null;
+		for (int i : c) {
+			CustomTaskDescriptor ctd = customTasks[i];
+			if (discriminatorNames[i]!=null) {
+				if (matched==null)
+					matched = getDiscriminatedMatches(object);
+				if (!matched.contains(i))
+					continue;
+			}
+			String id = ctd.getFeatureContainer().getId(object);
+			if (ctd.getId().equals(id))
+				return id;
+		}
+		return null;
+	}
+
+	/**
+	 * Classify an object from the value of one of its extension attributes,
+	 * before it is constructed. This only succeeds if the attribute alone
+	 * decides the classification, that is if no Custom Task which is
+	 * identified otherwise takes precedence.
+	 *
+	 * @param eClass the type of the object to be constructed.
+	 * @param attributeName the local name of the extension attribute.
+	 * @param value the attribute value.
+	 * @return the Custom Task ID, or null if the attribute does not decide the
+	 *         classification.
+	 */
+	public String getCustomTaskId(EClass eClass, String attributeName, String value) {
+		Map<String, Set<Integer>> valueMap = discriminators.get(attributeName);
+		if (valueMap==null || value==null)
+			return null;
+		Set<Integer> matched = valueMap.get(value);
+		if (matched==null)
+			return null;
+		for (int i : getCandidates(eClass)) {
+			// some other Custom Task may take precedence
+			if (!attributeName.equals(discriminatorNames[i]))
+				return null;
+			if (matched.contains(i))
+				return customTasks[i].getId();
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if any Custom Task is identified by the value of an
+	 *         extension attribute with the given local name.
+	 */
+	public boolean isDiscriminator(String attributeName) {
+		return discriminators.containsKey(attributeName);
+	}
+
+	/**
+	 * Return the Model Extension Descriptors that must be applied to a new
+	 * object of the given type: first those for the type itself, then those
+	 * for its supertypes, in the order in which they are defined.
+	 *
+	 * @param eClass the object type.
+	 * @return the descriptors, never null.
+	 */
+	public ModelExtensionDescriptor[] getModelExtensions(EClass eClass) {
+		ModelExtensionDescriptor[] result = extensions.get(eClass);
+		if (result==null) {
+			List<ModelExtensionDescriptor> list = new ArrayList<ModelExtensionDescriptor>();
+			String className = eClass.getName();
+			for (ModelExtensionDescriptor med : modelExtensions) {
+				if (className.equals(med.getType()))
+					list.add(med);
+			}
+			for (ModelExtensionDescriptor med : modelExtensions) {
+				for (EClass st : eClass.getEAllSuperTypes()) {
+					if (st.getName().equals(med.getType()))
+						list.add(med);
+				}
+			}
+			result = list.isEmpty() ? NO_EXTENSIONS : list.toArray(new ModelExtensionDescriptor[list.size()]);
+			extensions.put(eClass, result);
+		}
+		return result;
+	}
+
+	private int[] getCandidates(EClass eClass) {
+		int[] result = candidates.get(eClass);
+		if (result==null) {
+			Set<String> names = new HashSet<String>();
+			names.add(eClass.getName());
+			for (EClass st : eClass.getEAllSuperTypes())
+				names.add(st.getName());
+			List<Integer> list = new ArrayList<Integer>();
+			for (int i=0; i<customTasks.length; ++i) {
+				// a descriptor without a type may apply to anything
+				String type = customTasks[i].getType();
+				if (type==null || names.contains(type))
+					list.add(i);
+			}
+			if (list.isEmpty())
+				result = NO_CANDIDATES;
+			else {
+				result = new int[list.size()];
+				for (int i=0; i<result.length; ++i)
+					result[i] = list.get(i);
+			}
+			candidates.put(eClass, result);
+		}
+		return result;
+	}
+
+	private Set<Integer> getDiscriminatedMatches(EObject object) {
+		Set<Integer> result = new HashSet<Integer>();
+		for (EStructuralFeature f : ModelDecorator.getAnyAttributes(object)) {
+			Map<String, Set<Integer>> valueMap = discriminators.get(f.getName());
+			Object value = valueMap==null ? null : object.eGet(f);
+			if (value!=null) {
+				Set<Integer> matched = valueMap.get(value.toString());
+				if (matched!=null)
+					result.addAll(matched);
+			}
+		}
+		return result;
+	}
+
+	private static String foldCase(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i=0; i<s.length(); ++i)
+			sb.append(Character.toLowerCase(Character.toUpperCase(s.charAt(i))));
+		return sb.toString();
+	}
+}
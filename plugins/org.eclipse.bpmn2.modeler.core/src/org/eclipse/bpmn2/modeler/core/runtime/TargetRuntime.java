@@ -19,13 +19,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.bpmn2.Bpmn2Package;
 import org.eclipse.bpmn2.modeler.core.IBpmn2RuntimeExtension;
 import org.eclipse.bpmn2.modeler.core.LifecycleEvent;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceImpl;
+import org.eclipse.bpmn2.modeler.core.model.SerializationPlanCache;
 import org.eclipse.bpmn2.modeler.core.preferences.ShapeStyle;
 import org.eclipse.bpmn2.modeler.core.runtime.ModelExtensionDescriptor.Property;
 import org.eclipse.bpmn2.modeler.core.utils.ErrorDialog;
@@ -36,12 +36,16 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IContributor;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EClassifier;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.graphiti.ui.editor.DiagramEditor;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.part.FileEditorInput;
@@ -65,7 +69,9 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	// our cached registry of target runtimes contributed by other plugins
 	private static List<TargetRuntime> targetRuntimes;
 	// the Target Runtime for the currently active BPMN2 Editor
-	private static TargetRuntime currentRuntime;
+	private static volatile TargetRuntime currentRuntime;
+	// the Target Runtime that overrides all others on the current thread, see enterRuntime()
+	private static final ThreadLocal<TargetRuntime> threadRuntime = new ThreadLocal<TargetRuntime>();
 	
 	// the Target Runtime properties
 	private String name;
@@ -89,6 +95,9 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	protected List<TypeLanguageDescriptor> typeLanguageDescriptors;
 	protected List<ExpressionLanguageDescriptor> expressionLanguageDescriptors;
 	protected List<ServiceImplementationDescriptor> serviceImplementationDescriptors;
+	protected List<ValidatorDescriptor> validatorDescriptors;
+	// classification of Custom Tasks and Model Extensions, rebuilt when their lists change
+	private volatile CustomTaskIndex customTaskIndex;
 
 	// all of the extension descriptor classes in the order in which they need to be processed
 	static Class extensionDescriptorClasses[] = {
@@ -105,6 +114,7 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 		TypeLanguageDescriptor.class,
 		ExpressionLanguageDescriptor.class,
 		ServiceImplementationDescriptor.class,
+		ValidatorDescriptor.class,
 		ShapeStyle.class,
 	};
 
@@ -352,14 +362,124 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	
 	/**
 	 * Return the current TargetRuntime.
+	 * This is the runtime entered on the calling thread with {@link #enterRuntime(TargetRuntime)},
+	 * if any, or else the runtime of the currently active BPMN2 Editor.
 	 * This can be used by any UI component that belongs to the currently active BPMN2 Editor
 	 * 
 	 * @return
 	 */
 	public static TargetRuntime getCurrentRuntime() {
-		if (currentRuntime==null)
+		TargetRuntime rt = threadRuntime.get();
+		if (rt==null)
+			rt = currentRuntime;
+		if (rt==null)
 			return getDefaultRuntime();
-		return currentRuntime;
+		return rt;
+	}
+
+	/**
+	 * Return the TargetRuntime that applies to the given model object, Resource
+	 * or ResourceSet. This is the runtime entered on the calling thread, if
+	 * any, or else the runtime bound to the context's Resource or ResourceSet
+	 * with {@link #bindRuntime(Notifier, TargetRuntime)}, or else the
+	 * {@link #getCurrentRuntime() current runtime}.
+	 * 
+	 * @param context an EObject, Resource or ResourceSet; may be null
+	 * @return the TargetRuntime, never null
+	 */
+	public static TargetRuntime getCurrentRuntime(Object context) {
+		TargetRuntime rt = threadRuntime.get();
+		if (rt==null)
+			rt = getBoundRuntime(context);
+		if (rt==null)
+			return getCurrentRuntime();
+		return rt;
+	}
+
+	/**
+	 * Make the given TargetRuntime the current runtime of the calling thread,
+	 * regardless of the active editor, until {@link #exitRuntime(TargetRuntime)}
+	 * is called. This allows files for different runtimes to be loaded,
+	 * validated or converted on different threads at the same time:
+	 * 
+	 * <pre>
+	 * TargetRuntime previous = TargetRuntime.enterRuntime(rt);
+	 * try {
+	 *     ...
+	 * }
+	 * finally {
+	 *     TargetRuntime.exitRuntime(previous);
+	 * }
+	 * </pre>
+	 * 
+	 * @param rt the TargetRuntime, or null to remove the thread's runtime
+	 * @return the thread's previous runtime, which must be passed to
+	 *         {@link #exitRuntime(TargetRuntime)}
+	 */
+	public static TargetRuntime enterRuntime(TargetRuntime rt) {
+		TargetRuntime previous = threadRuntime.get();
+		if (rt==null)
+			threadRuntime.remove();
+		else
+			threadRuntime.set(rt);
+		return previous;
+	}
+
+	/**
+	 * Restore the runtime of the calling thread that was in effect before
+	 * {@link #enterRuntime(TargetRuntime)}.
+	 * 
+	 * @param previous the value returned by {@link #enterRuntime(TargetRuntime)}
+	 */
+	public static void exitRuntime(TargetRuntime previous) {
+		enterRuntime(previous);
+	}
+
+	/**
+	 * Bind a TargetRuntime to a ResourceSet or Resource. Objects in the
+	 * ResourceSet or Resource are loaded, saved and created for this runtime,
+	 * whichever editor is active.
+	 * 
+	 * @param context a ResourceSet or Resource
+	 * @param rt the TargetRuntime, or null to remove the binding
+	 */
+	public static void bindRuntime(Notifier context, TargetRuntime rt) {
+		RuntimeBinding binding = (RuntimeBinding) EcoreUtil.getExistingAdapter(context, TargetRuntime.class);
+		if (rt==null) {
+			if (binding!=null)
+				context.eAdapters().remove(binding);
+		}
+		else if (binding==null) {
+			context.eAdapters().add(new RuntimeBinding(rt));
+		}
+		else {
+			binding.runtime = rt;
+		}
+	}
+
+	/**
+	 * Return the TargetRuntime bound to the given object's Resource or ResourceSet.
+	 * 
+	 * @param context an EObject, Resource or ResourceSet; may be null
+	 * @return the bound TargetRuntime, or null if there is none
+	 * @see #bindRuntime(Notifier, TargetRuntime)
+	 */
+	public static TargetRuntime getBoundRuntime(Object context) {
+		if (context instanceof EObject)
+			context = ((EObject) context).eResource();
+		if (context instanceof Resource) {
+			Resource resource = (Resource) context;
+			RuntimeBinding binding = (RuntimeBinding) EcoreUtil.getExistingAdapter(resource, TargetRuntime.class);
+			if (binding!=null)
+				return binding.runtime;
+			context = resource.getResourceSet();
+		}
+		if (context instanceof ResourceSet) {
+			RuntimeBinding binding = (RuntimeBinding) EcoreUtil.getExistingAdapter((ResourceSet) context, TargetRuntime.class);
+			if (binding!=null)
+				return binding.runtime;
+		}
+		return null;
 	}
 	
 	/**
@@ -402,6 +522,7 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	public void registerExtensionResourceFactory(ResourceSet resourceSet) {
 		resourceSet.getResourceFactoryRegistry().getContentTypeToFactoryMap().put(
 				Bpmn2ModelerResourceImpl.BPMN2_CONTENT_TYPE_ID, getModelDescriptor().getResourceFactory());
+		bindRuntime(resourceSet, this);
 	}
 	
 	public static List<TargetRuntime> createTargetRuntimes() {
@@ -438,12 +559,8 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	
 	static TargetRuntime getRuntime(IConfigurationElement e) {
 		TargetRuntime rt = getRuntime( getRuntimeId(e) );
-		if (rt==null) {
-			if (currentRuntime!=null)
-				rt = currentRuntime;
-			else
-				rt = getDefaultRuntime();
-		}
+		if (rt==null)
+			rt = getCurrentRuntime();
 		return rt;
 	}
 	
@@ -475,23 +592,11 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	 * Custom Task convenience methods
 	 */
 	public CustomTaskDescriptor getCustomTask( String id ) {
-		Iterator<CustomTaskDescriptor> ctIter = customTaskDescriptors.iterator();
-		while (ctIter.hasNext()) {
-			CustomTaskDescriptor ctd = ctIter.next();
-			if (ctd.getId().equalsIgnoreCase(id)) 
-				return ctd;
-		}
-		return null;
+		return getCustomTaskIndex().getCustomTask(id);
 	}
 
 	public boolean customTaskExists ( String id ) {
-		Iterator<CustomTaskDescriptor> ctIter = customTaskDescriptors.iterator();
-		while (ctIter.hasNext()) {
-			CustomTaskDescriptor ctd = ctIter.next();
-			if (ctd.getId().equalsIgnoreCase(id)) 
-				return true;
-		}
-		return false;
+		return getCustomTask(id)!=null;
 	}
 	
 	public void addCustomTask(CustomTaskDescriptor ct) {
@@ -501,12 +606,27 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	
 	// FIXME: {@see ICustomElementFeatureContainer#getId(EObject)}
 	public String getCustomTaskId(EObject object) {
-		for (CustomTaskDescriptor ctd : getCustomTaskDescriptors()) {
-			String id = ctd.getFeatureContainer().getId(object);
-			if (ctd.getId().equals(id))
-				return id;
+		return getCustomTaskIndex().getCustomTaskId(object);
+	}
+	
+	/**
+	 * Return the classification index of the Custom Task and Model Extension
+	 * Descriptors of this Target Runtime. The index is rebuilt after these
+	 * descriptor lists have been modified.
+	 * 
+	 * @return the current index, never null.
+	 */
+	public CustomTaskIndex getCustomTaskIndex() {
+		DescriptorList<CustomTaskDescriptor> ctds = (DescriptorList<CustomTaskDescriptor>) getCustomTaskDescriptors();
+		DescriptorList<ModelExtensionDescriptor> meds = (DescriptorList<ModelExtensionDescriptor>) getModelExtensionDescriptors();
+		CustomTaskIndex index = customTaskIndex;
+		if (index==null ||
+				index.customTasksVersion!=ctds.getModificationCount() ||
+				index.modelExtensionsVersion!=meds.getModificationCount()) {
+			index = new CustomTaskIndex(ctds, ctds.getModificationCount(), meds, meds.getModificationCount());
+			customTaskIndex = index;
 		}
-		return null;
+		return index;
 	}
 	
 	/*
@@ -776,20 +896,22 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	 */
 	public static void loadExtensions(TargetRuntime targetRuntime, IConfigurationElement[] elements, IFile file) throws TargetRuntimeConfigurationException {
 
-		TargetRuntime oldCurrentRuntime = currentRuntime;
-		currentRuntime = targetRuntime;
+		TargetRuntime previous = enterRuntime(targetRuntime);
 		try {
 			ConfigurationElementSorter.sort(elements);
 
 			unloadExtensions(file);
 			
 			for (IConfigurationElement e : elements) {
-				currentRuntime = getRuntime(e);
-				createRuntimeExtensionDescriptor(currentRuntime,e,file);
+				TargetRuntime rt = getRuntime(e);
+				enterRuntime(rt);
+				createRuntimeExtensionDescriptor(rt,e,file);
 			}
 		}
 		finally {
-			currentRuntime = oldCurrentRuntime;
+			exitRuntime(previous);
+			// model extensions may have added or removed features
+			SerializationPlanCache.clear();
 		}
 	}
 
@@ -810,6 +932,8 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 			for (IRuntimeExtensionDescriptor d : disposed) {
 				d.dispose();
 			}
+			if (!disposed.isEmpty())
+				SerializationPlanCache.clear();
 		}
 
 	}
@@ -876,7 +1000,7 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	public List<CustomTaskDescriptor> getCustomTaskDescriptors()
 	{
 		if (customTaskDescriptors==null) {
-			customTaskDescriptors = new ArrayList<CustomTaskDescriptor>();
+			customTaskDescriptors = new DescriptorList<CustomTaskDescriptor>();
 		}
 		return customTaskDescriptors;
 	}
@@ -884,7 +1008,7 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 	public List<ModelExtensionDescriptor> getModelExtensionDescriptors()
 	{
 		if (modelExtensionDescriptors==null) {
-			modelExtensionDescriptors = new ArrayList<ModelExtensionDescriptor>();
+			modelExtensionDescriptors = new DescriptorList<ModelExtensionDescriptor>();
 		}
 		return modelExtensionDescriptors;
 	}
@@ -1091,6 +1215,12 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 		return serviceImplementationDescriptors;
 	}
 	
+	public List<ValidatorDescriptor> getValidatorDescriptors() {
+		if (validatorDescriptors==null)
+			validatorDescriptors = new ArrayList<ValidatorDescriptor>();
+		return validatorDescriptors;
+	}
+	
 	public static class ConfigurationElementSorter {
 		public static void sort(IConfigurationElement[] elements) {
 			Arrays.sort(elements, new Comparator<IConfigurationElement>() {
@@ -1127,4 +1257,31 @@ public class TargetRuntime extends BaseRuntimeExtensionDescriptor implements IRu
 			});
 		}
 	}
+
+	/**
+	 * Binds a TargetRuntime to the ResourceSet or Resource that it adapts.
+	 */
+	private static class RuntimeBinding extends AdapterImpl {
+		volatile TargetRuntime runtime;
+
+		RuntimeBinding(TargetRuntime runtime) {
+			this.runtime = runtime;
+		}
+
+		@Override
+		public boolean isAdapterForType(Object type) {
+			return type==TargetRuntime.class;
+		}
+	}
+
+	/**
+	 * A descriptor list that exposes its modification count, so that indexes
+	 * derived from it can tell when they are out of date.
+	 */
+	@SuppressWarnings("serial")
+	private static class DescriptorList<T> extends ArrayList<T> {
+		int getModificationCount() {
+			return modCount;
+		}
+	}
 }
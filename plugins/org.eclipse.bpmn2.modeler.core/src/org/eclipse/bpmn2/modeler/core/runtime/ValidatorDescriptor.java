@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.runtime;
+
+import org.eclipse.bpmn2.modeler.core.Activator;
+import org.eclipse.bpmn2.modeler.core.validation.validators.ValidatorRegistry;
+import org.eclipse.core.runtime.IConfigurationElement;
+
+/**
+ * Target Runtime Extension Descriptor class for BPMN2 element validators.
+ * Instances of this class correspond to <validator> extension elements in the extension's plugin.xml
+ * See the description of the "validator" element in the org.eclipse.bpmn2.modeler.runtime extension point schema.
+ */
+public class ValidatorDescriptor extends BaseRuntimeExtensionDescriptor {
+
+	public final static String EXTENSION_NAME = "validator"; //$NON-NLS-1$
+
+	protected String type;
+	protected String validatorClassName;
+
+	public ValidatorDescriptor(IConfigurationElement e) {
+		super(e);
+		type = e.getAttribute("type"); //$NON-NLS-1$
+		validatorClassName = e.getAttribute("class"); //$NON-NLS-1$
+	}
+
+	public String getExtensionName() {
+		return EXTENSION_NAME;
+	}
+
+	/**
+	 * Return the fully qualified name of the BPMN2 model interface that is
+	 * handled by this validator, e.g. "org.eclipse.bpmn2.Process"
+	 *
+	 * @return the model type name
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Load the validator class from the Target Runtime plug-in.
+	 *
+	 * @return the validator class, or null if it could not be loaded.
+	 */
+	public Class<?> getValidatorClass() {
+		try {
+			ClassLoader cl = this.getRuntime().getRuntimeExtension().getClass().getClassLoader();
+			return Class.forName(validatorClassName, true, cl);
+		} catch (Exception e) {
+			Activator.logError(e);
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.bpmn2.modeler.core.runtime.BaseRuntimeExtensionDescriptor#setRuntime(org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime)
+	 */
+	@Override
+	public void setRuntime(TargetRuntime targetRuntime) {
+		super.setRuntime(targetRuntime);
+		ValidatorRegistry.reset(targetRuntime);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.bpmn2.modeler.core.runtime.BaseRuntimeExtensionDescriptor#dispose()
+	 */
+	@Override
+	public void dispose() {
+		super.dispose();
+		ValidatorRegistry.reset(targetRuntime);
+	}
+}
@@ -0,0 +1,480 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.Lane;
+import org.eclipse.bpmn2.di.BPMNShape;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.graphiti.datatypes.IDimension;
+import org.eclipse.graphiti.datatypes.ILocation;
+import org.eclipse.graphiti.mm.algorithms.GraphicsAlgorithm;
+import org.eclipse.graphiti.mm.algorithms.styles.Point;
+import org.eclipse.graphiti.mm.pictograms.ContainerShape;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
+import org.eclipse.graphiti.mm.pictograms.PictogramLink;
+import org.eclipse.graphiti.mm.pictograms.Shape;
+import org.eclipse.graphiti.services.Graphiti;
+
+/**
+ * A spatial index of the BPMN shapes in a Graphiti Diagram, used by the
+ * connection routers for collision detection.
+ * <p>
+ * The absolute bounds of every ContainerShape that is linked to a BPMNShape
+ * (except Lanes) are cached in a uniform grid, so that finding the shapes that
+ * may intersect a line segment or rectangle only needs to look at the grid
+ * cells covered by it, instead of testing every shape in the Diagram.
+ * <p>
+ * The index is attached to the Diagram as an adapter and is kept up to date
+ * by the notifications that result from adding, removing, moving and resizing
+ * shapes, whether this is done by an editor feature or by undo/redo. Changed
+ * shapes are only marked as "dirty" when the notification is received; their
+ * bounds, and those of all of their children, are recalculated lazily before
+ * the next query.
+ */
+public class DiagramSpatialIndex extends EContentAdapter {
+
+	private static final int CELL_SIZE = 256;
+
+	/**
+	 * A shape and its absolute bounds at the time it was indexed.
+	 */
+	private static class Entry {
+		final ContainerShape shape;
+		final int order;
+		Rectangle bounds;
+
+		Entry(ContainerShape shape, int order) {
+			this.shape = shape;
+			this.order = order;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return e1.order - e2.order;
+		}
+	};
+
+	private final Diagram diagram;
+	private final Map<ContainerShape, Entry> entries = new LinkedHashMap<ContainerShape, Entry>();
+	private final Map<Long, List<Entry>> cells = new HashMap<Long, List<Entry>>();
+	private final Set<Shape> dirty = new LinkedHashSet<Shape>();
+	private boolean initialized = false;
+	private int nextOrder = 0;
+	private long modificationCount = 0;
+
+	private DiagramSpatialIndex(Diagram diagram) {
+		this.diagram = diagram;
+	}
+
+	/**
+	 * Return the spatial index for the given Diagram, creating and attaching
+	 * it if necessary.
+	 *
+	 * @param diagram the Graphiti Diagram.
+	 * @return the Diagram's spatial index.
+	 */
+	public static DiagramSpatialIndex getIndex(Diagram diagram) {
+		DiagramSpatialIndex index = findIndex(diagram);
+		if (index==null) {
+			index = new DiagramSpatialIndex(diagram);
+			diagram.eAdapters().add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Return the cached absolute bounds of the given shape, if its Diagram
+	 * has a spatial index and the shape is in it. This does not create an
+	 * index.
+	 *
+	 * @param shape a shape.
+	 * @return a copy of the shape's bounds or null.
+	 */
+	public static Rectangle findBounds(Shape shape) {
+		Diagram diagram = Graphiti.getPeService().getDiagramForShape(shape);
+		if (diagram!=null && shape instanceof ContainerShape) {
+			DiagramSpatialIndex index = findIndex(diagram);
+			if (index!=null)
+				return index.getBounds((ContainerShape) shape);
+		}
+		return null;
+	}
+
+	private static DiagramSpatialIndex findIndex(Diagram diagram) {
+		for (Adapter a : diagram.eAdapters()) {
+			if (a instanceof DiagramSpatialIndex)
+				return (DiagramSpatialIndex) a;
+		}
+		return null;
+	}
+
+	public Diagram getDiagram() {
+		return diagram;
+	}
+
+	/**
+	 * Return all indexed shapes, in the order in which they were first added.
+	 *
+	 * @return a list of shapes.
+	 */
+	public List<ContainerShape> getShapes() {
+		update();
+		return new ArrayList<ContainerShape>(entries.keySet());
+	}
+
+	/**
+	 * Return the absolute bounds of the given shape.
+	 *
+	 * @param shape a shape.
+	 * @return a copy of the shape's bounds or null if it is not indexed.
+	 */
+	public Rectangle getBounds(ContainerShape shape) {
+		update();
+		Entry e = entries.get(shape);
+		return e==null ? null : e.bounds.getCopy();
+	}
+
+	/**
+	 * Return the indexed shapes whose bounds intersect or touch the given
+	 * rectangle.
+	 *
+	 * @param r a rectangle in absolute Diagram coordinates.
+	 * @return a list of shapes, in the same order as {@link #getShapes()}.
+	 */
+	public List<ContainerShape> findShapes(Rectangle r) {
+		update();
+		List<Entry> found = new ArrayList<Entry>();
+		Set<Entry> seen = new HashSet<Entry>();
+		int minCol = cell(r.x);
+		int maxCol = cell(r.x + r.width);
+		int minRow = cell(r.y);
+		int maxRow = cell(r.y + r.height);
+		for (int col=minCol; col<=maxCol; ++col) {
+			for (int row=minRow; row<=maxRow; ++row) {
+				List<Entry> list = cells.get(key(col,row));
+				if (list!=null) {
+					for (Entry e : list) {
+						if (seen.add(e) && GraphicsUtil.intersects(
+								e.bounds.x, e.bounds.y, e.bounds.width, e.bounds.height,
+								r.x, r.y, r.width, r.height)) {
+							found.add(e);
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(found, ORDER);
+		List<ContainerShape> result = new ArrayList<ContainerShape>(found.size());
+		for (Entry e : found)
+			result.add(e.shape);
+		return result;
+	}
+
+	/**
+	 * Return the indexed shapes whose bounds intersect the bounding box of the
+	 * line segment between the two given points. These are the candidates for
+	 * a collision with the line segment.
+	 *
+	 * @param p1 the start of the line segment.
+	 * @param p2 the end of the line segment.
+	 * @return a list of shapes.
+	 */
+	public List<ContainerShape> findShapes(Point p1, Point p2) {
+		int x = Math.min(p1.getX(), p2.getX());
+		int y = Math.min(p1.getY(), p2.getY());
+		return findShapes(new Rectangle(x, y,
+				Math.abs(p1.getX() - p2.getX()), Math.abs(p1.getY() - p2.getY())));
+	}
+
+	/**
+	 * Check if the line segment between the two given points crosses the
+	 * interior of the given shape. This is the same test as
+	 * {@link GraphicsUtil#intersectsLine(Shape, Point, Point)} but uses the
+	 * cached shape bounds.
+	 *
+	 * @param shape an indexed shape.
+	 * @param p1 the start of the line segment.
+	 * @param p2 the end of the line segment.
+	 * @return true if the line segment intersects the shape.
+	 */
+	public boolean intersectsLine(ContainerShape shape, Point p1, Point p2) {
+		update();
+		Entry e = entries.get(shape);
+		if (e==null)
+			return GraphicsUtil.intersectsLine(shape, p1, p2);
+		int x = e.bounds.x;
+		int y = e.bounds.y;
+		int w = e.bounds.width;
+		int h = e.bounds.height;
+		// adjust the shape rectangle so that a point touching one of the edges
+		// is not considered to be "intersecting"
+		if (w>2) {
+			x += 1;
+			w -= 2;
+		}
+		if (h>2) {
+			y += 1;
+			h -= 2;
+		}
+		return GraphicsUtil.RectangleIntersectsLine.intersectsLine(
+				p1.getX(), p1.getY(), p2.getX(), p2.getY(), x, y, w, h);
+	}
+
+	/**
+	 * Check if the given point lies inside the given shape. This is the same
+	 * test as {@link GraphicsUtil#contains(Shape, Point)} but uses the cached
+	 * shape bounds.
+	 *
+	 * @param shape an indexed shape.
+	 * @param p a point in absolute Diagram coordinates.
+	 * @return true if the point is inside the shape.
+	 */
+	public boolean contains(ContainerShape shape, Point p) {
+		update();
+		Entry e = entries.get(shape);
+		if (e==null)
+			return GraphicsUtil.contains(shape, p);
+		int x = p.getX();
+		int y = p.getY();
+		return x>e.bounds.x && x<e.bounds.x + e.bounds.width &&
+				y>e.bounds.y && y<e.bounds.y + e.bounds.height;
+	}
+
+	/**
+	 * Return a counter that is incremented whenever a shape is added to or
+	 * removed from the index, or its bounds change. Clients that derive data
+	 * from the shape layout can compare this with the value they saw when
+	 * the data was calculated to find out if it is stale.
+	 *
+	 * @return the modification count.
+	 */
+	public long getModificationCount() {
+		update();
+		return modificationCount;
+	}
+
+	/**
+	 * Discard all cached bounds. The index is rebuilt on the next query.
+	 */
+	public void clear() {
+		entries.clear();
+		cells.clear();
+		dirty.clear();
+		initialized = false;
+		++modificationCount;
+	}
+
+	/**
+	 * Recalculate the bounds of all shapes that have changed since the last
+	 * query, or build the index if this is the first query.
+	 */
+	private void update() {
+		if (!initialized) {
+			initialized = true;
+			dirty.clear();
+			index(diagram);
+		}
+		else if (!dirty.isEmpty()) {
+			List<Shape> shapes = new ArrayList<Shape>(dirty);
+			dirty.clear();
+			for (Shape shape : shapes) {
+				if (Graphiti.getPeService().getDiagramForShape(shape)==diagram)
+					index(shape);
+				else
+					unindex(shape);
+			}
+		}
+	}
+
+	private void index(Shape shape) {
+		if (shape instanceof ContainerShape) {
+			ContainerShape cs = (ContainerShape) shape;
+			if (cs!=diagram) {
+				if (isIndexed(cs))
+					put(cs);
+				else
+					remove(cs);
+			}
+			for (Shape child : cs.getChildren()) {
+				index(child);
+			}
+		}
+	}
+
+	private void unindex(Shape shape) {
+		if (shape instanceof ContainerShape) {
+			ContainerShape cs = (ContainerShape) shape;
+			remove(cs);
+			for (Shape child : cs.getChildren()) {
+				unindex(child);
+			}
+		}
+	}
+
+	private boolean isIndexed(ContainerShape shape) {
+		BPMNShape bpmnShape = BusinessObjectUtil.getFirstElementOfType(shape, BPMNShape.class);
+		if (bpmnShape==null)
+			return false;
+		// ignore some containers altogether
+		BaseElement be = bpmnShape.getBpmnElement();
+		if (be instanceof Lane)
+			return false;
+		return shape.getGraphicsAlgorithm()!=null;
+	}
+
+	private void put(ContainerShape shape) {
+		ILocation loc = Graphiti.getPeService().getLocationRelativeToDiagram(shape);
+		IDimension size = GraphicsUtil.calculateSize(shape);
+		Rectangle bounds = new Rectangle(loc.getX(), loc.getY(), size.getWidth(), size.getHeight());
+		Entry e = entries.get(shape);
+		if (e!=null) {
+			if (bounds.equals(e.bounds))
+				return;
+			removeFromCells(e);
+		}
+		else {
+			e = new Entry(shape, nextOrder++);
+			entries.put(shape, e);
+		}
+		e.bounds = bounds;
+		addToCells(e);
+		++modificationCount;
+	}
+
+	private void remove(ContainerShape shape) {
+		Entry e = entries.remove(shape);
+		if (e!=null) {
+			removeFromCells(e);
+			++modificationCount;
+		}
+	}
+
+	private void addToCells(Entry e) {
+		Rectangle b = e.bounds;
+		for (int col=cell(b.x); col<=cell(b.x + b.width); ++col) {
+			for (int row=cell(b.y); row<=cell(b.y + b.height); ++row) {
+				Long key = key(col,row);
+				List<Entry> list = cells.get(key);
+				if (list==null) {
+					list = new ArrayList<Entry>();
+					cells.put(key, list);
+				}
+				list.add(e);
+			}
+		}
+	}
+
+	private void removeFromCells(Entry e) {
+		Rectangle b = e.bounds;
+		for (int col=cell(b.x); col<=cell(b.x + b.width); ++col) {
+			for (int row=cell(b.y); row<=cell(b.y + b.height); ++row) {
+				Long key = key(col,row);
+				List<Entry> list = cells.get(key);
+				if (list!=null) {
+					list.remove(e);
+					if (list.isEmpty())
+						cells.remove(key);
+				}
+			}
+		}
+	}
+
+	private static int cell(int coordinate) {
+		return (int) Math.floor((double) coordinate / CELL_SIZE);
+	}
+
+	private static Long key(int col, int row) {
+		return Long.valueOf(((long) col << 32) | (row & 0xffffffffL));
+	}
+
+	private void markDirty(Object object) {
+		if (initialized && object instanceof Shape)
+			dirty.add((Shape) object);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.ecore.util.EContentAdapter#notifyChanged(org.eclipse.emf.common.notify.Notification)
+	 */
+	@Override
+	public void notifyChanged(Notification notification) {
+		super.notifyChanged(notification);
+		if (notification.isTouch())
+			return;
+		Object notifier = notification.getNotifier();
+		if (notifier instanceof GraphicsAlgorithm) {
+			// the shape was moved or resized
+			markDirty(((GraphicsAlgorithm) notifier).eContainer());
+		}
+		else if (notifier instanceof PictogramLink) {
+			// the shape's business object has changed
+			markDirty(((PictogramLink) notifier).getPictogramElement());
+		}
+		else if (notifier instanceof Shape) {
+			switch (notification.getEventType()) {
+			case Notification.ADD:
+				markDirty(notification.getNewValue());
+				break;
+			case Notification.SET:
+				// e.g. the shape's GraphicsAlgorithm was replaced
+				markDirty(notifier);
+				break;
+			case Notification.ADD_MANY:
+				for (Object o : (List<?>) notification.getNewValue())
+					markDirty(o);
+				break;
+			case Notification.REMOVE:
+				markDirty(notification.getOldValue());
+				break;
+			case Notification.REMOVE_MANY:
+				for (Object o : (List<?>) notification.getOldValue())
+					markDirty(o);
+				break;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.ecore.util.EContentAdapter#addAdapter(org.eclipse.emf.common.notify.Notifier)
+	 */
+	@Override
+	protected void addAdapter(Notifier notifier) {
+		// Only the shape hierarchy and the objects that determine a shape's
+		// bounds and business object are of interest; connections, anchors,
+		// colors, fonts, nested GraphicsAlgorithms, etc. are not.
+		if (notifier instanceof Shape || notifier instanceof PictogramLink)
+			super.addAdapter(notifier);
+		else if (notifier instanceof GraphicsAlgorithm &&
+				((EObject) notifier).eContainer() instanceof Shape)
+			super.addAdapter(notifier);
+	}
+}
@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.emf.common.util.URI;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The root element of an XML document along with the namespaces declared on
+ * it. This is all that is needed to decide the content type of a BPMN2 file
+ * and the Target Runtime it was written for.
+ * <p>
+ * Headers of files are cached by location, modification stamp and length, so
+ * that the content describer and every Target Runtime extension asking about
+ * the same file share a single parse. Parsing stops at the root element and
+ * does not hold any global lock, so that files can be sniffed concurrently.
+ */
+public class DocumentHeader {
+
+	private static final int MAX_CACHED_HEADERS = 512;
+	private static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd"; //$NON-NLS-1$
+	// stands for a file that is not an XML document
+	private static final DocumentHeader NONE = new DocumentHeader(null, null, null, Collections.<String, String>emptyMap());
+
+	private static final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+	private static SAXParserFactory parserFactory;
+
+	private final String namespaceURI;
+	private final String localName;
+	private final String targetNamespace;
+	private final Map<String, String> namespaces;
+
+	private static class CacheEntry {
+		final long modificationStamp;
+		final long length;
+		final DocumentHeader header;
+
+		CacheEntry(long modificationStamp, long length, DocumentHeader header) {
+			this.modificationStamp = modificationStamp;
+			this.length = length;
+			this.header = header;
+		}
+	}
+
+	private DocumentHeader(String namespaceURI, String localName, String targetNamespace, Map<String, String> namespaces) {
+		this.namespaceURI = namespaceURI;
+		this.localName = localName;
+		this.targetNamespace = targetNamespace;
+		this.namespaces = namespaces;
+	}
+
+	/**
+	 * @return the namespace URI of the root element.
+	 */
+	public String getNamespaceURI() {
+		return namespaceURI;
+	}
+
+	/**
+	 * @return the local name of the root element.
+	 */
+	public String getLocalName() {
+		return localName;
+	}
+
+	/**
+	 * @return the value of the root element's "targetNamespace" attribute, or
+	 *         null.
+	 */
+	public String getTargetNamespace() {
+		return targetNamespace;
+	}
+
+	/**
+	 * @return the namespace URIs declared on the root element, keyed by
+	 *         prefix. The default namespace has an empty prefix.
+	 */
+	public Map<String, String> getNamespaces() {
+		return namespaces;
+	}
+
+	/**
+	 * Check if the document refers to the given namespace, either as its
+	 * target namespace or through a namespace declaration on the root element.
+	 *
+	 * @param namespace a namespace URI.
+	 * @return true if the root element declares the namespace.
+	 */
+	public boolean hasNamespace(String namespace) {
+		if (namespace==null)
+			return false;
+		if (namespace.equals(targetNamespace))
+			return true;
+		return namespaces.containsValue(namespace);
+	}
+
+	/**
+	 * Check if the root element has the given namespace and local name.
+	 *
+	 * @param namespace the expected namespace URI.
+	 * @param name the expected local name.
+	 * @return true if the root element matches.
+	 */
+	public boolean isRootElement(String namespace, String name) {
+		return name!=null && name.equals(localName) &&
+				namespace!=null && namespace.equals(namespaceURI);
+	}
+
+	/**
+	 * Return the header of the document at the given URI. Only platform
+	 * resource and file URIs are supported.
+	 *
+	 * @param uri the document URI.
+	 * @return the header, or null if the document does not exist, cannot be
+	 *         read or is not XML.
+	 */
+	public static DocumentHeader getHeader(URI uri) {
+		if (uri==null)
+			return null;
+		uri = uri.trimFragment();
+		if (uri.isPlatformResource()) {
+			IPath path = new Path(uri.toPlatformString(true));
+			return getHeader(ResourcesPlugin.getWorkspace().getRoot().getFile(path));
+		}
+		if (uri.isFile())
+			return getHeader(new File(uri.toFileString()));
+		return null;
+	}
+
+	/**
+	 * Return the header of the given workspace file.
+	 *
+	 * @param file a workspace file.
+	 * @return the header, or null if the file does not exist, cannot be read
+	 *         or is not XML.
+	 */
+	public static DocumentHeader getHeader(IFile file) {
+		if (file==null || !file.exists())
+			return null;
+		IPath location = file.getLocation();
+		long length = location==null ? -1 : location.toFile().length();
+		String key = file.getFullPath().toString();
+		long stamp = file.getModificationStamp();
+		CacheEntry entry = cache.get(key);
+		if (entry!=null && entry.modificationStamp==stamp && entry.length==length)
+			return toResult(entry.header);
+
+		DocumentHeader header = NONE;
+		InputStream in = null;
+		try {
+			in = file.getContents(true);
+			header = read(new InputSource(in));
+		}
+		catch (Exception e) {
+		}
+		finally {
+			close(in);
+		}
+		put(key, new CacheEntry(stamp, length, header));
+		return toResult(header);
+	}
+
+	/**
+	 * Return the header of the given file system file.
+	 *
+	 * @param file a file in the local file system.
+	 * @return the header, or null if the file does not exist, cannot be read
+	 *         or is not XML.
+	 */
+	public static DocumentHeader getHeader(File file) {
+		if (file==null || !file.isFile())
+			return null;
+		String key = file.getAbsolutePath();
+		long stamp = file.lastModified();
+		long length = file.length();
+		CacheEntry entry = cache.get(key);
+		if (entry!=null && entry.modificationStamp==stamp && entry.length==length)
+			return toResult(entry.header);
+
+		DocumentHeader header = NONE;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			header = read(new InputSource(in));
+		}
+		catch (Exception e) {
+		}
+		finally {
+			close(in);
+		}
+		put(key, new CacheEntry(stamp, length, header));
+		return toResult(header);
+	}
+
+	/**
+	 * Read the header from the given input without caching it, for contents
+	 * that do not come from a file. The caller remains responsible for
+	 * closing the input.
+	 *
+	 * @param source the XML input.
+	 * @return the header, or null if the input is not XML.
+	 */
+	public static DocumentHeader parse(InputSource source) {
+		try {
+			return toResult(read(source));
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Forget all cached headers.
+	 */
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	private static DocumentHeader read(InputSource source) throws Exception {
+		Instrumentation.count("header.parse"); //$NON-NLS-1$
+		HeaderHandler handler = new HeaderHandler();
+		try {
+			getParser().parse(source, handler);
+		}
+		catch (HeaderComplete e) {
+			return handler.header;
+		}
+		// empty document or no root element
+		return NONE;
+	}
+
+	private static DocumentHeader toResult(DocumentHeader header) {
+		return header==NONE ? null : header;
+	}
+
+	private static void put(String key, CacheEntry entry) {
+		// the cache only needs to outlive a burst of lookups for the same
+		// files, start over rather than track usage
+		if (cache.size()>=MAX_CACHED_HEADERS)
+			cache.clear();
+		cache.put(key, entry);
+	}
+
+	private static void close(InputStream in) {
+		if (in!=null) {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+			}
+		}
+	}
+
+	// only creating the parser is synchronized, parsing is not
+	private static synchronized SAXParser getParser() throws Exception {
+		if (parserFactory == null) {
+			parserFactory = SAXParserFactory.newInstance();
+			parserFactory.setNamespaceAware(true);
+			parserFactory.setValidating(false);
+			try {
+				parserFactory.setFeature(LOAD_EXTERNAL_DTD, false);
+			}
+			catch (Exception e) {
+				// not a Xerces parser
+			}
+		}
+		return parserFactory.newSAXParser();
+	}
+
+	/**
+	 * Thrown to stop parsing as soon as the root element has been seen.
+	 */
+	private static class HeaderComplete extends SAXException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class HeaderHandler extends DefaultHandler {
+		private final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+		private DocumentHeader header;
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			namespaces.put(prefix, uri);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			header = new DocumentHeader(uri, localName, attributes.getValue("targetNamespace"), //$NON-NLS-1$
+					Collections.unmodifiableMap(namespaces));
+			throw new HeaderComplete();
+		}
+	}
+}
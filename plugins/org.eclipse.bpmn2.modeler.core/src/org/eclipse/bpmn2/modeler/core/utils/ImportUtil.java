@@ -27,16 +27,15 @@ import org.eclipse.bpmn2.Interface;
 import org.eclipse.bpmn2.ItemDefinition;
 import org.eclipse.bpmn2.ItemKind;
 import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.RootElement;
 import org.eclipse.bpmn2.modeler.core.Activator;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceSetImpl;
+import org.eclipse.bpmn2.modeler.core.utils.ProjectSymbolIndex.SymbolKind;
 import org.eclipse.bpmn2.util.Bpmn2Resource;
-import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
@@ -391,6 +390,9 @@ public class ImportUtil {
 	 * the type of object being referenced. Currently only CallableElements,
 	 * XSDElementDeclarations and WSDL PortTypes are supported as referenced
 	 * objects.
+	 * <p>
+	 * The files that define the referenced object are looked up in the
+	 * {@link ProjectSymbolIndex} so that only those files need to be loaded.
 	 * 
 	 * @param object the referencing object
 	 * @param feature the feature of the referencing object that identifies the
@@ -399,98 +401,104 @@ public class ImportUtil {
 	 */
 	public EObject resolveExternalReference(EObject object, EStructuralFeature feature, String id) {
 		Resource resource = object.eResource();
-		Bpmn2ModelerResourceSetImpl rs = new Bpmn2ModelerResourceSetImpl();
+		if (resource==null || !resource.getURI().isPlatformResource())
+			return null;
 		IWorkspace workspace = ResourcesPlugin.getWorkspace();
 		IFile file = workspace.getRoot().getFile(new Path(resource.getURI().toPlatformString(true)));
-		IContainer container = file.getProject();
-		List<IFile> files = new ArrayList<IFile>();
+		IProject project = file.getProject();
+		if (project==null || !project.isAccessible())
+			return null;
+		ProjectSymbolIndex index = ProjectSymbolIndex.getIndex(project);
+		Bpmn2ModelerResourceSetImpl rs = null;
+
+		// separate the namespace prefix (if any) from the local name
+		String namespace = null;
+		String localname = id;
+		int i = id.indexOf(':');
+		if (i>0) {
+			namespace = NamespaceUtil.getNamespaceForPrefix(resource, id.substring(0,i));
+			localname = id.substring(i+1);
+		}
+
 		if (object instanceof CallActivity) {
 			if (feature == Bpmn2Package.eINSTANCE.getCallActivity_CalledElementRef()) {
 				// search other BPMN2 files in this project for a CallableElement
-				findAllFiles(container, new String[] {"bpmn","bpmn2"}, files); //$NON-NLS-1$ //$NON-NLS-2$
-				for (IFile f : files) {
-					if (f==file)
+				for (IFile f : index.findFiles(SymbolKind.CALLABLE_ELEMENT, null, id)) {
+					if (f.equals(file))
 						continue;
+					if (rs==null)
+						rs = new Bpmn2ModelerResourceSetImpl();
 					Object root = loadImport(rs, f, IMPORT_KIND_BPMN2);
-					if (root instanceof Definitions) {
-						TreeIterator<EObject> iter = ((Definitions)root).eAllContents();
-						while (iter.hasNext()) {
-							EObject o = iter.next();
-							if (o instanceof CallableElement) {
-								if (id.equals( ((CallableElement)o).getId() )) {
-									return o;
-								}
-							}
-						}
-					}
+					EObject o = findCallableElement(root, id);
+					if (o!=null)
+						return o;
 				}
 			}
 		}
 		else if (object instanceof ItemDefinition) {
 			if (feature == Bpmn2Package.eINSTANCE.getItemDefinition_StructureRef()) {
-				findAllFiles(container, new String[] {"xml","xsd"}, files); //$NON-NLS-1$ //$NON-NLS-2$
-				for (IFile f : files) {
-					if (f==file)
+				for (IFile f : index.findFiles(SymbolKind.XSD_ELEMENT, namespace, localname)) {
+					if (f.equals(file))
 						continue;
+					if (rs==null)
+						rs = new Bpmn2ModelerResourceSetImpl();
 					Object root = loadImport(rs, f, IMPORT_KIND_XML_SCHEMA);
-					if (root instanceof XSDSchema) {
-						TreeIterator<EObject> iter = ((XSDSchema)root).eAllContents();
-						while (iter.hasNext()) {
-							EObject o = iter.next();
-							if (o instanceof XSDElementDeclaration) {
-								String name = getLocalnameForObject(o);
-								if ( id.equals(name) )
-									return o;
-							}
-						}
-					}
+					EObject o = findXSDElementDeclaration(root, localname);
+					if (o!=null)
+						return o;
 				}
 			}			
 		}
 		else if (object instanceof Interface) {
 			if (feature == Bpmn2Package.eINSTANCE.getInterface_ImplementationRef()) {
 				// Look for a WSDL PortType or a Java type
-				findAllFiles(container, new String[] {"wsdl"}, files); //$NON-NLS-1$
-				for (IFile f : files) {
-					if (f==file)
+				for (IFile f : index.findFiles(SymbolKind.WSDL_PORT_TYPE, namespace, localname)) {
+					if (f.equals(file))
 						continue;
+					if (rs==null)
+						rs = new Bpmn2ModelerResourceSetImpl();
 					Object root = loadImport(rs, f, IMPORT_KIND_WSDL);
-					if (root instanceof org.eclipse.wst.wsdl.Definition) {
-						TreeIterator<EObject> iter = ((Definition)root).eAllContents();
-						while (iter.hasNext()) {
-							EObject o = iter.next();
-							if (o instanceof PortType) {
-								String name = getLocalnameForObject(o);
-								if ( id.equals(name) )
-									return o;
-							}
-						}
-					}
+					EObject o = findPortType(root, localname);
+					if (o!=null)
+						return o;
 				}
 			}
 		}
 		return null;
 	}
-	
-	private void findAllFiles(IContainer container, String[] extensions, List<IFile> files) {
-		try {
-			for (IResource res : container.members()) {
-				if (res instanceof IFile) {
-					String ext = ((IFile)res).getFileExtension();
-					for (String s : extensions) {
-						if (s.equals(ext)) {
-							files.add((IFile)res);
-						}
-					}
-				}
-				else if (res instanceof IContainer) {
-					findAllFiles((IContainer)res, extensions, files);
+
+	private EObject findCallableElement(Object root, String id) {
+		if (root instanceof Definitions) {
+			for (RootElement re : ((Definitions)root).getRootElements()) {
+				if (re instanceof CallableElement && id.equals(re.getId()))
+					return re;
+			}
+		}
+		return null;
+	}
+
+	private EObject findXSDElementDeclaration(Object root, String name) {
+		if (root instanceof XSDSchema) {
+			TreeIterator<EObject> iter = ((XSDSchema)root).eAllContents();
+			while (iter.hasNext()) {
+				EObject o = iter.next();
+				if (o instanceof XSDElementDeclaration) {
+					if ( name.equals(getLocalnameForObject(o)) )
+						return o;
 				}
 			}
-		} catch (CoreException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		}
+		return null;
+	}
+
+	private EObject findPortType(Object root, String name) {
+		if (root instanceof Definition) {
+			for (Object pt : ((Definition)root).getEPortTypes()) {
+				if ( name.equals(getLocalnameForObject(pt)) )
+					return (EObject) pt;
+			}
+		}
+		return null;
 	}
 
 	/**
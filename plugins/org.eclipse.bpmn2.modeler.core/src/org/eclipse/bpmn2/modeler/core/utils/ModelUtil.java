@@ -50,10 +50,10 @@ import org.eclipse.bpmn2.modeler.core.adapters.AdapterUtil;
 import org.eclipse.bpmn2.modeler.core.adapters.ExtendedPropertiesProvider;
 import org.eclipse.bpmn2.modeler.core.adapters.InsertionAdapter;
 import org.eclipse.bpmn2.modeler.core.adapters.ObjectPropertyProvider;
+import org.eclipse.bpmn2.modeler.core.adapters.ResourceIdIndex;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceSetImpl;
 import org.eclipse.bpmn2.modeler.core.model.ModelDecorator;
 import org.eclipse.bpmn2.modeler.core.validation.SyntaxCheckerUtils;
-import org.eclipse.core.runtime.Assert;
 import org.eclipse.emf.common.notify.Adapter;
 import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.ecore.EAttribute;
@@ -90,16 +90,10 @@ import org.eclipse.xsd.XSDElementDeclaration;
 
 public class ModelUtil {
 
-	// TODO: need to determine whether IDs need to be unique within a Resource or ResourceSet - see getKey()
-	
-	// Map of EMF resource sets to ID mapping tables. The ID mapping tables map a BPMN2 element ID string to the EObject.
-	// The EObject is not used anywhere (yet!) just a placeholder to allow use of a HashMap for fast lookups of the ID string.
-	// The ID strings are composed from the BPMN2 element description name and a sequence number (starting at 1).
-	// When a new ID is requested, generateID() simply increments the sequence number until an ID is found that isn't
-	// already in the table.
-	public static HashMap<Object, Hashtable<String, EObject>> ids = new  HashMap<Object, Hashtable<String, EObject>>();
 	// Map of ID strings and sequential counters for each BPMN2 element description.
-	public static HashMap<String, Integer> defaultIds = new HashMap<String, Integer>();
+	// This is only used for objects that are not (yet) associated with a Resource;
+	// IDs for objects in a Resource are managed by the Resource's ResourceIdIndex.
+	private static final HashMap<String, Integer> defaultIds = new HashMap<String, Integer>();
 
 	public enum Bpmn2DiagramType {
 		NONE("None"), //$NON-NLS-1$
@@ -130,15 +124,51 @@ public class ModelUtil {
 	}
 
 	/**
-	 * Clear the IDs hashmap for the given EMF Resource. This should be called
-	 * when the editor is disposed to avoid unnecessary growth of the IDs table.
+	 * Discard the ID index for the given EMF Resource. This should be called
+	 * when the editor is disposed to avoid keeping stale references.
 	 * 
 	 * @param res - the EMF Resource that was used to generate the ID strings.
+	 * @param all - if true, also reset the counters used for objects that are
+	 *            not contained in a Resource.
 	 */
 	public static void clearIDs(Resource res, boolean all) {
-		ids.remove( getKey(res) );
+		ResourceIdIndex.removeIndex(res);
 		if (all) {
-			defaultIds.clear();
+			synchronized (defaultIds) {
+				defaultIds.clear();
+			}
+		}
+	}
+
+	/**
+	 * Return the IDs in use in the given Resource.
+	 * 
+	 * @param res - the EMF Resource
+	 * @return a copy of the Resource's ID table
+	 * @deprecated The public "ids" table has been replaced by the Resource's
+	 *             {@link ResourceIdIndex}, use {@link ResourceIdIndex#getObjects()}
+	 *             instead. Changes to the returned table have no effect.
+	 */
+	@Deprecated
+	public static Hashtable<String, EObject> getIDs(Resource res) {
+		Hashtable<String, EObject> tab = new Hashtable<String, EObject>();
+		if (res!=null)
+			tab.putAll(ResourceIdIndex.getIndex(res).getObjects());
+		return tab;
+	}
+
+	/**
+	 * Return the sequence counters used to generate IDs for objects that are
+	 * not contained in a Resource.
+	 * 
+	 * @return a copy of the counters, by BPMN2 element description name
+	 * @deprecated The public "defaultIds" table is now private. Changes to the
+	 *             returned table have no effect.
+	 */
+	@Deprecated
+	public static HashMap<String, Integer> getDefaultIDs() {
+		synchronized (defaultIds) {
+			return new HashMap<String, Integer>(defaultIds);
 		}
 	}
 
@@ -162,30 +192,6 @@ public class ModelUtil {
 		return name;
 	}
 	
-	private static Object getKey(EObject obj) {
-		Resource resource = ObjectPropertyProvider.getResource(obj);
-		if (resource==null) {
-//			System.out.println("The object type "+obj.getClass().getName()+" is not contained in a Resource");
-			return null;
-		}
-		Assert.isTrue(obj!=null);
-		return getKey(resource);
-	}
-	
-	private static Object getKey(Resource res) {
-		Assert.isTrue(res!=null);
-		// we may have more than one Bpmn2Resource in our ResourceSet asking for IDs
-		String key = null;
-		if (res.getResourceSet()!=null) {
-			key = Integer.toString(res.getResourceSet().hashCode());
-			key += "-" + res.getResourceSet().getResources().indexOf(res); //$NON-NLS-1$
-		}
-		else {
-			key = Integer.toString(res.hashCode());
-		}
-		return key;
-	}
-	
 	/**
 	 * If an EObject has not yet been added to a Resource (e.g. during construction)
 	 * generate an ID string using a different strategy (basically same ID prefixed with an underscore).
@@ -197,20 +203,18 @@ public class ModelUtil {
 	private static String generateDefaultID(EObject obj, String name) {
 		if (name==null)
 			name = getObjectName(obj);
-		Integer value = defaultIds.get(name);
-		if (value==null)
-			value = Integer.valueOf(1);
-		value = Integer.valueOf( value.intValue() + 1 );
-		defaultIds.put(name, Integer.valueOf(value));
-		
+		int value;
+		synchronized (defaultIds) {
+			Integer oldValue = defaultIds.get(name);
+			value = (oldValue==null ? 1 : oldValue.intValue()) + 1;
+			defaultIds.put(name, Integer.valueOf(value));
+		}
 		return "_" + name + "_" + value; //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	/**
 	 * Generate an ID string for a given BPMN2 object that will (eventually!) be added to the given Resource.
 	 * 
-	 * CAUTION: IDs for objects that have already been deleted WILL be reused.
-	 * 
 	 * @param obj - the BPMN2 object
 	 * @param res - the Resource to which the object will be added
 	 * @return the ID string
@@ -219,59 +223,48 @@ public class ModelUtil {
 		return generateID(obj, res, null);
 	}
 
+	/**
+	 * Generate an ID string for a given BPMN2 object and reserve it in the
+	 * Resource's ID index. If a name is given, it is used as the ID if it is
+	 * not already in use, otherwise a sequence number is appended to it.
+	 * 
+	 * @param obj - the BPMN2 object
+	 * @param res - the Resource to which the object will be added
+	 * @param name - the preferred ID, or null to construct one from the object type
+	 * @return the ID string
+	 */
 	public static String generateID(EObject obj, Resource res, String name) {
 		if (res==null)
 			res = ObjectPropertyProvider.getResource(obj);
-		Object key = (res==null ? getKey(obj) : getKey(res));
-		if (key!=null) {
-			Hashtable<String, EObject> tab = ids.get(key);
-			if (tab==null) {
-				tab = new Hashtable<String, EObject>();
-				ids.put(key, tab);
-			}
-			
-			String id = name;
-			if (name==null) {
-				name = getObjectName(obj);
-				id = name + "_" + 1; //$NON-NLS-1$
-			}
-			
-			for (int i=1;; ++i) {
-				if (tab.get(id)==null) {
-					tab.put(id, obj);
-					return id;
-				}
-				id = name + "_" + i; //$NON-NLS-1$
-			}
+		if (res!=null) {
+			ResourceIdIndex index = ResourceIdIndex.getIndex(res);
+			if (name==null)
+				return index.generateID(obj, getObjectName(obj), null);
+			return index.generateID(obj, name, name);
 		}
 		return generateDefaultID(obj, name);
 	}
 	
 	public static void unsetID(EObject obj, Resource resource) {
-		EStructuralFeature feature = ((EObject)obj).eClass().getEStructuralFeature("id"); //$NON-NLS-1$
-		if (feature!=null) {
+		EStructuralFeature feature = ResourceIdIndex.getIdFeature(obj);
+		if (feature!=null && resource!=null) {
 			Object value = obj.eGet(feature);
 			if (value instanceof String) {
-				String id = (String)value;
-				Object key = getKey(resource);
-				if (key!=null) {
-					Hashtable<String, EObject> tab = ids.get(key);
-					if (tab!=null) {
-						tab.remove(id);
-					}
-				}
+				ResourceIdIndex.getIndex(resource).unregister((String)value, obj);
 			}
 		}
 	}
 	
 	/**
-	 * Add an ID string to the ID mapping table(s). This must be used during model import
-	 * to add existing BPMN2 element IDs to the table so we don't generate duplicates.
+	 * Add an ID string to the ID index. This must be used for objects that are
+	 * added to a Resource with an existing ID, e.g. during model import, so we
+	 * don't generate duplicates. If the object has no ID, a new one is
+	 * generated.
 	 * 
 	 * @param obj - the BPMN2 object
 	 */
 	public static void addID(EObject obj) {
-		EStructuralFeature feature = ((EObject)obj).eClass().getEStructuralFeature("id"); //$NON-NLS-1$
+		EStructuralFeature feature = ResourceIdIndex.getIdFeature(obj);
 		if (feature!=null) {
 			Object value = obj.eGet(feature);
 			if (value!=null) {
@@ -288,16 +281,17 @@ public class ModelUtil {
 	}
 	
 	/**
-	 * Add an ID string to the ID mapping table(s). This must be used during model import
-	 * to add existing BPMN2 element IDs to the table so we don't generate duplicates.
+	 * Add an ID string to the ID index. This must be used for objects that are
+	 * added to a Resource with an existing ID, e.g. during model import, so we
+	 * don't generate duplicates.
 	 * 
 	 * @param obj - the BPMN2 object
 	 * @param id - the object's ID string
 	 */
 	public static void addID(EObject obj, String id) {
-		Object key = getKey(obj);
+		Resource res = ObjectPropertyProvider.getResource(obj);
 		String name = getObjectName(obj);
-		if (key==null || id.startsWith("_" + name + "_")) { //$NON-NLS-1$ //$NON-NLS-2$
+		if (res==null || id.startsWith("_" + name + "_")) { //$NON-NLS-1$ //$NON-NLS-2$
 			int newValue = 0;
 			try {
 				int i = id.lastIndexOf('_') + 1;
@@ -305,17 +299,14 @@ public class ModelUtil {
 					newValue = Integer.parseInt(id.substring(i));
 			} catch (Exception e) {
 			}
-			Integer oldValue = defaultIds.get(name);
-			if (oldValue==null || newValue > oldValue.intValue())
-				defaultIds.put(name, Integer.valueOf(newValue));
-		}
-		else {	
-			Hashtable<String, EObject> tab = ids.get(key);
-			if (tab==null) {
-				tab = new Hashtable<String, EObject>();
-				ids.put(key, tab);
+			synchronized (defaultIds) {
+				Integer oldValue = defaultIds.get(name);
+				if (oldValue==null || newValue > oldValue.intValue())
+					defaultIds.put(name, Integer.valueOf(newValue));
 			}
-			tab.put(id, obj);
+		}
+		if (res!=null) {
+			ResourceIdIndex.getIndex(res).register(id, obj);
 		}
 	}
 
@@ -352,6 +343,23 @@ public class ModelUtil {
 		return id;
 	}
 	
+	/**
+	 * Generate IDs for all objects in the given Resource that were loaded
+	 * without one, e.g. Properties, DataInputs or IoSpecifications in files
+	 * written by other tools. This must be called inside a write transaction,
+	 * after the Resource has been loaded and its ID index attached.
+	 * 
+	 * @param res - the loaded Resource
+	 * @return the number of IDs that were generated
+	 */
+	public static int setMissingIDs(Resource res) {
+		List<EObject> objects = ResourceIdIndex.getIndex(res).takeObjectsWithoutId();
+		for (EObject o : objects) {
+			setID(o, res);
+		}
+		return objects.size();
+	}
+	
 	public static String getID(EObject obj) {
 		EStructuralFeature feature = ((EObject)obj).eClass().getEStructuralFeature("id"); //$NON-NLS-1$
 		if (feature!=null) {
@@ -366,12 +374,12 @@ public class ModelUtil {
 			return "<" + name + "_" + base.replaceFirst(".*_", "") + ">"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
 		}
 		
-		Integer value = defaultIds.get(name);
-		if (value==null)
-			value = Integer.valueOf(1);
-		value = Integer.valueOf( value.intValue() + 1 );
-		defaultIds.put(name, Integer.valueOf(value));
-		
+		int value;
+		synchronized (defaultIds) {
+			Integer oldValue = defaultIds.get(name);
+			value = (oldValue==null ? 1 : oldValue.intValue()) + 1;
+			defaultIds.put(name, Integer.valueOf(value));
+		}
 		return "<" + name + "_" + value + ">"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 	}
 
@@ -1107,34 +1115,15 @@ public class ModelUtil {
         return body;
     }
 
+	/**
+	 * Return all pairs of BaseElements in the given Resource that have the same
+	 * ID. The duplicates are maintained incrementally by the Resource's ID index.
+	 * 
+	 * @param resource - the EMF Resource
+	 * @return a list of duplicates, which may be empty
+	 */
 	public static List<Tuple<EObject,EObject>> findDuplicateIds(Resource resource) {
-		List<Tuple<EObject,EObject>> list = new ArrayList<Tuple<EObject,EObject>>();
-		Definitions definitions = ModelUtil.getDefinitions(resource);
-		TreeIterator<EObject> iter1 = definitions.eAllContents();
-		Hashtable<String, EObject> map = new Hashtable<String, EObject>();
-		while (iter1.hasNext()) {
-			EObject o1 = iter1.next();
-			// Only test BaseElements, we can't be sure about foreign model objects.
-			if (o1 instanceof BaseElement) {
-				EStructuralFeature id1Feature = o1.eClass().getEIDAttribute();
-				if (id1Feature!=null) {
-					try {
-						String id1 = (String)o1.eGet(id1Feature);
-						if (id1!=null) {
-							EObject o2 = map.get(id1);
-							if (o2!=null) {
-								list.add( new Tuple<EObject,EObject>(o1,o2) );
-							}
-							map.put(id1, o1);
-						}
-					}
-					catch (Exception e) {
-					}
-				}
-			}
-		}
-		
-		return list;
+		return ResourceIdIndex.getIndex(resource).getDuplicates();
 	}
 	
 	public static boolean isParticipantBand(Participant participant) {
@@ -0,0 +1,592 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.eclipse.bpmn2.Bpmn2Package;
+import org.eclipse.bpmn2.modeler.core.Activator;
+import org.eclipse.bpmn2.modeler.core.builder.BPMN2Builder;
+import org.eclipse.bpmn2.modeler.core.builder.BPMN2Nature;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A per-project index of the symbols that can be the target of an external
+ * reference from a BPMN2 file: the IDs of CallableElements defined in other
+ * BPMN2 files, XML Schema element declarations and WSDL PortTypes.
+ * <p>
+ * Each symbol is mapped to the file(s) that define it, so that resolving a
+ * dangling reference requires a single hash lookup plus one targeted load of
+ * the defining file, instead of loading every file in the project.
+ * <p>
+ * Files are scanned with a lightweight SAX parser; *.xml files are only scanned
+ * if their root element is an XML Schema. The index is kept up to
+ * date from workspace resource deltas delivered by the {@link BPMN2Builder}.
+ * For projects that do not have the BPMN2 builder configured, the modification
+ * stamps of all candidate files are checked before each lookup. The index is
+ * persisted in the plug-in's state location so that it does not need to be
+ * rebuilt from scratch when the workbench is restarted.
+ */
+public class ProjectSymbolIndex {
+
+	public enum SymbolKind {
+		CALLABLE_ELEMENT,
+		XSD_ELEMENT,
+		WSDL_PORT_TYPE
+	}
+
+	private static final String[] BPMN2_EXTENSIONS = new String[] {"bpmn","bpmn2"}; //$NON-NLS-1$ //$NON-NLS-2$
+	private static final String[] XSD_EXTENSIONS = new String[] {"xsd"}; //$NON-NLS-1$
+	// only indexed if the root element is an XML Schema
+	private static final String[] XML_EXTENSIONS = new String[] {"xml"}; //$NON-NLS-1$
+	private static final String[] WSDL_EXTENSIONS = new String[] {"wsdl"}; //$NON-NLS-1$
+	private static final String INDEX_FOLDER = "symbols"; //$NON-NLS-1$
+	private static final String INDEX_FILE_EXTENSION = ".index"; //$NON-NLS-1$
+	private static final String INDEX_VERSION = "2"; //$NON-NLS-1$
+
+	private static Hashtable<IProject, ProjectSymbolIndex> indexes = new Hashtable<IProject, ProjectSymbolIndex>();
+	private static SAXParserFactory parserFactory;
+	private static IResourceChangeListener resourceChangeListener;
+
+	/**
+	 * The symbols defined by a single file, along with the file's modification
+	 * stamp at the time it was scanned.
+	 */
+	private static class FileEntry {
+		long modificationStamp;
+		String targetNamespace;
+		List<String> keys = new ArrayList<String>();
+
+		FileEntry(long modificationStamp) {
+			this.modificationStamp = modificationStamp;
+		}
+	}
+
+	private final IProject project;
+	private final Map<IPath, FileEntry> files = new HashMap<IPath, FileEntry>();
+	private final Map<String, Set<IPath>> symbols = new HashMap<String, Set<IPath>>();
+	private boolean initialized = false;
+	private boolean dirty = false;
+
+	private ProjectSymbolIndex(IProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * Return the symbol index for the given project, creating it if necessary.
+	 *
+	 * @param project the workspace project.
+	 * @return the project's symbol index.
+	 */
+	public static ProjectSymbolIndex getIndex(IProject project) {
+		synchronized (indexes) {
+			ProjectSymbolIndex index = indexes.get(project);
+			if (index==null) {
+				index = new ProjectSymbolIndex(project);
+				indexes.put(project, index);
+				if (resourceChangeListener==null) {
+					// release the indexes of projects that are closed or deleted
+					resourceChangeListener = new IResourceChangeListener() {
+						@Override
+						public void resourceChanged(IResourceChangeEvent event) {
+							if (event.getResource() instanceof IProject) {
+								IProject project = (IProject) event.getResource();
+								if (event.getType() == IResourceChangeEvent.PRE_DELETE)
+									deleteIndex(project);
+								else
+									removeIndex(project);
+							}
+						}
+					};
+					ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceChangeListener,
+							IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+				}
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Discard the symbol index for the given project, e.g. when the project is
+	 * closed or deleted.
+	 *
+	 * @param project the workspace project.
+	 */
+	public static void removeIndex(IProject project) {
+		ProjectSymbolIndex index = indexes.remove(project);
+		if (index!=null)
+			index.save();
+	}
+
+	/**
+	 * Discard the symbol index for the given project along with its persisted
+	 * copy, when the project is deleted.
+	 *
+	 * @param project the workspace project.
+	 */
+	public static void deleteIndex(IProject project) {
+		ProjectSymbolIndex index = indexes.remove(project);
+		if (index==null)
+			index = new ProjectSymbolIndex(project);
+		index.delete();
+	}
+
+	/**
+	 * Persist all modified symbol indexes, and stop listening to resource
+	 * changes. This is called when the plug-in is stopped.
+	 */
+	public static void disposeAll() {
+		synchronized (indexes) {
+			if (resourceChangeListener!=null) {
+				ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceChangeListener);
+				resourceChangeListener = null;
+			}
+		}
+		saveAll();
+		indexes.clear();
+	}
+
+	/**
+	 * Persist all modified symbol indexes.
+	 */
+	public static void saveAll() {
+		List<ProjectSymbolIndex> list;
+		synchronized (indexes) {
+			list = new ArrayList<ProjectSymbolIndex>(indexes.values());
+		}
+		for (ProjectSymbolIndex index : list)
+			index.save();
+	}
+
+	/**
+	 * Return the files in this project that define a symbol of the given kind
+	 * and name. If the name is a QName (i.e. "prefix:localname") and the
+	 * prefix can not be resolved to a namespace, pass a null namespace to
+	 * match any namespace.
+	 *
+	 * @param kind the kind of symbol.
+	 * @param namespace the target namespace of the defining file, or null to
+	 *            match any target namespace.
+	 * @param name the ID or local name of the symbol.
+	 * @return a list of files, possibly empty, never null.
+	 */
+	public synchronized List<IFile> findFiles(SymbolKind kind, String namespace, String name) {
+		initialize();
+		if (!isManaged())
+			refresh();
+
+		Set<IPath> paths = symbols.get(createKey(kind, name));
+		if (paths==null || paths.isEmpty())
+			return Collections.emptyList();
+
+		List<IFile> result = new ArrayList<IFile>();
+		for (IPath path : new ArrayList<IPath>(paths)) {
+			IFile file = project.getWorkspace().getRoot().getFile(path);
+			FileEntry entry = files.get(path);
+			if (!file.exists()) {
+				remove(path);
+				continue;
+			}
+			if (entry.modificationStamp != file.getModificationStamp()) {
+				entry = scan(file);
+				if (entry==null || !entry.keys.contains(createKey(kind, name)))
+					continue;
+			}
+			if (namespace==null || namespace.equals(entry.targetNamespace))
+				result.add(file);
+		}
+		return result;
+	}
+
+	/**
+	 * Update the index from a resource delta. This is called by the
+	 * {@link BPMN2Builder} for every resource in the delta.
+	 *
+	 * @param delta the resource delta.
+	 */
+	public synchronized void update(IResourceDelta delta) {
+		if (!initialized)
+			return;
+		IResource resource = delta.getResource();
+		if (resource instanceof IFile) {
+			if (delta.getKind()==IResourceDelta.REMOVED)
+				remove(resource.getFullPath());
+			else if (isIndexedFile((IFile)resource))
+				scan((IFile)resource);
+			else
+				// e.g. an XML file that is no longer a schema
+				remove(resource.getFullPath());
+		}
+	}
+
+	/**
+	 * Rebuild the entire index. This is called by the {@link BPMN2Builder} on a
+	 * full build.
+	 */
+	public synchronized void rebuild() {
+		files.clear();
+		symbols.clear();
+		initialized = true;
+		dirty = true;
+		refresh();
+	}
+
+	/**
+	 * Write the index to the plug-in's state location if it has changed since
+	 * it was last loaded or saved.
+	 */
+	public synchronized void save() {
+		if (!dirty || Activator.getDefault()==null)
+			return;
+		BufferedWriter writer = null;
+		try {
+			File indexFile = getIndexFile();
+			indexFile.getParentFile().mkdirs();
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile), "UTF-8")); //$NON-NLS-1$
+			writer.write(INDEX_VERSION);
+			writer.newLine();
+			for (Map.Entry<IPath, FileEntry> e : files.entrySet()) {
+				FileEntry entry = e.getValue();
+				writer.write("F\t" + e.getKey().toString() + "\t" + entry.modificationStamp + "\t" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						+ (entry.targetNamespace==null ? "" : entry.targetNamespace)); //$NON-NLS-1$
+				writer.newLine();
+				for (String key : entry.keys) {
+					writer.write("S\t" + key); //$NON-NLS-1$
+					writer.newLine();
+				}
+			}
+			dirty = false;
+		}
+		catch (Exception e) {
+			Activator.logError(e);
+		}
+		finally {
+			if (writer!=null) {
+				try {
+					writer.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+	}
+
+	private boolean isManaged() {
+		return BPMN2Nature.hasBuilder(project, BPMN2Builder.BUILDER_ID);
+	}
+
+	private void initialize() {
+		if (!initialized) {
+			initialized = true;
+			load();
+			refresh();
+		}
+	}
+
+	/**
+	 * Walk the project and re-scan all files that are not yet in the index,
+	 * or whose modification stamp has changed since they were last scanned.
+	 * Entries for files that no longer exist are removed.
+	 */
+	private void refresh() {
+		Set<IPath> found = new HashSet<IPath>();
+		refresh(project, found);
+		for (IPath path : new ArrayList<IPath>(files.keySet())) {
+			if (!found.contains(path))
+				remove(path);
+		}
+	}
+
+	private void refresh(IContainer container, Set<IPath> found) {
+		if (!container.isAccessible())
+			return;
+		try {
+			for (IResource res : container.members()) {
+				if (res instanceof IFile) {
+					IFile file = (IFile) res;
+					IPath path = file.getFullPath();
+					FileEntry entry = files.get(path);
+					if (entry!=null && entry.modificationStamp == file.getModificationStamp()) {
+						found.add(path);
+					}
+					else if (isIndexedFile(file)) {
+						found.add(path);
+						scan(file);
+					}
+				}
+				else if (res instanceof IContainer) {
+					refresh((IContainer)res, found);
+				}
+			}
+		} catch (CoreException e) {
+			Activator.logError(e);
+		}
+	}
+
+	private void remove(IPath path) {
+		FileEntry entry = files.remove(path);
+		if (entry!=null) {
+			for (String key : entry.keys) {
+				Set<IPath> paths = symbols.get(key);
+				if (paths!=null) {
+					paths.remove(path);
+					if (paths.isEmpty())
+						symbols.remove(key);
+				}
+			}
+			dirty = true;
+		}
+	}
+
+	private void add(IPath path, FileEntry entry) {
+		files.put(path, entry);
+		for (String key : entry.keys) {
+			Set<IPath> paths = symbols.get(key);
+			if (paths==null) {
+				paths = new HashSet<IPath>();
+				symbols.put(key, paths);
+			}
+			paths.add(path);
+		}
+	}
+
+	private FileEntry scan(IFile file) {
+		IPath path = file.getFullPath();
+		remove(path);
+		FileEntry entry = new FileEntry(file.getModificationStamp());
+		InputStream is = null;
+		try {
+			is = file.getContents(true);
+			SymbolHandler handler = new SymbolHandler(entry, getKind(file));
+			getParser().parse(is, handler);
+		}
+		catch (Exception e) {
+			// ignore parse errors: whatever was collected up to
+			// the point of failure is still valid.
+		}
+		finally {
+			if (is!=null) {
+				try {
+					is.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+		add(path, entry);
+		dirty = true;
+		return entry;
+	}
+
+	private void load() {
+		if (Activator.getDefault()==null)
+			return;
+		File indexFile = getIndexFile();
+		if (!indexFile.exists())
+			return;
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8")); //$NON-NLS-1$
+			if (!INDEX_VERSION.equals(reader.readLine()))
+				return;
+			IPath path = null;
+			FileEntry entry = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("F\t")) { //$NON-NLS-1$
+					if (entry!=null)
+						add(path, entry);
+					String[] parts = line.split("\t", 4); //$NON-NLS-1$
+					path = new Path(parts[1]);
+					entry = new FileEntry(Long.parseLong(parts[2]));
+					if (parts.length>3 && !parts[3].isEmpty())
+						entry.targetNamespace = parts[3];
+				}
+				else if (line.startsWith("S\t") && entry!=null) { //$NON-NLS-1$
+					entry.keys.add(line.substring(2));
+				}
+			}
+			if (entry!=null)
+				add(path, entry);
+		}
+		catch (Exception e) {
+			// the index file is corrupt: start over
+			files.clear();
+			symbols.clear();
+		}
+		finally {
+			if (reader!=null) {
+				try {
+					reader.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+	}
+
+	private synchronized void delete() {
+		dirty = false;
+		if (Activator.getDefault()!=null) {
+			File indexFile = getIndexFile();
+			if (indexFile.exists())
+				indexFile.delete();
+		}
+	}
+
+	private File getIndexFile() {
+		return Activator.getDefault().getStateLocation()
+				.append(INDEX_FOLDER)
+				.append(project.getName() + INDEX_FILE_EXTENSION)
+				.toFile();
+	}
+
+	private static String createKey(SymbolKind kind, String name) {
+		return kind.name() + ":" + name; //$NON-NLS-1$
+	}
+
+	private static boolean hasExtension(IFile file, String[] extensions) {
+		String ext = file.getFileExtension();
+		for (String s : extensions) {
+			if (s.equals(ext))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isIndexedFile(IFile file) {
+		return getKind(file)!=null;
+	}
+
+	private static SymbolKind getKind(IFile file) {
+		if (hasExtension(file, BPMN2_EXTENSIONS))
+			return SymbolKind.CALLABLE_ELEMENT;
+		if (hasExtension(file, XSD_EXTENSIONS))
+			return SymbolKind.XSD_ELEMENT;
+		if (hasExtension(file, XML_EXTENSIONS)) {
+			DocumentHeader header = DocumentHeader.getHeader(file);
+			if (header!=null && header.isRootElement(ImportUtil.IMPORT_TYPE_XML_SCHEMA, "schema")) //$NON-NLS-1$
+				return SymbolKind.XSD_ELEMENT;
+		}
+		if (hasExtension(file, WSDL_EXTENSIONS))
+			return SymbolKind.WSDL_PORT_TYPE;
+		return null;
+	}
+
+	private static synchronized SAXParser getParser() throws Exception {
+		if (parserFactory == null) {
+			parserFactory = SAXParserFactory.newInstance();
+			parserFactory.setNamespaceAware(true);
+		}
+		return parserFactory.newSAXParser();
+	}
+
+	/**
+	 * SAX handler that collects the symbols defined in a BPMN2, XML Schema or
+	 * WSDL file. Only the root element's target namespace and the relevant
+	 * named elements are recorded, the rest of the document is ignored.
+	 */
+	private static class SymbolHandler extends DefaultHandler {
+		private FileEntry entry;
+		private SymbolKind kind;
+		private boolean root = true;
+
+		public SymbolHandler(FileEntry entry, SymbolKind kind) {
+			this.entry = entry;
+			this.kind = kind;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if (root) {
+				root = false;
+				if (!isRootElement(uri, localName))
+					throw new SAXException("Not a "+kind+" file"); //$NON-NLS-1$ //$NON-NLS-2$
+				entry.targetNamespace = attributes.getValue("targetNamespace"); //$NON-NLS-1$
+				return;
+			}
+			switch (kind) {
+			case CALLABLE_ELEMENT:
+				if (ImportUtil.IMPORT_TYPE_BPMN2.equals(uri) && isCallableElement(localName))
+					addSymbol(attributes.getValue("id")); //$NON-NLS-1$
+				break;
+			case XSD_ELEMENT:
+				if (ImportUtil.IMPORT_TYPE_XML_SCHEMA.equals(uri) && "element".equals(localName)) //$NON-NLS-1$
+					addSymbol(attributes.getValue("name")); //$NON-NLS-1$
+				break;
+			case WSDL_PORT_TYPE:
+				if (ImportUtil.IMPORT_TYPE_WSDL.equals(uri) && "portType".equals(localName)) //$NON-NLS-1$
+					addSymbol(attributes.getValue("name")); //$NON-NLS-1$
+				break;
+			}
+		}
+
+		private boolean isRootElement(String uri, String localName) {
+			switch (kind) {
+			case CALLABLE_ELEMENT:
+				return ImportUtil.IMPORT_TYPE_BPMN2.equals(uri) && "definitions".equals(localName); //$NON-NLS-1$
+			case XSD_ELEMENT:
+				return ImportUtil.IMPORT_TYPE_XML_SCHEMA.equals(uri) && "schema".equals(localName); //$NON-NLS-1$
+			case WSDL_PORT_TYPE:
+				return ImportUtil.IMPORT_TYPE_WSDL.equals(uri) && "definitions".equals(localName); //$NON-NLS-1$
+			}
+			return false;
+		}
+
+		private boolean isCallableElement(String localName) {
+			String className = Character.toUpperCase(localName.charAt(0)) + localName.substring(1);
+			EClassifier ec = Bpmn2Package.eINSTANCE.getEClassifier(className);
+			return ec instanceof EClass &&
+					Bpmn2Package.eINSTANCE.getCallableElement().isSuperTypeOf((EClass)ec);
+		}
+
+		private void addSymbol(String name) {
+			if (name!=null && !name.isEmpty()) {
+				String key = createKey(kind, name);
+				if (!entry.keys.contains(key))
+					entry.keys.add(key);
+			}
+		}
+	}
+}
@@ -16,8 +16,11 @@ package org.eclipse.bpmn2.modeler.core.utils;
 import java.util.Stack;
 
 /**
- *
+ * @deprecated Use {@link org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation},
+ *             which is thread-safe and can be observed or exported without
+ *             printing to the console.
  */
+@Deprecated
 public class Timer {
 
 	class Interval {
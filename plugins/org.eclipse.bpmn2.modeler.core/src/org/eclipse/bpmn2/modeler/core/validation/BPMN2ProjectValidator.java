@@ -15,13 +15,15 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.bpmn2.modeler.core.Activator;
-import org.eclipse.bpmn2.modeler.core.adapters.ExtendedPropertiesAdapter;
 import org.eclipse.bpmn2.modeler.core.builder.BPMN2Nature;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Span;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceImpl;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceSetImpl;
 import org.eclipse.bpmn2.modeler.core.model.ProxyURIConverterImplExtension;
 import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
 import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+import org.eclipse.bpmn2.modeler.core.utils.FileUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
@@ -70,11 +72,14 @@ import org.eclipse.wst.validation.ValidatorMessage;
 
 public class BPMN2ProjectValidator extends AbstractValidator {
 
-	private IFile modelFile;
-	private TargetRuntime targetRuntime;
+	// The validation framework may validate several files at the same time
+	// with this validator instance. The file being validated is kept per
+	// thread; the ProjectValidationEngine does its own locking.
+	private final ThreadLocal<IFile> modelFile = new ThreadLocal<IFile>();
+	private final ThreadLocal<TargetRuntime> targetRuntime = new ThreadLocal<TargetRuntime>();
 
     @Override
-    public synchronized ValidationResult validate(ValidationEvent event, ValidationState state, IProgressMonitor monitor) {
+    public ValidationResult validate(ValidationEvent event, ValidationState state, IProgressMonitor monitor) {
     	IResource file = event.getResource();
         if ((event.getKind() & IResourceDelta.REMOVED) != 0 
         		|| file.isDerived(IResource.CHECK_ANCESTORS)
@@ -82,47 +87,89 @@ public class BPMN2ProjectValidator extends AbstractValidator {
             return new ValidationResult();
         }
 
-        // TODO: temporary hack until I can figure out how to associate
-        // a Bpmn2ModelerFactory instance with a Resource.
-        targetRuntime = null;
-        TargetRuntime currentRuntime = TargetRuntime.getCurrentRuntime();
-        
+        // If the BPMN2 project builder has already validated this file and
+        // none of its dependencies have changed since, its markers are current.
+        if (ProjectValidationEngine.getEngine(file.getProject()).isUpToDate((IFile) file)) {
+        	return new ValidationResult();
+        }
+
         ValidationResult result = null;
-    	modelFile = (IFile) file;
+    	modelFile.set((IFile) file);
+    	targetRuntime.remove();
     	try {
-			modelFile.deleteMarkers(null, true, IProject.DEPTH_INFINITE);
+			file.deleteMarkers(null, true, IProject.DEPTH_INFINITE);
 
-	    	Bpmn2ModelerResourceSetImpl rs = new Bpmn2ModelerResourceSetImpl();
-			getTargetRuntime().registerExtensionResourceFactory(rs);
-			URI modelUri = URI.createPlatformResourceURI(modelFile.getFullPath().toString(), true);
-			rs.setURIConverter(new ProxyURIConverterImplExtension(modelUri));
-	    	Map<Object,Object> options = new HashMap<Object,Object>();
-	    	options.put(Bpmn2ModelerResourceSetImpl.OPTION_PROGRESS_MONITOR, monitor);
-	    	rs.setLoadOptions(options);
-	
-			Resource resource = rs.createResource(modelUri, Bpmn2ModelerResourceImpl.BPMN2_CONTENT_TYPE_ID);
-            resource.load(null);
+			Resource resource = loadResource((IFile) file, getTargetRuntime(), monitor);
 	        result = new ValidationResult();
-	        if (resource.getContents().isEmpty()) {
-	            ValidatorMessage message = ValidatorMessage.create(Messages.BPMN2ProjectValidator_Invalid_File, modelFile);
-	            message.setType(getTargetRuntime().getProblemMarkerId());
-	            result.add(message);
-	        } else {
-	            IBatchValidator validator = ModelValidationService.getInstance().newValidator(EvaluationMode.BATCH);
-	            processStatus(validator.validate(resource.getContents(), monitor), modelFile, result);
-	        }
+	        validate(resource, getTargetRuntime(), result, monitor);
 		} catch (CoreException e1) {
 			e1.printStackTrace();
         } catch (IOException e2) {
             e2.printStackTrace();
         }
     	finally {
-    		// TODO: see to-do comment above
-    		TargetRuntime.setCurrentRuntime(currentRuntime);
+    		modelFile.remove();
+    		targetRuntime.remove();
     	}
 	        
         return result;
     }
+
+    /**
+     * Load the given BPMN2 file into a new ResourceSet that is configured for
+     * the given Target Runtime. Each call creates a separate ResourceSet, so
+     * that different files can be loaded concurrently.
+     * 
+     * @param file the BPMN2 file
+     * @param rt the Target Runtime for the file
+     * @param monitor a progress monitor, used to cancel loading
+     * @return the loaded Resource
+     * @throws IOException
+     */
+    public static Resource loadResource(IFile file, TargetRuntime rt, IProgressMonitor monitor) throws IOException {
+    	Bpmn2ModelerResourceSetImpl rs = new Bpmn2ModelerResourceSetImpl();
+		rt.registerExtensionResourceFactory(rs);
+		URI modelUri = URI.createPlatformResourceURI(file.getFullPath().toString(), true);
+		rs.setURIConverter(new ProxyURIConverterImplExtension(modelUri));
+    	Map<Object,Object> options = new HashMap<Object,Object>();
+    	options.put(Bpmn2ModelerResourceSetImpl.OPTION_PROGRESS_MONITOR, monitor);
+    	rs.setLoadOptions(options);
+
+		Resource resource = rs.createResource(modelUri, Bpmn2ModelerResourceImpl.BPMN2_CONTENT_TYPE_ID);
+        resource.load(null);
+        return resource;
+    }
+
+    /**
+     * Run the batch validator on the given Resource and add the problems found
+     * to the ValidationResult.
+     * 
+     * @param resource a loaded BPMN2 Resource
+     * @param rt the Target Runtime for the Resource, used for the problem marker type
+     * @param result the ValidationResult to which problems are added
+     * @param monitor a progress monitor, used to cancel validation
+     */
+    public static void validate(Resource resource, TargetRuntime rt, ValidationResult result, IProgressMonitor monitor) {
+    	IFile file = FileUtils.getFile(resource.getURI());
+        if (resource.getContents().isEmpty()) {
+            ValidatorMessage message = ValidatorMessage.create(Messages.BPMN2ProjectValidator_Invalid_File, file);
+            message.setType(rt.getProblemMarkerId());
+            result.add(message);
+        } else {
+            // constraints look up the current Target Runtime: make it the
+            // one for this file on this thread only
+            TargetRuntime previous = TargetRuntime.enterRuntime(rt);
+            Span span = Instrumentation.start("validation.batch"); //$NON-NLS-1$
+            try {
+                IBatchValidator validator = ModelValidationService.getInstance().newValidator(EvaluationMode.BATCH);
+                processStatus(validator.validate(resource.getContents(), monitor), file, rt, result);
+            }
+            finally {
+                span.end();
+                TargetRuntime.exitRuntime(previous);
+            }
+        }
+    }
     
     public static void validate(IResource resource, IProgressMonitor monitor) {
 		if (isBPMN2File(resource)) {
@@ -161,9 +208,15 @@ public class BPMN2ProjectValidator extends AbstractValidator {
 	 *         for believing the model is corrupt.
 	 */
     public static IStatus validateLive(EObject object) {
-		IValidator<Notification> validator = ModelValidationService.getInstance().newValidator(EvaluationMode.LIVE);
-    	Notification n = new ENotificationImpl((InternalEObject) object, 0, null, null, null, false);
-		return validator.validate(n);
+		Span span = Instrumentation.start("validation.live"); //$NON-NLS-1$
+		try {
+			IValidator<Notification> validator = ModelValidationService.getInstance().newValidator(EvaluationMode.LIVE);
+	    	Notification n = new ENotificationImpl((InternalEObject) object, 0, null, null, null, false);
+			return validator.validate(n);
+		}
+		finally {
+			span.end();
+		}
     }
     
     public static boolean isBPMN2File(IResource resource) {
@@ -264,16 +317,24 @@ public class BPMN2ProjectValidator extends AbstractValidator {
     }
     
     public void processStatus(IStatus status, IResource resource, ValidationResult result) {
+    	processStatus(status, resource, getTargetRuntime(), result);
+    }
+
+    public static void processStatus(IStatus status, IResource resource, TargetRuntime rt, ValidationResult result) {
         if (status.isMultiStatus()) {
             for (IStatus child : status.getChildren()) {
-                processStatus(child, resource, result);
+                processStatus(child, resource, rt, result);
             }
         } else if (!status.isOK()) {
-            result.add(createValidationMessage(status, resource));
+            result.add(createValidationMessage(status, resource, rt));
         }
     }
 
     public ValidatorMessage createValidationMessage(IStatus status, IResource resource) {
+    	return createValidationMessage(status, resource, getTargetRuntime());
+    }
+
+    public static ValidatorMessage createValidationMessage(IStatus status, IResource resource, TargetRuntime rt) {
         ValidatorMessage message = ValidatorMessage.create(status.getMessage(), resource);
         switch (status.getSeverity()) {
         case IStatus.INFO:
@@ -291,12 +352,9 @@ public class BPMN2ProjectValidator extends AbstractValidator {
         if (status instanceof IConstraintStatus) {
             IConstraintStatus ics = (IConstraintStatus) status;
             EObject object = ics.getTarget();
-    		ExtendedPropertiesAdapter adapter = ExtendedPropertiesAdapter.adapt(object);
-			if (adapter!=null) {
-				Object lineNumber = adapter.getProperty(ExtendedPropertiesAdapter.LINE_NUMBER);
-				if (lineNumber!=null) {
-					message.setAttribute(IMarker.LINE_NUMBER, lineNumber);
-				}
+			Integer lineNumber = Bpmn2ModelerResourceImpl.getLineNumber(object);
+			if (lineNumber!=null) {
+				message.setAttribute(IMarker.LINE_NUMBER, lineNumber);
 			}
 
             message.setAttribute(EValidator.URI_ATTRIBUTE, EcoreUtil.getURI(object).toString());
@@ -312,7 +370,7 @@ public class BPMN2ProjectValidator extends AbstractValidator {
             }
         }
 
-        message.setType(getTargetRuntime().getProblemMarkerId());
+        message.setType(rt.getProblemMarkerId());
 
         return message;
     }
@@ -320,6 +378,7 @@ public class BPMN2ProjectValidator extends AbstractValidator {
     @Override
     public void clean(IProject project, ValidationState state, IProgressMonitor monitor) {
         super.clean(project, state, monitor);
+        ProjectValidationEngine.getEngine(project).clear();
         try {
             project.deleteMarkers(null, false, IProject.DEPTH_INFINITE);
         } catch (CoreException e) {
@@ -328,12 +387,13 @@ public class BPMN2ProjectValidator extends AbstractValidator {
     }
 	
     protected TargetRuntime getTargetRuntime() {
-		Assert.isTrue(modelFile!=null);
-		if (targetRuntime==null) {
-			IEditorInput input = new FileEditorInput(modelFile);
-			targetRuntime = TargetRuntime.getRuntime(input);
-    		TargetRuntime.setCurrentRuntime(targetRuntime);
+		Assert.isTrue(modelFile.get()!=null);
+		TargetRuntime rt = targetRuntime.get();
+		if (rt==null) {
+			IEditorInput input = new FileEditorInput(modelFile.get());
+			rt = TargetRuntime.getRuntime(input);
+			targetRuntime.set(rt);
 		}
-		return targetRuntime;
+		return rt;
 	}
 }
@@ -10,14 +10,15 @@
  *******************************************************************************/
 package org.eclipse.bpmn2.modeler.core.validation;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
 import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
-import org.eclipse.bpmn2.modeler.core.validation.validators.AbstractBpmn2ElementValidator;
 import org.eclipse.bpmn2.modeler.core.validation.validators.IBpmn2ElementValidator;
+import org.eclipse.bpmn2.modeler.core.validation.validators.ValidatorRegistry;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
@@ -42,7 +43,18 @@ public class BPMN2ValidationConstraints extends AbstractModelConstraint {
 
 	public final static String CATEGORY_ID = "org.eclipse.bpmn2.modeler.core.validation.category.override"; //$NON-NLS-1$
 
-	protected StatusList result = new StatusList();
+	// cache of Model Constraint overrides, in the form "<EClass name>:<mode>",
+	// for each Target Runtime ID
+	private static Hashtable<String, Set<String>> validationOverrides = new Hashtable<String, Set<String>>();
+
+	// The Validation Framework only constructs a single instance of each
+	// Constraint object, but projects may be validated on several threads.
+	private final ThreadLocal<StatusList> result = new ThreadLocal<StatusList>() {
+		@Override
+		protected StatusList initialValue() {
+			return new StatusList();
+		}
+	};
 	
 	public BPMN2ValidationConstraints() {
 	}
@@ -97,12 +109,12 @@ public class BPMN2ValidationConstraints extends AbstractModelConstraint {
 	 * Initialize this Model Constraint object. Since the EMF Validation Framework
 	 * only constructs a single instance of each Constraing object, we need to make sure
 	 * it is properly initialized each time it is invoked. In this case, we need to clear
-	 * out the "results" list every time.
+	 * out the "results" list of the calling thread every time.
 	 * 
 	 * Subclasses should override this method for additional initialization.
 	 */
 	protected void initialize() {
-		result.clear();
+		result.get().clear();
 	}
 	
 	/**
@@ -135,11 +147,11 @@ public class BPMN2ValidationConstraints extends AbstractModelConstraint {
 	 * @return a Validator if one has been defined, or null
 	 */
 	protected IBpmn2ElementValidator<?> getValidator(IValidationContext ctx, EClass eClass) {
-		return AbstractBpmn2ElementValidator.getValidator(ctx, eClass.getInstanceClass());
+		return ValidatorRegistry.createValidator(ctx, eClass);
 	}
 	
 	protected IBpmn2ElementValidator<?> getValidator(IBpmn2ElementValidator<?> parent, EClass eClass) {
-		return AbstractBpmn2ElementValidator.getValidator(parent, eClass.getInstanceClass());
+		return ValidatorRegistry.createValidator(parent, eClass);
 	}
 	
 	/**
@@ -148,7 +160,7 @@ public class BPMN2ValidationConstraints extends AbstractModelConstraint {
 	 * @param status
 	 */
 	protected void addStatus(IStatus status) {
-		result.add(status);
+		result.get().add(status);
 	}
 	
 	/**
@@ -159,11 +171,12 @@ public class BPMN2ValidationConstraints extends AbstractModelConstraint {
 	 * @return an IStatus object
 	 */
 	protected IStatus getResult(IValidationContext ctx) {
-		if (result.isEmpty())
+		StatusList list = result.get();
+		if (list.isEmpty())
 			return ctx.createSuccessStatus();
-		if (result.size()==1)
-			return result.get(0);
-		return ConstraintStatus.createMultiStatus(ctx, result);
+		if (list.size()==1)
+			return list.get(0);
+		return ConstraintStatus.createMultiStatus(ctx, list);
 	}
 	
 	/**
@@ -217,32 +230,60 @@ public class BPMN2ValidationConstraints extends AbstractModelConstraint {
 	private boolean deferValidationToTargetRuntime(IValidationContext ctx, EObject object) {
 		TargetRuntime rt = TargetRuntime.getCurrentRuntime();
 		if (rt != TargetRuntime.getDefaultRuntime()) {
-			ClassLoader cl = rt.getRuntimeExtension().getClass().getClassLoader();
-			Bundle b = ((BundleReference)cl).getBundle();
-			String pluginId = b.getSymbolicName();
-			IConfigurationElement[] elements = Platform.getExtensionRegistry().getConfigurationElementsFor("org.eclipse.emf.validation.constraintProviders"); //$NON-NLS-1$
-			for (IConfigurationElement e : elements) {
-				if (pluginId.equals(e.getDeclaringExtension().getContributor().getName())) {
-					if ("constraintProvider".equals(e.getName())) { //$NON-NLS-1$
-						for (IConfigurationElement e1 : e.getChildren("constraints")) { //$NON-NLS-1$
-							String categories = e1.getAttribute("categories"); //$NON-NLS-1$
-							if (categories!=null && categories.contains(CATEGORY_ID)) {
-								for (IConfigurationElement e2 : e1.getChildren("constraint")) { //$NON-NLS-1$
-									for (IConfigurationElement e3 : e2.getChildren("target")) { //$NON-NLS-1$
-										String className = e3.getAttribute("class"); //$NON-NLS-1$
-										int i = className.indexOf(':');
-										if (i>0) {
-											className = className.substring(0,i);
-										}
-										if (object.eClass().getName().equals(className)) {
-											String mode = isLiveValidation(ctx) ? "Live" : "Batch"; //$NON-NLS-1$ //$NON-NLS-2$
-											String m = e2.getAttribute("mode"); //$NON-NLS-1$
-											if (m==null)
-												m = "Batch"; //$NON-NLS-1$
-											if (mode.equals(m))
-												return true;
-										}
+			String mode = isLiveValidation(ctx) ? "Live" : "Batch"; //$NON-NLS-1$ //$NON-NLS-2$
+			return getValidationOverrides(rt).contains(object.eClass().getName() + ":" + mode); //$NON-NLS-1$
+		}
+		return false;
+	}
+
+	/**
+	 * Discard the cached Model Constraint overrides of the given Target Runtime,
+	 * or of all Target Runtimes if it is null. The extension registry is searched
+	 * again the next time they are needed.
+	 * 
+	 * @param rt
+	 */
+	public static void resetValidationOverrides(TargetRuntime rt) {
+		if (rt==null)
+			validationOverrides.clear();
+		else
+			validationOverrides.remove(rt.getId());
+	}
+
+	/**
+	 * Collect the Model Constraint overrides defined by the given Target Runtime.
+	 * The extension registry is only searched once for each Target Runtime.
+	 * 
+	 * @param rt
+	 * @return a set of strings in the form "<EClass name>:<mode>"
+	 */
+	private static Set<String> getValidationOverrides(TargetRuntime rt) {
+		Set<String> overrides = validationOverrides.get(rt.getId());
+		if (overrides!=null)
+			return overrides;
+
+		overrides = new HashSet<String>();
+		ClassLoader cl = rt.getRuntimeExtension().getClass().getClassLoader();
+		Bundle b = ((BundleReference)cl).getBundle();
+		String pluginId = b.getSymbolicName();
+		IConfigurationElement[] elements = Platform.getExtensionRegistry().getConfigurationElementsFor("org.eclipse.emf.validation.constraintProviders"); //$NON-NLS-1$
+		for (IConfigurationElement e : elements) {
+			if (pluginId.equals(e.getDeclaringExtension().getContributor().getName())) {
+				if ("constraintProvider".equals(e.getName())) { //$NON-NLS-1$
+					for (IConfigurationElement e1 : e.getChildren("constraints")) { //$NON-NLS-1$
+						String categories = e1.getAttribute("categories"); //$NON-NLS-1$
+						if (categories!=null && categories.contains(CATEGORY_ID)) {
+							for (IConfigurationElement e2 : e1.getChildren("constraint")) { //$NON-NLS-1$
+								String m = e2.getAttribute("mode"); //$NON-NLS-1$
+								if (m==null)
+									m = "Batch"; //$NON-NLS-1$
+								for (IConfigurationElement e3 : e2.getChildren("target")) { //$NON-NLS-1$
+									String className = e3.getAttribute("class"); //$NON-NLS-1$
+									int i = className.indexOf(':');
+									if (i>0) {
+										className = className.substring(0,i);
 									}
+									overrides.add(className + ":" + m); //$NON-NLS-1$
 								}
 							}
 						}
@@ -250,6 +291,7 @@ public class BPMN2ValidationConstraints extends AbstractModelConstraint {
 				}
 			}
 		}
-		return false;
+		validationOverrides.put(rt.getId(), overrides);
+		return overrides;
 	}
 }
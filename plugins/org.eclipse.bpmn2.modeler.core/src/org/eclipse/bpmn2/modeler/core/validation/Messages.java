@@ -19,6 +19,7 @@ public class Messages extends NLS {
 	public static String BPMN2ProjectValidator_Dont_Ask_Again;
 	public static String BPMN2ProjectValidator_Invalid_File;
 	public static String BPMN2ProjectValidator_Title;
+	public static String ProjectValidationEngine_Validating;
 	public static String ValidationStatusAdapter_Multiple_Problems_Found;
 	static {
 		// initialize resource bundle
@@ -0,0 +1,495 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.validation;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.bpmn2.modeler.core.Activator;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Span;
+import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+import org.eclipse.bpmn2.modeler.core.utils.FileUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.ui.part.FileEditorInput;
+import org.eclipse.wst.validation.ValidationFramework;
+import org.eclipse.wst.validation.ValidationResult;
+import org.eclipse.wst.validation.Validator;
+import org.eclipse.wst.validation.ValidatorMessage;
+
+/**
+ * Validates the BPMN2 files of a single project on behalf of the
+ * {@link org.eclipse.bpmn2.modeler.core.builder.BPMN2Builder}.
+ * <p>
+ * Files are loaded and validated by a bounded pool of worker threads, each
+ * file in its own ResourceSet. The engine remembers the content hash of every
+ * file it has validated, along with the hashes of the files it depends on,
+ * i.e. the imports and other files that were loaded to resolve references.
+ * A file is skipped if neither its own content nor that of its dependencies
+ * has changed since it was last validated.
+ * <p>
+ * The problem markers for all of the files validated in one pass are written
+ * in a single workspace operation once all workers have finished, so that
+ * marker change notifications are batched.
+ */
+public class ProjectValidationEngine {
+
+	private static final String VALIDATOR_ID = "org.eclipse.bpmn2.modeler.core.projectValidator"; //$NON-NLS-1$
+	private static final int MAX_THREADS = 4;
+
+	private static Hashtable<IProject, ProjectValidationEngine> engines = new Hashtable<IProject, ProjectValidationEngine>();
+	private static IResourceChangeListener resourceChangeListener;
+
+	/**
+	 * The content hash of a file, along with its modification stamp at the
+	 * time the hash was computed so that unchanged files are not rehashed.
+	 */
+	private static class FileHash {
+		final long modificationStamp;
+		final String hash;
+
+		FileHash(long modificationStamp, String hash) {
+			this.modificationStamp = modificationStamp;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * The state of a file at the time it was last validated.
+	 */
+	private static class ValidationRecord {
+		String runtimeId;
+		String hash;
+		Map<IPath, String> dependencies = new HashMap<IPath, String>();
+	}
+
+	/**
+	 * The outcome of validating a single file on a worker thread.
+	 */
+	private static class ValidationTask {
+		IFile file;
+		TargetRuntime runtime;
+		ValidationRecord record;
+		ValidatorMessage[] messages;
+	}
+
+	private final IProject project;
+	private final Map<IPath, FileHash> hashes = new HashMap<IPath, FileHash>();
+	private final Map<IPath, ValidationRecord> records = new HashMap<IPath, ValidationRecord>();
+
+	private ProjectValidationEngine(IProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * Return the validation engine for the given project, creating it if
+	 * necessary.
+	 *
+	 * @param project the workspace project.
+	 * @return the project's validation engine.
+	 */
+	public static ProjectValidationEngine getEngine(IProject project) {
+		synchronized (engines) {
+			ProjectValidationEngine engine = engines.get(project);
+			if (engine==null) {
+				engine = new ProjectValidationEngine(project);
+				engines.put(project, engine);
+				if (resourceChangeListener==null) {
+					// release the engines of projects that are closed or deleted
+					resourceChangeListener = new IResourceChangeListener() {
+						@Override
+						public void resourceChanged(IResourceChangeEvent event) {
+							if (event.getResource() instanceof IProject)
+								removeEngine((IProject) event.getResource());
+						}
+					};
+					ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceChangeListener,
+							IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+				}
+			}
+			return engine;
+		}
+	}
+
+	public static void removeEngine(IProject project) {
+		engines.remove(project);
+	}
+
+	/**
+	 * Check if the BPMN2 Validator is enabled for build validation in the
+	 * given project. Validation can be disabled from the User Preferences or
+	 * the Project Properties "Validation" page.
+	 *
+	 * @param project the workspace project.
+	 * @return true if the project's BPMN2 files should be validated during a build.
+	 */
+	public static boolean isValidationEnabled(IProject project) {
+		ValidationFramework vf = ValidationFramework.getDefault();
+		if (vf.isSuspended(project))
+			return false;
+		Validator v = vf.getValidator(VALIDATOR_ID, project);
+		return v!=null && v.isBuildValidation();
+	}
+
+	/**
+	 * Forget all validation results, e.g. when the project is cleaned. The next
+	 * call to {@link #validate(Collection, IProgressMonitor)} validates all
+	 * files that are passed to it.
+	 */
+	public synchronized void clear() {
+		hashes.clear();
+		records.clear();
+	}
+
+	/**
+	 * Forget the validation results for a file that has been removed.
+	 *
+	 * @param file the removed file.
+	 */
+	public synchronized void remove(IFile file) {
+		hashes.remove(file.getFullPath());
+		records.remove(file.getFullPath());
+	}
+
+	/**
+	 * Check if the problem markers for the given file are current, that is if
+	 * neither the file nor any of its dependencies have changed since it was
+	 * last validated by this engine.
+	 *
+	 * @param file a BPMN2 file.
+	 * @return true if the file does not need to be validated again.
+	 */
+	public boolean isUpToDate(IFile file) {
+		return isUpToDate(file, null);
+	}
+
+	private boolean isUpToDate(IFile file, TargetRuntime rt) {
+		// records are never modified once they have been stored, so they can
+		// be compared without holding the lock while the files are hashed
+		ValidationRecord record;
+		synchronized (this) {
+			record = records.get(file.getFullPath());
+		}
+		if (record==null)
+			return false;
+		if (rt!=null && !rt.getId().equals(record.runtimeId))
+			return false;
+		if (!record.hash.equals(getHash(file)))
+			return false;
+		for (Entry<IPath, String> e : record.dependencies.entrySet()) {
+			IFile dependency = ResourcesPlugin.getWorkspace().getRoot().getFile(e.getKey());
+			if (!e.getValue().equals(getHash(dependency)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return the BPMN2 files that were last validated against the given file,
+	 * e.g. because they import it or reference one of its definitions. These
+	 * files need to be validated again when the given file changes.
+	 *
+	 * @param file any file in the workspace.
+	 * @return the dependent BPMN2 files, which may be empty.
+	 */
+	public synchronized List<IFile> getDependents(IFile file) {
+		List<IFile> result = new ArrayList<IFile>();
+		IPath path = file.getFullPath();
+		for (Entry<IPath, ValidationRecord> e : records.entrySet()) {
+			if (e.getValue().dependencies.containsKey(path))
+				result.add(ResourcesPlugin.getWorkspace().getRoot().getFile(e.getKey()));
+		}
+		return result;
+	}
+
+	/**
+	 * Validate the given BPMN2 files. Files that are up to date are skipped;
+	 * the rest are validated concurrently and their problem markers replaced.
+	 *
+	 * @param files the files to validate.
+	 * @param monitor a progress monitor.
+	 */
+	public void validate(Collection<IFile> files, final IProgressMonitor monitor) {
+		// Files are grouped by Target Runtime because the validation
+		// constraints look up validators for the "current" Target Runtime.
+		Map<TargetRuntime, List<IFile>> groups = new LinkedHashMap<TargetRuntime, List<IFile>>();
+		for (IFile file : new HashSet<IFile>(files)) {
+			if (!file.exists() || file.isDerived(IResource.CHECK_ANCESTORS))
+				continue;
+			TargetRuntime rt = TargetRuntime.getRuntime(new FileEditorInput(file));
+			if (isUpToDate(file, rt))
+				continue;
+			List<IFile> group = groups.get(rt);
+			if (group==null) {
+				group = new ArrayList<IFile>();
+				groups.put(rt, group);
+			}
+			group.add(file);
+		}
+
+		int count = 0;
+		for (List<IFile> group : groups.values())
+			count += group.size();
+		if (count==0)
+			return;
+
+		Span span = Instrumentation.start("validation.project"); //$NON-NLS-1$
+		span.setAttribute("project", project.getName()); //$NON-NLS-1$
+		Instrumentation.count("validation.files", count); //$NON-NLS-1$
+		monitor.beginTask(NLS.bind(Messages.ProjectValidationEngine_Validating, project.getName()), count);
+		final List<ValidationTask> results = new ArrayList<ValidationTask>();
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(count, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())),
+				new WorkerThreadFactory());
+		try {
+			// each worker loads and validates its file in the scope of the
+			// file's own Target Runtime, see BPMN2ProjectValidator
+			for (Entry<TargetRuntime, List<IFile>> group : groups.entrySet()) {
+				final TargetRuntime rt = group.getKey();
+
+				CompletionService<ValidationTask> cs = new ExecutorCompletionService<ValidationTask>(executor);
+				for (final IFile file : group.getValue()) {
+					cs.submit(new Callable<ValidationTask>() {
+						public ValidationTask call() throws Exception {
+							return validate(file, rt, monitor);
+						}
+					});
+				}
+				for (int i=0; i<group.getValue().size(); ++i) {
+					Future<ValidationTask> f = cs.take();
+					try {
+						ValidationTask task = f.get();
+						if (task!=null) {
+							results.add(task);
+							monitor.subTask(task.file.getName());
+						}
+					}
+					catch (ExecutionException e) {
+						Activator.logError(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+					}
+					monitor.worked(1);
+				}
+				if (monitor.isCanceled())
+					break;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+			span.end();
+		}
+
+		span = Instrumentation.start("validation.markers"); //$NON-NLS-1$
+		try {
+			updateMarkers(results);
+		}
+		finally {
+			span.end();
+		}
+		monitor.done();
+	}
+
+	/**
+	 * Load and validate a single file. This runs on a worker thread.
+	 */
+	private ValidationTask validate(IFile file, TargetRuntime rt, final IProgressMonitor monitor) throws Exception {
+		if (monitor.isCanceled())
+			return null;
+
+		// progress monitors are not thread safe: the workers only
+		// forward cancellation requests
+		IProgressMonitor workerMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+		ValidationTask task = new ValidationTask();
+		task.file = file;
+		task.runtime = rt;
+		task.record = new ValidationRecord();
+		task.record.runtimeId = rt.getId();
+		task.record.hash = getHash(file);
+
+		ValidationResult result = new ValidationResult();
+		Span span = Instrumentation.start("validation.file"); //$NON-NLS-1$
+		span.setAttribute("file", file.getFullPath()); //$NON-NLS-1$
+		try {
+			Resource resource = BPMN2ProjectValidator.loadResource(file, rt, workerMonitor);
+			ResourceSet rs = resource.getResourceSet();
+			try {
+				BPMN2ProjectValidator.validate(resource, rt, result, workerMonitor);
+				if (workerMonitor.isCanceled())
+					return null;
+				// All other Resources that were loaded while validating this
+				// file are dependencies: imports, called processes, etc.
+				for (Resource r : rs.getResources()) {
+					if (r!=resource) {
+						IFile dependency = FileUtils.getFile(r.getURI());
+						if (dependency!=null && dependency.exists())
+							task.record.dependencies.put(dependency.getFullPath(), getHash(dependency));
+					}
+				}
+			}
+			finally {
+				for (Resource r : rs.getResources())
+					r.unload();
+				rs.getResources().clear();
+			}
+		}
+		finally {
+			span.end();
+		}
+		task.messages = result.getMessages();
+		return task;
+	}
+
+	/**
+	 * Replace the problem markers of all validated files in a single
+	 * workspace operation, then remember the files' validation records.
+	 */
+	private void updateMarkers(final List<ValidationTask> results) {
+		if (results.isEmpty())
+			return;
+		IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (ValidationTask task : results) {
+					if (!task.file.exists())
+						continue;
+					task.file.deleteMarkers(IMarker.PROBLEM, true, IResource.DEPTH_ZERO);
+					for (ValidatorMessage message : task.messages) {
+						String type = message.getType();
+						if (type==null)
+							type = task.runtime.getProblemMarkerId();
+						IMarker marker = task.file.createMarker(type);
+						marker.setAttributes(message.getAttributes());
+					}
+				}
+			}
+		};
+		try {
+			ResourcesPlugin.getWorkspace().run(runnable, project, IResource.NONE, null);
+			synchronized (this) {
+				for (ValidationTask task : results)
+					records.put(task.file.getFullPath(), task.record);
+			}
+		}
+		catch (CoreException e) {
+			Activator.logStatus(e.getStatus());
+		}
+	}
+
+	/**
+	 * Return the content hash of the given file. Hashes are cached and only
+	 * recomputed when the file's modification stamp changes. The file is read
+	 * without holding the engine's lock, so that other validation threads are
+	 * not kept waiting; two threads may occasionally hash the same file.
+	 *
+	 * @param file the file.
+	 * @return a hex string, or an empty string if the file does not exist.
+	 */
+	private String getHash(IFile file) {
+		if (!file.exists())
+			return ""; //$NON-NLS-1$
+		IPath path = file.getFullPath();
+		long stamp = file.getModificationStamp();
+		FileHash fh;
+		synchronized (this) {
+			fh = hashes.get(path);
+		}
+		if (fh==null || fh.modificationStamp!=stamp) {
+			fh = new FileHash(stamp, computeHash(file));
+			synchronized (this) {
+				hashes.put(path, fh);
+			}
+		}
+		return fh.hash;
+	}
+
+	private static String computeHash(IFile file) {
+		InputStream in = null;
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			in = file.getContents(true);
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				md.update(buffer, 0, n);
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest()) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		}
+		catch (Exception e) {
+			// force validation if the file can't be read
+			return Long.toString(file.getModificationStamp());
+		}
+		finally {
+			if (in!=null) {
+				try {
+					in.close();
+				}
+				catch (Exception e) {
+				}
+			}
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "BPMN2 Validation Worker " + count.incrementAndGet()); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
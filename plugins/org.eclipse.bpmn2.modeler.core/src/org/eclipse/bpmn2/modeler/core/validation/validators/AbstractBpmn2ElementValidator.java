@@ -55,7 +55,8 @@ public abstract class AbstractBpmn2ElementValidator<T extends EObject> implement
 	 * name>Validator and must be declared public. This factory method searches
 	 * for such classes in the same package as this
 	 * AbstractBpmn2ElementValidator base class. If such a class is found, a new
-	 * instance is constructed and returned; otherwise null is returned.
+	 * instance is constructed and returned; otherwise null is returned. The
+	 * result of the search is cached by the {@link ValidatorRegistry}.
 	 * 
 	 * @param ctx the IValidationContext used to construct the validator class
 	 * @param c the BPMN2 element type. If this is an implementation class and
@@ -64,37 +65,28 @@ public abstract class AbstractBpmn2ElementValidator<T extends EObject> implement
 	 * @return a validator class if found, otherwise null.
 	 */
 	public static IBpmn2ElementValidator<?> getValidator(IValidationContext ctx, Class<?> c) {
-		String className = AbstractBpmn2ElementValidator.class.getPackage().getName() + "." + c.getSimpleName(); //$NON-NLS-1$
-		if (className.endsWith("Impl")) { //$NON-NLS-1$
-			className = className.replaceFirst("Impl$", ""); //$NON-NLS-1$ //$NON-NLS-2$
-		}
-		className += "Validator"; //$NON-NLS-1$
-		try {
-			Class<?> validatorClass = AbstractBpmn2ElementValidator.class.getClassLoader().loadClass(className);
-			if (validatorClass != null) {
-				return (AbstractBpmn2ElementValidator<?>) validatorClass.getConstructor(IValidationContext.class)
-						.newInstance(ctx);
-			}
-		} catch (Exception e) {
-		}
-		return null;
+		return ValidatorRegistry.createValidator(ctx, c);
 	}
 
 	public static IBpmn2ElementValidator<?> getValidator(IBpmn2ElementValidator<?> parent, Class<?> c) {
-		String className = AbstractBpmn2ElementValidator.class.getPackage().getName() + "." + c.getSimpleName(); //$NON-NLS-1$
-		if (className.endsWith("Impl")) { //$NON-NLS-1$
-			className = className.replaceFirst("Impl$", ""); //$NON-NLS-1$ //$NON-NLS-2$
-		}
-		className += "Validator"; //$NON-NLS-1$
-		try {
-			Class<?> validatorClass = AbstractBpmn2ElementValidator.class.getClassLoader().loadClass(className);
-			if (validatorClass != null) {
-				return (AbstractBpmn2ElementValidator<?>) validatorClass.getConstructor(AbstractBpmn2ElementValidator.class)
-						.newInstance(parent);
-			}
-		} catch (Exception e) {
-		}
-		return null;
+		return ValidatorRegistry.createValidator(parent, c);
+	}
+
+	/**
+	 * Factory method for creating a validator object for the given EClass.
+	 * The validator is looked up in the {@link ValidatorRegistry}, which
+	 * includes validators registered by the current Target Runtime.
+	 * 
+	 * @param ctx the IValidationContext used to construct the validator class
+	 * @param eClass the BPMN2 element type.
+	 * @return a validator class if found, otherwise null.
+	 */
+	public static IBpmn2ElementValidator<?> getValidator(IValidationContext ctx, EClass eClass) {
+		return ValidatorRegistry.createValidator(ctx, eClass);
+	}
+
+	public static IBpmn2ElementValidator<?> getValidator(IBpmn2ElementValidator<?> parent, EClass eClass) {
+		return ValidatorRegistry.createValidator(parent, eClass);
 	}
 
 	protected AbstractBpmn2ElementValidator() {
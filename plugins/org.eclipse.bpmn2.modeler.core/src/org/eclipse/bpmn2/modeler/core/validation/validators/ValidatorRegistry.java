@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.core.validation.validators;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.bpmn2.modeler.core.Activator;
+import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+import org.eclipse.bpmn2.modeler.core.runtime.ValidatorDescriptor;
+import org.eclipse.bpmn2.modeler.core.validation.BPMN2ValidationConstraints;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.validation.IValidationContext;
+
+/**
+ * A registry of BPMN2 element validators, keyed by EClass.
+ * <p>
+ * Validators are resolved once for each EClass and Target Runtime, and the
+ * result is cached; this includes negative results, so that types without a
+ * validator do not cause repeated class loader lookups. A validator is
+ * resolved in the following order:
+ * <ol>
+ * <li>validators registered for the Target Runtime, either explicitly with
+ * {@link #register(TargetRuntime, EClass, Class)} or with a &lt;validator&gt;
+ * element in the Target Runtime's plugin.xml</li>
+ * <li>validators registered for all Target Runtimes with
+ * {@link #register(TargetRuntime, EClass, Class)} and a null Target Runtime</li>
+ * <li>a class named &lt;BPMN2 type name&gt;Validator in the same package as
+ * {@link AbstractBpmn2ElementValidator}</li>
+ * </ol>
+ * Validator classes must extend {@link AbstractBpmn2ElementValidator} and
+ * provide public constructors that accept an {@link IValidationContext} and
+ * an {@link AbstractBpmn2ElementValidator} parent respectively.
+ */
+public class ValidatorRegistry {
+
+	// marker for cached negative results
+	private static final ValidatorType NONE = new ValidatorType(null);
+	// key used for validators that apply to all Target Runtimes
+	private static final String ALL_RUNTIMES = ""; //$NON-NLS-1$
+
+	private static final Map<String, RuntimeValidators> runtimeValidators = new ConcurrentHashMap<String, RuntimeValidators>();
+	private static final Map<String, Class<?>> commonValidators = new ConcurrentHashMap<String, Class<?>>();
+	private static final Map<Class<?>, ValidatorType> conventionValidators = new ConcurrentHashMap<Class<?>, ValidatorType>();
+	private static final Map<EClass, List<EClass>> typeHierarchies = new ConcurrentHashMap<EClass, List<EClass>>();
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private ValidatorRegistry() {
+	}
+
+	/**
+	 * Create a validator for the given EClass using the current Target Runtime.
+	 *
+	 * @param ctx the IValidationContext used to construct the validator
+	 * @param eClass the BPMN2 element type
+	 * @return a new validator instance, or null if there is no validator for
+	 *         the given type.
+	 */
+	public static IBpmn2ElementValidator<?> createValidator(IValidationContext ctx, EClass eClass) {
+		return getValidatorType(TargetRuntime.getCurrentRuntime(), eClass).create(ctx);
+	}
+
+	/**
+	 * Create a validator for the given EClass using the current Target Runtime.
+	 * The new validator shares its validation context and results with the
+	 * given parent.
+	 *
+	 * @param parent the parent validator
+	 * @param eClass the BPMN2 element type
+	 * @return a new validator instance, or null if there is no validator for
+	 *         the given type.
+	 */
+	public static IBpmn2ElementValidator<?> createValidator(IBpmn2ElementValidator<?> parent, EClass eClass) {
+		return getValidatorType(TargetRuntime.getCurrentRuntime(), eClass).create(parent);
+	}
+
+	/**
+	 * Create a validator for the given BPMN2 type using only the naming
+	 * convention described in {@link AbstractBpmn2ElementValidator#getValidator(IValidationContext, Class)}.
+	 *
+	 * @param ctx the IValidationContext used to construct the validator
+	 * @param c the BPMN2 element interface or implementation class
+	 * @return a new validator instance, or null if there is no validator for
+	 *         the given type.
+	 */
+	public static IBpmn2ElementValidator<?> createValidator(IValidationContext ctx, Class<?> c) {
+		return getConventionValidator(c).create(ctx);
+	}
+
+	public static IBpmn2ElementValidator<?> createValidator(IBpmn2ElementValidator<?> parent, Class<?> c) {
+		return getConventionValidator(c).create(parent);
+	}
+
+	/**
+	 * Return the type hierarchy of the given EClass, starting with the EClass
+	 * itself and working up through its super types. The list is computed once
+	 * for each EClass and must not be modified by clients.
+	 *
+	 * @param eClass the EClass
+	 * @return an unmodifiable list of EClasses
+	 */
+	public static List<EClass> getTypeHierarchy(EClass eClass) {
+		List<EClass> types = typeHierarchies.get(eClass);
+		if (types==null) {
+			// EClass#getEAllSuperTypes() returns the class hierarchy from the
+			// most general type down to the more specialized types, so we have
+			// to make a copy and reverse the list.
+			types = new ArrayList<EClass>(eClass.getEAllSuperTypes().size() + 1);
+			types.addAll(eClass.getEAllSuperTypes());
+			types.add(eClass);
+			Collections.reverse(types);
+			types = Collections.unmodifiableList(types);
+			typeHierarchies.put(eClass, types);
+		}
+		return types;
+	}
+
+	/**
+	 * Register a validator for the given EClass. This takes precedence over
+	 * validators that are found by naming convention.
+	 *
+	 * @param rt the Target Runtime for which this validator is used, or null
+	 *            if it should be used for all Target Runtimes
+	 * @param eClass the BPMN2 element type
+	 * @param validatorClass the validator class
+	 */
+	public static void register(TargetRuntime rt, EClass eClass, Class<? extends AbstractBpmn2ElementValidator> validatorClass) {
+		if (rt==null) {
+			commonValidators.put(getTypeName(eClass), validatorClass);
+			for (RuntimeValidators validators : runtimeValidators.values())
+				validators.resolved.clear();
+		}
+		else {
+			RuntimeValidators validators = getRuntimeValidators(rt);
+			validators.registered.put(getTypeName(eClass), validatorClass);
+			validators.resolved.clear();
+		}
+	}
+
+	/**
+	 * Remove a validator that was registered with
+	 * {@link #register(TargetRuntime, EClass, Class)}.
+	 *
+	 * @param rt the Target Runtime, or null
+	 * @param eClass the BPMN2 element type
+	 */
+	public static void unregister(TargetRuntime rt, EClass eClass) {
+		if (rt==null) {
+			commonValidators.remove(getTypeName(eClass));
+			for (RuntimeValidators validators : runtimeValidators.values())
+				validators.resolved.clear();
+		}
+		else {
+			RuntimeValidators validators = getRuntimeValidators(rt);
+			validators.registered.remove(getTypeName(eClass));
+			validators.resolved.clear();
+		}
+	}
+
+	/**
+	 * Discard the cached validators for the given Target Runtime. The
+	 * validators declared in the Target Runtime's plugin.xml are reloaded the
+	 * next time they are needed, and so are the Model Constraint overrides
+	 * cached by {@link BPMN2ValidationConstraints}. This is called whenever a
+	 * &lt;validator&gt; extension element is added to or removed from the
+	 * Target Runtime.
+	 *
+	 * @param rt the Target Runtime
+	 */
+	public static void reset(TargetRuntime rt) {
+		RuntimeValidators validators = runtimeValidators.get(getRuntimeKey(rt));
+		if (validators!=null)
+			validators.reset();
+		BPMN2ValidationConstraints.resetValidationOverrides(rt);
+	}
+
+	/**
+	 * Discard all cached validators, type hierarchies and Model Constraint
+	 * overrides. Explicit registrations are kept.
+	 */
+	public static void reset() {
+		for (RuntimeValidators validators : runtimeValidators.values())
+			validators.reset();
+		conventionValidators.clear();
+		typeHierarchies.clear();
+		BPMN2ValidationConstraints.resetValidationOverrides(null);
+	}
+
+	/**
+	 * @return the number of validator lookups that were satisfied from the cache.
+	 */
+	public static long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of validator lookups that required a validator class
+	 *         to be resolved.
+	 */
+	public static long getMissCount() {
+		return misses.get();
+	}
+
+	public static void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private static ValidatorType getValidatorType(TargetRuntime rt, EClass eClass) {
+		RuntimeValidators validators = getRuntimeValidators(rt);
+		ValidatorType vt = validators.resolved.get(eClass);
+		if (vt!=null) {
+			hits.incrementAndGet();
+			return vt;
+		}
+		misses.incrementAndGet();
+		String typeName = getTypeName(eClass);
+		Class<?> validatorClass = validators.registered.get(typeName);
+		if (validatorClass==null)
+			validatorClass = validators.getDeclared().get(typeName);
+		if (validatorClass==null)
+			validatorClass = commonValidators.get(typeName);
+		if (validatorClass!=null)
+			vt = new ValidatorType(validatorClass);
+		else
+			vt = resolveConventionValidator(eClass.getInstanceClass());
+		validators.resolved.put(eClass, vt);
+		return vt;
+	}
+
+	private static ValidatorType getConventionValidator(Class<?> c) {
+		ValidatorType vt = c==null ? NONE : conventionValidators.get(c);
+		if (vt!=null) {
+			hits.incrementAndGet();
+			return vt;
+		}
+		misses.incrementAndGet();
+		return resolveConventionValidator(c);
+	}
+
+	private static ValidatorType resolveConventionValidator(Class<?> c) {
+		if (c==null)
+			return NONE;
+		ValidatorType vt = conventionValidators.get(c);
+		if (vt!=null)
+			return vt;
+		String className = AbstractBpmn2ElementValidator.class.getPackage().getName() + "." + c.getSimpleName(); //$NON-NLS-1$
+		if (className.endsWith("Impl")) { //$NON-NLS-1$
+			className = className.replaceFirst("Impl$", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		className += "Validator"; //$NON-NLS-1$
+		try {
+			vt = new ValidatorType(AbstractBpmn2ElementValidator.class.getClassLoader().loadClass(className));
+		}
+		catch (ClassNotFoundException e) {
+			vt = NONE;
+		}
+		conventionValidators.put(c, vt);
+		return vt;
+	}
+
+	private static RuntimeValidators getRuntimeValidators(TargetRuntime rt) {
+		String key = getRuntimeKey(rt);
+		RuntimeValidators validators = runtimeValidators.get(key);
+		if (validators==null) {
+			synchronized (runtimeValidators) {
+				validators = runtimeValidators.get(key);
+				if (validators==null) {
+					validators = new RuntimeValidators(rt);
+					runtimeValidators.put(key, validators);
+				}
+			}
+		}
+		return validators;
+	}
+
+	private static String getRuntimeKey(TargetRuntime rt) {
+		return rt==null ? ALL_RUNTIMES : rt.getId();
+	}
+
+	private static String getTypeName(EClass eClass) {
+		String name = eClass.getInstanceClassName();
+		return name!=null ? name : eClass.getName();
+	}
+
+	/**
+	 * The validators registered for, and resolved by, a single Target Runtime.
+	 */
+	private static class RuntimeValidators {
+		final TargetRuntime rt;
+		final Map<String, Class<?>> registered = new ConcurrentHashMap<String, Class<?>>();
+		final Map<EClass, ValidatorType> resolved = new ConcurrentHashMap<EClass, ValidatorType>();
+		volatile Map<String, Class<?>> declared;
+
+		public RuntimeValidators(TargetRuntime rt) {
+			this.rt = rt;
+		}
+
+		public Map<String, Class<?>> getDeclared() {
+			Map<String, Class<?>> result = declared;
+			if (result==null) {
+				result = new HashMap<String, Class<?>>();
+				if (rt!=null) {
+					for (ValidatorDescriptor vd : rt.getValidatorDescriptors()) {
+						Class<?> validatorClass = vd.getValidatorClass();
+						if (vd.getType()!=null && validatorClass!=null)
+							result.put(vd.getType(), validatorClass);
+					}
+				}
+				declared = result;
+			}
+			return result;
+		}
+
+		public void reset() {
+			declared = null;
+			resolved.clear();
+		}
+	}
+
+	/**
+	 * A resolved validator class with its two constructors.
+	 */
+	private static class ValidatorType {
+		private Constructor<?> contextConstructor;
+		private Constructor<?> parentConstructor;
+
+		public ValidatorType(Class<?> validatorClass) {
+			if (validatorClass!=null && AbstractBpmn2ElementValidator.class.isAssignableFrom(validatorClass)) {
+				try {
+					contextConstructor = validatorClass.getConstructor(IValidationContext.class);
+				}
+				catch (NoSuchMethodException e) {
+				}
+				try {
+					parentConstructor = validatorClass.getConstructor(AbstractBpmn2ElementValidator.class);
+				}
+				catch (NoSuchMethodException e) {
+				}
+			}
+		}
+
+		public IBpmn2ElementValidator<?> create(IValidationContext ctx) {
+			return newInstance(contextConstructor, ctx);
+		}
+
+		public IBpmn2ElementValidator<?> create(IBpmn2ElementValidator<?> parent) {
+			if (parent instanceof AbstractBpmn2ElementValidator)
+				return newInstance(parentConstructor, parent);
+			return null;
+		}
+
+		private static IBpmn2ElementValidator<?> newInstance(Constructor<?> ctor, Object arg) {
+			if (ctor!=null) {
+				try {
+					return (IBpmn2ElementValidator<?>) ctor.newInstance(arg);
+				}
+				catch (Exception e) {
+					Activator.logError(e);
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -12,13 +12,14 @@
  ******************************************************************************/
 package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.eclipse.bpmn2.Activity;
@@ -41,11 +42,11 @@ import org.eclipse.bpmn2.modeler.core.IBpmn2RuntimeExtension;
 import org.eclipse.bpmn2.modeler.core.LifecycleEvent;
 import org.eclipse.bpmn2.modeler.core.LifecycleEvent.EventType;
 import org.eclipse.bpmn2.modeler.core.merrimac.clad.PropertiesCompositeFactory;
-import org.eclipse.bpmn2.modeler.core.preferences.Bpmn2Preferences;
 import org.eclipse.bpmn2.modeler.core.runtime.CustomTaskDescriptor;
 import org.eclipse.bpmn2.modeler.core.runtime.CustomTaskImageProvider;
 import org.eclipse.bpmn2.modeler.core.runtime.ModelExtensionDescriptor.Property;
 import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+import org.eclipse.bpmn2.modeler.core.utils.DocumentHeader;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil.Bpmn2DiagramType;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.features.JbpmCustomTaskFeatureContainer;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.GlobalType;
@@ -70,19 +71,16 @@ import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.property.JbpmScriptTaskDeta
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.property.JbpmSendTaskDetailComposite;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.property.JbpmSequenceFlowDetailComposite;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.property.JbpmTaskDetailComposite;
-import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WIDException;
-import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WIDHandler;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WorkItemDefinition;
-import org.eclipse.bpmn2.modeler.ui.DefaultBpmn2RuntimeExtension.RootElementParser;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WorkItemDefinitionRegistry;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WorkItemDefinitionRegistry.IRegistryListener;
 import org.eclipse.bpmn2.modeler.ui.editor.BPMN2Editor;
 import org.eclipse.bpmn2.modeler.ui.wizards.FileService;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IResourceVisitor;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.resource.ImageDescriptor;
@@ -97,6 +95,26 @@ public class JBPM5RuntimeExtension implements IBpmn2RuntimeExtension {
 	
 	private static final String DROOLS_NAMESPACE = "http://www.jboss.org/drools"; //$NON-NLS-1$
 	private List<WorkItemDefinition> workItemDefinitions;
+	// Work Item Definition name -> first definition with that name
+	private Map<String, WorkItemDefinition> workItemDefinitionMap = new HashMap<String, WorkItemDefinition>();
+	// the folder and registry version the Custom Tasks were last built from
+	private IContainer workItemDefinitionsFolder;
+	private int workItemDefinitionsVersion;
+	private TargetRuntime workItemDefinitionsRuntime;
+	// the jBPM editors that are open, to update their palettes when definition files change
+	private final List<BPMN2Editor> openEditors = new ArrayList<BPMN2Editor>();
+	private final IRegistryListener registryListener = new IRegistryListener() {
+		@Override
+		public void definitionsChanged(final WorkItemDefinitionRegistry registry) {
+			// this is called from a resource change listener
+			Display.getDefault().asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					workItemDefinitionsChanged(registry);
+				}
+			});
+		}
+	};
 	
 	/* (non-Javadoc)
 	 * Check if the given input file is a drools-generated (jBPM) process file.
@@ -105,10 +123,30 @@ public class JBPM5RuntimeExtension implements IBpmn2RuntimeExtension {
 	 */
 	@Override
 	public boolean isContentForRuntime(IEditorInput input) {
-		InputSource source = new InputSource( FileService.getInputContents(input) );
-		RootElementParser parser = new RootElementParser(DROOLS_NAMESPACE);
-		parser.parse(source);
-		return parser.getResult();
+		// Every Target Runtime asks about the same file, so use the
+		// shared header cache whenever the input is a local file.
+		DocumentHeader header = null;
+		URI uri = FileService.getInputUri(input);
+		if (uri!=null && (uri.isPlatformResource() || uri.isFile())) {
+			header = DocumentHeader.getHeader(uri);
+		}
+		else {
+			InputStream in = FileService.getInputContents(input);
+			if (in!=null) {
+				try {
+					header = DocumentHeader.parse(new InputSource(in));
+				}
+				finally {
+					try {
+						in.close();
+					}
+					catch (IOException e) {
+					}
+				}
+			}
+		}
+		return header!=null && "definitions".equals(header.getLocalName()) //$NON-NLS-1$
+				&& header.hasNamespace(DROOLS_NAMESPACE);
 	}
 
 	public String getTargetNamespace(Bpmn2DiagramType diagramType){
@@ -122,13 +160,7 @@ public class JBPM5RuntimeExtension implements IBpmn2RuntimeExtension {
 	}
 
 	public WorkItemDefinition getWorkItemDefinition(String taskName) {
-		List<WorkItemDefinition> wids = getWorkItemDefinitions();
-		for (WorkItemDefinition wid : wids) {
-			if (taskName.equals(wid.getName())) {
-				return wid;
-			}
-		}
-		return null;
+		return workItemDefinitionMap.get(taskName);
 	}
 	
 	@Override
@@ -159,63 +191,22 @@ public class JBPM5RuntimeExtension implements IBpmn2RuntimeExtension {
 			// TODO: if file was opened from a Guvnor Repository view (or git in jBPM 6)
 			// we may want to explicitly make the editor read-only
 	
-			IFile inputFile = ((BPMN2Editor) event.target).getModelFile();
+			BPMN2Editor editor = (BPMN2Editor) event.target;
+			IFile inputFile = editor.getModelFile();
 			if (inputFile!=null) {
-				IContainer folder = inputFile.getParent();
-
-				// initialize workItemDefinitions list if necessary
-				getWorkItemDefinitions();
-				workItemDefinitions.clear();
-				try {
-					final WIDResourceVisitor visitor = new WIDResourceVisitor();
-					folder.accept(visitor, IResource.DEPTH_INFINITE, false);
-					if (visitor.getWIDFiles().size() > 0) {
-						Iterator<IFile> fileIter = visitor.getWIDFiles().iterator();
-						while (fileIter.hasNext()) {
-							IFile file = fileIter.next();
-							HashMap<String, WorkItemDefinition> widMap = 
-									new LinkedHashMap<String, WorkItemDefinition>();
-							WIDHandler.evaluateWorkDefinitions(widMap, file);
-							workItemDefinitions.addAll(widMap.values());
-						}
-					}
-					if (!workItemDefinitions.isEmpty()) {
-						List<CustomTaskDescriptor> removed = new ArrayList<CustomTaskDescriptor>();
-						for (CustomTaskDescriptor d : TargetRuntime.getCurrentRuntime().getCustomTaskDescriptors()) {
-							if (!d.isPermanent())
-								removed.add(d);
-						}
-						TargetRuntime.getCurrentRuntime().getCustomTaskDescriptors().removeAll(removed);
-					
-						java.util.Iterator<WorkItemDefinition> widIterator = workItemDefinitions.iterator();
-						while(widIterator.hasNext()) {
-							final WorkItemDefinition wid = widIterator.next();
-							final CustomTaskDescriptor ctd = convertWIDtoCT(wid);
-							if (ctd != null) {
-								if (TargetRuntime.getCurrentRuntime().customTaskExists(ctd.getId())) {
-									Display.getDefault().asyncExec( new Runnable() {
-										@Override
-										public void run() {
-											MessageDialog.openError(Display.getDefault().getActiveShell(),
-													Messages.JBPM5RuntimeExtension_Duplicate_Task_Title,
-													NLS.bind(
-														Messages.JBPM5RuntimeExtension_Duplicate_Task_Message,
-														ctd.getId(),
-														wid.getDefinitionFile().getFullPath().toString())
-												);
-										}
-									});
-								}
-								else
-									TargetRuntime.getCurrentRuntime().addCustomTask(ctd);
-							}
-						}
-					}
-				} catch (CoreException e) {
-					e.printStackTrace();
-				} catch (WIDException e) {
-					e.printStackTrace();
-				}
+				openEditors.add(editor);
+				WorkItemDefinitionRegistry registry = WorkItemDefinitionRegistry.getRegistry(inputFile.getProject());
+				registry.addListener(registryListener);
+				loadWorkItemDefinitions(TargetRuntime.getCurrentRuntime(editor.getResource()), registry, inputFile.getParent(), false);
+			}
+		}
+		else if (event.eventType == EventType.EDITOR_SHUTDOWN) {
+			BPMN2Editor editor = (BPMN2Editor) event.target;
+			IFile inputFile = editor.getModelFile();
+			if (openEditors.remove(editor) && inputFile!=null) {
+				IProject project = inputFile.getProject();
+				if (getOpenEditors(project).isEmpty())
+					WorkItemDefinitionRegistry.getRegistry(project).removeListener(registryListener);
 			}
 		}
 		else if (event.eventType == EventType.BUSINESSOBJECT_CREATED) {
@@ -231,12 +222,106 @@ public class JBPM5RuntimeExtension implements IBpmn2RuntimeExtension {
 		}
 	}
 	
+	/*
+	 * Rebuild the Custom Tasks of the given Target Runtime from the Work Item
+	 * Definitions found in the given folder, unless they were already built
+	 * from the same folder and registry version.
+	 * @param rt
+	 * @param registry
+	 * @param folder
+	 * @param changed true if definition files have been changed or removed,
+	 *        in which case the old Custom Tasks are removed even if the folder
+	 *        no longer contains any definitions
+	 */
+	private void loadWorkItemDefinitions(TargetRuntime rt, WorkItemDefinitionRegistry registry,
+			IContainer folder, boolean changed) {
+		int version = registry.getVersion();
+		if (folder.equals(workItemDefinitionsFolder) && version==workItemDefinitionsVersion) {
+			// the Custom Tasks are still those of this folder
+			return;
+		}
+
+		List<WorkItemDefinition> wids = registry.getDefinitions(folder);
+		Map<String, WorkItemDefinition> widMap = new HashMap<String, WorkItemDefinition>();
+		for (WorkItemDefinition wid : wids) {
+			if (!widMap.containsKey(wid.getName()))
+				widMap.put(wid.getName(), wid);
+		}
+		workItemDefinitions = wids;
+		workItemDefinitionMap = widMap;
+		workItemDefinitionsFolder = folder;
+		workItemDefinitionsVersion = version;
+		workItemDefinitionsRuntime = rt;
+
+		if (!workItemDefinitions.isEmpty() || changed) {
+			List<CustomTaskDescriptor> removed = new ArrayList<CustomTaskDescriptor>();
+			for (CustomTaskDescriptor d : rt.getCustomTaskDescriptors()) {
+				if (!d.isPermanent())
+					removed.add(d);
+			}
+			rt.getCustomTaskDescriptors().removeAll(removed);
+		
+			java.util.Iterator<WorkItemDefinition> widIterator = workItemDefinitions.iterator();
+			while(widIterator.hasNext()) {
+				final WorkItemDefinition wid = widIterator.next();
+				final CustomTaskDescriptor ctd = convertWIDtoCT(registry, wid);
+				if (ctd != null) {
+					if (rt.customTaskExists(ctd.getId())) {
+						Display.getDefault().asyncExec( new Runnable() {
+							@Override
+							public void run() {
+								MessageDialog.openError(Display.getDefault().getActiveShell(),
+										Messages.JBPM5RuntimeExtension_Duplicate_Task_Title,
+										NLS.bind(
+											Messages.JBPM5RuntimeExtension_Duplicate_Task_Message,
+											ctd.getId(),
+											wid.getDefinitionFile().getFullPath().toString())
+									);
+							}
+						});
+					}
+					else
+						rt.addCustomTask(ctd);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Called on the UI thread when definition files of a project with open
+	 * editors have been added, changed or removed. The Custom Tasks are rebuilt
+	 * if they came from that project, and the palettes of its editors are
+	 * updated to show them.
+	 * @param registry
+	 */
+	private void workItemDefinitionsChanged(WorkItemDefinitionRegistry registry) {
+		if (workItemDefinitionsFolder==null || workItemDefinitionsRuntime==null ||
+				!registry.getProject().equals(workItemDefinitionsFolder.getProject()))
+			return;
+		if (!workItemDefinitionsFolder.exists()) {
+			workItemDefinitionsFolder = null;
+			return;
+		}
+		loadWorkItemDefinitions(workItemDefinitionsRuntime, registry, workItemDefinitionsFolder, true);
+		for (BPMN2Editor editor : getOpenEditors(registry.getProject()))
+			editor.updatePalette();
+	}
+
+	private List<BPMN2Editor> getOpenEditors(IProject project) {
+		List<BPMN2Editor> result = new ArrayList<BPMN2Editor>();
+		for (BPMN2Editor editor : openEditors) {
+			if (editor.getModelFile()!=null && project.equals(editor.getModelFile().getProject()))
+				result.add(editor);
+		}
+		return result;
+	}
+	
 	/*
 	 * Convert a WID to a CustomTaskDescriptor
 	 * @param wid
 	 * @return
 	 */
-	private CustomTaskDescriptor convertWIDtoCT ( WorkItemDefinition wid ) {
+	private CustomTaskDescriptor convertWIDtoCT ( WorkItemDefinitionRegistry registry, WorkItemDefinition wid ) {
 		if (wid != null) {
 			String id = wid.getName();
 			String name = wid.getDisplayName();
@@ -252,25 +337,19 @@ public class JBPM5RuntimeExtension implements IBpmn2RuntimeExtension {
 			setBasicProps ( ct, wid);
 			
 			// push the icon into the image registry
-			IProject project = Bpmn2Preferences.getActiveProject();
 			String iconPath = getWIDPropertyValue("icon", wid); //$NON-NLS-1$
 			if (iconPath != null) {
 				Path tempPath = new Path(iconPath);
 				String iconName = tempPath.lastSegment();
-				IconResourceVisitor visitor = new IconResourceVisitor(iconName);
-				try {
-					project.accept(visitor, IResource.DEPTH_INFINITE, false);
-					if (visitor.getIconResources() != null && visitor.getIconResources().size() > 0) {
-						ArrayList<IResource> icons = visitor.getIconResources();
-						IResource icon = icons.get(0);
+				IFile icon = registry.findFile(iconName);
+				if (icon != null) {
+					try {
 						URL url = icon.getLocationURI().toURL();
 						ImageDescriptor image = ImageDescriptor.createFromURL(url);
 						CustomTaskImageProvider.registerImage(iconPath, image);
+					} catch (MalformedURLException e) {
+						e.printStackTrace();
 					}
-				} catch (CoreException e1) {
-					e1.printStackTrace();
-				} catch (MalformedURLException e) {
-					e.printStackTrace();
 				}
 			}
 			
@@ -440,64 +519,4 @@ public class JBPM5RuntimeExtension implements IBpmn2RuntimeExtension {
 			ct.getProperties().add(prop);
 		}
 	}
-
-	/*
-	 * Class: Visits each file in the project to see if it's a *.conf/*.wid
-	 * @author bfitzpat
-	 *
-	 */
-	private class WIDResourceVisitor implements IResourceVisitor {
-		
-		private ArrayList<IFile> widFiles = new ArrayList<IFile>();
-		
-		public boolean visit (IResource resource) throws CoreException {
-			if (resource.getType() == IResource.FILE) {
-				if ("conf".equalsIgnoreCase(((IFile)resource).getFileExtension()) || //$NON-NLS-1$
-						"wid".equalsIgnoreCase(((IFile)resource).getFileExtension())) { //$NON-NLS-1$
-					widFiles.add((IFile)resource);
-					return true;
-				}
-			}
-			else if (resource.getType() == IResource.FOLDER) {
-				// skip over "bin" and "target" folders
-				String name = resource.getName();
-				if ("bin".equals(name) || "target".equals(name)) //$NON-NLS-1$ //$NON-NLS-2$
-					return false;
-			}
-			return true;
-		}
-		
-		public ArrayList<IFile> getWIDFiles() {
-			return widFiles;
-		}
-	}
-	
-	/*
-	 * Class: Visits each file in the project looking for the icon
-	 * @author bfitzpat
-	 *
-	 */
-	private class IconResourceVisitor implements IResourceVisitor {
-		
-		private ArrayList<IResource> iconResources = new ArrayList<IResource>();
-		private String iconName;
-		
-		public IconResourceVisitor ( String iconName ) {
-			this.iconName = iconName;
-		}
-		
-		public boolean visit (IResource resource) throws CoreException {
-			if (resource.getType() == IResource.FILE) {
-				if (((IFile)resource).getName().equalsIgnoreCase(iconName)) {
-					iconResources.add(resource);
-					return true;
-				}
-			}
-			return true;
-		}
-		
-		public ArrayList<IResource> getIconResources() {
-			return iconResources;
-		}
-	}
 }
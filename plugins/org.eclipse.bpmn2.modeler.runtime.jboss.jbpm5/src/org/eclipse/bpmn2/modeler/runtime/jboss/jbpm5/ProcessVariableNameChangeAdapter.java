@@ -19,15 +19,14 @@ import org.eclipse.bpmn2.MultiInstanceLoopCharacteristics;
 import org.eclipse.bpmn2.Signal;
 import org.eclipse.bpmn2.modeler.core.validation.SyntaxCheckerUtils;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.GlobalType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.util.IdentifierRegistry;
 import org.eclipse.emf.common.notify.Adapter;
 import org.eclipse.emf.common.notify.Notification;
 import org.eclipse.emf.common.notify.Notifier;
-import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.impl.ENotificationImpl;
-import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.validation.model.EvaluationMode;
 import org.eclipse.emf.validation.service.IValidator;
 import org.eclipse.emf.validation.service.ModelValidationService;
@@ -118,6 +117,7 @@ public class ProcessVariableNameChangeAdapter implements Adapter {
 									// during validate() and will be reported in the UI.
 									object.eSet(nameFeature, newValue);
 									object.eSet(idFeature, newValue);
+									updateRegistry(object);
 								}
 								catch (Exception e) {
 									
@@ -143,6 +143,7 @@ public class ProcessVariableNameChangeAdapter implements Adapter {
 									Object uniqueId = makeUniqueId(object,newValue);
 									object.eSet(nameFeature, uniqueId);
 									object.eSet(idFeature, uniqueId);
+									updateRegistry(object);
 								}
 								catch (Exception e) {
 									
@@ -160,37 +161,17 @@ public class ProcessVariableNameChangeAdapter implements Adapter {
 	}
 
 	private Object makeUniqueId(EObject object, Object id) {
-		int i = 1;
-		Object uniqueId = id;
-		EObject dup = null;
-		do {
-			dup = findDuplicateId(object,uniqueId);
-			if (dup!=null) {
-				uniqueId = id + "_" + i++; //$NON-NLS-1$
-			}
-		}
-		while (dup!=null);
-		return uniqueId;
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(object);
+		if (registry==null)
+			return id;
+		return registry.makeUniqueId(object, id);
 	}
-	
-	private EObject findDuplicateId(EObject object, Object id) {
-		if (object!=null && id!=null) {
-			Resource resource = object.eResource();
-			
-			TreeIterator<EObject> iter = resource.getAllContents();
-			while (iter.hasNext()) {
-				EObject o = iter.next();
-				if (o!=object) {
-					EStructuralFeature f = o.eClass().getEStructuralFeature("id"); //$NON-NLS-1$
-					if (f!=null) {
-						Object existingId = o.eGet(f);
-						if (id.equals(existingId))
-							return o;
-					}
-				}
-			}
-		}
-		return null;
+
+	private void updateRegistry(EObject object) {
+		// register the new ID, it was set with notifications turned off
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(object);
+		if (registry!=null)
+			registry.update(object);
 	}
 	
 	@Override
@@ -12,6 +12,8 @@
  ******************************************************************************/
 package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.features;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -27,6 +29,7 @@ import org.eclipse.bpmn2.OutputSet;
 import org.eclipse.bpmn2.Task;
 import org.eclipse.bpmn2.modeler.core.IBpmn2RuntimeExtension;
 import org.eclipse.bpmn2.modeler.core.features.CustomShapeFeatureContainer;
+import org.eclipse.bpmn2.modeler.core.features.ICustomElementDiscriminator;
 import org.eclipse.bpmn2.modeler.core.features.IShapeFeatureContainer;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerFactory;
 import org.eclipse.bpmn2.modeler.core.model.ModelDecorator;
@@ -64,7 +67,7 @@ import org.eclipse.graphiti.mm.pictograms.ContainerShape;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
 import org.eclipse.graphiti.services.Graphiti;
 
-public class JbpmCustomTaskFeatureContainer extends CustomShapeFeatureContainer {
+public class JbpmCustomTaskFeatureContainer extends CustomShapeFeatureContainer implements ICustomElementDiscriminator {
 	
 	@Override
 	protected IShapeFeatureContainer createFeatureContainer(IFeatureProvider fp) {
@@ -166,6 +169,29 @@ public class JbpmCustomTaskFeatureContainer extends CustomShapeFeatureContainer
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see org.eclipse.bpmn2.modeler.core.features.ICustomElementDiscriminator#getDiscriminatorName()
+	 */
+	@Override
+	public String getDiscriminatorName() {
+		return "taskName"; //$NON-NLS-1$
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.bpmn2.modeler.core.features.ICustomElementDiscriminator#getDiscriminatorValues()
+	 */
+	@Override
+	public Collection<String> getDiscriminatorValues() {
+		// these are the values that getId(EObject) compares the "taskName" attribute against
+		List<String> values = new ArrayList<String>();
+		for (Property p : customTaskDescriptor.getProperties()) {
+			String propValue = p.getFirstStringValue();
+			if (propValue!=null)
+				values.add(propValue);
+		}
+		return values;
+	}
+
 	public String getId(EObject object) {
 		if (object==null)
 			return null;
@@ -28,6 +28,7 @@ import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.DroolsFactory;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.DroolsPackage;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.GlobalType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.util.IdentifierRegistry;
 import org.eclipse.bpmn2.modeler.ui.property.ExtensionValueListComposite;
 import org.eclipse.bpmn2.modeler.ui.property.diagrams.DataItemsDetailComposite;
 import org.eclipse.emf.ecore.EObject;
@@ -117,6 +118,9 @@ public class JbpmDataItemsDetailComposite extends DataItemsDetailComposite {
 							LifecycleEvent.notify(EventType.BUSINESSOBJECT_CREATED, newGlobal);
 							
 							addExtensionValue(newGlobal);
+							IdentifierRegistry registry = IdentifierRegistry.getRegistry(newGlobal);
+							if (registry!=null)
+								registry.update(newGlobal);
 							return newGlobal;
 						}
 					};
@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation.SimulationModel.Kind;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation.SimulationModel.Node;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * A single run of the discrete-event simulation of a {@link SimulationModel}.
+ * <p>
+ * Process instances are created by the Start Events at intervals drawn from
+ * their inter-trigger timer, until the trigger count is reached or the
+ * Scenario duration has elapsed. Instances that are still running at that
+ * time are run to completion. Every flow node first delays a token by its
+ * transfer and wait time, then occupies one of its resources (if the node has
+ * a resource quantity) for its set up, processing, validation and rework
+ * time. Tokens that find all resources busy are queued in FIFO order.
+ * <p>
+ * Exclusive and event-based gateways choose one outgoing flow by its
+ * probability, inclusive gateways activate each outgoing flow independently.
+ * Parallel joins wait for a token on every incoming flow; inclusive joins wait
+ * until no other token of the instance can still reach them, that is until
+ * no token is on its way to the join or at a node upstream of it.
+ * <p>
+ * A replication owns its random stream and all of its state, so
+ * replications can run concurrently and produce the same result for the
+ * same seed regardless of scheduling.
+ */
+class Replication implements Callable<Replication.Result> {
+
+	/** the number of instances created by a timed Start Event if neither a trigger count nor a duration is given */
+	static final int DEFAULT_TRIGGER_COUNT = 100;
+	/** guards against processes that loop forever */
+	static final long MAX_EVENTS = 10000000L;
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	private static final int ARRIVAL = 0;
+	private static final int ENTER = 1;
+	private static final int READY = 2;
+	private static final int COMPLETE = 3;
+
+	/**
+	 * The results of a single replication.
+	 */
+	static class Result {
+		final int replication;
+		long createdInstances;
+		long completedInstances;
+		double[] cycleTimes = new double[16];
+		int cycleTimeCount;
+		double horizon;
+		final long[] activations;
+		final double[] busyTime;
+		final double[] queueTime;
+		final double[] cost;
+		final int[] servers;
+
+		Result(int replication, int size) {
+			this.replication = replication;
+			activations = new long[size];
+			busyTime = new double[size];
+			queueTime = new double[size];
+			cost = new double[size];
+			servers = new int[size];
+		}
+
+		void addCycleTime(double t) {
+			if (cycleTimeCount==cycleTimes.length)
+				cycleTimes = Arrays.copyOf(cycleTimes, 2 * cycleTimes.length);
+			cycleTimes[cycleTimeCount++] = t;
+		}
+	}
+
+	private static class Instance {
+		final double startTime;
+		/** the moving tokens that are on their way to each node */
+		final int[] entering;
+		/** the moving tokens that have entered each node and not yet left it */
+		final int[] inside;
+		int activeTokens;
+		int waitingTokens;
+		boolean finished;
+		int[] joinCounts;
+
+		Instance(double startTime, int size) {
+			this.startTime = startTime;
+			entering = new int[size];
+			inside = new int[size];
+		}
+	}
+
+	private static class Event implements Comparable<Event> {
+		final double time;
+		final long sequence;
+		final int type;
+		final Node node;
+		final Instance instance;
+
+		Event(double time, long sequence, int type, Node node, Instance instance) {
+			this.time = time;
+			this.sequence = sequence;
+			this.type = type;
+			this.node = node;
+			this.instance = instance;
+		}
+
+		@Override
+		public int compareTo(Event e) {
+			if (time!=e.time)
+				return time < e.time ? -1 : 1;
+			return sequence < e.sequence ? -1 : (sequence==e.sequence ? 0 : 1);
+		}
+	}
+
+	private static class Waiting {
+		final Instance instance;
+		final double since;
+
+		Waiting(Instance instance, double since) {
+			this.instance = instance;
+			this.since = since;
+		}
+	}
+
+	private final SimulationModel model;
+	private final Random random;
+	private final IProgressMonitor monitor;
+	private final Result result;
+	private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+	private final int[] busyServers;
+	private final int[] triggersLeft;
+	private final ArrayDeque<Waiting>[] queues;
+	private long sequence;
+	private double now;
+	private double duration;
+
+	@SuppressWarnings("unchecked")
+	Replication(SimulationModel model, int replication, long seed, IProgressMonitor monitor) {
+		this.model = model;
+		this.random = new Random(seed);
+		this.monitor = monitor;
+		int size = model.nodes.length;
+		result = new Result(replication, size);
+		busyServers = new int[size];
+		triggersLeft = new int[size];
+		queues = new ArrayDeque[size];
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public Result call() {
+		duration = model.duration==null ? 0 : Math.max(0, model.duration.sample(random));
+		for (Node node : model.nodes) {
+			if (node.quantity!=null) {
+				int n = (int) Math.round(node.quantity.sample(random));
+				if (n>0) {
+					result.servers[node.index] = n;
+					queues[node.index] = new ArrayDeque<Waiting>();
+				}
+			}
+		}
+		for (int i : model.startNodes) {
+			Node node = model.nodes[i];
+			int count;
+			if (node.triggerCount!=null)
+				count = (int) Math.round(node.triggerCount.sample(random));
+			else if (node.interTriggerTimer==null)
+				count = 1;
+			else
+				count = duration>0 ? Integer.MAX_VALUE : DEFAULT_TRIGGER_COUNT;
+			triggersLeft[i] = count;
+			if (count>0)
+				schedule(0, ARRIVAL, node, null);
+		}
+
+		long n = 0;
+		while (!events.isEmpty() && n<MAX_EVENTS) {
+			Event e = events.poll();
+			now = e.time;
+			switch (e.type) {
+			case ARRIVAL:
+				arrive(e.node);
+				break;
+			case ENTER:
+				enter(e.node, e.instance);
+				break;
+			case READY:
+				ready(e.node, e.instance);
+				break;
+			case COMPLETE:
+				complete(e.node, e.instance);
+				break;
+			}
+			if (++n % CANCEL_CHECK_INTERVAL == 0 && monitor.isCanceled())
+				break;
+		}
+		result.horizon = Math.max(now, duration);
+		return result;
+	}
+
+	private void schedule(double time, int type, Node node, Instance instance) {
+		events.add(new Event(time, sequence++, type, node, instance));
+	}
+
+	private static double sample(Sampler s, Random random) {
+		return s==null ? 0 : Math.max(0, s.sample(random));
+	}
+
+	private void arrive(Node start) {
+		Instance instance = new Instance(now, model.nodes.length);
+		++result.createdInstances;
+		moveTo(start, instance);
+
+		if (--triggersLeft[start.index]>0 && start.interTriggerTimer!=null) {
+			double next = now + sample(start.interTriggerTimer, random);
+			if (duration<=0 || next<duration)
+				schedule(next, ARRIVAL, start, null);
+		}
+	}
+
+	/**
+	 * Send a new moving token to the given node.
+	 */
+	private void moveTo(Node node, Instance instance) {
+		++instance.entering[node.index];
+		++instance.activeTokens;
+		schedule(now, ENTER, node, instance);
+	}
+
+	private void enter(Node node, Instance instance) {
+		if (instance.finished)
+			return;
+		--instance.entering[node.index];
+		if (node.incomingCount>1 && !join(node, instance)) {
+			// joins in a loop may wait for each other
+			if (instance.activeTokens==0)
+				releaseInclusiveJoins(instance);
+			return;
+		}
+		++instance.inside[node.index];
+		activate(node, instance);
+	}
+
+	private void activate(Node node, Instance instance) {
+		++result.activations[node.index];
+		double delay = sample(node.delay, random);
+		if (delay>0)
+			schedule(now + delay, READY, node, instance);
+		else
+			ready(node, instance);
+	}
+
+	/**
+	 * Handle a token arriving at a converging gateway.
+	 *
+	 * @return true if the gateway fires.
+	 */
+	private boolean join(Node node, Instance instance) {
+		if (node.kind==Kind.PARALLEL) {
+			if (instance.joinCounts==null)
+				instance.joinCounts = new int[model.nodes.length];
+			if (++instance.joinCounts[node.index] < node.incomingCount) {
+				--instance.activeTokens;
+				++instance.waitingTokens;
+				return false;
+			}
+			instance.waitingTokens -= instance.joinCounts[node.index] - 1;
+			instance.joinCounts[node.index] = 0;
+			return true;
+		}
+		if (node.kind==Kind.INCLUSIVE) {
+			if (instance.joinCounts==null)
+				instance.joinCounts = new int[model.nodes.length];
+			++instance.joinCounts[node.index];
+			if (isReachable(node, instance)) {
+				--instance.activeTokens;
+				++instance.waitingTokens;
+				return false;
+			}
+			instance.waitingTokens -= instance.joinCounts[node.index] - 1;
+			instance.joinCounts[node.index] = 0;
+			return true;
+		}
+		return true;
+	}
+
+	/**
+	 * Check if any token of the instance can still reach the given inclusive
+	 * join: a moving token on its way to the join or at a node upstream of
+	 * it, or a token waiting at another inclusive join upstream, which will
+	 * move on eventually.
+	 */
+	private boolean isReachable(Node join, Instance instance) {
+		if (instance.entering[join.index]>0)
+			return true;
+		for (int i : join.upstream) {
+			if (instance.entering[i]>0 || instance.inside[i]>0)
+				return true;
+			if (i!=join.index && model.nodes[i].kind==Kind.INCLUSIVE && instance.joinCounts[i]>0)
+				return true;
+		}
+		return false;
+	}
+
+	private void ready(Node node, Instance instance) {
+		if (instance.finished)
+			return;
+		int servers = result.servers[node.index];
+		if (servers>0 && busyServers[node.index]>=servers) {
+			queues[node.index].add(new Waiting(instance, now));
+			return;
+		}
+		start(node, instance);
+	}
+
+	private void start(Node node, Instance instance) {
+		double busy = 0;
+		for (Sampler s : node.busy)
+			busy += sample(s, random);
+		++busyServers[node.index];
+		result.busyTime[node.index] += busy;
+		result.cost[node.index] += sample(node.fixedCost, random) + busy * sample(node.unitCost, random);
+		schedule(now + busy, COMPLETE, node, instance);
+	}
+
+	private void complete(Node node, Instance instance) {
+		--busyServers[node.index];
+		ArrayDeque<Waiting> queue = queues[node.index];
+		while (queue!=null && !queue.isEmpty()) {
+			Waiting w = queue.poll();
+			if (!w.instance.finished) {
+				result.queueTime[node.index] += now - w.since;
+				start(node, w.instance);
+				break;
+			}
+		}
+		if (!instance.finished)
+			leave(node, instance);
+	}
+
+	private void leave(Node node, Instance instance) {
+		if (node.terminate) {
+			finish(instance);
+			return;
+		}
+		--instance.inside[node.index];
+		--instance.activeTokens;
+		route(node, instance);
+		releaseInclusiveJoins(instance);
+		if (instance.activeTokens==0 && instance.waitingTokens==0)
+			finish(instance);
+	}
+
+	private void route(Node node, Instance instance) {
+		int n = node.targets.length;
+		if (n==0)
+			return;
+		if (node.kind==Kind.EXCLUSIVE) {
+			double u = random.nextDouble();
+			int chosen = n - 1;
+			for (int i=0; i<n; ++i) {
+				u -= node.probabilities[i];
+				if (u<0) {
+					chosen = i;
+					break;
+				}
+			}
+			moveTo(model.nodes[node.targets[chosen]], instance);
+		}
+		else if (node.kind==Kind.INCLUSIVE) {
+			int count = 0;
+			int best = 0;
+			for (int i=0; i<n; ++i) {
+				if (random.nextDouble() < node.probabilities[i]) {
+					moveTo(model.nodes[node.targets[i]], instance);
+					++count;
+				}
+				if (node.probabilities[i] > node.probabilities[best])
+					best = i;
+			}
+			if (count==0) {
+				// at least one branch is always taken
+				moveTo(model.nodes[node.targets[best]], instance);
+			}
+		}
+		else {
+			for (int i=0; i<n; ++i)
+				moveTo(model.nodes[node.targets[i]], instance);
+		}
+	}
+
+	/**
+	 * A token has moved on, so inclusive joins that were waiting for it may
+	 * now be unreachable for all other tokens, and can fire with the tokens
+	 * they already have.
+	 */
+	private void releaseInclusiveJoins(Instance instance) {
+		if (instance.joinCounts==null)
+			return;
+		for (int i : model.inclusiveJoins) {
+			if (instance.joinCounts[i]>0 && !isReachable(model.nodes[i], instance))
+				fire(model.nodes[i], instance);
+		}
+		if (instance.activeTokens==0) {
+			// inclusive joins in a loop may be waiting for each other
+			for (int i : model.inclusiveJoins) {
+				if (instance.joinCounts[i]>0) {
+					fire(model.nodes[i], instance);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Let a waiting inclusive join fire with the tokens it has.
+	 */
+	private void fire(Node join, Instance instance) {
+		instance.waitingTokens -= instance.joinCounts[join.index];
+		instance.joinCounts[join.index] = 0;
+		++instance.activeTokens;
+		++instance.inside[join.index];
+		activate(join, instance);
+	}
+
+	private void finish(Instance instance) {
+		instance.finished = true;
+		++result.completedInstances;
+		result.addCycleTime(now - instance.startTime);
+	}
+}
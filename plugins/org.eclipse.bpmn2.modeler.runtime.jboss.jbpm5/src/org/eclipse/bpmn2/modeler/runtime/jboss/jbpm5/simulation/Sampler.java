@@ -0,0 +1,526 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation;
+
+import java.util.Date;
+import java.util.Random;
+
+import javax.xml.datatype.Duration;
+
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.BetaDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.BinomialDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.BooleanParameterType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.DistributionParameter;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.DurationParameterType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ErlangDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.FloatingParameterType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.GammaDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.LogNormalDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.NegativeExponentialDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.NormalDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.NumericParameterType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.Parameter;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ParameterValue;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.PoissonDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TimeUnit;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TriangularDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TruncatedNormalDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.UniformDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.UserDistributionDataPointType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.UserDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.WeibullDistributionType;
+
+/**
+ * Draws values from a BPSim Parameter.
+ * <p>
+ * Samplers are created from the EMF model before the simulation is started,
+ * and are immutable afterwards, so a single sampler can be shared by all
+ * replications. The random stream is always supplied by the caller.
+ * <p>
+ * Values that carry a time unit are converted to the Scenario's base time
+ * unit. Parameter values that cannot be evaluated without a run-time context,
+ * e.g. expressions and enumerations, are not supported; for these no sampler
+ * is created and the simulation uses the element's default.
+ */
+public abstract class Sampler {
+
+	private static final int MAX_REJECTIONS = 100;
+
+	/**
+	 * Draw the next value.
+	 *
+	 * @param random the replication's random stream.
+	 * @return the value.
+	 */
+	public abstract double sample(Random random);
+
+	/**
+	 * Create a sampler for the given Parameter.
+	 *
+	 * @param param the Parameter, may be null.
+	 * @param baseTimeUnit the Scenario's base time unit.
+	 * @return a sampler or null if the Parameter has no supported value.
+	 */
+	public static Sampler create(Parameter param, TimeUnit baseTimeUnit) {
+		if (param==null)
+			return null;
+		// Calendar-dependent values are not supported: use the first value
+		// that is valid at all times, or the first value otherwise.
+		ParameterValue value = null;
+		for (ParameterValue pv : param.getParameterValue()) {
+			if (pv.getValidFor()==null || pv.getValidFor().isEmpty()) {
+				value = pv;
+				break;
+			}
+			if (value==null)
+				value = pv;
+		}
+		return create(value, baseTimeUnit);
+	}
+
+	/**
+	 * Create a sampler for a single ParameterValue.
+	 *
+	 * @param value the ParameterValue, may be null.
+	 * @param baseTimeUnit the Scenario's base time unit.
+	 * @return a sampler or null if the value is not supported.
+	 */
+	public static Sampler create(ParameterValue value, TimeUnit baseTimeUnit) {
+		if (value instanceof FloatingParameterType) {
+			FloatingParameterType v = (FloatingParameterType) value;
+			return constant(v.getValue() * scale(v.isSetTimeUnit() ? v.getTimeUnit() : null, baseTimeUnit));
+		}
+		if (value instanceof NumericParameterType) {
+			NumericParameterType v = (NumericParameterType) value;
+			return constant(v.getValue() * scale(v.isSetTimeUnit() ? v.getTimeUnit() : null, baseTimeUnit));
+		}
+		if (value instanceof BooleanParameterType) {
+			return constant(((BooleanParameterType) value).isValue() ? 1 : 0);
+		}
+		if (value instanceof DurationParameterType) {
+			Duration d = ((DurationParameterType) value).getValue();
+			if (d==null)
+				return null;
+			return constant(d.getTimeInMillis(new Date(0)) * scale(TimeUnit.MS, baseTimeUnit));
+		}
+		if (value instanceof DistributionParameter) {
+			DistributionParameter dp = (DistributionParameter) value;
+			Sampler s = createDistribution(dp);
+			if (s==null)
+				return null;
+			double factor = scale(dp.isSetTimeUnit() ? dp.getTimeUnit() : null, baseTimeUnit);
+			return factor==1.0 ? s : new Scaled(s, factor);
+		}
+		return null;
+	}
+
+	private static Sampler createDistribution(DistributionParameter dp) {
+		if (dp instanceof TruncatedNormalDistributionType) {
+			TruncatedNormalDistributionType d = (TruncatedNormalDistributionType) dp;
+			return new TruncatedNormal(d.getMean(), d.getStandardDeviation(), d.getMin(), d.getMax());
+		}
+		if (dp instanceof NormalDistributionType) {
+			NormalDistributionType d = (NormalDistributionType) dp;
+			return new Normal(d.getMean(), d.getStandardDeviation());
+		}
+		if (dp instanceof UniformDistributionType) {
+			UniformDistributionType d = (UniformDistributionType) dp;
+			return new Uniform(d.getMin(), d.getMax());
+		}
+		if (dp instanceof PoissonDistributionType) {
+			return new Poisson(((PoissonDistributionType) dp).getMean());
+		}
+		if (dp instanceof NegativeExponentialDistributionType) {
+			return new Exponential(((NegativeExponentialDistributionType) dp).getMean());
+		}
+		if (dp instanceof TriangularDistributionType) {
+			TriangularDistributionType d = (TriangularDistributionType) dp;
+			return new Triangular(d.getMin(), d.getMode(), d.getMax());
+		}
+		if (dp instanceof WeibullDistributionType) {
+			WeibullDistributionType d = (WeibullDistributionType) dp;
+			return new Weibull(d.getShape(), d.getScale());
+		}
+		if (dp instanceof GammaDistributionType) {
+			GammaDistributionType d = (GammaDistributionType) dp;
+			return new Gamma(d.getShape(), d.getScale());
+		}
+		if (dp instanceof BetaDistributionType) {
+			// BPSim names the two shape parameters "shape" and "scale"
+			BetaDistributionType d = (BetaDistributionType) dp;
+			return new Beta(d.getShape(), d.getScale());
+		}
+		if (dp instanceof ErlangDistributionType) {
+			ErlangDistributionType d = (ErlangDistributionType) dp;
+			return new Erlang((int) Math.max(1, Math.round(d.getK())), d.getMean());
+		}
+		if (dp instanceof LogNormalDistributionType) {
+			LogNormalDistributionType d = (LogNormalDistributionType) dp;
+			return new LogNormal(d.getMean(), d.getStandardDeviation());
+		}
+		if (dp instanceof BinomialDistributionType) {
+			BinomialDistributionType d = (BinomialDistributionType) dp;
+			return new Binomial(d.getProbability(), d.getTrials());
+		}
+		if (dp instanceof UserDistributionType) {
+			return UserDistribution.create((UserDistributionType) dp);
+		}
+		return null;
+	}
+
+	static Sampler constant(final double value) {
+		return new Sampler() {
+			@Override
+			public double sample(Random random) {
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * Return the factor that converts a value in the given time unit to the
+	 * base time unit. Values without a time unit are already in the base
+	 * time unit.
+	 */
+	static double scale(TimeUnit unit, TimeUnit baseTimeUnit) {
+		if (unit==null || baseTimeUnit==null || unit==baseTimeUnit)
+			return 1.0;
+		return toMillis(unit) / toMillis(baseTimeUnit);
+	}
+
+	private static double toMillis(TimeUnit unit) {
+		switch (unit.getValue()) {
+		case TimeUnit.S_VALUE:
+			return 1000.0;
+		case TimeUnit.MIN_VALUE:
+			return 60 * 1000.0;
+		case TimeUnit.HOUR_VALUE:
+			return 60 * 60 * 1000.0;
+		case TimeUnit.DAY_VALUE:
+			return 24 * 60 * 60 * 1000.0;
+		case TimeUnit.YEAR_VALUE:
+			return 365 * 24 * 60 * 60 * 1000.0;
+		default:
+			return 1.0;
+		}
+	}
+
+	private static double exponential(Random random, double mean) {
+		return -mean * Math.log(1.0 - random.nextDouble());
+	}
+
+	/**
+	 * Marsaglia and Tsang's method for shape >= 1, boosted for shape < 1.
+	 */
+	private static double gamma(Random random, double shape, double scale) {
+		if (shape<=0 || scale<=0)
+			return 0;
+		if (shape<1) {
+			double u = random.nextDouble();
+			return gamma(random, shape + 1.0, scale) * Math.pow(u, 1.0 / shape);
+		}
+		double d = shape - 1.0 / 3.0;
+		double c = 1.0 / Math.sqrt(9.0 * d);
+		while (true) {
+			double x, v;
+			do {
+				x = random.nextGaussian();
+				v = 1.0 + c * x;
+			} while (v<=0);
+			v = v * v * v;
+			double u = random.nextDouble();
+			if (u < 1.0 - 0.0331 * x * x * x * x)
+				return d * v * scale;
+			if (Math.log(u) < 0.5 * x * x + d * (1.0 - v + Math.log(v)))
+				return d * v * scale;
+		}
+	}
+
+	private static class Scaled extends Sampler {
+		private final Sampler sampler;
+		private final double factor;
+
+		Scaled(Sampler sampler, double factor) {
+			this.sampler = sampler;
+			this.factor = factor;
+		}
+
+		@Override
+		public double sample(Random random) {
+			return sampler.sample(random) * factor;
+		}
+	}
+
+	private static class Normal extends Sampler {
+		private final double mean, sd;
+
+		Normal(double mean, double sd) {
+			this.mean = mean;
+			this.sd = sd;
+		}
+
+		@Override
+		public double sample(Random random) {
+			return mean + sd * random.nextGaussian();
+		}
+	}
+
+	private static class TruncatedNormal extends Sampler {
+		private final double mean, sd, min, max;
+
+		TruncatedNormal(double mean, double sd, double min, double max) {
+			this.mean = mean;
+			this.sd = sd;
+			this.min = Math.min(min, max);
+			this.max = Math.max(min, max);
+		}
+
+		@Override
+		public double sample(Random random) {
+			double x = mean;
+			for (int i=0; i<MAX_REJECTIONS; ++i) {
+				x = mean + sd * random.nextGaussian();
+				if (x>=min && x<=max)
+					return x;
+			}
+			return Math.max(min, Math.min(max, x));
+		}
+	}
+
+	private static class Uniform extends Sampler {
+		private final double min, max;
+
+		Uniform(double min, double max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public double sample(Random random) {
+			return min + (max - min) * random.nextDouble();
+		}
+	}
+
+	private static class Poisson extends Sampler {
+		private final double mean;
+
+		Poisson(double mean) {
+			this.mean = mean;
+		}
+
+		@Override
+		public double sample(Random random) {
+			if (mean<=0)
+				return 0;
+			if (mean>30) {
+				// normal approximation
+				return Math.max(0, Math.round(mean + Math.sqrt(mean) * random.nextGaussian()));
+			}
+			double l = Math.exp(-mean);
+			double p = 1.0;
+			int k = 0;
+			do {
+				++k;
+				p *= random.nextDouble();
+			} while (p>l);
+			return k - 1;
+		}
+	}
+
+	private static class Exponential extends Sampler {
+		private final double mean;
+
+		Exponential(double mean) {
+			this.mean = mean;
+		}
+
+		@Override
+		public double sample(Random random) {
+			return exponential(random, mean);
+		}
+	}
+
+	private static class Triangular extends Sampler {
+		private final double min, mode, max;
+
+		Triangular(double min, double mode, double max) {
+			this.min = min;
+			this.mode = Math.max(min, Math.min(max, mode));
+			this.max = max;
+		}
+
+		@Override
+		public double sample(Random random) {
+			if (max<=min)
+				return min;
+			double u = random.nextDouble();
+			double f = (mode - min) / (max - min);
+			if (u<f)
+				return min + Math.sqrt(u * (max - min) * (mode - min));
+			return max - Math.sqrt((1.0 - u) * (max - min) * (max - mode));
+		}
+	}
+
+	private static class Weibull extends Sampler {
+		private final double shape, scale;
+
+		Weibull(double shape, double scale) {
+			this.shape = shape;
+			this.scale = scale;
+		}
+
+		@Override
+		public double sample(Random random) {
+			if (shape<=0)
+				return 0;
+			return scale * Math.pow(-Math.log(1.0 - random.nextDouble()), 1.0 / shape);
+		}
+	}
+
+	private static class Gamma extends Sampler {
+		private final double shape, scale;
+
+		Gamma(double shape, double scale) {
+			this.shape = shape;
+			this.scale = scale;
+		}
+
+		@Override
+		public double sample(Random random) {
+			return gamma(random, shape, scale);
+		}
+	}
+
+	private static class Beta extends Sampler {
+		private final double alpha, beta;
+
+		Beta(double alpha, double beta) {
+			this.alpha = alpha;
+			this.beta = beta;
+		}
+
+		@Override
+		public double sample(Random random) {
+			double x = gamma(random, alpha, 1.0);
+			double y = gamma(random, beta, 1.0);
+			return x + y > 0 ? x / (x + y) : 0;
+		}
+	}
+
+	private static class Erlang extends Sampler {
+		private final int k;
+		private final double mean;
+
+		Erlang(int k, double mean) {
+			this.k = k;
+			this.mean = mean;
+		}
+
+		@Override
+		public double sample(Random random) {
+			double sum = 0;
+			for (int i=0; i<k; ++i)
+				sum += exponential(random, mean / k);
+			return sum;
+		}
+	}
+
+	/**
+	 * The mean and standard deviation are those of the log-normal
+	 * distribution itself, not of the underlying normal distribution.
+	 */
+	private static class LogNormal extends Sampler {
+		private final double mu, sigma;
+
+		LogNormal(double mean, double sd) {
+			if (mean>0) {
+				double s2 = Math.log(1.0 + (sd * sd) / (mean * mean));
+				this.mu = Math.log(mean) - s2 / 2.0;
+				this.sigma = Math.sqrt(s2);
+			}
+			else {
+				this.mu = Double.NEGATIVE_INFINITY;
+				this.sigma = 0;
+			}
+		}
+
+		@Override
+		public double sample(Random random) {
+			return Math.exp(mu + sigma * random.nextGaussian());
+		}
+	}
+
+	private static class Binomial extends Sampler {
+		private final double probability;
+		private final long trials;
+
+		Binomial(double probability, long trials) {
+			this.probability = probability;
+			this.trials = trials;
+		}
+
+		@Override
+		public double sample(Random random) {
+			long n = 0;
+			for (long i=0; i<trials; ++i) {
+				if (random.nextDouble()<probability)
+					++n;
+			}
+			return n;
+		}
+	}
+
+	private static class UserDistribution extends Sampler {
+		private final double[] cumulative;
+		private final Sampler[] samplers;
+
+		private UserDistribution(double[] cumulative, Sampler[] samplers) {
+			this.cumulative = cumulative;
+			this.samplers = samplers;
+		}
+
+		static Sampler create(UserDistributionType d) {
+			int n = d.getUserDistributionDataPoint().size();
+			if (n==0)
+				return null;
+			double[] cumulative = new double[n];
+			Sampler[] samplers = new Sampler[n];
+			double total = 0;
+			int i = 0;
+			for (UserDistributionDataPointType p : d.getUserDistributionDataPoint()) {
+				total += Math.max(0, p.getProbability());
+				cumulative[i] = total;
+				samplers[i] = create(p.getParameterValue(), null);
+				if (samplers[i]==null)
+					samplers[i] = constant(0);
+				++i;
+			}
+			if (total<=0)
+				return null;
+			for (i=0; i<n; ++i)
+				cumulative[i] /= total;
+			return new UserDistribution(cumulative, samplers);
+		}
+
+		@Override
+		public double sample(Random random) {
+			double u = random.nextDouble();
+			for (int i=0; i<cumulative.length; ++i) {
+				if (u<cumulative[i])
+					return samplers[i].sample(random);
+			}
+			return samplers[samplers.length-1].sample(random);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.Activator;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.BPSimDataType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.Scenario;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ScenarioParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.util.JbpmModelUtil;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * A headless Monte Carlo simulation of a Process, driven by the BPSim
+ * parameters of a Scenario.
+ * <p>
+ * The Process and Scenario are compiled into an immutable model on the
+ * caller's thread; the replications are then run in parallel on a fixed
+ * thread pool. Each replication has its own random stream, which is derived
+ * from the Scenario seed and the replication number, so that the results are
+ * reproducible for a given seed regardless of the number of threads.
+ * <p>
+ * Typical use:
+ * <pre>
+ * SimulationEngine engine = new SimulationEngine(process);
+ * engine.setReplications(1000);
+ * SimulationResults results = engine.run(monitor);
+ * double p90 = results.getCycleTimePercentile(90);
+ * </pre>
+ *
+ * @see Replication for the simulation semantics
+ */
+public class SimulationEngine {
+
+	public static final int DEFAULT_REPLICATIONS = 100;
+	public static final long DEFAULT_SEED = 0L;
+
+	private final SimulationModel model;
+	private int replications = DEFAULT_REPLICATIONS;
+	private long seed = DEFAULT_SEED;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Create a simulation engine for the given Process, using the first BPSim
+	 * Scenario of its Definitions. The Process is simulated with default
+	 * parameters if there is no Scenario.
+	 *
+	 * @param process the Process.
+	 */
+	public SimulationEngine(Process process) {
+		this(process, findScenario(process));
+	}
+
+	/**
+	 * Create a simulation engine for the given Process and Scenario. The
+	 * number of replications and the seed are taken from the Scenario
+	 * parameters, if they are set.
+	 *
+	 * @param process the Process.
+	 * @param scenario the BPSim Scenario, may be null.
+	 */
+	public SimulationEngine(Process process, Scenario scenario) {
+		model = new SimulationModel(process, scenario);
+		ScenarioParameters sp = scenario==null ? null : scenario.getScenarioParameters();
+		if (sp!=null) {
+			if (sp.isSetReplication() && sp.getReplication()>0)
+				replications = sp.getReplication();
+			if (sp.isSetSeed())
+				seed = sp.getSeed();
+		}
+	}
+
+	/**
+	 * Return the first Scenario attached to the Definitions that contain the
+	 * given Process, without modifying the model.
+	 *
+	 * @param process the Process.
+	 * @return the Scenario or null.
+	 */
+	public static Scenario findScenario(Process process) {
+		BPSimDataType data = JbpmModelUtil.findBPSimData(process);
+		if (data!=null && !data.getScenario().isEmpty())
+			return data.getScenario().get(0);
+		return null;
+	}
+
+	public int getReplications() {
+		return replications;
+	}
+
+	public void setReplications(int replications) {
+		this.replications = Math.max(1, replications);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Run all replications and aggregate their results. A replication that
+	 * fails with an exception is logged and left out of the aggregated
+	 * results; the number of such replications is reported by
+	 * {@link SimulationResults#getFailedReplications()}.
+	 *
+	 * @param monitor a progress monitor, may be null.
+	 * @return the simulation results.
+	 * @throws OperationCanceledException if the monitor was canceled.
+	 */
+	public SimulationResults run(IProgressMonitor monitor) {
+		if (monitor==null)
+			monitor = new NullProgressMonitor();
+		monitor.beginTask(model.processId, replications);
+
+		List<Future<Replication.Result>> futures = new ArrayList<Future<Replication.Result>>(replications);
+		List<Replication.Result> results = new ArrayList<Replication.Result>(replications);
+		int failures = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, replications), new WorkerThreadFactory());
+		try {
+			for (int i=0; i<replications; ++i)
+				futures.add(executor.submit(new Replication(model, i, getReplicationSeed(seed, i), monitor)));
+			// results are collected in replication order, so that aggregation
+			// is deterministic
+			for (Future<Replication.Result> f : futures) {
+				try {
+					results.add(f.get());
+				}
+				catch (ExecutionException e) {
+					Activator.logError(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+					++failures;
+				}
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				monitor.worked(1);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+		finally {
+			executor.shutdownNow();
+			monitor.done();
+		}
+		return new SimulationResults(model, results, failures);
+	}
+
+	/**
+	 * Derive the seed of a replication's random stream from the simulation
+	 * seed, using the SplitMix64 finalizer so that consecutive replications
+	 * get uncorrelated streams.
+	 */
+	static long getReplicationSeed(long seed, int replication) {
+		long z = seed + (replication + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "BPSim Simulation Worker " + count.incrementAndGet()); //$NON-NLS-1$
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.bpmn2.Activity;
+import org.eclipse.bpmn2.ComplexGateway;
+import org.eclipse.bpmn2.EndEvent;
+import org.eclipse.bpmn2.EventBasedGateway;
+import org.eclipse.bpmn2.EventDefinition;
+import org.eclipse.bpmn2.ExclusiveGateway;
+import org.eclipse.bpmn2.FlowElement;
+import org.eclipse.bpmn2.FlowNode;
+import org.eclipse.bpmn2.InclusiveGateway;
+import org.eclipse.bpmn2.ParallelGateway;
+import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.SequenceFlow;
+import org.eclipse.bpmn2.StartEvent;
+import org.eclipse.bpmn2.TerminateEventDefinition;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ControlParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.CostParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ElementParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ResourceParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.Scenario;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ScenarioParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TimeParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TimeUnit;
+
+/**
+ * An immutable, compiled form of a Process and its BPSim Scenario.
+ * <p>
+ * All access to the EMF model happens while the SimulationModel is being
+ * built, on the caller's thread. The replications only read the compiled
+ * nodes, so they can run concurrently without locking the model.
+ * <p>
+ * Only the top level flow nodes of the Process are simulated; Sub-Processes
+ * are treated as Activities with their own time, cost and resource
+ * parameters.
+ */
+class SimulationModel {
+
+	enum Kind {
+		START, END, ACTIVITY, EVENT, EXCLUSIVE, PARALLEL, INCLUSIVE
+	}
+
+	static class Node {
+		final int index;
+		final String id;
+		final String name;
+		final Kind kind;
+		int[] targets = new int[0];
+		/** for exclusive splits the normalized probabilities, for inclusive splits the branch probabilities */
+		double[] probabilities = new double[0];
+		int incomingCount;
+		boolean terminate;
+		/** delay without resource: transfer and wait time */
+		Sampler delay;
+		/** resource time: set up, processing, validation and rework time */
+		Sampler[] busy = new Sampler[0];
+		Sampler fixedCost;
+		Sampler unitCost;
+		/** the number of resources that can work on this element concurrently; null means unlimited */
+		Sampler quantity;
+		Sampler interTriggerTimer;
+		Sampler triggerCount;
+		/** for inclusive joins the nodes from which the join can be reached */
+		int[] upstream;
+
+		Node(int index, FlowNode flowNode, Kind kind) {
+			this.index = index;
+			this.id = flowNode.getId();
+			this.name = flowNode.getName();
+			this.kind = kind;
+		}
+	}
+
+	final String processId;
+	final TimeUnit baseTimeUnit;
+	final Node[] nodes;
+	final int[] startNodes;
+	final int[] inclusiveJoins;
+	final Sampler duration;
+
+	SimulationModel(Process process, Scenario scenario) {
+		processId = process.getId();
+		ScenarioParameters sp = scenario==null ? null : scenario.getScenarioParameters();
+		baseTimeUnit = sp!=null && sp.isSetBaseTimeUnit() ? sp.getBaseTimeUnit() : TimeUnit.MS;
+		duration = sp==null ? null : Sampler.create(sp.getDuration(), baseTimeUnit);
+
+		Map<String, ElementParameters> parameters = new HashMap<String, ElementParameters>();
+		if (scenario!=null) {
+			for (ElementParameters ep : scenario.getElementParameters()) {
+				if (ep.getElementRef()!=null && !parameters.containsKey(ep.getElementRef()))
+					parameters.put(ep.getElementRef(), ep);
+			}
+		}
+
+		Map<FlowNode, Node> map = new HashMap<FlowNode, Node>();
+		List<Node> list = new ArrayList<Node>();
+		List<SequenceFlow> flows = new ArrayList<SequenceFlow>();
+		for (FlowElement fe : process.getFlowElements()) {
+			if (fe instanceof SequenceFlow) {
+				flows.add((SequenceFlow) fe);
+			}
+			else if (fe instanceof FlowNode) {
+				FlowNode fn = (FlowNode) fe;
+				Node node = new Node(list.size(), fn, getKind(fn));
+				if (fn instanceof EndEvent) {
+					for (EventDefinition ed : ((EndEvent) fn).getEventDefinitions()) {
+						if (ed instanceof TerminateEventDefinition)
+							node.terminate = true;
+					}
+				}
+				setParameters(node, parameters.get(fn.getId()));
+				map.put(fn, node);
+				list.add(node);
+			}
+		}
+		nodes = list.toArray(new Node[list.size()]);
+
+		Map<Node, List<SequenceFlow>> outgoing = new HashMap<Node, List<SequenceFlow>>();
+		List<List<Integer>> sources = new ArrayList<List<Integer>>(nodes.length);
+		for (int i=0; i<nodes.length; ++i)
+			sources.add(new ArrayList<Integer>());
+		for (SequenceFlow sf : flows) {
+			Node source = map.get(sf.getSourceRef());
+			Node target = map.get(sf.getTargetRef());
+			if (source==null || target==null)
+				continue;
+			List<SequenceFlow> out = outgoing.get(source);
+			if (out==null) {
+				out = new ArrayList<SequenceFlow>();
+				outgoing.put(source, out);
+			}
+			out.add(sf);
+			sources.get(target.index).add(source.index);
+			++target.incomingCount;
+		}
+		for (Node node : nodes) {
+			List<SequenceFlow> out = outgoing.get(node);
+			if (out!=null)
+				setTargets(node, out, map, parameters);
+		}
+
+		List<Integer> starts = new ArrayList<Integer>();
+		for (Node node : nodes) {
+			if (node.kind==Kind.START && node.incomingCount==0)
+				starts.add(node.index);
+		}
+		startNodes = toArray(starts);
+
+		List<Integer> joins = new ArrayList<Integer>();
+		for (Node node : nodes) {
+			if (node.kind==Kind.INCLUSIVE && node.incomingCount>1) {
+				node.upstream = findUpstream(node, sources);
+				joins.add(node.index);
+			}
+		}
+		inclusiveJoins = toArray(joins);
+	}
+
+	/**
+	 * Return the nodes from which the given node can be reached, walking the
+	 * sequence flows backwards. The node itself is only included if it is
+	 * part of a loop.
+	 */
+	private int[] findUpstream(Node node, List<List<Integer>> sources) {
+		boolean[] found = new boolean[nodes.length];
+		List<Integer> result = new ArrayList<Integer>();
+		List<Integer> stack = new ArrayList<Integer>(sources.get(node.index));
+		while (!stack.isEmpty()) {
+			int i = stack.remove(stack.size()-1);
+			if (!found[i]) {
+				found[i] = true;
+				result.add(i);
+				stack.addAll(sources.get(i));
+			}
+		}
+		return toArray(result);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] a = new int[list.size()];
+		for (int i=0; i<a.length; ++i)
+			a[i] = list.get(i);
+		return a;
+	}
+
+	private static Kind getKind(FlowNode fn) {
+		if (fn instanceof StartEvent)
+			return Kind.START;
+		if (fn instanceof EndEvent)
+			return Kind.END;
+		if (fn instanceof Activity)
+			return Kind.ACTIVITY;
+		if (fn instanceof ParallelGateway)
+			return Kind.PARALLEL;
+		if (fn instanceof InclusiveGateway)
+			return Kind.INCLUSIVE;
+		if (fn instanceof ExclusiveGateway || fn instanceof EventBasedGateway || fn instanceof ComplexGateway)
+			return Kind.EXCLUSIVE;
+		return Kind.EVENT;
+	}
+
+	private void setParameters(Node node, ElementParameters ep) {
+		if (ep==null)
+			return;
+		TimeParameters tp = ep.getTimeParameters();
+		if (tp!=null) {
+			node.delay = sum(
+					Sampler.create(tp.getTransferTime(), baseTimeUnit),
+					Sampler.create(tp.getWaitTime(), baseTimeUnit));
+			List<Sampler> busy = new ArrayList<Sampler>();
+			add(busy, Sampler.create(tp.getSetUpTime(), baseTimeUnit));
+			add(busy, Sampler.create(tp.getProcessingTime(), baseTimeUnit));
+			add(busy, Sampler.create(tp.getValidationTime(), baseTimeUnit));
+			add(busy, Sampler.create(tp.getReworkTime(), baseTimeUnit));
+			node.busy = busy.toArray(new Sampler[busy.size()]);
+		}
+		CostParameters cp = ep.getCostParameters();
+		if (cp!=null) {
+			node.fixedCost = Sampler.create(cp.getFixedCost(), null);
+			node.unitCost = Sampler.create(cp.getUnitCost(), null);
+		}
+		ResourceParameters rp = ep.getResourceParameters();
+		if (rp!=null) {
+			node.quantity = Sampler.create(rp.getQuantity(), null);
+		}
+		ControlParameters cc = ep.getControlParameters();
+		if (cc!=null) {
+			node.interTriggerTimer = Sampler.create(cc.getInterTriggerTimer(), baseTimeUnit);
+			node.triggerCount = Sampler.create(cc.getTriggerCount(), null);
+		}
+	}
+
+	private void setTargets(Node node, List<SequenceFlow> out, Map<FlowNode, Node> map, Map<String, ElementParameters> parameters) {
+		int n = out.size();
+		node.targets = new int[n];
+		node.probabilities = new double[n];
+		double total = 0;
+		for (int i=0; i<n; ++i) {
+			SequenceFlow sf = out.get(i);
+			node.targets[i] = map.get(sf.getTargetRef()).index;
+			// probabilities are given in percent, default to 100%, and are
+			// evaluated once: a distribution only makes sense for a Scenario
+			double p = 100.0;
+			ElementParameters ep = parameters.get(sf.getId());
+			if (ep!=null && ep.getControlParameters()!=null) {
+				Sampler s = Sampler.create(ep.getControlParameters().getProbability(), null);
+				if (s!=null)
+					p = Math.max(0, s.sample(new Random(0)));
+			}
+			node.probabilities[i] = p / 100.0;
+			total += node.probabilities[i];
+		}
+		if (node.kind==Kind.EXCLUSIVE) {
+			for (int i=0; i<n; ++i)
+				node.probabilities[i] = total>0 ? node.probabilities[i] / total : 1.0 / n;
+		}
+	}
+
+	private static void add(List<Sampler> list, Sampler s) {
+		if (s!=null)
+			list.add(s);
+	}
+
+	private static Sampler sum(final Sampler s1, final Sampler s2) {
+		if (s1==null)
+			return s2;
+		if (s2==null)
+			return s1;
+		return new Sampler() {
+			@Override
+			public double sample(Random random) {
+				return s1.sample(random) + s2.sample(random);
+			}
+		};
+	}
+}
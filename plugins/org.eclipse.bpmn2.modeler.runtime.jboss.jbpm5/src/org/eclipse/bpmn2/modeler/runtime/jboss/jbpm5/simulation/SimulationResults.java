@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TimeUnit;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation.SimulationModel.Node;
+
+/**
+ * The aggregated results of all replications of a simulation run.
+ * <p>
+ * All times are given in the Scenario's base time unit. Counts, costs and
+ * utilizations are averaged over the replications; cycle time percentiles
+ * are computed over the completed instances of all replications. Replications
+ * that failed are not included, but are counted.
+ */
+public class SimulationResults {
+
+	/**
+	 * The statistics for a single flow node.
+	 */
+	public static class ElementStatistics {
+		private final String elementId;
+		private final String name;
+		private double activations;
+		private double busyTime;
+		private double queueTime;
+		private double cost;
+		private double utilization;
+		private int utilizationSamples;
+		private int resources;
+
+		ElementStatistics(Node node) {
+			this.elementId = node.id;
+			this.name = node.name;
+		}
+
+		public String getElementId() {
+			return elementId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the mean number of times the element was activated per
+		 *         replication.
+		 */
+		public double getActivations() {
+			return activations;
+		}
+
+		/**
+		 * @return the mean resource time (set up, processing, validation and
+		 *         rework) per activation.
+		 */
+		public double getMeanProcessingTime() {
+			return activations>0 ? busyTime / activations : 0;
+		}
+
+		/**
+		 * @return the mean time a token waited for a free resource, per
+		 *         activation.
+		 */
+		public double getMeanQueueTime() {
+			return activations>0 ? queueTime / activations : 0;
+		}
+
+		/**
+		 * @return the fraction of the available resource time that was used,
+		 *         or NaN if the element has an unlimited number of resources.
+		 */
+		public double getUtilization() {
+			return utilizationSamples>0 ? utilization / utilizationSamples : Double.NaN;
+		}
+
+		/**
+		 * @return the largest number of resources assigned to the element in
+		 *         any replication, or 0 if the number is unlimited.
+		 */
+		public int getResources() {
+			return resources;
+		}
+
+		/**
+		 * @return the mean total cost of the element per replication.
+		 */
+		public double getCost() {
+			return cost;
+		}
+
+		/**
+		 * @return the mean cost per activation.
+		 */
+		public double getCostPerActivation() {
+			return activations>0 ? cost / activations : 0;
+		}
+	}
+
+	private final String processId;
+	private final TimeUnit timeUnit;
+	private final List<ElementStatistics> elements;
+	private int replications;
+	private final int failedReplications;
+	private double createdInstances;
+	private double completedInstances;
+	private double throughput;
+	private double totalCost;
+	private double[] cycleTimes = new double[0];
+
+	SimulationResults(SimulationModel model, List<Replication.Result> results, int failedReplications) {
+		processId = model.processId;
+		this.failedReplications = failedReplications;
+		timeUnit = model.baseTimeUnit;
+		List<ElementStatistics> list = new ArrayList<ElementStatistics>(model.nodes.length);
+		for (Node node : model.nodes)
+			list.add(new ElementStatistics(node));
+		elements = Collections.unmodifiableList(list);
+
+		int count = 0;
+		for (Replication.Result r : results)
+			count += r.cycleTimeCount;
+		cycleTimes = new double[count];
+		count = 0;
+		for (Replication.Result r : results) {
+			System.arraycopy(r.cycleTimes, 0, cycleTimes, count, r.cycleTimeCount);
+			count += r.cycleTimeCount;
+			add(r);
+		}
+		Arrays.sort(cycleTimes);
+
+		replications = results.size();
+		if (replications>0) {
+			createdInstances /= replications;
+			completedInstances /= replications;
+			throughput /= replications;
+			totalCost /= replications;
+			for (ElementStatistics es : elements) {
+				es.activations /= replications;
+				es.busyTime /= replications;
+				es.queueTime /= replications;
+				es.cost /= replications;
+			}
+		}
+	}
+
+	private void add(Replication.Result r) {
+		createdInstances += r.createdInstances;
+		completedInstances += r.completedInstances;
+		if (r.horizon>0)
+			throughput += r.completedInstances / r.horizon;
+		for (int i=0; i<elements.size(); ++i) {
+			ElementStatistics es = elements.get(i);
+			es.activations += r.activations[i];
+			es.busyTime += r.busyTime[i];
+			es.queueTime += r.queueTime[i];
+			es.cost += r.cost[i];
+			totalCost += r.cost[i];
+			if (r.servers[i]>0) {
+				if (r.horizon>0) {
+					es.utilization += r.busyTime[i] / (r.servers[i] * r.horizon);
+					++es.utilizationSamples;
+				}
+				es.resources = Math.max(es.resources, r.servers[i]);
+			}
+		}
+	}
+
+	public String getProcessId() {
+		return processId;
+	}
+
+	/**
+	 * @return the time unit of all times reported by the simulation.
+	 */
+	public TimeUnit getTimeUnit() {
+		return timeUnit;
+	}
+
+	/**
+	 * @return the number of replications that were completed.
+	 */
+	public int getReplications() {
+		return replications;
+	}
+
+	/**
+	 * @return the number of replications that failed with an exception and
+	 *         are not included in the results. The exceptions are logged.
+	 */
+	public int getFailedReplications() {
+		return failedReplications;
+	}
+
+	/**
+	 * @return the mean number of process instances started per replication.
+	 */
+	public double getCreatedInstances() {
+		return createdInstances;
+	}
+
+	/**
+	 * @return the mean number of process instances completed per replication.
+	 */
+	public double getCompletedInstances() {
+		return completedInstances;
+	}
+
+	/**
+	 * @return the mean number of completed process instances per time unit.
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * @return the mean total cost of all elements per replication.
+	 */
+	public double getTotalCost() {
+		return totalCost;
+	}
+
+	/**
+	 * @return the mean cycle time of all completed process instances.
+	 */
+	public double getMeanCycleTime() {
+		if (cycleTimes.length==0)
+			return 0;
+		double sum = 0;
+		for (double t : cycleTimes)
+			sum += t;
+		return sum / cycleTimes.length;
+	}
+
+	/**
+	 * Return a cycle time percentile, using the nearest-rank method.
+	 *
+	 * @param percentile the percentile, between 0 and 100.
+	 * @return the cycle time or 0 if no instances were completed.
+	 */
+	public double getCycleTimePercentile(double percentile) {
+		if (cycleTimes.length==0)
+			return 0;
+		int rank = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * cycleTimes.length);
+		return cycleTimes[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * @return the statistics of all flow nodes, in the order in which they
+	 *         appear in the Process.
+	 */
+	public List<ElementStatistics> getElementStatistics() {
+		return elements;
+	}
+
+	/**
+	 * @param elementId the ID of a flow node.
+	 * @return the statistics of the flow node or null if it was not simulated.
+	 */
+	public ElementStatistics getElementStatistics(String elementId) {
+		for (ElementStatistics es : elements) {
+			if (es.getElementId()!=null && es.getElementId().equals(elementId))
+				return es;
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Process ").append(processId) //$NON-NLS-1$
+			.append(": replications=").append(replications) //$NON-NLS-1$
+			.append(", failed=").append(failedReplications) //$NON-NLS-1$
+			.append(", completed instances=").append(completedInstances) //$NON-NLS-1$
+			.append(", throughput=").append(throughput) //$NON-NLS-1$
+			.append(", mean cycle time=").append(getMeanCycleTime()) //$NON-NLS-1$
+			.append(" ").append(timeUnit); //$NON-NLS-1$
+		return sb.toString();
+	}
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.RootElement;
+import org.eclipse.bpmn2.modeler.core.adapters.ResourceIdIndex;
+import org.eclipse.bpmn2.modeler.core.model.ModelDecorator;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.GlobalType;
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Finds the elements of a Resource by the identifiers that jBPM requires to be
+ * unique.
+ * <p>
+ * jBPM requires the IDs of process variables, Messages, Signals, Globals and
+ * so on to be unique, and to match their names. Checking this by walking the
+ * whole model for every element made validation and renaming quadratic in
+ * the size of the model; with this registry each check is a lookup in the
+ * Resource's {@link ResourceIdIndex}.
+ * <p>
+ * jBPM validation compares the "identifier" of a {@link GlobalType} and the
+ * "id" of any other BaseElement, except the Definitions itself. Since the ID
+ * index does not know about Global identifiers, the registry also remembers
+ * the Globals of the Resource: the ones it finds in the extension values of
+ * the Definitions and its root elements when it is created, and the ones that
+ * are passed to {@link #update(EObject)} later. There are only a few Globals
+ * in a model, so they are simply compared one by one.
+ * <p>
+ * Like the ID index, the registry is attached to the Resource only, and is
+ * discarded when the Resource is unloaded. Code that changes an ID with
+ * notifications turned off, or adds a Global, must call
+ * {@link #update(EObject)} afterwards.
+ */
+public class IdentifierRegistry extends AdapterImpl {
+
+	private final Resource resource;
+	// Globals are held weakly, so that a removed Global is only remembered
+	// as long as an undo can still add it back
+	private final Map<GlobalType, Boolean> globals = new WeakHashMap<GlobalType, Boolean>();
+
+	protected IdentifierRegistry(Resource resource) {
+		this.resource = resource;
+		Definitions definitions = ModelUtil.getDefinitions(resource);
+		if (definitions!=null) {
+			addGlobals(definitions);
+			for (RootElement re : definitions.getRootElements())
+				addGlobals(re);
+		}
+	}
+
+	/**
+	 * Return the registry of the Resource that contains the given object,
+	 * creating it if necessary.
+	 *
+	 * @param object an object in a BPMN2 Resource.
+	 * @return the registry, or null if the object does not belong to a
+	 *         Resource.
+	 */
+	public static IdentifierRegistry getRegistry(EObject object) {
+		Resource resource = object.eResource();
+		if (resource==null)
+			return null;
+		synchronized (resource) {
+			for (Adapter a : resource.eAdapters()) {
+				if (a instanceof IdentifierRegistry)
+					return (IdentifierRegistry) a;
+			}
+			IdentifierRegistry registry = new IdentifierRegistry(resource);
+			resource.eAdapters().add(registry);
+			return registry;
+		}
+	}
+
+	/**
+	 * Return the elements with the given validation identifier, that is the
+	 * "identifier" of a Global or the "id" of any other BaseElement.
+	 *
+	 * @param identifier the identifier.
+	 * @return the elements, which may be empty.
+	 */
+	public synchronized List<BaseElement> getElementsWithIdentifier(String identifier) {
+		List<BaseElement> result = new ArrayList<BaseElement>();
+		if (identifier==null)
+			return result;
+		for (EObject o : ResourceIdIndex.getIndex(resource).getObjects(identifier)) {
+			if (o instanceof BaseElement && !(o instanceof Definitions) && !(o instanceof GlobalType))
+				result.add((BaseElement) o);
+		}
+		for (GlobalType global : new ArrayList<GlobalType>(globals.keySet())) {
+			if (global.eResource()==resource && identifier.equals(global.getIdentifier()))
+				result.add(global);
+		}
+		return result;
+	}
+
+	/**
+	 * Return any object other than the given one which has the given ID.
+	 *
+	 * @param object the object that should have the ID.
+	 * @param id the ID.
+	 * @return another object with the same ID, or null if the ID is unique.
+	 */
+	public synchronized EObject findDuplicateId(EObject object, Object id) {
+		if (id==null)
+			return null;
+		for (EObject o : ResourceIdIndex.getIndex(resource).getObjects(id.toString())) {
+			if (o!=object)
+				return o;
+		}
+		return null;
+	}
+
+	/**
+	 * Generate an ID that no other object has, by appending "_1", "_2"
+	 * and so on to the given one until it is unique.
+	 *
+	 * @param object the object that should have the ID.
+	 * @param id the preferred ID.
+	 * @return the unique ID.
+	 */
+	public synchronized Object makeUniqueId(EObject object, Object id) {
+		int i = 1;
+		Object uniqueId = id;
+		while (findDuplicateId(object, uniqueId)!=null) {
+			uniqueId = id + "_" + i++; //$NON-NLS-1$
+		}
+		return uniqueId;
+	}
+
+	/**
+	 * Register the current ID of an object whose ID was changed without
+	 * notification, or a Global that was added to the Resource.
+	 *
+	 * @param object an object in the Resource.
+	 */
+	public synchronized void update(EObject object) {
+		EStructuralFeature feature = ResourceIdIndex.getIdFeature(object);
+		if (feature!=null && object.eGet(feature) instanceof String)
+			ResourceIdIndex.getIndex(resource).register((String) object.eGet(feature), object);
+		if (object instanceof GlobalType)
+			globals.put((GlobalType) object, Boolean.TRUE);
+	}
+
+	private void addGlobals(EObject object) {
+		for (GlobalType global : ModelDecorator.getAllExtensionAttributeValues(object, GlobalType.class))
+			globals.put(global, Boolean.TRUE);
+	}
+
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type==IdentifierRegistry.class;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#notifyChanged(org.eclipse.emf.common.notify.Notification)
+	 */
+	@Override
+	public void notifyChanged(Notification notification) {
+		if (notification.getNotifier()==resource &&
+				notification.getFeatureID(Resource.class)==Resource.RESOURCE__IS_LOADED &&
+				!notification.getNewBooleanValue()) {
+			// the Resource was unloaded
+			synchronized (resource) {
+				resource.eAdapters().remove(this);
+			}
+		}
+	}
+}
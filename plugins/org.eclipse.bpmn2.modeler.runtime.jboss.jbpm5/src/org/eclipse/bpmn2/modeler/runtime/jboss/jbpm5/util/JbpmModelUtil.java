@@ -411,6 +411,29 @@ public class JbpmModelUtil {
 		return itemDef;
 	}
 	
+	/**
+	 * Return the BPSim data attached to the Definitions that contain the given
+	 * object. Unlike {@link #getBPSimData(EObject)} this does not modify the
+	 * model, so it can be used outside of a write transaction.
+	 *
+	 * @param object any object in the BPMN2 Resource
+	 * @return the BPSim data or null if there is none
+	 */
+	public static BPSimDataType findBPSimData(EObject object) {
+		Definitions definitions = (Definitions) ModelUtil.getDefinitions(object);
+		if (definitions==null)
+			return null;
+		for (Relationship rel : definitions.getRelationships()) {
+			for (ExtensionAttributeValue v : ModelDecorator.getExtensionAttributeValues(rel)) {
+				for (org.eclipse.emf.ecore.util.FeatureMap.Entry entry : v.getValue()) {
+					if (entry.getValue() instanceof BPSimDataType)
+						return (BPSimDataType)entry.getValue();
+				}
+			}
+		}
+		return null;
+	}
+
 	public static BPSimDataType getBPSimData(EObject object) {
 		BPSimDataType processAnalysisData = null;
 		Relationship rel = null;
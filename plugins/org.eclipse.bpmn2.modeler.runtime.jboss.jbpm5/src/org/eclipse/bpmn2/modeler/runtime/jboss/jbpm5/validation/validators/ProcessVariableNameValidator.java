@@ -14,19 +14,16 @@
 package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.validation.validators;
 
 import org.eclipse.bpmn2.BaseElement;
-import org.eclipse.bpmn2.Definitions;
 import org.eclipse.bpmn2.Process;
-import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
 import org.eclipse.bpmn2.modeler.core.validation.SyntaxCheckerUtils;
 import org.eclipse.bpmn2.modeler.core.validation.validators.AbstractBpmn2ElementValidator;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.ProcessVariableNameChangeAdapter;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.ExternalProcess;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.GlobalType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.util.IdentifierRegistry;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.validation.Messages;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.emf.common.util.TreeIterator;
-import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.validation.IValidationContext;
 
 public class ProcessVariableNameValidator extends AbstractBpmn2ElementValidator<BaseElement> {
@@ -89,25 +86,16 @@ public class ProcessVariableNameValidator extends AbstractBpmn2ElementValidator<
 			}
 		}
 
-		Definitions definitions = ModelUtil.getDefinitions(object);
-		TreeIterator<EObject> iter = definitions.eAllContents();
-		while (iter.hasNext()) {
-			EObject o2 = iter.next();
-			if (o2 instanceof BaseElement && object!=o2) {
-				String id2;
-				if (o2 instanceof GlobalType)
-					id2 = ((GlobalType) o2).getIdentifier();
-				else
-					id2 = ((BaseElement) o2).getId();
-				if (id != null && id2 != null) {
-					if (id.equals(id2)) {
-						addStatus(object, featureName, Status.ERROR,
-								Messages.ProcessVariableNameConstraint_Duplicate_ID,
-								getLabel(object)
-										+ " " + getName(object), //$NON-NLS-1$
-								getLabel(o2)
-										+ " " + getName(o2)); //$NON-NLS-1$
-					}
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(object);
+		if (id != null && registry != null) {
+			for (BaseElement o2 : registry.getElementsWithIdentifier(id)) {
+				if (object!=o2) {
+					addStatus(object, featureName, Status.ERROR,
+							Messages.ProcessVariableNameConstraint_Duplicate_ID,
+							getLabel(object)
+									+ " " + getName(object), //$NON-NLS-1$
+							getLabel(o2)
+									+ " " + getName(o2)); //$NON-NLS-1$
 				}
 			}
 		}
@@ -22,6 +22,9 @@ public class WIDException extends Exception {
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
+	
+	private int line;
+	private int column;
 
 	public WIDException (String message) {
 		super(message);
@@ -30,4 +33,30 @@ public class WIDException extends Exception {
 	public WIDException (String message, Throwable exception) {
 		super(message, exception);
 	}
+	
+	/**
+	 * A syntax error at the given position of a *.wid/*.conf file.
+	 * @param message
+	 * @param line the line, starting at 1
+	 * @param column the column, starting at 1
+	 */
+	public WIDException (String message, int line, int column) {
+		super(message + " at line " + line + ", column " + column); //$NON-NLS-1$ //$NON-NLS-2$
+		this.line = line;
+		this.column = column;
+	}
+	
+	/**
+	 * @return the line of a syntax error, or 0 if this is not a syntax error.
+	 */
+	public int getLine() {
+		return line;
+	}
+	
+	/**
+	 * @return the column of a syntax error, or 0 if this is not a syntax error.
+	 */
+	public int getColumn() {
+		return column;
+	}
 }
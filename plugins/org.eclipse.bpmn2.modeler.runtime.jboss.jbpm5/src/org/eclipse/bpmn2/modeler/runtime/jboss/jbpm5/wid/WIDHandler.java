@@ -14,14 +14,14 @@ package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.Map.Entry;
 
-import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.drools.process.core.datatype.DataType;
-import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.drools.process.core.datatype.DataTypeFactory;
-import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.drools.process.core.datatype.DataTypeRegistry;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IPath;
 
@@ -36,16 +36,28 @@ public class WIDHandler {
 	}
 	
     /**
-     * Takes in the String content of a *.wid/*.conf file from jbpm5 and 
-     * parses it into a HashMap of WorkItemDefinition classes
+     * Reads a *.wid/*.conf file from jbpm5 and parses it into a HashMap
+     * of WorkItemDefinition classes
      * @param widDefinitions
-     * @param content
+     * @param file
      * @throws WIDException
      */
     public static void evaluateWorkDefinitions(
     		Map<String, WorkItemDefinition> widDefinitions, IFile file) throws WIDException {
-		String content = getFile(file);
-		processWorkDefinitionsContent(widDefinitions, content);
+		Reader reader = getReader(file);
+		if (reader == null) {
+			throw new WIDException(
+					"No data passed to WIDHandler.processWorkDefinitionsContent method"); //$NON-NLS-1$
+		}
+		try {
+			processWorkDefinitionsContent(widDefinitions, reader);
+		}
+		finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+			}
+		}
 		Iterator<WorkItemDefinition> iter = widDefinitions.values().iterator();
 		while (iter.hasNext()) {
 			WorkItemDefinitionImpl wid = (WorkItemDefinitionImpl)iter.next();
@@ -53,143 +65,69 @@ public class WIDHandler {
 		}
     }
     
+    /**
+     * Takes in the String content of a *.wid/*.conf file from jbpm5 and 
+     * parses it into a HashMap of WorkItemDefinition classes
+     * @param widDefinitions
+     * @param content
+     * @throws WIDException
+     */
     public static void evaluateWorkDefinitions(
     		Map<String, WorkItemDefinition> widDefinitions, String content) throws WIDException {
-		processWorkDefinitionsContent(widDefinitions, content);
+		if (content == null) {
+			throw new WIDException(
+					"No data passed to WIDHandler.processWorkDefinitionsContent method"); //$NON-NLS-1$
+		}
+		processWorkDefinitionsContent(widDefinitions, new StringReader(content));
+    }
+    
+    /**
+     * Parses the content of a *.wid/*.conf file from jbpm5 as it is read,
+     * without loading all of it into memory first. The reader is not closed.
+     * @param widDefinitions
+     * @param reader
+     * @throws WIDException
+     */
+    public static void evaluateWorkDefinitions(
+    		Map<String, WorkItemDefinition> widDefinitions, Reader reader) throws WIDException {
+		if (reader == null) {
+			throw new WIDException(
+					"No data passed to WIDHandler.processWorkDefinitionsContent method"); //$NON-NLS-1$
+		}
+		processWorkDefinitionsContent(widDefinitions, reader);
     }
 	
 	/*
-	 * Get the contents of the file
+	 * Open the file for reading
 	 * @param resource
 	 * @return
 	 */
-	private static String getFile( IFile resource ) {
-		String filepath = null;
-		if (resource != null) {
-			IPath path = resource.getLocation().makeAbsolute();
-			filepath = path.toOSString();
+	private static Reader getReader( IFile resource ) {
+		if (resource == null || resource.getLocation() == null)
+			return null;
+		IPath path = resource.getLocation().makeAbsolute();
+		try {
+			return new InputStreamReader(new FileInputStream(path.toOSString()), "UTF-8"); //$NON-NLS-1$
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
 		}
-
-		StringBuilder text = new StringBuilder();
-	    String NL = System.getProperty("line.separator"); //$NON-NLS-1$
-	    Scanner scanner = null;
-	    try {
-	    	scanner = new Scanner(new FileInputStream(filepath), "UTF-8"); //$NON-NLS-1$
-	    	while (scanner.hasNextLine()){
-	    		text.append(scanner.nextLine() + NL);
-	    	}
-	    	return text.toString();
-	    } catch (FileNotFoundException e) {
-	    	e.printStackTrace();
-	    } finally {
-	    	if (scanner != null)
-	    		scanner.close();
-	    }	
-	    return null;
+		return null;
 	}
 
     /*
-     * Actually does the work to parse the content using RegEx and brute force 
+     * Actually does the work to parse the content, see WIDParser
      * @param widDefinitions
-     * @param content
+     * @param reader
      * @throws WIDException
      */
     private static void processWorkDefinitionsContent (Map<String, WorkItemDefinition> widDefinitions, 
-    		String content) throws WIDException {
-    	 
-          if (content == null) {
-        	  WIDException widException = 
-        			  new WIDException(
-        					  "No data passed to WIDHandler.processWorkDefinitionsContent method"); //$NON-NLS-1$
-        	  throw widException;
-          }
-          if (widDefinitions != null) {
-        	  widDefinitions.clear();
-          }
-          
-          String strings[] = content.split("[\n]+"); //$NON-NLS-1$
-    	  int openBrackets = 0;
-    	  WorkItemDefinition currentWid = new WorkItemDefinitionImpl();
-    	  
-    	  Section current = Section.PARAMETERS;
-    	  
-          for (int i = 0; i < strings.length; i++) {
-        	  String trim = strings[i].trim();
-        	  if (trim.length() == 0) continue;
-        	  if (trim.startsWith("[") || trim.endsWith("[") || trim.endsWith(":")) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        		  if (trim.endsWith(":") && i < strings.length - 1) { //$NON-NLS-1$
-        			  trim = strings[i].trim() + strings[i+1].trim();
-        		  } else {
-        			  openBrackets++;
-        		  }
-        		  String[] nameValue = trim.split("[:]+"); //$NON-NLS-1$
-        		  if (nameValue.length == 2) {
-        			  String name = nameValue[0].replace('"', ' ').trim();
-        			  if (name.equalsIgnoreCase("parameters")) { //$NON-NLS-1$
-	    				  current = Section.PARAMETERS;
-	    			  } else if (name.equalsIgnoreCase("results")) { //$NON-NLS-1$
-	    				  current = Section.RESULTS;
-	    			  } else if (name.equalsIgnoreCase("dependencies")) { //$NON-NLS-1$
-	    				  current = Section.DEPENDENCIES;
-	    			  }
-        		  }
-        	  }
-        	  if (trim.startsWith("]") || trim.endsWith("]")) { //$NON-NLS-1$ //$NON-NLS-2$
-        		  openBrackets--;
-        		  if (openBrackets == 1) {
-	    			  if (currentWid != null && currentWid.getName() != null) {
-	    				  widDefinitions.put(currentWid.getName(), currentWid);
-	    			  }
-	    			  currentWid = new WorkItemDefinitionImpl();
-        		  }
-        	  }
-        	  if (trim.contains(":")) { //$NON-NLS-1$
-        		  String[] nameValue = trim.split("[:]+"); //$NON-NLS-1$
-        		  if (nameValue.length == 2 || nameValue.length == 3) {
-        			  String name = nameValue[0].replace('"', ' ').trim();
-        			  int valueIndex = 1;
-        			  if (nameValue.length == 3) {
-        				  valueIndex = 2;
-        				  name = name + ':' + nameValue[1].replace('"', ' ').trim();
-        			  }
-        			  String value = nameValue[valueIndex].replace('"', ' ').replace(',', ' ').
-        					  replace('[',' ').trim();
-        			  if (openBrackets == 2 && value.trim().length() > 0) {
-        				  if (name.equalsIgnoreCase("name")) { //$NON-NLS-1$
-        					  currentWid.setName(value);
-        				  } else if (name.equalsIgnoreCase("displayName")) { //$NON-NLS-1$
-        					  currentWid.setDispalyName(value);
-						  } else if (name.equalsIgnoreCase("description")) { //$NON-NLS-1$
-							  currentWid.setDescription(value);
-						  } else if (name.equalsIgnoreCase("category")) { //$NON-NLS-1$
-							  currentWid.setCategory(value);
-        				  } else if (name.equalsIgnoreCase("icon")) { //$NON-NLS-1$
-        					  currentWid.setIcon(value);
-        				  } else if (name.equalsIgnoreCase("customEditor")) { //$NON-NLS-1$
-        					  currentWid.setCustomEditor(value);
-        				  } else if (name.equalsIgnoreCase("eclipse:customEditor")) { //$NON-NLS-1$
-        					  currentWid.setEclipseCustomEditor(value);
-        				  }
-        			  } else if (openBrackets == 3 && value.trim().length() > 0) {
-        				  if (value.startsWith("new") && value.indexOf("(")>0) { //$NON-NLS-1$ //$NON-NLS-2$
-        					  int index = value.indexOf("("); //$NON-NLS-1$
-        					  value = value.substring(3,index).trim();
-        					  // look up the DataType in the registry and replace the DataType
-        					  // name with its Java type equivalent name
-        					  DataTypeFactory dtf = DataTypeRegistry.getFactory(value);
-        					  if (dtf!=null) {
-        						  DataType dt = dtf.createDataType();
-        						  value = dt.getStringType();
-        					  }
-        				  }
-        				  if (current == Section.PARAMETERS)
-        					  currentWid.getParameters().put(name, value);
-        				  else if (current == Section.RESULTS)
-        					  currentWid.getResults().put(name, value);
-        			  }
-        		  }
-        	  }
-          }
-     }
+    		Reader reader) throws WIDException {
+    	if (widDefinitions != null) {
+    		widDefinitions.clear();
+    	}
+    	new WIDParser(reader).parse(widDefinitions);
+    }
 
 }
\ No newline at end of file
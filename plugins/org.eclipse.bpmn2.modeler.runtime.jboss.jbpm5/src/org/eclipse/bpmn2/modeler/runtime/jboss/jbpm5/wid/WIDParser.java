@@ -0,0 +1,476 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.drools.process.core.datatype.DataType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.drools.process.core.datatype.DataTypeFactory;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.drools.process.core.datatype.DataTypeRegistry;
+
+/**
+ * A single pass parser for Work Item Definition (*.wid and *.conf) files.
+ * <p>
+ * These files contain an MVEL list of maps, one map per Work Item
+ * Definition, optionally preceded by import statements:
+ *
+ * <pre>
+ * import org.drools.process.core.datatype.impl.type.StringDataType;
+ * [
+ *   [
+ *     "name" : "Email",
+ *     "parameters" : [
+ *       "To" : new StringDataType(),
+ *     ],
+ *     "displayName" : "Email",
+ *   ]
+ * ]
+ * </pre>
+ *
+ * The input is read in chunks and tokenized as it is parsed, using one token
+ * of lookahead. Each definition is converted as soon as its closing bracket
+ * has been read. Values may be strings, bare words (numbers, identifiers),
+ * nested lists and maps, and constructor calls ("new DataType(...)"), which
+ * may themselves have arguments. Commas are optional between map entries and
+ * after a nested list or map, because existing files leave them out; any
+ * other list element must be followed by a comma or the closing bracket.
+ * Java style comments are skipped.
+ * <p>
+ * Syntax errors are reported as {@link WIDException}s that carry the line and
+ * column of the offending token.
+ */
+public class WIDParser {
+
+	private static final int EOF = 0;
+	private static final int LBRACKET = 1;
+	private static final int RBRACKET = 2;
+	private static final int COLON = 3;
+	private static final int COMMA = 4;
+	private static final int LPAREN = 5;
+	private static final int RPAREN = 6;
+	private static final int SEMICOLON = 7;
+	private static final int STRING = 8;
+	private static final int WORD = 9;
+
+	private static final String NEW = "new"; //$NON-NLS-1$
+
+	/**
+	 * A "new Type(args...)" value.
+	 */
+	private static class Constructor {
+		final String type;
+		final List<Object> arguments;
+
+		Constructor(String type, List<Object> arguments) {
+			this.type = type;
+			this.arguments = arguments;
+		}
+	}
+
+	private final Reader reader;
+	private final char[] buffer = new char[8192];
+	private int bufferLength;
+	private int bufferPos;
+	// the next character, or -1 at the end of the input
+	private int ch;
+	private int line = 1;
+	private int column = 0;
+
+	// the current token
+	private int token;
+	private String text;
+	private int tokenLine;
+	private int tokenColumn;
+	private final StringBuilder textBuilder = new StringBuilder();
+
+	public WIDParser(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Parse the input and add the Work Item Definitions it contains to the
+	 * given map, keyed by name. Definitions without a name are ignored. The
+	 * caller remains responsible for closing the reader.
+	 *
+	 * @param widDefinitions the map to fill in.
+	 * @throws WIDException if the input cannot be read or is not valid.
+	 */
+	public void parse(Map<String, WorkItemDefinition> widDefinitions) throws WIDException {
+		try {
+			readChar();
+			if (!skipImports())
+				return;
+			nextToken();
+			int listLine = tokenLine;
+			int listColumn = tokenColumn;
+			nextToken();
+			while (token != RBRACKET) {
+				if (token == EOF)
+					throw error("Missing ']' for the list that starts", listLine, listColumn); //$NON-NLS-1$
+				if (token == COMMA) {
+					nextToken();
+					continue;
+				}
+				int widLine = tokenLine;
+				int widColumn = tokenColumn;
+				Object value = parseValue();
+				if (value instanceof Map) {
+					@SuppressWarnings("unchecked")
+					WorkItemDefinitionImpl wid = createDefinition((Map<String, Object>) value, widLine, widColumn);
+					if (wid.getName() != null)
+						widDefinitions.put(wid.getName(), wid);
+				}
+			}
+			// anything after the end of the list is ignored
+		}
+		catch (IOException e) {
+			throw new WIDException(e.getMessage(), e);
+		}
+	}
+
+	private Object parseValue() throws IOException, WIDException {
+		switch (token) {
+		case LBRACKET:
+			return parseListOrMap();
+		case STRING:
+			String s = text;
+			nextToken();
+			return s;
+		case WORD:
+			if (NEW.equals(text))
+				return parseConstructor();
+			String w = text;
+			nextToken();
+			return w;
+		default:
+			throw unexpected();
+		}
+	}
+
+	private Object parseListOrMap() throws IOException, WIDException {
+		int startLine = tokenLine;
+		int startColumn = tokenColumn;
+		List<Object> list = null;
+		Map<String, Object> map = null;
+		nextToken();
+		for (;;) {
+			if (token == RBRACKET) {
+				nextToken();
+				break;
+			}
+			if (token == EOF)
+				throw error("Missing ']' for the list that starts", startLine, startColumn); //$NON-NLS-1$
+			if (token == COMMA) {
+				nextToken();
+				continue;
+			}
+			if (token == COLON && list == null && map == null) {
+				// "[:]" is an empty map
+				map = new LinkedHashMap<String, Object>();
+				nextToken();
+				continue;
+			}
+			int valueLine = tokenLine;
+			int valueColumn = tokenColumn;
+			Object value = parseValue();
+			if (token == COLON) {
+				if (list != null)
+					throw unexpected();
+				if (!(value instanceof String))
+					throw error("Map keys must be strings", valueLine, valueColumn); //$NON-NLS-1$
+				nextToken();
+				if (map == null)
+					map = new LinkedHashMap<String, Object>();
+				map.put((String) value, parseValue());
+			}
+			else {
+				if (map != null)
+					throw error("Expected ':' after map key", tokenLine, tokenColumn); //$NON-NLS-1$
+				if (list == null)
+					list = new ArrayList<Object>();
+				list.add(value);
+				// a missing comma is only tolerated after a nested list or map
+				if (token != COMMA && token != RBRACKET && !(value instanceof List || value instanceof Map))
+					throw unexpected();
+			}
+		}
+		if (map != null)
+			return map;
+		if (list != null)
+			return list;
+		return new ArrayList<Object>();
+	}
+
+	private Constructor parseConstructor() throws IOException, WIDException {
+		nextToken();
+		if (token != WORD)
+			throw error("Expected a type name after 'new'", tokenLine, tokenColumn); //$NON-NLS-1$
+		String type = text;
+		List<Object> arguments = new ArrayList<Object>();
+		nextToken();
+		if (token == LPAREN) {
+			int startLine = tokenLine;
+			int startColumn = tokenColumn;
+			nextToken();
+			while (token != RPAREN) {
+				if (token == EOF)
+					throw error("Missing ')' for the argument list that starts", startLine, startColumn); //$NON-NLS-1$
+				if (token == COMMA) {
+					nextToken();
+					continue;
+				}
+				arguments.add(parseValue());
+			}
+			nextToken();
+		}
+		return new Constructor(type, arguments);
+	}
+
+	private WorkItemDefinitionImpl createDefinition(Map<String, Object> map, int line, int column) {
+		WorkItemDefinitionImpl wid = new WorkItemDefinitionImpl();
+		wid.setSourcePosition(line, column);
+		for (Entry<String, Object> entry : map.entrySet()) {
+			String name = entry.getKey().trim();
+			Object value = entry.getValue();
+			if (value instanceof String) {
+				String s = ((String) value).trim();
+				if (s.length() == 0)
+					continue;
+				if (name.equalsIgnoreCase("name")) { //$NON-NLS-1$
+					wid.setName(s);
+				} else if (name.equalsIgnoreCase("displayName")) { //$NON-NLS-1$
+					wid.setDispalyName(s);
+				} else if (name.equalsIgnoreCase("description")) { //$NON-NLS-1$
+					wid.setDescription(s);
+				} else if (name.equalsIgnoreCase("category")) { //$NON-NLS-1$
+					wid.setCategory(s);
+				} else if (name.equalsIgnoreCase("icon")) { //$NON-NLS-1$
+					wid.setIcon(s);
+				} else if (name.equalsIgnoreCase("customEditor")) { //$NON-NLS-1$
+					wid.setCustomEditor(s);
+				} else if (name.equalsIgnoreCase("eclipse:customEditor")) { //$NON-NLS-1$
+					wid.setEclipseCustomEditor(s);
+				}
+			}
+			else if (value instanceof Map) {
+				@SuppressWarnings("unchecked")
+				Map<String, Object> section = (Map<String, Object>) value;
+				if (name.equalsIgnoreCase("parameters")) //$NON-NLS-1$
+					addTypes(section, wid.getParameters());
+				else if (name.equalsIgnoreCase("results")) //$NON-NLS-1$
+					addTypes(section, wid.getResults());
+			}
+		}
+		return wid;
+	}
+
+	private static void addTypes(Map<String, Object> section, Map<String, String> types) {
+		for (Entry<String, Object> entry : section.entrySet()) {
+			String type = null;
+			Object value = entry.getValue();
+			if (value instanceof Constructor) {
+				// look up the DataType in the registry and replace the DataType
+				// name with its Java type equivalent name
+				type = ((Constructor) value).type;
+				DataTypeFactory dtf = DataTypeRegistry.getFactory(type);
+				if (dtf != null) {
+					DataType dt = dtf.createDataType();
+					type = dt.getStringType();
+				}
+			}
+			else if (value instanceof String) {
+				type = ((String) value).trim();
+			}
+			if (type != null && type.length() > 0)
+				types.put(entry.getKey().trim(), type);
+		}
+	}
+
+	private WIDException unexpected() {
+		String what = token == EOF ? "end of input" : "'" + text + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return error("Unexpected " + what, tokenLine, tokenColumn); //$NON-NLS-1$
+	}
+
+	private static WIDException error(String message, int line, int column) {
+		return new WIDException(message, line, column);
+	}
+
+	// ======================= tokenizer ========================
+
+	private void readChar() throws IOException {
+		if (bufferPos == bufferLength) {
+			bufferLength = reader.read(buffer, 0, buffer.length);
+			bufferPos = 0;
+			if (bufferLength <= 0) {
+				bufferLength = 0;
+				ch = -1;
+				return;
+			}
+		}
+		if (ch == '\n') {
+			++line;
+			column = 0;
+		}
+		ch = buffer[bufferPos++];
+		++column;
+	}
+
+	private void nextToken() throws IOException, WIDException {
+		skipWhitespaceAndComments();
+		tokenLine = line;
+		tokenColumn = column;
+		switch (ch) {
+		case -1:
+			token = EOF;
+			text = null;
+			return;
+		case '[':
+			setToken(LBRACKET, "["); //$NON-NLS-1$
+			return;
+		case ']':
+			setToken(RBRACKET, "]"); //$NON-NLS-1$
+			return;
+		case ':':
+			setToken(COLON, ":"); //$NON-NLS-1$
+			return;
+		case ',':
+			setToken(COMMA, ","); //$NON-NLS-1$
+			return;
+		case '(':
+			setToken(LPAREN, "("); //$NON-NLS-1$
+			return;
+		case ')':
+			setToken(RPAREN, ")"); //$NON-NLS-1$
+			return;
+		case ';':
+			setToken(SEMICOLON, ";"); //$NON-NLS-1$
+			return;
+		case '"':
+		case '\'':
+			readString();
+			return;
+		}
+		if (isWordChar(ch)) {
+			textBuilder.setLength(0);
+			do {
+				textBuilder.append((char) ch);
+				readChar();
+			}
+			while (ch != -1 && isWordChar(ch));
+			token = WORD;
+			text = textBuilder.toString();
+			return;
+		}
+		throw error("Unexpected character '" + (char) ch + "'", tokenLine, tokenColumn); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void setToken(int token, String text) throws IOException {
+		this.token = token;
+		this.text = text;
+		readChar();
+	}
+
+	private void readString() throws IOException, WIDException {
+		int quote = ch;
+		textBuilder.setLength(0);
+		readChar();
+		while (ch != quote) {
+			if (ch == -1)
+				throw error("Unterminated string", tokenLine, tokenColumn); //$NON-NLS-1$
+			if (ch == '\\') {
+				readChar();
+				switch (ch) {
+				case 'n':
+					textBuilder.append('\n');
+					break;
+				case 't':
+					textBuilder.append('\t');
+					break;
+				case 'r':
+					textBuilder.append('\r');
+					break;
+				case -1:
+					throw error("Unterminated string", tokenLine, tokenColumn); //$NON-NLS-1$
+				default:
+					textBuilder.append((char) ch);
+				}
+			}
+			else
+				textBuilder.append((char) ch);
+			readChar();
+		}
+		readChar();
+		token = STRING;
+		text = textBuilder.toString();
+	}
+
+	private void skipWhitespaceAndComments() throws IOException, WIDException {
+		for (;;) {
+			while (ch != -1 && Character.isWhitespace(ch))
+				readChar();
+			if (ch != '/')
+				return;
+			int startLine = line;
+			int startColumn = column;
+			readChar();
+			if (ch == '/') {
+				while (ch != -1 && ch != '\n')
+					readChar();
+			}
+			else if (ch == '*') {
+				readChar();
+				int last = 0;
+				while (!(last == '*' && ch == '/')) {
+					if (ch == -1)
+						throw error("Unterminated comment", startLine, startColumn); //$NON-NLS-1$
+					last = ch;
+					readChar();
+				}
+				readChar();
+			}
+			else
+				throw error("Unexpected character '/'", startLine, startColumn); //$NON-NLS-1$
+		}
+	}
+
+	/*
+	 * Skip everything before the opening bracket of the definitions list.
+	 * This is normally a list of import statements, which are not tokenized
+	 * because they may contain wildcards ("import org.drools.*;") or anything
+	 * else MVEL allows. Each one ends at a ';' or at the end of its line.
+	 * Returns false if there is no list.
+	 */
+	private boolean skipImports() throws IOException, WIDException {
+		for (;;) {
+			skipWhitespaceAndComments();
+			if (ch == '[')
+				return true;
+			if (ch == -1)
+				return false;
+			while (ch != -1 && ch != ';' && ch != '\n')
+				readChar();
+			if (ch == ';')
+				readChar();
+		}
+	}
+
+	private static boolean isWordChar(int c) {
+		return Character.isJavaIdentifierPart(c) || c == '.' || c == '-' || c == '+';
+	}
+}
@@ -43,6 +43,8 @@ public class WorkItemDefinitionImpl implements WorkItemDefinition {
 	private LinkedHashMap<String, String> widParameters;
 	private LinkedHashMap<String, String> widResults;
 	private IFile file;
+	private int line;
+	private int column;
 
 	@Override
 	public String getName() {
@@ -83,6 +85,27 @@ public class WorkItemDefinitionImpl implements WorkItemDefinition {
 	public void setDefinitionFile(IFile file) {
 		this.file = file;
 	}
+	
+	/**
+	 * @return the line, starting at 1, of the definition in its file, or 0
+	 *         if it is not known.
+	 */
+	public int getLine() {
+		return line;
+	}
+	
+	/**
+	 * @return the column, starting at 1, of the definition in its file, or 0
+	 *         if it is not known.
+	 */
+	public int getColumn() {
+		return column;
+	}
+	
+	public void setSourcePosition(int line, int column) {
+		this.line = line;
+		this.column = column;
+	}
 
 	@Override
 	public void setName(String name) {
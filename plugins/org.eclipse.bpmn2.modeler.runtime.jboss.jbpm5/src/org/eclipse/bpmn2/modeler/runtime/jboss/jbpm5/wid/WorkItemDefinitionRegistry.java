@@ -0,0 +1,531 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.Activator;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * The Work Item Definitions of one project.
+ * <p>
+ * Every *.wid and *.conf file in the project is parsed once, the first time
+ * its definitions are needed, and the result is kept for as long as the
+ * file's modification stamp does not change. The registry follows resource
+ * change events to learn about added, changed and removed definition files,
+ * so that the project only needs to be walked once per session. Opening
+ * more editors in the same project costs nothing extra.
+ * <p>
+ * The parsed definitions are persisted in the plug-in's state location, keyed
+ * by file path and modification stamp, when the project is closed and when
+ * the plug-in is stopped. Files that did not change since are not parsed again
+ * in the next session.
+ * <p>
+ * Clients can compare {@link #getVersion() versions} to find out if anything
+ * changed since they last asked, or register an {@link IRegistryListener} to
+ * be told about it.
+ */
+public class WorkItemDefinitionRegistry {
+
+	/**
+	 * Told when definition files have been added, changed or removed.
+	 */
+	public interface IRegistryListener {
+		void definitionsChanged(WorkItemDefinitionRegistry registry);
+	}
+
+	private static final String INDEX_FOLDER = "wid"; //$NON-NLS-1$
+	private static final String INDEX_FILE_EXTENSION = ".index"; //$NON-NLS-1$
+	private static final int INDEX_VERSION = 1;
+
+	private static final Map<IProject, WorkItemDefinitionRegistry> registries = new HashMap<IProject, WorkItemDefinitionRegistry>();
+	private static IResourceChangeListener resourceChangeListener;
+
+	private final IProject project;
+	// definition file path -> the definitions parsed from it, or null if not parsed yet
+	private Map<IPath, FileEntry> files;
+	// icon file name, in lower case -> the icon file, or null if there is none
+	private final Map<String, IFile> icons = new HashMap<String, IFile>();
+	private final List<IRegistryListener> listeners = new CopyOnWriteArrayList<IRegistryListener>();
+	private volatile int version;
+	private boolean dirty;
+
+	private static class FileEntry {
+		final long modificationStamp;
+		final List<WorkItemDefinition> definitions;
+
+		FileEntry(long modificationStamp, List<WorkItemDefinition> definitions) {
+			this.modificationStamp = modificationStamp;
+			this.definitions = definitions;
+		}
+	}
+
+	private WorkItemDefinitionRegistry(IProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * Return the registry of the given project, creating it if necessary.
+	 *
+	 * @param project a workspace project.
+	 * @return the registry.
+	 */
+	public static WorkItemDefinitionRegistry getRegistry(IProject project) {
+		synchronized (registries) {
+			WorkItemDefinitionRegistry registry = registries.get(project);
+			if (registry==null) {
+				registry = new WorkItemDefinitionRegistry(project);
+				registries.put(project, registry);
+				if (resourceChangeListener==null) {
+					resourceChangeListener = new IResourceChangeListener() {
+						@Override
+						public void resourceChanged(IResourceChangeEvent event) {
+							WorkItemDefinitionRegistry.resourceChanged(event);
+						}
+					};
+					ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceChangeListener,
+							IResourceChangeEvent.POST_CHANGE);
+				}
+			}
+			return registry;
+		}
+	}
+
+	/**
+	 * Persist the parsed definitions of all registries, and stop listening
+	 * to resource changes. This is called when the plug-in is stopped.
+	 */
+	public static void disposeAll() {
+		List<WorkItemDefinitionRegistry> list;
+		synchronized (registries) {
+			if (resourceChangeListener!=null) {
+				ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceChangeListener);
+				resourceChangeListener = null;
+			}
+			list = new ArrayList<WorkItemDefinitionRegistry>(registries.values());
+			registries.clear();
+		}
+		for (WorkItemDefinitionRegistry registry : list)
+			registry.save();
+	}
+
+	public static boolean isDefinitionFile(IResource resource) {
+		if (resource.getType() == IResource.FILE) {
+			String ext = resource.getFileExtension();
+			return "conf".equalsIgnoreCase(ext) || "wid".equalsIgnoreCase(ext); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return false;
+	}
+
+	private static boolean isOutputFolder(IResource resource) {
+		// skip over "bin" and "target" folders
+		if (resource.getType() == IResource.FOLDER) {
+			String name = resource.getName();
+			return "bin".equals(name) || "target".equals(name); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return false;
+	}
+
+	public IProject getProject() {
+		return project;
+	}
+
+	/**
+	 * @return a number that changes every time a definition file of the
+	 *         project is added, changed or removed.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public void addListener(IRegistryListener listener) {
+		if (!listeners.contains(listener))
+			listeners.add(listener);
+	}
+
+	public void removeListener(IRegistryListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Return the Work Item Definitions of all definition files in the given
+	 * folder and its subfolders, in the order in which the files were found.
+	 *
+	 * @param folder a folder of this registry's project.
+	 * @return the definitions, never null.
+	 */
+	public synchronized List<WorkItemDefinition> getDefinitions(IContainer folder) {
+		List<WorkItemDefinition> result = new ArrayList<WorkItemDefinition>();
+		IPath folderPath = folder.getFullPath();
+		for (Map.Entry<IPath, FileEntry> e : getFiles().entrySet()) {
+			if (folderPath.isPrefixOf(e.getKey())) {
+				FileEntry entry = getEntry(e.getKey(), e.getValue());
+				e.setValue(entry);
+				result.addAll(entry.definitions);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the first file in the project with the given name, ignoring
+	 * case. This is used to find the icons of Work Item Definitions.
+	 *
+	 * @param fileName a file name.
+	 * @return the file, or null if there is none.
+	 */
+	public synchronized IFile findFile(final String fileName) {
+		String key = fileName.toLowerCase();
+		if (icons.containsKey(key))
+			return icons.get(key);
+		final IFile[] found = new IFile[1];
+		try {
+			project.accept(new IResourceVisitor() {
+				@Override
+				public boolean visit(IResource resource) throws CoreException {
+					if (found[0]!=null)
+						return false;
+					if (resource.getType() == IResource.FILE && resource.getName().equalsIgnoreCase(fileName)) {
+						found[0] = (IFile) resource;
+						return false;
+					}
+					return true;
+				}
+			}, IResource.DEPTH_INFINITE, false);
+		}
+		catch (CoreException e) {
+			Activator.logError(e);
+		}
+		icons.put(key, found[0]);
+		return found[0];
+	}
+
+	private Map<IPath, FileEntry> getFiles() {
+		if (files==null) {
+			files = new LinkedHashMap<IPath, FileEntry>();
+			final Map<IPath, FileEntry> persisted = load();
+			try {
+				project.accept(new IResourceVisitor() {
+					@Override
+					public boolean visit(IResource resource) throws CoreException {
+						if (isDefinitionFile(resource))
+							files.put(resource.getFullPath(), persisted.get(resource.getFullPath()));
+						return !isOutputFolder(resource);
+					}
+				}, IResource.DEPTH_INFINITE, false);
+				// forget the files that were removed while the project was closed
+				if (!persisted.keySet().equals(files.keySet()))
+					dirty = true;
+			}
+			catch (CoreException e) {
+				Activator.logError(e);
+			}
+		}
+		return files;
+	}
+
+	private FileEntry getEntry(IPath path, FileEntry entry) {
+		IFile file = project.getWorkspace().getRoot().getFile(path);
+		long stamp = file.getModificationStamp();
+		if (entry==null || entry.modificationStamp!=stamp) {
+			List<WorkItemDefinition> definitions = new ArrayList<WorkItemDefinition>();
+			try {
+				Map<String, WorkItemDefinition> widMap = new LinkedHashMap<String, WorkItemDefinition>();
+				WIDHandler.evaluateWorkDefinitions(widMap, file);
+				definitions.addAll(widMap.values());
+			}
+			catch (WIDException e) {
+				Activator.logError(e);
+			}
+			// remember broken files too, so they are not parsed again until they change
+			entry = new FileEntry(stamp, definitions);
+			dirty = true;
+		}
+		return entry;
+	}
+
+	/**
+	 * Write the parsed definitions to the plug-in's state location if they
+	 * have changed since they were last loaded or saved.
+	 */
+	private synchronized void save() {
+		if (!dirty || files==null || Activator.getDefault()==null)
+			return;
+		DataOutputStream out = null;
+		try {
+			File indexFile = getIndexFile();
+			indexFile.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+			out.writeInt(INDEX_VERSION);
+			for (Map.Entry<IPath, FileEntry> e : files.entrySet()) {
+				FileEntry entry = e.getValue();
+				if (entry==null)
+					continue;
+				out.writeBoolean(true);
+				out.writeUTF(e.getKey().toString());
+				out.writeLong(entry.modificationStamp);
+				out.writeInt(entry.definitions.size());
+				for (WorkItemDefinition wid : entry.definitions)
+					write(out, wid);
+			}
+			out.writeBoolean(false);
+			dirty = false;
+		}
+		catch (IOException e) {
+			Activator.logError(e);
+		}
+		finally {
+			if (out!=null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private Map<IPath, FileEntry> load() {
+		Map<IPath, FileEntry> result = new HashMap<IPath, FileEntry>();
+		if (Activator.getDefault()==null)
+			return result;
+		File indexFile = getIndexFile();
+		if (!indexFile.exists())
+			return result;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt()!=INDEX_VERSION)
+				return result;
+			while (in.readBoolean()) {
+				IPath path = new Path(in.readUTF());
+				long stamp = in.readLong();
+				IFile file = project.getWorkspace().getRoot().getFile(path);
+				int count = in.readInt();
+				List<WorkItemDefinition> definitions = new ArrayList<WorkItemDefinition>(count);
+				for (int i=0; i<count; ++i)
+					definitions.add(read(in, file));
+				result.put(path, new FileEntry(stamp, definitions));
+			}
+		}
+		catch (Exception e) {
+			// the index file is corrupt: parse all files again
+			result.clear();
+		}
+		finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return result;
+	}
+
+	private void delete() {
+		dirty = false;
+		if (Activator.getDefault()!=null) {
+			File indexFile = getIndexFile();
+			if (indexFile.exists())
+				indexFile.delete();
+		}
+	}
+
+	private File getIndexFile() {
+		return Activator.getDefault().getStateLocation()
+				.append(INDEX_FOLDER)
+				.append(project.getName() + INDEX_FILE_EXTENSION)
+				.toFile();
+	}
+
+	private static void write(DataOutputStream out, WorkItemDefinition wid) throws IOException {
+		writeString(out, wid.getName());
+		writeString(out, wid.getDisplayName());
+		writeString(out, wid.getDescription());
+		writeString(out, wid.getCategory());
+		writeString(out, wid.getIcon());
+		writeString(out, wid.getCustomEditor());
+		writeString(out, wid.getEclipseCustomEditor());
+		writeMap(out, wid.getParameters());
+		writeMap(out, wid.getResults());
+		if (wid instanceof WorkItemDefinitionImpl) {
+			out.writeInt(((WorkItemDefinitionImpl) wid).getLine());
+			out.writeInt(((WorkItemDefinitionImpl) wid).getColumn());
+		}
+		else {
+			out.writeInt(0);
+			out.writeInt(0);
+		}
+	}
+
+	private static WorkItemDefinition read(DataInputStream in, IFile file) throws IOException {
+		WorkItemDefinitionImpl wid = new WorkItemDefinitionImpl();
+		wid.setName(readString(in));
+		wid.setDispalyName(readString(in));
+		wid.setDescription(readString(in));
+		wid.setCategory(readString(in));
+		wid.setIcon(readString(in));
+		wid.setCustomEditor(readString(in));
+		wid.setEclipseCustomEditor(readString(in));
+		readMap(in, wid.getParameters());
+		readMap(in, wid.getResults());
+		int line = in.readInt();
+		int column = in.readInt();
+		wid.setSourcePosition(line, column);
+		wid.setDefinitionFile(file);
+		return wid;
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, String> e : map.entrySet()) {
+			writeString(out, e.getKey());
+			writeString(out, e.getValue());
+		}
+	}
+
+	private static void readMap(DataInputStream in, Map<String, String> map) throws IOException {
+		int size = in.readInt();
+		for (int i=0; i<size; ++i) {
+			String key = readString(in);
+			map.put(key, readString(in));
+		}
+	}
+
+	// writeUTF is limited to 64K, and a description may be longer
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s==null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = s.getBytes("UTF-8"); //$NON-NLS-1$
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length<0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+
+	private static void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta rootDelta = event.getDelta();
+		if (rootDelta==null)
+			return;
+		List<WorkItemDefinitionRegistry> changed = new ArrayList<WorkItemDefinitionRegistry>();
+		synchronized (registries) {
+			for (IResourceDelta projectDelta : rootDelta.getAffectedChildren()) {
+				IProject project = (IProject) projectDelta.getResource();
+				WorkItemDefinitionRegistry registry = registries.get(project);
+				if (registry==null)
+					continue;
+				if (projectDelta.getKind() == IResourceDelta.REMOVED) {
+					registries.remove(project);
+					registry.delete();
+					continue;
+				}
+				if (!project.isOpen()) {
+					registries.remove(project);
+					registry.save();
+					continue;
+				}
+				if (registry.update(projectDelta))
+					changed.add(registry);
+			}
+		}
+		for (WorkItemDefinitionRegistry registry : changed) {
+			for (IRegistryListener l : registry.listeners)
+				l.definitionsChanged(registry);
+		}
+	}
+
+	private synchronized boolean update(IResourceDelta projectDelta) {
+		final boolean[] changed = new boolean[1];
+		try {
+			projectDelta.accept(new IResourceDeltaVisitor() {
+				@Override
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					IResource resource = delta.getResource();
+					int kind = delta.getKind();
+					if (resource.getType() == IResource.FILE) {
+						if (kind == IResourceDelta.ADDED || kind == IResourceDelta.REMOVED) {
+							// any file may be an icon
+							icons.clear();
+						}
+						if (kind == IResourceDelta.CHANGED &&
+								(delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED))==0) {
+							// only markers or other metadata have changed
+							return true;
+						}
+						if (isDefinitionFile(resource) && !isInOutputFolder(resource)) {
+							if (files!=null) {
+								if (kind == IResourceDelta.REMOVED)
+									files.remove(resource.getFullPath());
+								else
+									files.put(resource.getFullPath(), null);
+								dirty = true;
+							}
+							changed[0] = true;
+						}
+					}
+					return true;
+				}
+			});
+		}
+		catch (CoreException e) {
+			Activator.logError(e);
+		}
+		if (changed[0])
+			++version;
+		return changed[0];
+	}
+
+	private static boolean isInOutputFolder(IResource resource) {
+		for (IContainer c = resource.getParent(); c!=null; c = c.getParent()) {
+			if (isOutputFolder(c))
+				return true;
+		}
+		return false;
+	}
+}
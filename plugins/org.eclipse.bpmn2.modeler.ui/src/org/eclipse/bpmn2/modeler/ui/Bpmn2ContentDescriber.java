@@ -17,12 +17,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
-import org.apache.xerces.parsers.SAXParser;
-import org.apache.xerces.xni.Augmentations;
-import org.apache.xerces.xni.QName;
-import org.apache.xerces.xni.XMLAttributes;
-import org.apache.xerces.xni.XNIException;
 import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceImpl;
+import org.eclipse.bpmn2.modeler.core.utils.DocumentHeader;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.QualifiedName;
@@ -36,8 +32,6 @@ public class Bpmn2ContentDescriber implements ITextContentDescriber {
 	private static final String BPMN2_NAMESPACE = "http://www.omg.org/spec/BPMN/20100524/MODEL"; //$NON-NLS-1$
 	private static final String ROOT_ELEMENT = "definitions"; //$NON-NLS-1$
 
-	private RootElementParser parser;
-
 	public Bpmn2ContentDescriber() {
 	}
 
@@ -51,21 +45,12 @@ public class Bpmn2ContentDescriber implements ITextContentDescriber {
 		return describe(new InputStreamReader(contents), description);
 	}
 
-	private synchronized String doDescribe(Reader contents) throws IOException {
-		try {
-			InputSource source = new InputSource(contents);
-			parser = new RootElementParser();
-			parser.parse(source);
-		} catch (AcceptedException e) {
-			return e.acceptedRootElement;
-		} catch (RejectedException e) {
-			return null;
-		} catch (Exception e) {
-			return null;
-		} finally {
-			parser = null;
-		}
-
+	private String doDescribe(Reader contents) throws IOException {
+		// the content type of workspace files is cached by the platform,
+		// so there is no file to look up in the DocumentHeader cache here
+		DocumentHeader header = DocumentHeader.parse(new InputSource(contents));
+		if (header!=null && header.isRootElement(BPMN2_NAMESPACE, ROOT_ELEMENT))
+			return header.getLocalName();
 		return null;
 	}
 
@@ -74,40 +59,6 @@ public class Bpmn2ContentDescriber implements ITextContentDescriber {
 		return null;
 	}
 
-	private class RootElementParser extends SAXParser {
-		@Override
-		public void startElement(QName qName, XMLAttributes attributes, Augmentations augmentations)
-				throws XNIException {
-
-			super.startElement(qName, attributes, augmentations);
-
-			if (ROOT_ELEMENT.equals(qName.localpart)) {
-				String namespace = fNamespaceContext.getURI(qName.prefix);
-				if (BPMN2_NAMESPACE.equals(namespace)) {
-					throw new AcceptedException(qName.localpart);
-				} else {
-					throw new RejectedException();
-				}
-			} else {
-				throw new RejectedException();
-			}
-		}
-	}
-
-	private class AcceptedException extends RuntimeException {
-		public String acceptedRootElement;
-
-		public AcceptedException(String acceptedRootElement) {
-			this.acceptedRootElement = acceptedRootElement;
-		}
-
-		private static final long serialVersionUID = 1L;
-	}
-
-	private class RejectedException extends RuntimeException {
-		private static final long serialVersionUID = 1L;
-	}
-
 	public static boolean isBPMN2File(IResource res)
 	{
 		try
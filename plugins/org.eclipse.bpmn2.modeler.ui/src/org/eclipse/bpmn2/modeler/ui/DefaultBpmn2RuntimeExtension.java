@@ -284,7 +284,10 @@ public class DefaultBpmn2RuntimeExtension implements IBpmn2RuntimeExtension {
 	 * namespace definitions matching the given namespace URI.
 	 * 
 	 * @author bbrodt
+	 * @deprecated use {@link org.eclipse.bpmn2.modeler.core.utils.DocumentHeader}
+	 *             which parses each file only once for all Target Runtimes.
 	 */
+	@Deprecated
 	public static class RootElementParser extends SAXParser {
 		private String namespace;
 		private boolean result = false;
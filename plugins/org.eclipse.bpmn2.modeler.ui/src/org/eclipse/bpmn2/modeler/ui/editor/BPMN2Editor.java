@@ -28,7 +28,6 @@ import org.eclipse.bpmn2.modeler.core.di.DIImport;
 import org.eclipse.bpmn2.modeler.core.di.DIUtils;
 import org.eclipse.bpmn2.modeler.core.merrimac.clad.Bpmn2TabbedPropertySheetPage;
 import org.eclipse.bpmn2.modeler.core.merrimac.dialogs.ObjectEditingDialog;
-import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceImpl;
 import org.eclipse.bpmn2.modeler.core.model.ModelHandler;
 import org.eclipse.bpmn2.modeler.core.model.ModelHandlerLocator;
 import org.eclipse.bpmn2.modeler.core.model.ProxyURIConverterImplExtension;
@@ -70,6 +69,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
@@ -307,9 +307,21 @@ public class BPMN2Editor extends DiagramEditor implements IPreferenceChangeListe
 		// own ResourceFactory if needed.
 		targetRuntime.registerExtensionResourceFactory(resourceSet);
 		
-		// Now create the BPMN2 model resource, or reuse the one from the already open editor.
+		// Now take the BPMN2 model resource that the multi-page editor has loaded in the background,
+		// or reuse the one from the already open editor.
+		BPMN2EditorLoader loader = multipageEditor==null ? null : multipageEditor.takeLoader();
+		if (loader!=null && (otherEditor!=null || !loader.getResource().getURI().equals(modelUri))) {
+			loader.discard();
+			loader = null;
+		}
 		if (otherEditor==null) {
-			bpmnResource = (Bpmn2ResourceImpl) resourceSet.createResource(modelUri, Bpmn2ModelerResourceImpl.BPMN2_CONTENT_TYPE_ID);
+			if (loader==null) {
+				// Parse the file, register IDs and resolve DI references now,
+				// e.g. if this editor was given a new input.
+				loader = new BPMN2EditorLoader(modelUri, targetRuntime);
+				loader.load(new NullProgressMonitor());
+			}
+			bpmnResource = (Bpmn2ResourceImpl) loader.moveTo(resourceSet);
 		}
 		else {
 			bpmnResource = otherEditor.bpmnResource;
@@ -321,11 +333,15 @@ public class BPMN2Editor extends DiagramEditor implements IPreferenceChangeListe
 		// Hook a transaction exception handler so we can get diagnostics about EMF validation errors.
 		getEditingDomainListener();
 		
-		// This does the actual loading of the resource.
+		// This creates the ModelHandler for the loaded resource.
 		// TODO: move the loading code to BPMN2PersistencyBehavior where it belongs,
 		// and get rid of ModelHandler and ModelHandlerLocator
+		if (loader!=null)
+			loader.startPhase(Messages.BPMN2EditorLoader_Model_Handler_Phase);
 		modelHandler = ModelHandlerLocator.createModelHandler(modelUri, bpmnResource);
 		ModelHandlerLocator.put(diagramUri, modelHandler);
+		if (loader!=null)
+			modelHandler.resourceLoaded(loader.getLoadError());
 
 		// Allow the runtime extension to construct custom tasks and whatever else it needs
 		// custom tasks should be added to the current target runtime's custom tasks list
@@ -338,6 +354,8 @@ public class BPMN2Editor extends DiagramEditor implements IPreferenceChangeListe
 				getPreferences().setDoCoreValidation(false);
 				// Import the BPMNDI model that creates the Graphiti shapes, connections, etc.
 				BasicCommandStack commandStack = (BasicCommandStack) getEditingDomain().getCommandStack();
+				if (loader!=null)
+					loader.startPhase(Messages.BPMN2EditorLoader_Import_Phase);
 				commandStack.execute(new RecordingCommand(getEditingDomain()) {
 					@Override
 					protected void doExecute() {
@@ -361,7 +379,11 @@ public class BPMN2Editor extends DiagramEditor implements IPreferenceChangeListe
 		}
 		
 		// Load error markers
+		if (loader!=null)
+			loader.startPhase(Messages.BPMN2EditorLoader_Markers_Phase);
 		loadMarkers();
+		if (loader!=null)
+			loader.report();
 	}
 	
 	protected DiagramEditorInput convertToDiagramEditorInput(IEditorInput input) throws PartInitException {
@@ -778,6 +800,8 @@ public class BPMN2Editor extends DiagramEditor implements IPreferenceChangeListe
 		
 		getResourceSet().eAdapters().remove(getEditorAdapter());
 		removeSelectionListener();
+		if (getGraphicalViewer()!=null)
+			ConnectionLayerClippingStrategy.removeFrom(getGraphicalViewer());
 		if (instances==0)
 			setActiveEditor(null);
 		
@@ -1259,8 +1283,9 @@ public class BPMN2Editor extends DiagramEditor implements IPreferenceChangeListe
 				for (IEditorReference ref : otherEditors) {
 					IEditorPart part = ref.getEditor(true);
 					if (part instanceof BPMN2MultiPageEditor) {
+						// the design editor is null while the model is still being loaded
 						BPMN2Editor otherEditor = ((BPMN2MultiPageEditor)part).getDesignEditor();
-						if (otherEditor!=newEditor) {
+						if (otherEditor!=null && otherEditor!=newEditor) {
 							return otherEditor;
 						}
 					}
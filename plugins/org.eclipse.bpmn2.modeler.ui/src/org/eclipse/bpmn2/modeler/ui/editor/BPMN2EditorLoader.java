@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ * All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.ui.editor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.di.BPMNDiagram;
+import org.eclipse.bpmn2.di.BPMNEdge;
+import org.eclipse.bpmn2.di.BPMNPlane;
+import org.eclipse.bpmn2.di.BPMNShape;
+import org.eclipse.bpmn2.modeler.core.adapters.ResourceIdIndex;
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceImpl;
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceSetImpl;
+import org.eclipse.bpmn2.modeler.core.model.ProxyURIConverterImplExtension;
+import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.bpmn2.modeler.ui.Activator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dd.di.DiagramElement;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Loads the BPMN2 model Resource for a {@link BPMN2Editor} in stages.
+ * <p>
+ * XML parsing, ID registration and resolution of the BPMN DI references do not
+ * touch any Graphiti or SWT objects, so they are run in a cancelable Job while
+ * the editor shows a placeholder page. The Job loads the Resource into a
+ * ResourceSet of its own, which no other thread can see, so no transaction is
+ * needed, and questions to the user, e.g. whether to resolve references to
+ * other files, do not block the UI thread behind a transaction lock. Once the
+ * Job is done, the editor moves the loaded Resources into its editing domain
+ * and runs the DI import, which creates the Graphiti pictogram elements, on
+ * the UI thread.
+ * <p>
+ * The time spent in each phase, including the UI thread phases measured by the
+ * editor, is collected and written to the error log when the plug-in is
+ * running in debug mode.
+ */
+public class BPMN2EditorLoader extends Job {
+
+	private final TargetRuntime targetRuntime;
+	private final ResourceSet resourceSet;
+	private final Resource resource;
+	private Exception loadError;
+	private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+	private String currentPhase;
+	private long phaseStart;
+
+	/**
+	 * Create a loader for the given model file. The loader must either be
+	 * scheduled, or run with {@link #load(IProgressMonitor)}.
+	 *
+	 * @param modelUri the URI of the BPMN2 file.
+	 * @param targetRuntime the Target Runtime of the editor, which may provide
+	 *            its own Resource Factory.
+	 */
+	public BPMN2EditorLoader(URI modelUri, TargetRuntime targetRuntime) {
+		super(NLS.bind(Messages.BPMN2EditorLoader_Loading, modelUri.lastSegment()));
+		this.targetRuntime = targetRuntime;
+		resourceSet = new Bpmn2ModelerResourceSetImpl();
+		resourceSet.setURIConverter(new ProxyURIConverterImplExtension(modelUri));
+		targetRuntime.registerExtensionResourceFactory(resourceSet);
+		resource = resourceSet.createResource(modelUri, Bpmn2ModelerResourceImpl.BPMN2_CONTENT_TYPE_ID);
+		setPriority(Job.LONG);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		return load(monitor);
+	}
+
+	/**
+	 * Run the loader phases on the calling thread.
+	 *
+	 * @param monitor a progress monitor, used to cancel loading.
+	 * @return OK if the Resource was loaded, even with errors, or CANCEL if
+	 *         loading was canceled.
+	 */
+	public IStatus load(IProgressMonitor monitor) {
+		monitor.beginTask(getName(), 3);
+		TargetRuntime previous = TargetRuntime.enterRuntime(targetRuntime);
+		try {
+			monitor.subTask(Messages.BPMN2EditorLoader_Parse_Phase);
+			startPhase(Messages.BPMN2EditorLoader_Parse_Phase);
+			parse(monitor);
+			endPhase();
+			monitor.worked(1);
+
+			if (!monitor.isCanceled()) {
+				monitor.subTask(Messages.BPMN2EditorLoader_Register_IDs_Phase);
+				startPhase(Messages.BPMN2EditorLoader_Register_IDs_Phase);
+				registerIds(monitor);
+				endPhase();
+				monitor.worked(1);
+			}
+
+			if (!monitor.isCanceled()) {
+				monitor.subTask(Messages.BPMN2EditorLoader_Resolve_DI_Phase);
+				startPhase(Messages.BPMN2EditorLoader_Resolve_DI_Phase);
+				resolveDI(monitor);
+				endPhase();
+				monitor.worked(1);
+			}
+		}
+		finally {
+			TargetRuntime.exitRuntime(previous);
+			monitor.done();
+		}
+		if (monitor.isCanceled()) {
+			discard();
+			return Status.CANCEL_STATUS;
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Return the model Resource, which is loaded by this loader.
+	 *
+	 * @return the model Resource.
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * Move the loaded model Resource, and any Resources that were loaded to
+	 * resolve references to other files, into the given ResourceSet. This must
+	 * be called on the UI thread once the loader is done.
+	 *
+	 * @param target the ResourceSet of the editor.
+	 * @return the model Resource.
+	 */
+	public Resource moveTo(ResourceSet target) {
+		target.getResources().addAll(new ArrayList<Resource>(resourceSet.getResources()));
+		return resource;
+	}
+
+	/**
+	 * Unload the Resources of a loader that will not be used, e.g. because
+	 * the editor was closed while the model was being loaded.
+	 */
+	public void discard() {
+		for (Resource r : new ArrayList<Resource>(resourceSet.getResources()))
+			r.unload();
+		resourceSet.getResources().clear();
+	}
+
+	/**
+	 * Return the exception thrown while the Resource was parsed, if any. This
+	 * is passed on to the ModelHandler so that it can report load errors.
+	 *
+	 * @return the load exception or null if the Resource was loaded
+	 *         successfully.
+	 */
+	public Exception getLoadError() {
+		return loadError;
+	}
+
+	/**
+	 * Start timing a loader phase. Any phase that is still running is stopped.
+	 *
+	 * @param phase the phase name.
+	 */
+	public void startPhase(String phase) {
+		endPhase();
+		currentPhase = phase;
+		phaseStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * Stop timing the current loader phase.
+	 */
+	public void endPhase() {
+		if (currentPhase!=null) {
+			Long previous = timings.get(currentPhase);
+			long elapsed = System.currentTimeMillis() - phaseStart;
+			timings.put(currentPhase, (previous==null ? 0 : previous.longValue()) + elapsed);
+			currentPhase = null;
+		}
+	}
+
+	/**
+	 * Return the time, in milliseconds, spent in each loader phase.
+	 *
+	 * @return a map of phase names to elapsed times, in the order in which the
+	 *         phases were run.
+	 */
+	public Map<String, Long> getTimings() {
+		return timings;
+	}
+
+	/**
+	 * Write the phase timings to the error log if the plug-in is running in
+	 * debug mode.
+	 */
+	public void report() {
+		endPhase();
+		if (Activator.getDefault()!=null && Activator.getDefault().isDebugging()) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(NLS.bind(Messages.BPMN2EditorLoader_Timing_Report, resource.getURI().lastSegment()));
+			long total = 0;
+			for (Entry<String, Long> e : timings.entrySet()) {
+				sb.append("\n  "+e.getKey()+": "+e.getValue()+" ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				total += e.getValue().longValue();
+			}
+			sb.append("\n  Total: "+total+" ms"); //$NON-NLS-1$ //$NON-NLS-2$
+			Activator.logStatus(new Status(IStatus.INFO, Activator.PLUGIN_ID, sb.toString()));
+		}
+	}
+
+	private void parse(IProgressMonitor monitor) {
+		InputStream stream = null;
+		try {
+			URIConverter converter = resource.getResourceSet().getURIConverter();
+			stream = new CancelableInputStream(converter.createInputStream(resource.getURI()), monitor);
+			resource.load(stream, null);
+			Object timeStamp = converter.getAttributes(resource.getURI(), null).get(URIConverter.ATTRIBUTE_TIME_STAMP);
+			if (timeStamp instanceof Long)
+				resource.setTimeStamp(((Long)timeStamp).longValue());
+		}
+		catch (OperationCanceledException e) {
+			// the monitor has been canceled
+		}
+		catch (Exception e) {
+			loadError = e;
+		}
+		finally {
+			if (stream!=null) {
+				try {
+					stream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void registerIds(IProgressMonitor monitor) {
+		// Creating the ID index visits every object in the Resource once;
+		// from then on it is updated by the code that assigns IDs. Objects
+		// without an ID get one during the DI import, which runs in a write
+		// transaction (this is a read-only one).
+		ResourceIdIndex.getIndex(resource);
+	}
+
+	/**
+	 * Resolve the references from the BPMN DI elements to their BPMN2 model
+	 * elements. This may require loading of other Resources, e.g. if a
+	 * diagram references a Participant or Process defined in another file.
+	 */
+	private void resolveDI(IProgressMonitor monitor) {
+		Definitions definitions = ModelUtil.getDefinitions(resource);
+		if (definitions==null)
+			return;
+		for (BPMNDiagram bpmnDiagram : definitions.getDiagrams()) {
+			BPMNPlane plane = bpmnDiagram.getPlane();
+			if (plane==null)
+				continue;
+			plane.getBpmnElement();
+			for (DiagramElement de : plane.getPlaneElement()) {
+				if (de instanceof BPMNShape) {
+					((BPMNShape)de).getBpmnElement();
+				}
+				else if (de instanceof BPMNEdge) {
+					BPMNEdge edge = (BPMNEdge) de;
+					edge.getBpmnElement();
+					edge.getSourceElement();
+					edge.getTargetElement();
+				}
+			}
+			if (monitor.isCanceled())
+				return;
+		}
+	}
+
+	/**
+	 * An InputStream wrapper that aborts reading when the progress monitor is
+	 * canceled. This allows the XML parser to be interrupted.
+	 */
+	private static class CancelableInputStream extends FilterInputStream {
+		private final IProgressMonitor monitor;
+
+		public CancelableInputStream(InputStream in, IProgressMonitor monitor) {
+			super(in);
+			this.monitor = monitor;
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkCanceled();
+			return super.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			checkCanceled();
+			return super.read(b, off, len);
+		}
+
+		private void checkCanceled() {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+		}
+	}
+}
@@ -20,10 +20,19 @@ import org.eclipse.bpmn2.BaseElement;
 import org.eclipse.bpmn2.di.BPMNDiagram;
 import org.eclipse.bpmn2.modeler.core.adapters.ExtendedPropertiesProvider;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.bpmn2.modeler.ui.Activator;
 import org.eclipse.bpmn2.modeler.ui.Bpmn2DiagramEditorInput;
+import org.eclipse.bpmn2.modeler.core.runtime.TargetRuntime;
+import org.eclipse.bpmn2.modeler.ui.wizards.FileService;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.emf.common.util.URI;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CTabFolder;
 import org.eclipse.swt.custom.CTabFolder2Listener;
@@ -31,7 +40,11 @@ import org.eclipse.swt.custom.CTabFolderEvent;
 import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IEditorSite;
@@ -70,6 +83,7 @@ public class BPMN2MultiPageEditor extends MultiPageEditorPart implements IGotoMa
 	private List<BPMNDiagram> bpmnDiagrams = new ArrayList<BPMNDiagram>();
 	private List<PictogramElement[]> currentSelections = new ArrayList<PictogramElement[]>();
 	private int currentPageIndex = -1;
+	private BPMN2EditorLoader loader;
 	
 	public BPMN2MultiPageEditor() {
 		super();
@@ -114,6 +128,10 @@ public class BPMN2MultiPageEditor extends MultiPageEditorPart implements IGotoMa
      */
     @Override
     public void gotoMarker(IMarker marker) {
+        if (designEditor==null) {
+            // the model is still being loaded
+            return;
+        }
         if (getActivePage() < 0) {
             setActivePage(0);
         }
@@ -161,6 +179,92 @@ public class BPMN2MultiPageEditor extends MultiPageEditorPart implements IGotoMa
 			}
 		});
 		
+		if (!startLoading())
+			createDesignPages();
+	}
+
+	/**
+	 * Start loading the model file in a background Job, unless another editor
+	 * already has it open, and show a placeholder page until it is loaded.
+	 * 
+	 * @return true if the model is being loaded, false if the design pages can
+	 *         be created right away.
+	 */
+	private boolean startLoading() {
+		IEditorInput input = getEditorInput();
+		if (BPMN2Editor.findOpenEditor(this, input)!=null)
+			return false;
+		URI modelUri = FileService.getInputUri(input);
+		if (modelUri==null)
+			return false;
+
+		final BPMN2EditorLoader newLoader = new BPMN2EditorLoader(modelUri, TargetRuntime.getRuntime(input));
+		Composite placeholder = new Composite(getContainer(), SWT.NONE);
+		placeholder.setLayout(new GridLayout(2, false));
+		Label label = new Label(placeholder, SWT.NONE);
+		label.setText(NLS.bind(Messages.BPMN2Editor_Loading, URI.decode(input.getName())));
+		Button cancelButton = new Button(placeholder, SWT.PUSH);
+		cancelButton.setText(IDialogConstants.CANCEL_LABEL);
+		cancelButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				newLoader.cancel();
+			}
+		});
+		addPage(placeholder);
+		updateTabs();
+		setPartName(label.getText());
+
+		loader = newLoader;
+		loader.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void done(final IJobChangeEvent event) {
+				Display.getDefault().asyncExec(new Runnable() {
+					public void run() {
+						loaded(newLoader, event.getResult());
+					}
+				});
+			}
+		});
+		loader.schedule();
+		return true;
+	}
+
+	private void loaded(BPMN2EditorLoader doneLoader, IStatus result) {
+		if (loader!=doneLoader || tabFolder.isDisposed()) {
+			// the editor was closed while the model was being loaded
+			doneLoader.discard();
+			return;
+		}
+		if (result.getSeverity()==IStatus.CANCEL) {
+			loader = null;
+			doneLoader.discard();
+			getSite().getPage().closeEditor(BPMN2MultiPageEditor.this, false);
+			return;
+		}
+		// replace the placeholder page with the design pages
+		removePage(0);
+		currentPageIndex = -1;
+		createDesignPages();
+		if (designEditor!=null)
+			setPartName(designEditor.getPartName());
+	}
+
+	/**
+	 * Return the loader that has loaded the model file in the background, if
+	 * any. This is called by the design editor when it is initialized; the
+	 * loader is only handed out once.
+	 * 
+	 * @return the loader, or null if the model was not loaded in the
+	 *         background.
+	 */
+	BPMN2EditorLoader takeLoader() {
+		BPMN2EditorLoader result = loader;
+		loader = null;
+		return result;
+	}
+
+	private void createDesignPages() {
 		// defer editor layout until all pages have been created
 		tabFolder.setLayoutDeferred(true);
 		
@@ -168,6 +272,8 @@ public class BPMN2MultiPageEditor extends MultiPageEditorPart implements IGotoMa
 		
 		Display.getDefault().asyncExec(new Runnable() {
 			public void run() {
+				if (designEditor==null)
+					return;
 				setActivePage(0);
 				designEditor.selectBpmnDiagram(bpmnDiagrams.get(0));
 				tabFolder.setLayoutDeferred(false);
@@ -193,6 +299,17 @@ public class BPMN2MultiPageEditor extends MultiPageEditorPart implements IGotoMa
 
 				updateTabs();
 			}
+			catch (PartInitException e) {
+				// the model could not be opened:
+				// there is nothing to show so close this editor.
+				designEditor = null;
+				Activator.logStatus(e.getStatus());
+				Display.getDefault().asyncExec(new Runnable() {
+					public void run() {
+						getSite().getPage().closeEditor(BPMN2MultiPageEditor.this, false);
+					}
+				});
+			}
 			catch (Exception e) {
 				e.printStackTrace();
 			}
@@ -434,7 +551,13 @@ public class BPMN2MultiPageEditor extends MultiPageEditorPart implements IGotoMa
 
 	@Override
 	public void dispose() {
-		designEditor.dispose();
+		if (loader!=null) {
+			// loaded() discards the Resources once the Job is done
+			loader.cancel();
+			loader = null;
+		}
+		if (designEditor!=null)
+			designEditor.dispose();
 		if (sourceViewer!=null)
 			sourceViewer.dispose();
 	}
@@ -16,6 +16,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Span;
 import org.eclipse.bpmn2.modeler.core.utils.FixDuplicateIdsDialog;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
 import org.eclipse.bpmn2.modeler.core.utils.Tuple;
@@ -69,6 +71,17 @@ public class BPMN2PersistencyBehavior extends DefaultPersistencyBehavior {
 //			dlg.open();
 //		}
 		
+		Span span = Instrumentation.start("save"); //$NON-NLS-1$
+		span.setAttribute("uri", resource.getURI()); //$NON-NLS-1$
+		try {
+			validateAndSave(resource, monitor);
+		}
+		finally {
+			span.end();
+		}
+    }
+
+    private void validateAndSave(Resource resource, IProgressMonitor monitor) {
 		// Perform a Live validation first: if there are any ERRORs, the model should be
 		// considered to be corrupt (because of such things as invalid IDs, duplicate IDs, etc.)
 		// and saving it in its current state MAY render the file unreadable.
@@ -85,7 +98,13 @@ public class BPMN2PersistencyBehavior extends DefaultPersistencyBehavior {
 			return;
 		}
 
-    	super.saveDiagram(monitor);
+		Span span = Instrumentation.start("save.write"); //$NON-NLS-1$
+		try {
+			super.saveDiagram(monitor);
+		}
+		finally {
+			span.end();
+		}
     }
     
     List<IStatus> collectStatus(IStatus status) {
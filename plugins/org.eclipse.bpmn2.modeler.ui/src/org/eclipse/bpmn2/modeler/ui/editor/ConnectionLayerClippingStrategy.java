@@ -10,11 +10,15 @@
  ******************************************************************************/
 package org.eclipse.bpmn2.modeler.ui.editor;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.bpmn2.BaseElement;
 import org.eclipse.bpmn2.MessageFlow;
 import org.eclipse.bpmn2.SubProcess;
 import org.eclipse.bpmn2.di.BPMNEdge;
 import org.eclipse.bpmn2.di.BPMNShape;
+import org.eclipse.bpmn2.modeler.core.instrumentation.Instrumentation;
 import org.eclipse.bpmn2.modeler.core.utils.BusinessObjectUtil;
 import org.eclipse.bpmn2.modeler.ui.features.flow.MessageFlowFeatureContainer;
 import org.eclipse.draw2d.Figure;
@@ -22,6 +26,11 @@ import org.eclipse.draw2d.IClippingStrategy;
 import org.eclipse.draw2d.IFigure;
 import org.eclipse.draw2d.geometry.Rectangle;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.transaction.ResourceSetChangeEvent;
+import org.eclipse.emf.transaction.ResourceSetListener;
+import org.eclipse.emf.transaction.ResourceSetListenerImpl;
+import org.eclipse.emf.transaction.TransactionalEditingDomain;
+import org.eclipse.emf.transaction.util.TransactionUtil;
 import org.eclipse.gef.EditPart;
 import org.eclipse.gef.GraphicalEditPart;
 import org.eclipse.gef.GraphicalViewer;
@@ -36,74 +45,175 @@ import org.eclipse.graphiti.mm.pictograms.Diagram;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
 import org.eclipse.graphiti.services.Graphiti;
 
+/**
+ * Clips connections so that they are not painted over the shapes they are
+ * not connected to: the Message attached to a Message Flow, and the
+ * SubProcess that contains a connection.
+ * <p>
+ * This is called for every connection figure every time the connection layer
+ * is painted, so the clip rectangles are cached per figure. A cached clip
+ * stays valid until the figure's bounds change or a transaction is committed
+ * on the editing domain, since either may move the shapes it depends on.
+ */
 public class ConnectionLayerClippingStrategy implements IClippingStrategy {
 
 	protected Diagram diagram;
 	protected GraphicalViewer graphicalViewer;
-	
+	// connection figure -> clip rectangles computed for its current bounds
+	private final Map<IFigure, CachedClip> clipCache = new HashMap<IFigure, CachedClip>();
+	private TransactionalEditingDomain editingDomain;
+	private final ResourceSetListener modelListener = new ResourceSetListenerImpl() {
+		@Override
+		public boolean isPostcommitOnly() {
+			return true;
+		}
+
+		@Override
+		public void resourceSetChanged(ResourceSetChangeEvent event) {
+			clearCache();
+		}
+	};
+
+	private static class CachedClip {
+		final Rectangle bounds;
+		final Rectangle[] clip;
+
+		CachedClip(Rectangle bounds, Rectangle[] clip) {
+			this.bounds = bounds;
+			this.clip = clip;
+		}
+	}
+
 	public static void applyTo(GraphicalViewer graphicalViewer) {
 		ScalableFreeformRootEditPart rootEditPart = (ScalableFreeformRootEditPart) graphicalViewer.getRootEditPart();
 		Figure connectionLayer = (Figure) rootEditPart.getLayer(LayerConstants.CONNECTION_LAYER);
-		if (connectionLayer.getClippingStrategy()==null) {
-			EditPart editPart = graphicalViewer.getContents();
-			Diagram diagram = (Diagram)editPart.getModel();
-			IClippingStrategy clippingStrategy = new ConnectionLayerClippingStrategy(graphicalViewer, diagram);
+		EditPart editPart = graphicalViewer.getContents();
+		Diagram diagram = (Diagram)editPart.getModel();
+		IClippingStrategy clippingStrategy = connectionLayer.getClippingStrategy();
+		if (clippingStrategy==null) {
+			clippingStrategy = new ConnectionLayerClippingStrategy(graphicalViewer, diagram);
 			connectionLayer.setClippingStrategy(clippingStrategy);
 		}
+		else if (clippingStrategy instanceof ConnectionLayerClippingStrategy) {
+			// the viewer is now showing a different Diagram
+			((ConnectionLayerClippingStrategy)clippingStrategy).setDiagram(diagram);
+		}
+	}
+
+	public static void removeFrom(GraphicalViewer graphicalViewer) {
+		if (!(graphicalViewer.getRootEditPart() instanceof ScalableFreeformRootEditPart))
+			return;
+		ScalableFreeformRootEditPart rootEditPart = (ScalableFreeformRootEditPart) graphicalViewer.getRootEditPart();
+		Figure connectionLayer = (Figure) rootEditPart.getLayer(LayerConstants.CONNECTION_LAYER);
+		if (connectionLayer!=null && connectionLayer.getClippingStrategy() instanceof ConnectionLayerClippingStrategy) {
+			((ConnectionLayerClippingStrategy)connectionLayer.getClippingStrategy()).dispose();
+			connectionLayer.setClippingStrategy(null);
+		}
 	}
 
 	public ConnectionLayerClippingStrategy(GraphicalViewer graphicalViewer, Diagram diagram) {
-		this.diagram = diagram;
 		this.graphicalViewer = graphicalViewer;
+		setDiagram(diagram);
 	}
-	
+
+	public void setDiagram(Diagram diagram) {
+		this.diagram = diagram;
+		clearCache();
+		TransactionalEditingDomain domain = TransactionUtil.getEditingDomain(diagram);
+		if (domain!=editingDomain) {
+			if (editingDomain!=null)
+				editingDomain.removeResourceSetListener(modelListener);
+			editingDomain = domain;
+			if (editingDomain!=null)
+				editingDomain.addResourceSetListener(modelListener);
+		}
+	}
+
+	public void dispose() {
+		if (editingDomain!=null)
+			editingDomain.removeResourceSetListener(modelListener);
+		editingDomain = null;
+		clearCache();
+	}
+
+	public void clearCache() {
+		synchronized (clipCache) {
+			clipCache.clear();
+		}
+	}
+
 	@Override
 	public Rectangle[] getClip(IFigure childFigure) {
+		Rectangle bounds = childFigure.getBounds();
+		synchronized (clipCache) {
+			CachedClip cached = clipCache.get(childFigure);
+			if (cached!=null && cached.bounds.equals(bounds)) {
+				Instrumentation.count("clip.cache.hit"); //$NON-NLS-1$
+				return cached.clip;
+			}
+		}
+		Instrumentation.count("clip.compute"); //$NON-NLS-1$
+		Rectangle[] clip = computeClip(childFigure);
+		if (clip!=null) {
+			synchronized (clipCache) {
+				clipCache.put(childFigure, new CachedClip(bounds.getCopy(), clip));
+			}
+			return clip;
+		}
+		return new Rectangle[] {childFigure.getBounds()};
+	}
+
+	/**
+	 * Compute the clip rectangles of a connection figure.
+	 * 
+	 * @param childFigure a figure in the connection layer
+	 * @return the clip rectangles, or null if they could not be computed
+	 */
+	protected Rectangle[] computeClip(IFigure childFigure) {
 		try {
-			for (Object value : graphicalViewer.getEditPartRegistry().values()) {
+			Object value = graphicalViewer.getVisualPartMap().get(childFigure);
+			if (value instanceof GraphicalEditPart) {
 				GraphicalEditPart part = (GraphicalEditPart)value;
-				if (part.getFigure() == childFigure) {
-					Object model = part.getModel();
-					if (model instanceof Connection) {
-						Connection connection = (Connection)model;
-						BaseElement businessObject = BusinessObjectUtil.getFirstBaseElement(connection);
-						if (businessObject instanceof MessageFlow) {
-							ContainerShape messageShape = MessageFlowFeatureContainer.findMessageShape(connection);
-							if (messageShape!=null) {
-								Rectangle inner = getClip(messageShape)[0];
-								Rectangle outer = childFigure.getBounds();
-								return getClip(outer,inner);
-							}
+				Object model = part.getModel();
+				if (model instanceof Connection) {
+					Connection connection = (Connection)model;
+					BaseElement businessObject = BusinessObjectUtil.getFirstBaseElement(connection);
+					if (businessObject instanceof MessageFlow) {
+						ContainerShape messageShape = MessageFlowFeatureContainer.findMessageShape(connection);
+						if (messageShape!=null) {
+							Rectangle inner = getClip(messageShape)[0];
+							Rectangle outer = childFigure.getBounds().getCopy();
+							return getClip(outer,inner);
+						}
+					}
+					else if (businessObject!=null) {
+						AnchorContainer source = connection.getStart().getParent();
+						AnchorContainer target = connection.getEnd().getParent();
+						if (source.eContainer() != target.eContainer()) {
+							// don't clip the connection if source and target are not in the same container
+							return new Rectangle[] {childFigure.getBounds().getCopy()};
 						}
-						else if (businessObject!=null) {
-							AnchorContainer source = connection.getStart().getParent();
-							AnchorContainer target = connection.getEnd().getParent();
-							if (source.eContainer() != target.eContainer()) {
-								// don't clip the connection if source and target are not in the same container
-								return new Rectangle[] {childFigure.getBounds()};
-							}
-							EObject container = businessObject.eContainer();
-							if (container instanceof SubProcess) {
-								// don't clip if contents of SubProcess have been moved to a different
-								// BPMNDiagram ("pushed down")
-								BPMNEdge bpmnEdge = BusinessObjectUtil.getFirstElementOfType(connection, BPMNEdge.class);
-								if (bpmnEdge!=null) {
-									for (PictogramElement pe : Graphiti.getLinkService().getPictogramElements(diagram, container)) {
-										if (pe instanceof ContainerShape) {
-											BPMNShape bpmnShape = BusinessObjectUtil.getFirstElementOfType(pe, BPMNShape.class);
-											if (bpmnShape!=null) {
-												if (bpmnShape.eContainer()!=bpmnEdge.eContainer())
-													continue;
-											}
-											// don't clip connection if the source or target is this SubProcess
-											EObject sourceBo = BusinessObjectUtil.getFirstBaseElement(source);
-											EObject targetBo = BusinessObjectUtil.getFirstBaseElement(target);
-											if (sourceBo!=container && targetBo!=container)
-												return getClip((ContainerShape)pe);
+						EObject container = businessObject.eContainer();
+						if (container instanceof SubProcess) {
+							// don't clip if contents of SubProcess have been moved to a different
+							// BPMNDiagram ("pushed down")
+							BPMNEdge bpmnEdge = BusinessObjectUtil.getFirstElementOfType(connection, BPMNEdge.class);
+							if (bpmnEdge!=null) {
+								for (PictogramElement pe : Graphiti.getLinkService().getPictogramElements(diagram, container)) {
+									if (pe instanceof ContainerShape) {
+										BPMNShape bpmnShape = BusinessObjectUtil.getFirstElementOfType(pe, BPMNShape.class);
+										if (bpmnShape!=null) {
+											if (bpmnShape.eContainer()!=bpmnEdge.eContainer())
+												continue;
 										}
+										// don't clip connection if the source or target is this SubProcess
+										EObject sourceBo = BusinessObjectUtil.getFirstBaseElement(source);
+										EObject targetBo = BusinessObjectUtil.getFirstBaseElement(target);
+										if (sourceBo!=container && targetBo!=container)
+											return getClip((ContainerShape)pe);
 									}
-								}								
-							}
+								}
+							}								
 						}
 					}
 				}
@@ -112,8 +222,9 @@ public class ConnectionLayerClippingStrategy implements IClippingStrategy {
 		catch (Exception ex) {
 			// Ignore exceptions: this could happen if a source or target shape of a connection has already been removed
 			// before the connection has been removed. It all depends on the order in which they were created.
+			return null;
 		}
-		return new Rectangle[] {childFigure.getBounds()};
+		return new Rectangle[] {childFigure.getBounds().getCopy()};
 	}
 	
 	private Rectangle[] getClip(Rectangle outer, Rectangle inner) {
@@ -15,6 +15,15 @@ import org.eclipse.osgi.util.NLS;
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.bpmn2.modeler.ui.editor.messages"; //$NON-NLS-1$
 	public static String BPMN2Editor_Cannot_Create_Editor_Input;
+	public static String BPMN2Editor_Loading;
+	public static String BPMN2EditorLoader_Import_Phase;
+	public static String BPMN2EditorLoader_Loading;
+	public static String BPMN2EditorLoader_Markers_Phase;
+	public static String BPMN2EditorLoader_Model_Handler_Phase;
+	public static String BPMN2EditorLoader_Parse_Phase;
+	public static String BPMN2EditorLoader_Register_IDs_Phase;
+	public static String BPMN2EditorLoader_Resolve_DI_Phase;
+	public static String BPMN2EditorLoader_Timing_Report;
 	public static String BPMN2MultiPageEditor_Source_Tab;
 	public static String BPMN2PersistencyBehavior_Cannot_Save_Message;
 	public static String BPMN2PersistencyBehavior_Cannot_Save_Title;
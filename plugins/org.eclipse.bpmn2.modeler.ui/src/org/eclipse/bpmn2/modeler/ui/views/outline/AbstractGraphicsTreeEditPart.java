@@ -18,6 +18,8 @@ import org.eclipse.bpmn2.modeler.ui.property.PropertyLabelProvider;
 import org.eclipse.bpmn2.modeler.ui.util.PropertyUtil;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.gef.EditPart;
+import org.eclipse.gef.TreeEditPart;
 import org.eclipse.gef.editparts.AbstractTreeEditPart;
 import org.eclipse.graphiti.mm.pictograms.ContainerShape;
 import org.eclipse.graphiti.mm.pictograms.Diagram;
@@ -25,6 +27,8 @@ import org.eclipse.graphiti.mm.pictograms.FreeFormConnection;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
 import org.eclipse.graphiti.services.Graphiti;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.TreeItem;
+import org.eclipse.swt.widgets.Widget;
 
 /**
  * 
@@ -33,6 +37,8 @@ public class AbstractGraphicsTreeEditPart extends AbstractTreeEditPart {
 
 	DiagramTreeEditPart diagramEditPart;
 	PropertyLabelProvider labelProvider = new PropertyLabelProvider();
+	// true if the children have not been built or are out of date
+	boolean stale = true;
 	
 	public AbstractGraphicsTreeEditPart(DiagramTreeEditPart dep, Object model) {
 		super(model);
@@ -71,7 +77,26 @@ public class AbstractGraphicsTreeEditPart extends AbstractTreeEditPart {
 		return super.getAdapter(key);
 	}
 
+	/**
+	 * Children are only built, and kept up to date, while they can be seen,
+	 * that is while this node is at the top level of the tree or its parent
+	 * is expanded. Otherwise they are marked as stale, and built when the
+	 * parent node is expanded (see {@link #revealChildren()}). This way only
+	 * the part of the tree the user has opened is materialized, plus one
+	 * level so that the expand buttons are shown correctly.
+	 */
 	protected void refreshChildren() {
+		if (isVisible())
+			updateChildren();
+		else
+			stale = true;
+	}
+
+	/**
+	 * Rebuild the list of children and refresh all visible descendants.
+	 */
+	protected void updateChildren() {
+		stale = false;
 		super.refreshChildren();
 		if (children!=null) {
 			for (Object child : children) {
@@ -82,6 +107,48 @@ public class AbstractGraphicsTreeEditPart extends AbstractTreeEditPart {
 		}
 		refreshVisuals();
 	}
+
+	/**
+	 * Refresh only this node: its label and the list of its children, but
+	 * none of the existing children. This is used to apply model changes
+	 * to the tree.
+	 */
+	void refreshNode() {
+		refreshVisuals();
+		if (isVisible()) {
+			stale = false;
+			super.refreshChildren();
+		}
+		else
+			stale = true;
+	}
+
+	/**
+	 * Called when this node is about to be expanded: build its children if
+	 * necessary, and the children of each of them, so that they show the
+	 * correct expand buttons.
+	 */
+	void revealChildren() {
+		if (stale)
+			updateChildren();
+		for (Object child : getChildren()) {
+			if (child instanceof AbstractGraphicsTreeEditPart) {
+				AbstractGraphicsTreeEditPart part = (AbstractGraphicsTreeEditPart)child;
+				if (part.stale)
+					part.updateChildren();
+			}
+		}
+	}
+
+	protected boolean isVisible() {
+		EditPart parent = getParent();
+		if (parent instanceof TreeEditPart) {
+			Widget w = ((TreeEditPart)parent).getWidget();
+			if (w instanceof TreeItem)
+				return !w.isDisposed() && ((TreeItem)w).getExpanded();
+		}
+		return true;
+	}
 	
 	/**
 	 * This method is called from refreshVisuals(), to display the image of the
@@ -10,7 +10,16 @@
  *******************************************************************************/
 package org.eclipse.bpmn2.modeler.ui.views.outline;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.bpmn2.BoundaryEvent;
+import org.eclipse.bpmn2.Definitions;
 import org.eclipse.bpmn2.modeler.core.merrimac.dialogs.ObjectEditingDialog;
+import org.eclipse.bpmn2.modeler.core.utils.BusinessObjectUtil;
 import org.eclipse.bpmn2.modeler.help.IHelpContexts;
 import org.eclipse.bpmn2.modeler.ui.Activator;
 import org.eclipse.bpmn2.modeler.ui.IConstants;
@@ -19,7 +28,9 @@ import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.draw2d.LightweightSystem;
 import org.eclipse.draw2d.MarginBorder;
 import org.eclipse.draw2d.Viewport;
+import org.eclipse.emf.common.notify.Notification;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.edit.ui.dnd.EditingDomainViewerDropAdapter;
 import org.eclipse.emf.edit.ui.dnd.LocalTransfer;
 import org.eclipse.emf.edit.ui.dnd.ViewerDragAdapter;
@@ -50,6 +61,9 @@ import org.eclipse.swt.dnd.DND;
 import org.eclipse.swt.dnd.Transfer;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.MouseListener;
+import org.eclipse.swt.events.TreeAdapter;
+import org.eclipse.swt.events.TreeEvent;
+import org.eclipse.swt.events.TreeListener;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
@@ -71,7 +85,7 @@ import org.eclipse.ui.part.PageBook;
  * default-behaviour.
  */
 @SuppressWarnings("restriction")
-public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPropertyListener, IAdaptable {
+public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPropertyListener, IAdaptable, OutlineReferenceIndex.IndexListener {
 
 	// The IDs to identify the outline and the thunbnail
 	public static final int ID_BUSINESS_MODEL_OUTLINE = 0;
@@ -115,6 +129,12 @@ public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPrope
 
 	private Canvas overview;
 
+	// the cross reference index of the BPMN2 Resource, which also reports model changes
+	private OutlineReferenceIndex referenceIndex;
+	// objects changed since the tree was last updated
+	private final Set<EObject> changedObjects = new LinkedHashSet<EObject>();
+	private boolean updateScheduled;
+
 	/**
 	 * Creates a new BPMN2EditorOutlinePage. It is important, that this
 	 * outline page uses the same handlers (ActionRegistry, KeyHandler,
@@ -179,6 +199,17 @@ public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPrope
 		overview = new Canvas(pageBook, SWT.NONE);
 		createOutlineViewer();
 
+		// build the children of tree nodes when they are expanded
+		TreeListener treeListener = new TreeAdapter() {
+			@Override
+			public void treeExpanded(TreeEvent e) {
+				if (e.item.getData() instanceof AbstractGraphicsTreeEditPart)
+					((AbstractGraphicsTreeEditPart)e.item.getData()).revealChildren();
+			}
+		};
+		businessModelOutline.addTreeListener(treeListener);
+		interchangeModelOutline.addTreeListener(treeListener);
+
 		// register listeners
 		selectionSynchronizer.addViewer(getViewer());
 		diagramEditor.addPropertyListener(this);
@@ -247,6 +278,7 @@ public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPrope
 		// deregister listeners
 		selectionSynchronizer.removeViewer(getViewer());
 		diagramEditor.removePropertyListener(this);
+		setReferenceIndex(null);
 
 		if (thumbnail != null)
 			thumbnail.deactivate();
@@ -268,11 +300,35 @@ public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPrope
 	}
 
 	/**
-	 * Refreshes the outline on any change of the diagram editor. Most
-	 * importantly, there is a property change event editor-dirty.
+	 * Updates the outline on any change of the diagram editor. Most
+	 * importantly, there is a property change event editor-dirty. Changes
+	 * to the model have already been collected by the reference index, so
+	 * only the affected tree nodes need to be refreshed.
 	 */
 	public void propertyChanged(Object source, int propId) {
-		refresh();
+		updateChangedObjects();
+	}
+
+	/**
+	 * Collects the objects affected by a change to the BPMN2 model. The tree
+	 * is updated once for all changes made by a command.
+	 */
+	public void notifyChanged(OutlineReferenceIndex index, Notification notification) {
+		synchronized (changedObjects) {
+			changedObjects.add((EObject)notification.getNotifier());
+			if (notification.getOldValue() instanceof EObject)
+				changedObjects.add((EObject)notification.getOldValue());
+			if (notification.getNewValue() instanceof EObject)
+				changedObjects.add((EObject)notification.getNewValue());
+			if (updateScheduled || pageBook==null || pageBook.isDisposed())
+				return;
+			updateScheduled = true;
+		}
+		pageBook.getDisplay().asyncExec(new Runnable() {
+			public void run() {
+				updateChangedObjects();
+			}
+		});
 	}
 	
 	public Object getAdapter(Class key) {
@@ -298,6 +354,7 @@ public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPrope
 			getViewer().setEditPartFactory(businessModelEditPartFactory);
 			getViewer().setControl(businessModelOutline);
 			Diagram diagram = diagramEditor.getDiagramTypeProvider().getDiagram();
+			setReferenceIndex(diagram);
 			getViewer().setContents(diagram);
 			
 			showBusinessModelOutlineAction.setChecked(true);
@@ -313,6 +370,7 @@ public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPrope
 			getViewer().setEditPartFactory(interchangeModelEditPartFactory);
 			getViewer().setControl(interchangeModelOutline);
 			Diagram diagram = diagramEditor.getDiagramTypeProvider().getDiagram();
+			setReferenceIndex(diagram);
 			getViewer().setContents(diagram);
 			
 			showBusinessModelOutlineAction.setChecked(false);
@@ -434,4 +492,93 @@ public class BPMN2EditorOutlinePage extends ContentOutlinePage implements IPrope
 			// ignore SWT exceptions caused by closing the editor
 		}
 	}
+
+	/**
+	 * Refresh only the tree nodes of the objects that have changed since the
+	 * last update, and the nodes that show those objects as children.
+	 */
+	void updateChangedObjects() {
+		List<EObject> changed;
+		synchronized (changedObjects) {
+			updateScheduled = false;
+			if (changedObjects.isEmpty())
+				return;
+			changed = new ArrayList<EObject>(changedObjects);
+			changedObjects.clear();
+		}
+		try {
+			final EditPartViewer viewer = getViewer();
+			final EditPart contents = viewer.getContents();
+			if (contents == null || viewer.getControl() == null || viewer.getControl().isDisposed())
+				return;
+			Map registry = viewer.getEditPartRegistry();
+			Set<EditPart> parts = new LinkedHashSet<EditPart>();
+			for (EObject object : changed) {
+				addEditParts(registry, object, parts);
+				if (referenceIndex != null) {
+					for (EObject dependent : referenceIndex.getDependents(object))
+						addEditParts(registry, dependent, parts);
+				}
+				// adding or removing root elements changes the top level of the tree
+				if (object instanceof Definitions)
+					parts.add(contents);
+			}
+			for (EditPart part : parts) {
+				if (part.isActive()) {
+					if (part instanceof AbstractGraphicsTreeEditPart)
+						((AbstractGraphicsTreeEditPart)part).refreshNode();
+					else
+						part.refresh();
+				}
+			}
+		}
+		catch (Exception e) {
+			// ignore SWT exceptions caused by closing the editor
+		}
+	}
+
+	/**
+	 * Add the edit part of the given object, if any, and the edit part of its
+	 * nearest container that has one. The container's list of children may
+	 * change, for example when the object was added or removed.
+	 */
+	private void addEditParts(Map registry, EObject object, Set<EditPart> parts) {
+		Object part = registry.get(object);
+		if (part instanceof EditPart)
+			parts.add((EditPart)part);
+		if (object instanceof BoundaryEvent) {
+			part = registry.get(((BoundaryEvent)object).getAttachedToRef());
+			if (part instanceof EditPart)
+				parts.add((EditPart)part);
+		}
+		for (EObject container = object.eContainer(); container != null; container = container.eContainer()) {
+			part = registry.get(container);
+			if (part instanceof EditPart) {
+				parts.add((EditPart)part);
+				break;
+			}
+		}
+	}
+
+	private void setReferenceIndex(Diagram diagram) {
+		OutlineReferenceIndex index = null;
+		if (diagram != null) {
+			EObject bpmnDiagram = BusinessObjectUtil.getBusinessObjectForPictogramElement(diagram);
+			if (bpmnDiagram != null)
+				index = OutlineReferenceIndex.getIndex(bpmnDiagram);
+		}
+		if (index == referenceIndex)
+			return;
+		if (referenceIndex != null) {
+			referenceIndex.removeListener(this);
+			if (!referenceIndex.hasListeners() && referenceIndex.getTarget() instanceof Resource)
+				OutlineReferenceIndex.removeIndex((Resource)referenceIndex.getTarget());
+		}
+		referenceIndex = index;
+		if (referenceIndex != null)
+			referenceIndex.addListener(this);
+		synchronized (changedObjects) {
+			changedObjects.clear();
+		}
+	}
 }
\ No newline at end of file
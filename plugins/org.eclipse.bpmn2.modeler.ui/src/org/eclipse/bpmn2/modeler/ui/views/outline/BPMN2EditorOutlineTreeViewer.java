@@ -10,7 +10,13 @@
  ******************************************************************************/
 package org.eclipse.bpmn2.modeler.ui.views.outline;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.BoundaryEvent;
+import org.eclipse.bpmn2.FlowElement;
+import org.eclipse.bpmn2.Lane;
 import org.eclipse.bpmn2.di.BPMNDiagram;
 import org.eclipse.bpmn2.modeler.core.utils.BusinessObjectUtil;
 import org.eclipse.bpmn2.modeler.core.utils.FeatureSupport;
@@ -47,10 +53,46 @@ public class BPMN2EditorOutlineTreeViewer extends TreeViewer implements Adaptabl
 				bpmnModel = bpmnDiagram.getPlane().getBpmnElement();
 			}
 
-			return (EditPart)getEditPartRegistry().get(bpmnModel);
+			EditPart result = (EditPart)getEditPartRegistry().get(bpmnModel);
+			if (result==null && bpmnModel!=null)
+				result = reveal(bpmnModel);
+			return result;
 		}
 		return part;
 	}
+
+	/**
+	 * The Outline only builds the tree nodes the user has expanded. Build
+	 * the nodes on the path to the given object, from the top of the tree
+	 * down, so that it can be selected.
+	 * 
+	 * @param object a BPMN2 model object
+	 * @return the edit part for the object, or null if the object is not
+	 *         shown in the Outline.
+	 */
+	protected EditPart reveal(EObject object) {
+		OutlineReferenceIndex index = OutlineReferenceIndex.getIndex(object);
+		List<EObject> path = new ArrayList<EObject>();
+		for (EObject o = object; o!=null && !path.contains(o); o = getOutlineParent(index, o))
+			path.add(0, o);
+		for (EObject o : path) {
+			Object part = getEditPartRegistry().get(o);
+			if (part instanceof AbstractGraphicsTreeEditPart)
+				((AbstractGraphicsTreeEditPart)part).revealChildren();
+		}
+		return (EditPart)getEditPartRegistry().get(object);
+	}
+
+	private static EObject getOutlineParent(OutlineReferenceIndex index, EObject object) {
+		if (object instanceof BoundaryEvent && ((BoundaryEvent)object).getAttachedToRef()!=null)
+			return ((BoundaryEvent)object).getAttachedToRef();
+		if (object instanceof FlowElement && index!=null) {
+			List<Lane> lanes = index.getLanes((FlowElement)object);
+			if (!lanes.isEmpty())
+				return lanes.get(0);
+		}
+		return object.eContainer();
+	}
 	
 	public static EditPart convert(GraphicalViewer viewer, AbstractGraphicsTreeEditPart part) {
 		Object pe = part.getAdapter(PictogramElement.class);
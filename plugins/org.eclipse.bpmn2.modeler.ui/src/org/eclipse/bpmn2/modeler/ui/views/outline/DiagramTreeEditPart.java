@@ -14,15 +14,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.bpmn2.Definitions;
-import org.eclipse.bpmn2.Participant;
 import org.eclipse.bpmn2.Process;
 import org.eclipse.bpmn2.RootElement;
 import org.eclipse.bpmn2.di.BPMNDiagram;
 import org.eclipse.bpmn2.modeler.core.di.DIUtils;
 import org.eclipse.bpmn2.modeler.core.utils.BusinessObjectUtil;
 import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
-import org.eclipse.emf.common.util.TreeIterator;
-import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.graphiti.mm.pictograms.Diagram;
 
@@ -71,17 +68,9 @@ public class DiagramTreeEditPart extends AbstractGraphicsTreeEditPart {
 					if (elem instanceof Process) {
 						// don't include this Process in root children if it's already
 						// being accounted for inside a Pool
-						TreeIterator<EObject> iter = definitions.eAllContents();
-						while (iter.hasNext()) {
-							EObject next = iter.next();
-							if (next instanceof Participant) {
-								Participant participant = (Participant)next;
-								if (participant.getProcessRef() == elem) {
-									addIt = false;
-									break;
-								}
-							}
-						}
+						OutlineReferenceIndex index = OutlineReferenceIndex.getIndex(elem);
+						if (index!=null && !index.getParticipants((Process)elem).isEmpty())
+							addIt = false;
 					}
 					if (addIt)
 						retList.add(elem);
@@ -93,6 +82,7 @@ public class DiagramTreeEditPart extends AbstractGraphicsTreeEditPart {
 			// build a list of all Graphiti Diagrams - these will be needed by other
 			// TreeEditParts to map the business objects to PictogramElements
 			ResourceSet resourceSet = diagram.eResource().getResourceSet();
+			getAllDiagrams().clear();
 			for (BPMNDiagram bd : definitions.getDiagrams()) {
 				getAllDiagrams().add( DIUtils.findDiagram(resourceSet, bd) );
 			}
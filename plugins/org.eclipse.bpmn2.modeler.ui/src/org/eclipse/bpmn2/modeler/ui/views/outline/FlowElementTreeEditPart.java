@@ -20,7 +20,6 @@ import org.eclipse.bpmn2.CallableElement;
 import org.eclipse.bpmn2.CatchEvent;
 import org.eclipse.bpmn2.Choreography;
 import org.eclipse.bpmn2.ChoreographyActivity;
-import org.eclipse.bpmn2.Definitions;
 import org.eclipse.bpmn2.FlowElement;
 import org.eclipse.bpmn2.FlowElementsContainer;
 import org.eclipse.bpmn2.FlowNode;
@@ -32,9 +31,6 @@ import org.eclipse.bpmn2.SequenceFlow;
 import org.eclipse.bpmn2.SubChoreography;
 import org.eclipse.bpmn2.SubProcess;
 import org.eclipse.bpmn2.ThrowEvent;
-import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
-import org.eclipse.emf.common.util.TreeIterator;
-import org.eclipse.emf.ecore.EObject;
 
 public class FlowElementTreeEditPart extends AbstractGraphicsTreeEditPart {
 	
@@ -88,15 +84,9 @@ public class FlowElementTreeEditPart extends AbstractGraphicsTreeEditPart {
 		
 		if (elem instanceof Activity) {
 			// Boundary Events are children nodes of Activities
-			Definitions definitions = ModelUtil.getDefinitions(elem);
-			if (definitions!=null) {
-				TreeIterator<EObject> iter = definitions.eAllContents();
-				while (iter.hasNext()) {
-					EObject o = iter.next();
-					if (o instanceof BoundaryEvent && ((BoundaryEvent)o).getAttachedToRef() == elem) {
-						retList.add(o);
-					}
-				}
+			OutlineReferenceIndex index = OutlineReferenceIndex.getIndex(elem);
+			if (index!=null) {
+				retList.addAll(index.getBoundaryEvents((Activity)elem));
 				retList.addAll(((Activity)elem).getDataInputAssociations());
 				retList.addAll(((Activity)elem).getDataOutputAssociations());
 			}
@@ -194,6 +184,9 @@ public class FlowElementTreeEditPart extends AbstractGraphicsTreeEditPart {
 		if (ls==null || ls.getLanes().size()==0)
 			return false;
 		
+		OutlineReferenceIndex index = OutlineReferenceIndex.getIndex(fe);
+		if (index!=null)
+			return index.isInLane(fe, ls);
 		for (Lane ln : ls.getLanes()) {
 			if (ln.getFlowNodeRefs().contains(fe))
 				return true;
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ *
+ * @author Bob Brodt
+ ******************************************************************************/
+
+package org.eclipse.bpmn2.modeler.ui.views.outline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.bpmn2.Activity;
+import org.eclipse.bpmn2.BoundaryEvent;
+import org.eclipse.bpmn2.Bpmn2Package;
+import org.eclipse.bpmn2.FlowElement;
+import org.eclipse.bpmn2.Lane;
+import org.eclipse.bpmn2.LaneSet;
+import org.eclipse.bpmn2.Participant;
+import org.eclipse.bpmn2.Process;
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.ECrossReferenceAdapter;
+
+/**
+ * An index of the cross references between the objects of a BPMN2 Resource,
+ * used to build the Outline tree without scanning the whole model.
+ * <p>
+ * The Outline shows some objects under the objects that refer to them (or
+ * that they refer to) rather than under their containers: Boundary Events
+ * under the Activity they are attached to, Flow Nodes under their Lanes,
+ * Processes under Pools, and so on. Finding these with an
+ * {@link ECrossReferenceAdapter} costs a lookup instead of a walk over all
+ * contents of the Definitions.
+ * <p>
+ * Because the index already sees every change made to the Resource, it also
+ * forwards these notifications to its {@link IndexListener listeners}, so
+ * that the Outline can update only the tree nodes that are affected.
+ */
+public class OutlineReferenceIndex extends ECrossReferenceAdapter {
+
+	/**
+	 * Receives the changes made to the indexed Resource.
+	 */
+	public interface IndexListener {
+		void notifyChanged(OutlineReferenceIndex index, Notification notification);
+	}
+
+	private final List<IndexListener> listeners = new CopyOnWriteArrayList<IndexListener>();
+
+	protected OutlineReferenceIndex() {
+	}
+
+	/**
+	 * Return the index of the Resource that contains the given object,
+	 * creating it if necessary.
+	 *
+	 * @param object an object in a BPMN2 Resource.
+	 * @return the index, or null if the object is not contained in a Resource.
+	 */
+	public static OutlineReferenceIndex getIndex(EObject object) {
+		if (object==null)
+			return null;
+		return getIndex(object.eResource());
+	}
+
+	/**
+	 * Return the index of the given Resource, creating it if necessary.
+	 *
+	 * @param resource a BPMN2 Resource.
+	 * @return the index, or null if the resource is null.
+	 */
+	public static OutlineReferenceIndex getIndex(Resource resource) {
+		if (resource==null)
+			return null;
+		synchronized (resource) {
+			for (Adapter a : resource.eAdapters()) {
+				if (a instanceof OutlineReferenceIndex)
+					return (OutlineReferenceIndex) a;
+			}
+			OutlineReferenceIndex index = new OutlineReferenceIndex();
+			resource.eAdapters().add(index);
+			return index;
+		}
+	}
+
+	/**
+	 * Remove the index from the given Resource, if it has one.
+	 *
+	 * @param resource a BPMN2 Resource.
+	 */
+	public static void removeIndex(Resource resource) {
+		if (resource==null)
+			return;
+		synchronized (resource) {
+			for (Adapter a : resource.eAdapters()) {
+				if (a instanceof OutlineReferenceIndex) {
+					resource.eAdapters().remove(a);
+					return;
+				}
+			}
+		}
+	}
+
+	public void addListener(IndexListener listener) {
+		if (!listeners.contains(listener))
+			listeners.add(listener);
+	}
+
+	public void removeListener(IndexListener listener) {
+		listeners.remove(listener);
+	}
+
+	public boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
+
+	@Override
+	public void notifyChanged(Notification notification) {
+		super.notifyChanged(notification);
+		if (!notification.isTouch() && notification.getNotifier() instanceof EObject) {
+			for (IndexListener l : listeners)
+				l.notifyChanged(this, notification);
+		}
+	}
+
+	/**
+	 * Return all objects that refer to the given object through the given
+	 * reference.
+	 *
+	 * @param object the referenced object.
+	 * @param reference the referencing feature.
+	 * @return the referring objects, never null.
+	 */
+	public List<EObject> getReferrers(EObject object, EReference reference) {
+		List<EObject> result = null;
+		for (EStructuralFeature.Setting s : getInverseReferences(object, false)) {
+			if (s.getEStructuralFeature()==reference) {
+				if (result==null)
+					result = new ArrayList<EObject>();
+				if (!result.contains(s.getEObject()))
+					result.add(s.getEObject());
+			}
+		}
+		if (result==null)
+			return Collections.emptyList();
+		return result;
+	}
+
+	/**
+	 * @return the Boundary Events attached to the given Activity.
+	 */
+	public List<BoundaryEvent> getBoundaryEvents(Activity activity) {
+		List<BoundaryEvent> result = new ArrayList<BoundaryEvent>();
+		for (EObject o : getReferrers(activity, Bpmn2Package.eINSTANCE.getBoundaryEvent_AttachedToRef()))
+			result.add((BoundaryEvent) o);
+		return result;
+	}
+
+	/**
+	 * @return the Lanes that contain the given Flow Element.
+	 */
+	public List<Lane> getLanes(FlowElement flowElement) {
+		List<Lane> result = new ArrayList<Lane>();
+		for (EObject o : getReferrers(flowElement, Bpmn2Package.eINSTANCE.getLane_FlowNodeRefs()))
+			result.add((Lane) o);
+		return result;
+	}
+
+	/**
+	 * Check if a Flow Element is contained in any Lane of the given Lane Set,
+	 * including nested Lanes.
+	 *
+	 * @param flowElement the Flow Element.
+	 * @param laneSet the Lane Set.
+	 * @return true if one of the Lanes refers to the Flow Element.
+	 */
+	public boolean isInLane(FlowElement flowElement, LaneSet laneSet) {
+		if (laneSet==null)
+			return false;
+		for (Lane lane : getLanes(flowElement)) {
+			for (EObject o = lane.eContainer(); o!=null; o = o.eContainer()) {
+				if (o==laneSet)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the Participants (Pools) that reference the given Process.
+	 */
+	public List<Participant> getParticipants(Process process) {
+		List<Participant> result = new ArrayList<Participant>();
+		for (EObject o : getReferrers(process, Bpmn2Package.eINSTANCE.getParticipant_ProcessRef()))
+			result.add((Participant) o);
+		return result;
+	}
+
+	/**
+	 * Return the objects that show the given object in their label or as one
+	 * of their children in the Outline, although they do not contain it:
+	 * Call Activities that call it and elements that send or receive it as a
+	 * Message.
+	 *
+	 * @param object a Callable Element, Message or any other object.
+	 * @return the referring objects, never null.
+	 */
+	public List<EObject> getDependents(EObject object) {
+		Bpmn2Package p = Bpmn2Package.eINSTANCE;
+		List<EObject> result = new ArrayList<EObject>();
+		result.addAll(getReferrers(object, p.getCallActivity_CalledElementRef()));
+		result.addAll(getReferrers(object, p.getMessageFlow_MessageRef()));
+		result.addAll(getReferrers(object, p.getSendTask_MessageRef()));
+		result.addAll(getReferrers(object, p.getReceiveTask_MessageRef()));
+		result.addAll(getReferrers(object, p.getMessageEventDefinition_MessageRef()));
+		return result;
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.eclipse.bpmn2.modeler.benchmarks.BenchmarkRunner.Result;
+import org.junit.Test;
+
+/**
+ * Runs all BPMN2 Modeler benchmarks. See {@link BenchmarkRunner} for the
+ * system properties that control model sizes and iteration counts.
+ */
+public class AllBenchmarks {
+
+	@Test
+	public void runBenchmarks() throws Exception {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new ResourceLoadBenchmark());
+		benchmarks.add(new ResourceSaveBenchmark());
+		benchmarks.add(new GenerateIDBenchmark());
+		benchmarks.add(new GetAllObjectsOfTypeBenchmark());
+		benchmarks.add(new FindBPMNShapeBenchmark());
+		benchmarks.add(new ConnectionRoutingBenchmark());
+		benchmarks.add(new BatchValidationBenchmark());
+		benchmarks.add(new PropertyAdapterMemoryBenchmark());
+		benchmarks.add(new WIDParserBenchmark());
+
+		List<Result> results = new BenchmarkRunner().run(benchmarks);
+		Assert.assertFalse(results.isEmpty());
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.validation.model.EvaluationMode;
+import org.eclipse.emf.validation.service.IBatchValidator;
+import org.eclipse.emf.validation.service.ModelValidationService;
+
+/**
+ * Measures batch validation of a complete Resource with the BPMN2 validation
+ * constraints, the same way the project validator does it.
+ */
+public class BatchValidationBenchmark extends Benchmark {
+
+	private Resource resource;
+
+	public BatchValidationBenchmark() {
+		super("BPMN2ValidationConstraints"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		resource = generator.generate(BenchmarkUtil.createURI(getName()));
+	}
+
+	@Override
+	public Object run() throws Exception {
+		IBatchValidator validator = ModelValidationService.getInstance().newValidator(EvaluationMode.BATCH);
+		return validator.validate(resource.getContents());
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		resource.unload();
+		resource = null;
+	}
+}
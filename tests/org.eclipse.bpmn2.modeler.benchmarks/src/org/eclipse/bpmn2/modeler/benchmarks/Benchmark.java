@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Base class for all BPMN2 Modeler benchmarks.
+ * <p>
+ * A benchmark measures a single operation. The {@link BenchmarkRunner} calls
+ * {@link #setUp(ModelGenerator)} once for each model size, then calls
+ * {@link #run()} repeatedly during the warmup and measurement iterations, and
+ * finally calls {@link #tearDown()}. Only the time spent in {@link #run()} is
+ * measured. Benchmarks may report additional measurements of their fixture,
+ * such as memory use, through {@link #getMeasurements()}.
+ */
+public abstract class Benchmark {
+
+	private final String name;
+
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the benchmark name, used in the result report.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Prepare the benchmark fixture. The generator is configured for the
+	 * current model size and always produces the same model for the same
+	 * configuration.
+	 * 
+	 * @param generator the model generator
+	 * @throws Exception
+	 */
+	public void setUp(ModelGenerator generator) throws Exception {
+	}
+
+	/**
+	 * Run the measured operation once. The result is consumed by the runner
+	 * so that the JIT compiler can not eliminate the operation.
+	 * 
+	 * @return the result of the operation
+	 * @throws Exception
+	 */
+	public abstract Object run() throws Exception;
+
+	/**
+	 * Return additional measurements for the current model size, which the
+	 * runner reports along with the timing result. This is called after the
+	 * measurement iterations and before {@link #tearDown()}.
+	 * 
+	 * @return the measured values by name, in report order
+	 */
+	public Map<String, Double> getMeasurements() {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * Release the benchmark fixture.
+	 * 
+	 * @throws Exception
+	 */
+	public void tearDown() throws Exception {
+	}
+}
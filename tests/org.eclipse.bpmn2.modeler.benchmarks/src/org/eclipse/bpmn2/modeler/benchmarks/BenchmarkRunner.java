@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Runs a list of {@link Benchmark}s for a range of model sizes and reports the
+ * average time per operation.
+ * <p>
+ * Each benchmark is run for a number of warmup iterations, whose results are
+ * discarded, followed by the measurement iterations. An iteration calls the
+ * benchmark operation repeatedly until the iteration time has elapsed, but at
+ * least once. Additional measurements reported by a benchmark, see
+ * {@link Benchmark#getMeasurements()}, are printed after its timing result.
+ * The runner is configured with these system properties:
+ * <ul>
+ * <li>bpmn2.benchmark.sizes - comma separated list of model sizes (default "1000,10000")</li>
+ * <li>bpmn2.benchmark.warmup - number of warmup iterations (default 3)</li>
+ * <li>bpmn2.benchmark.iterations - number of measurement iterations (default 5)</li>
+ * <li>bpmn2.benchmark.time - minimum time of one iteration in milliseconds (default 1000)</li>
+ * <li>bpmn2.benchmark.seed - the seed for the model generator</li>
+ * <li>bpmn2.benchmark.output - optional CSV file to which the results are appended</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+	public static final String SIZES_PROPERTY = "bpmn2.benchmark.sizes"; //$NON-NLS-1$
+	public static final String WARMUP_PROPERTY = "bpmn2.benchmark.warmup"; //$NON-NLS-1$
+	public static final String ITERATIONS_PROPERTY = "bpmn2.benchmark.iterations"; //$NON-NLS-1$
+	public static final String TIME_PROPERTY = "bpmn2.benchmark.time"; //$NON-NLS-1$
+	public static final String SEED_PROPERTY = "bpmn2.benchmark.seed"; //$NON-NLS-1$
+	public static final String OUTPUT_PROPERTY = "bpmn2.benchmark.output"; //$NON-NLS-1$
+
+	/**
+	 * The result of one benchmark for one model size.
+	 */
+	public static class Result {
+		public final String name;
+		public final int size;
+		public final long operations;
+		/** average, minimum and maximum iteration time per operation in nanoseconds */
+		public final double mean, min, max;
+		
+		Result(String name, int size, long operations, double mean, double min, double max) {
+			this.name = name;
+			this.size = size;
+			this.operations = operations;
+			this.mean = mean;
+			this.min = min;
+			this.max = max;
+		}
+
+		public String toString() {
+			return String.format("%-32s %8d %10d ops %14.3f ms/op  [%.3f .. %.3f]", //$NON-NLS-1$
+					name, size, operations, mean / 1e6, min / 1e6, max / 1e6);
+		}
+
+		public String toCSV() {
+			return String.format("%s,%d,%d,%.0f,%.0f,%.0f", name, size, operations, mean, min, max); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * An additional measurement reported by a benchmark for one model size.
+	 */
+	public static class Measurement {
+		public final String name;
+		public final int size;
+		public final String measurement;
+		public final double value;
+
+		Measurement(String name, int size, String measurement, double value) {
+			this.name = name;
+			this.size = size;
+			this.measurement = measurement;
+			this.value = value;
+		}
+
+		public String toString() {
+			return String.format("%-32s %8d %14.1f %s", name, size, value, measurement); //$NON-NLS-1$
+		}
+	}
+
+	// The benchmark results are stored here so the JIT compiler can not
+	// optimize away the measured operation.
+	private static volatile Object sink;
+
+	private int[] sizes;
+	private int warmupIterations;
+	private int measurementIterations;
+	private long iterationTime;
+	private long seed;
+	private String output;
+	private final List<Result> results = new ArrayList<Result>();
+	private final List<Measurement> measurements = new ArrayList<Measurement>();
+
+	public BenchmarkRunner() {
+		String[] s = System.getProperty(SIZES_PROPERTY, "1000,10000").split(","); //$NON-NLS-1$ //$NON-NLS-2$
+		sizes = new int[s.length];
+		for (int i=0; i<s.length; ++i)
+			sizes[i] = Integer.parseInt(s[i].trim());
+		warmupIterations = Integer.getInteger(WARMUP_PROPERTY, 3).intValue();
+		measurementIterations = Integer.getInteger(ITERATIONS_PROPERTY, 5).intValue();
+		iterationTime = Long.getLong(TIME_PROPERTY, 1000).longValue();
+		seed = Long.getLong(SEED_PROPERTY, ModelGenerator.DEFAULT_SEED).longValue();
+		output = System.getProperty(OUTPUT_PROPERTY);
+	}
+
+	public void setSizes(int... sizes) {
+		this.sizes = sizes;
+	}
+
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	public void setMeasurementIterations(int measurementIterations) {
+		this.measurementIterations = measurementIterations;
+	}
+
+	public void setIterationTime(long iterationTime) {
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Run all benchmarks for all configured model sizes.
+	 * 
+	 * @param benchmarks the benchmarks to run
+	 * @return the results, in the order in which they were measured
+	 * @throws Exception if a benchmark fails
+	 */
+	public List<Result> run(List<Benchmark> benchmarks) throws Exception {
+		for (int size : sizes) {
+			for (Benchmark b : benchmarks) {
+				ModelGenerator generator = ModelGenerator.forSize(size);
+				generator.setSeed(seed);
+				b.setUp(generator);
+				try {
+					Result r = measure(b, size);
+					results.add(r);
+					System.out.println(r);
+					for (Entry<String, Double> e : b.getMeasurements().entrySet()) {
+						Measurement m = new Measurement(b.getName(), size, e.getKey(), e.getValue());
+						measurements.add(m);
+						System.out.println(m);
+					}
+				}
+				finally {
+					b.tearDown();
+				}
+			}
+		}
+		if (output!=null)
+			write(new File(output));
+		return results;
+	}
+
+	public List<Result> getResults() {
+		return results;
+	}
+
+	public List<Measurement> getMeasurements() {
+		return measurements;
+	}
+
+	private Result measure(Benchmark b, int size) throws Exception {
+		for (int i=0; i<warmupIterations; ++i)
+			iteration(b, new long[1]);
+		
+		long totalOperations = 0;
+		long totalTime = 0;
+		double min = Double.MAX_VALUE;
+		double max = 0;
+		for (int i=0; i<measurementIterations; ++i) {
+			long[] operations = new long[1];
+			long time = iteration(b, operations);
+			double t = (double)time / operations[0];
+			if (t<min)
+				min = t;
+			if (t>max)
+				max = t;
+			totalOperations += operations[0];
+			totalTime += time;
+		}
+		double mean = totalOperations==0 ? 0 : (double)totalTime / totalOperations;
+		return new Result(b.getName(), size, totalOperations, mean, min==Double.MAX_VALUE ? 0 : min, max);
+	}
+
+	private long iteration(Benchmark b, long[] operations) throws Exception {
+		long limit = iterationTime * 1000000L;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sink = b.run();
+			++operations[0];
+			elapsed = System.nanoTime() - start;
+		}
+		while (elapsed < limit);
+		return elapsed;
+	}
+
+	private void write(File file) throws IOException {
+		boolean exists = file.exists();
+		if (file.getParentFile()!=null)
+			file.getParentFile().mkdirs();
+		PrintWriter writer = new PrintWriter(new FileWriter(file, true));
+		try {
+			if (!exists)
+				writer.println("benchmark,size,operations,mean_ns,min_ns,max_ns"); //$NON-NLS-1$
+			for (Result r : results)
+				writer.println(r.toCSV());
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
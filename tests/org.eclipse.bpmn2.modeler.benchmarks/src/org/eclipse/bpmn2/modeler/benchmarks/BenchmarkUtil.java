@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.io.File;
+
+import org.eclipse.emf.common.util.URI;
+
+/**
+ * Helper methods for benchmarks.
+ */
+public class BenchmarkUtil {
+
+	private static final int MAX_GC_RUNS = 10;
+	private static final long GC_PAUSE = 50;
+
+	private BenchmarkUtil() {
+	}
+
+	/**
+	 * Create a file URI in the temp directory for a generated model. The
+	 * benchmarks load and save from memory, so the file is never created.
+	 * 
+	 * @param name the benchmark name
+	 * @return the URI
+	 */
+	public static URI createURI(String name) {
+		File file = new File(System.getProperty("java.io.tmpdir"), name + ".bpmn"); //$NON-NLS-1$ //$NON-NLS-2$
+		return URI.createFileURI(file.getAbsolutePath());
+	}
+
+	/**
+	 * Return the heap in use after garbage collection, as reported by
+	 * {@link Runtime}. Since {@link System#gc()} is only a request, the
+	 * collector is run until the used heap no longer shrinks.
+	 * 
+	 * @return the used heap in bytes
+	 */
+	public static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i=0; i<MAX_GC_RUNS; ++i) {
+			System.gc();
+			System.runFinalization();
+			try {
+				Thread.sleep(GC_PAUSE);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			long u = runtime.totalMemory() - runtime.freeMemory();
+			if (u>=used)
+				break;
+			used = u;
+		}
+		return used==Long.MAX_VALUE ? runtime.totalMemory() - runtime.freeMemory() : used;
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.FlowNode;
+import org.eclipse.bpmn2.SequenceFlow;
+import org.eclipse.bpmn2.di.BPMNDiagram;
+import org.eclipse.bpmn2.di.BPMNEdge;
+import org.eclipse.bpmn2.di.BPMNShape;
+import org.eclipse.bpmn2.modeler.core.features.RouteSolver;
+import org.eclipse.bpmn2.modeler.core.utils.AnchorSite;
+import org.eclipse.bpmn2.modeler.core.utils.DiagramSpatialIndex;
+import org.eclipse.bpmn2.modeler.core.utils.GraphicsUtil;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.dd.dc.Bounds;
+import org.eclipse.dd.di.DiagramElement;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.graphiti.mm.algorithms.GraphicsAlgorithm;
+import org.eclipse.graphiti.mm.pictograms.ContainerShape;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
+import org.eclipse.graphiti.mm.pictograms.PictogramLink;
+import org.eclipse.graphiti.mm.pictograms.PictogramsFactory;
+import org.eclipse.graphiti.services.Graphiti;
+
+/**
+ * Measures orthogonal routing of the Sequence Flows in a large diagram.
+ * <p>
+ * A Graphiti Diagram with one shape per flow node is built from the BPMN DI
+ * shapes of the generated model. Each operation routes one Sequence Flow with
+ * the {@link RouteSolver} around all shapes of the Diagram, which is what the
+ * Manhattan connection router does. The shapes do not move, so the Routing
+ * Nets are only calculated for the first operation and then reused. The
+ * Sequence Flows are routed in turn.
+ */
+public class ConnectionRoutingBenchmark extends Benchmark {
+
+	static final int ROUTE_MARGIN = 20;
+
+	private Resource resource;
+	private Diagram diagram;
+	private DiagramSpatialIndex index;
+	private List<ContainerShape[]> connections;
+	private int next;
+
+	public ConnectionRoutingBenchmark() {
+		super("RouteSolver.solve"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		resource = generator.generate(BenchmarkUtil.createURI(getName()));
+		Definitions definitions = ModelUtil.getDefinitions(resource);
+		BPMNDiagram bpmnDiagram = definitions.getDiagrams().get(0);
+
+		diagram = Graphiti.getPeCreateService().createDiagram("BPMN2", getName(), false); //$NON-NLS-1$
+		Map<BPMNShape, ContainerShape> shapes = new HashMap<BPMNShape, ContainerShape>();
+		connections = new ArrayList<ContainerShape[]>();
+		for (DiagramElement de : bpmnDiagram.getPlane().getPlaneElement()) {
+			if (de instanceof BPMNShape && ((BPMNShape)de).getBpmnElement() instanceof FlowNode) {
+				BPMNShape bpmnShape = (BPMNShape) de;
+				Bounds b = bpmnShape.getBounds();
+				ContainerShape shape = Graphiti.getPeCreateService().createContainerShape(diagram, true);
+				GraphicsAlgorithm ga = Graphiti.getGaCreateService().createInvisibleRectangle(shape);
+				Graphiti.getGaService().setLocationAndSize(ga,
+						(int)b.getX(), (int)b.getY(), (int)b.getWidth(), (int)b.getHeight());
+				PictogramLink link = PictogramsFactory.eINSTANCE.createPictogramLink();
+				link.setPictogramElement(shape);
+				link.getBusinessObjects().add(bpmnShape);
+				link.getBusinessObjects().add(bpmnShape.getBpmnElement());
+				shape.setLink(link);
+				shapes.put(bpmnShape, shape);
+			}
+			else if (de instanceof BPMNEdge && ((BPMNEdge)de).getBpmnElement() instanceof SequenceFlow) {
+				BPMNEdge edge = (BPMNEdge) de;
+				connections.add(new ContainerShape[] {
+						shapes.get(edge.getSourceElement()),
+						shapes.get(edge.getTargetElement())
+				});
+			}
+		}
+		index = DiagramSpatialIndex.getIndex(diagram);
+		index.getShapes();
+		next = 0;
+	}
+
+	@Override
+	public Object run() throws Exception {
+		ContainerShape[] c = connections.get(next++ % connections.size());
+		Rectangle sourceBounds = index.getBounds(c[0]);
+		Rectangle targetBounds = index.getBounds(c[1]);
+		
+		RouteSolver solver = new RouteSolver(null, index.getShapes());
+		solver.setMargin(ROUTE_MARGIN);
+		return solver.solve(
+				GraphicsUtil.createPoint(sourceBounds.right(), sourceBounds.y + sourceBounds.height/2),
+				AnchorSite.RIGHT,
+				GraphicsUtil.createPoint(targetBounds.x, targetBounds.y + targetBounds.height/2),
+				AnchorSite.LEFT);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		index.clear();
+		diagram.eAdapters().remove(index);
+		resource.unload();
+		resource = null;
+		diagram = null;
+		index = null;
+		connections = null;
+	}
+}
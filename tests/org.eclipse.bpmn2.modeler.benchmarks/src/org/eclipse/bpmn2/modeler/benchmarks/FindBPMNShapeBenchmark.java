@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.util.List;
+
+import org.eclipse.bpmn2.Task;
+import org.eclipse.bpmn2.modeler.core.di.DIUtils;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Measures the lookup of the BPMN DI shape for a model element. The Tasks of
+ * the model are looked up in turn, so that the measured time is the average
+ * over all positions of the shape in the diagram.
+ */
+public class FindBPMNShapeBenchmark extends Benchmark {
+
+	private Resource resource;
+	private List<Task> tasks;
+	private int next;
+
+	public FindBPMNShapeBenchmark() {
+		super("DIUtils.findBPMNShape"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		resource = generator.generate(BenchmarkUtil.createURI(getName()));
+		tasks = ModelUtil.getAllObjectsOfType(resource, Task.class);
+		next = 0;
+	}
+
+	@Override
+	public Object run() throws Exception {
+		Task task = tasks.get(next++ % tasks.size());
+		return DIUtils.findBPMNShape(task);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		resource.unload();
+		resource = null;
+		tasks = null;
+	}
+}
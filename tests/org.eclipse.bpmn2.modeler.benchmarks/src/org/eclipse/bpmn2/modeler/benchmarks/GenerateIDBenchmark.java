@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import org.eclipse.bpmn2.Bpmn2Factory;
+import org.eclipse.bpmn2.Task;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Measures generation of unique IDs for new objects in a large Resource.
+ */
+public class GenerateIDBenchmark extends Benchmark {
+
+	private Resource resource;
+
+	public GenerateIDBenchmark() {
+		super("ModelUtil.generateID"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		resource = generator.generate(BenchmarkUtil.createURI(getName()));
+	}
+
+	@Override
+	public Object run() throws Exception {
+		Task task = Bpmn2Factory.eINSTANCE.createTask();
+		return ModelUtil.generateID(task, resource, null);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		resource.unload();
+		resource = null;
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import org.eclipse.bpmn2.Task;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Measures collection of all objects of a given type in a large Resource.
+ */
+public class GetAllObjectsOfTypeBenchmark extends Benchmark {
+
+	private Resource resource;
+
+	public GetAllObjectsOfTypeBenchmark() {
+		super("ModelUtil.getAllObjectsOfType"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		resource = generator.generate(BenchmarkUtil.createURI(getName()));
+	}
+
+	@Override
+	public Object run() throws Exception {
+		return ModelUtil.getAllObjectsOfType(resource, Task.class);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		resource.unload();
+		resource = null;
+	}
+}
@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.Bpmn2Factory;
+import org.eclipse.bpmn2.Collaboration;
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.DocumentRoot;
+import org.eclipse.bpmn2.EndEvent;
+import org.eclipse.bpmn2.ExclusiveGateway;
+import org.eclipse.bpmn2.FlowNode;
+import org.eclipse.bpmn2.Lane;
+import org.eclipse.bpmn2.LaneSet;
+import org.eclipse.bpmn2.MessageFlow;
+import org.eclipse.bpmn2.Participant;
+import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.SequenceFlow;
+import org.eclipse.bpmn2.StartEvent;
+import org.eclipse.bpmn2.Task;
+import org.eclipse.bpmn2.di.BPMNDiagram;
+import org.eclipse.bpmn2.di.BPMNEdge;
+import org.eclipse.bpmn2.di.BPMNPlane;
+import org.eclipse.bpmn2.di.BPMNShape;
+import org.eclipse.bpmn2.di.BpmnDiFactory;
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceFactoryImpl;
+import org.eclipse.dd.dc.Bounds;
+import org.eclipse.dd.dc.DcFactory;
+import org.eclipse.dd.dc.Point;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+
+/**
+ * Generates synthetic BPMN2 models for benchmarks.
+ * <p>
+ * The model consists of a Collaboration with one Pool (Participant) per
+ * Process. Each Process contains a Start Event, a chain of Tasks and
+ * Exclusive Gateways and an End Event, which are distributed over the Lanes of
+ * the Process. Gateways have an additional outgoing Sequence Flow to a node
+ * further down the chain, and Message Flows connect Tasks in neighboring
+ * Pools. All elements, including the BPMN DI shapes and edges, get
+ * predictable IDs and locations.
+ * <p>
+ * The generator is deterministic: the same configuration and seed always
+ * produce the same model, so that benchmark results can be compared across
+ * releases.
+ */
+public class ModelGenerator {
+
+	public static final long DEFAULT_SEED = 20140101L;
+
+	static final int TASK_WIDTH = 110;
+	static final int TASK_HEIGHT = 50;
+	static final int GATEWAY_SIZE = 50;
+	static final int EVENT_SIZE = 36;
+	static final int COLUMN_WIDTH = 160;
+	static final int LANE_HEIGHT = 120;
+	static final int POOL_HEADER = 30;
+	static final int POOL_SPACING = 40;
+
+	private long seed = DEFAULT_SEED;
+	private int pools = 1;
+	private int lanesPerPool = 1;
+	private int tasksPerPool = 10;
+	private int gatewaysPerPool = 2;
+	private int messageFlows = 0;
+	private boolean createDI = true;
+
+	/**
+	 * Create a generator for a model with (approximately) the given number of
+	 * flow nodes. The nodes are distributed over one pool per 2000 nodes (at
+	 * least two, so that there are Message Flows), with one Lane per 500 nodes
+	 * in each pool (at most 8). 80% of the nodes are Tasks and 20% are
+	 * Gateways, and there is one Message Flow per 50 nodes.
+	 * 
+	 * @param size the number of flow nodes
+	 * @return a new generator
+	 */
+	public static ModelGenerator forSize(int size) {
+		ModelGenerator g = new ModelGenerator();
+		int pools = Math.max(2, size / 2000);
+		int nodes = Math.max(4, size / pools);
+		g.setPools(pools);
+		g.setLanesPerPool(Math.min(8, 1 + nodes / 500));
+		g.setTasksPerPool(nodes * 4 / 5);
+		g.setGatewaysPerPool(nodes / 5);
+		g.setMessageFlows(size / 50);
+		return g;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public void setPools(int pools) {
+		this.pools = Math.max(1, pools);
+	}
+
+	public void setLanesPerPool(int lanesPerPool) {
+		this.lanesPerPool = Math.max(1, lanesPerPool);
+	}
+
+	public void setTasksPerPool(int tasksPerPool) {
+		this.tasksPerPool = Math.max(1, tasksPerPool);
+	}
+
+	public void setGatewaysPerPool(int gatewaysPerPool) {
+		this.gatewaysPerPool = Math.max(0, gatewaysPerPool);
+	}
+
+	public void setMessageFlows(int messageFlows) {
+		this.messageFlows = Math.max(0, messageFlows);
+	}
+
+	public void setCreateDI(boolean createDI) {
+		this.createDI = createDI;
+	}
+
+	/**
+	 * @return the number of flow nodes in the generated model, for benchmarks
+	 *         that generate other kinds of input of the same size.
+	 */
+	public int getFlowNodeCount() {
+		return pools * (tasksPerPool + gatewaysPerPool);
+	}
+
+	/**
+	 * Generate the model into a new BPMN2 Modeler Resource in a new Resource Set.
+	 * 
+	 * @param uri the URI of the Resource. The Resource is not saved.
+	 * @return the Resource
+	 */
+	public Resource generate(URI uri) {
+		ResourceSet rs = new ResourceSetImpl();
+		Resource resource = new Bpmn2ModelerResourceFactoryImpl().createResource(uri);
+		rs.getResources().add(resource);
+		new Generator(resource).generate();
+		return resource;
+	}
+
+	/**
+	 * The state of one run of the generator.
+	 */
+	private class Generator {
+		final Bpmn2Factory factory = Bpmn2Factory.eINSTANCE;
+		final BpmnDiFactory diFactory = BpmnDiFactory.eINSTANCE;
+		final Random random = new Random(seed);
+		final Resource resource;
+		final Map<BaseElement, BPMNShape> shapes = new HashMap<BaseElement, BPMNShape>();
+		Definitions definitions;
+		BPMNPlane plane;
+		int nextId = 1;
+
+		Generator(Resource resource) {
+			this.resource = resource;
+		}
+
+		void generate() {
+			DocumentRoot root = factory.createDocumentRoot();
+			definitions = factory.createDefinitions();
+			definitions.setId("Definitions_1"); //$NON-NLS-1$
+			definitions.setTargetNamespace("http://www.eclipse.org/bpmn2/modeler/benchmarks"); //$NON-NLS-1$
+			root.setDefinitions(definitions);
+			resource.getContents().add(root);
+
+			Collaboration collaboration = factory.createCollaboration();
+			collaboration.setId(id("Collaboration")); //$NON-NLS-1$
+			definitions.getRootElements().add(collaboration);
+			
+			if (createDI) {
+				BPMNDiagram diagram = diFactory.createBPMNDiagram();
+				diagram.setId(id("BPMNDiagram")); //$NON-NLS-1$
+				plane = diFactory.createBPMNPlane();
+				plane.setId(id("BPMNPlane")); //$NON-NLS-1$
+				plane.setBpmnElement(collaboration);
+				diagram.setPlane(plane);
+				definitions.getDiagrams().add(diagram);
+			}
+
+			List<List<Task>> tasks = new ArrayList<List<Task>>();
+			int poolHeight = lanesPerPool * LANE_HEIGHT;
+			int columns = (tasksPerPool + gatewaysPerPool + 2 + lanesPerPool - 1) / lanesPerPool;
+			int poolWidth = POOL_HEADER + (columns + 1) * COLUMN_WIDTH;
+			for (int p=0; p<pools; ++p) {
+				int y = p * (poolHeight + POOL_SPACING);
+				tasks.add(generateProcess(collaboration, p, 0, y, poolWidth, poolHeight));
+			}
+
+			// connect Tasks in neighboring Pools with Message Flows
+			if (pools>1) {
+				for (int i=0; i<messageFlows; ++i) {
+					int p = i % (pools-1);
+					List<Task> from = tasks.get(p);
+					List<Task> to = tasks.get(p+1);
+					Task source = from.get(random.nextInt(from.size()));
+					Task target = to.get(random.nextInt(to.size()));
+					MessageFlow mf = factory.createMessageFlow();
+					mf.setId(id("MessageFlow")); //$NON-NLS-1$
+					mf.setSourceRef(source);
+					mf.setTargetRef(target);
+					collaboration.getMessageFlows().add(mf);
+					createEdge(mf, source, target);
+				}
+			}
+		}
+
+		List<Task> generateProcess(Collaboration collaboration, int index, int x, int y, int width, int height) {
+			Process process = factory.createProcess();
+			process.setId(id("Process")); //$NON-NLS-1$
+			process.setName("Process " + (index+1)); //$NON-NLS-1$
+			definitions.getRootElements().add(process);
+
+			Participant participant = factory.createParticipant();
+			participant.setId(id("Participant")); //$NON-NLS-1$
+			participant.setName("Pool " + (index+1)); //$NON-NLS-1$
+			participant.setProcessRef(process);
+			collaboration.getParticipants().add(participant);
+			createShape(participant, x, y, width, height);
+
+			LaneSet laneSet = factory.createLaneSet();
+			laneSet.setId(id("LaneSet")); //$NON-NLS-1$
+			process.getLaneSets().add(laneSet);
+			List<Lane> lanes = new ArrayList<Lane>();
+			for (int l=0; l<lanesPerPool; ++l) {
+				Lane lane = factory.createLane();
+				lane.setId(id("Lane")); //$NON-NLS-1$
+				lane.setName("Lane " + (l+1)); //$NON-NLS-1$
+				laneSet.getLanes().add(lane);
+				lanes.add(lane);
+				createShape(lane, x + POOL_HEADER, y + l * LANE_HEIGHT, width - POOL_HEADER, LANE_HEIGHT);
+			}
+
+			// build the chain of flow nodes: Start Event, Tasks and Gateways
+			// in random order, End Event
+			List<FlowNode> nodes = new ArrayList<FlowNode>();
+			List<Task> tasks = new ArrayList<Task>();
+			StartEvent start = factory.createStartEvent();
+			start.setId(id("StartEvent")); //$NON-NLS-1$
+			nodes.add(start);
+			int remainingTasks = tasksPerPool;
+			int remainingGateways = gatewaysPerPool;
+			while (remainingTasks + remainingGateways > 0) {
+				if (random.nextInt(remainingTasks + remainingGateways) < remainingTasks) {
+					Task task = factory.createTask();
+					task.setId(id("Task")); //$NON-NLS-1$
+					task.setName("Task " + task.getId()); //$NON-NLS-1$
+					nodes.add(task);
+					tasks.add(task);
+					--remainingTasks;
+				}
+				else {
+					ExclusiveGateway gateway = factory.createExclusiveGateway();
+					gateway.setId(id("ExclusiveGateway")); //$NON-NLS-1$
+					nodes.add(gateway);
+					--remainingGateways;
+				}
+			}
+			EndEvent end = factory.createEndEvent();
+			end.setId(id("EndEvent")); //$NON-NLS-1$
+			nodes.add(end);
+
+			for (int i=0; i<nodes.size(); ++i) {
+				FlowNode node = nodes.get(i);
+				process.getFlowElements().add(node);
+				int lane = i % lanesPerPool;
+				lanes.get(lane).getFlowNodeRefs().add(node);
+				int column = i / lanesPerPool;
+				int w, h;
+				if (node instanceof Task) {
+					w = TASK_WIDTH;
+					h = TASK_HEIGHT;
+				}
+				else if (node instanceof ExclusiveGateway) {
+					w = h = GATEWAY_SIZE;
+				}
+				else {
+					w = h = EVENT_SIZE;
+				}
+				int nx = x + POOL_HEADER + COLUMN_WIDTH/2 + column * COLUMN_WIDTH - w/2;
+				int ny = y + lane * LANE_HEIGHT + (LANE_HEIGHT - h)/2;
+				createShape(node, nx, ny, w, h);
+			}
+
+			for (int i=0; i<nodes.size()-1; ++i) {
+				FlowNode source = nodes.get(i);
+				createSequenceFlow(process, source, nodes.get(i+1));
+				if (source instanceof ExclusiveGateway && i+2<nodes.size()) {
+					int j = Math.min(nodes.size()-1, i + 2 + random.nextInt(5));
+					createSequenceFlow(process, source, nodes.get(j));
+				}
+			}
+			return tasks;
+		}
+
+		void createSequenceFlow(Process process, FlowNode source, FlowNode target) {
+			SequenceFlow sf = factory.createSequenceFlow();
+			sf.setId(id("SequenceFlow")); //$NON-NLS-1$
+			sf.setSourceRef(source);
+			sf.setTargetRef(target);
+			process.getFlowElements().add(sf);
+			createEdge(sf, source, target);
+		}
+
+		void createShape(BaseElement element, int x, int y, int width, int height) {
+			if (plane==null)
+				return;
+			BPMNShape shape = diFactory.createBPMNShape();
+			shape.setId("BPMNShape_" + element.getId()); //$NON-NLS-1$
+			shape.setBpmnElement(element);
+			if (element instanceof Participant || element instanceof Lane)
+				shape.setIsHorizontal(true);
+			Bounds bounds = DcFactory.eINSTANCE.createBounds();
+			bounds.setX(x);
+			bounds.setY(y);
+			bounds.setWidth(width);
+			bounds.setHeight(height);
+			shape.setBounds(bounds);
+			plane.getPlaneElement().add(shape);
+			shapes.put(element, shape);
+		}
+
+		void createEdge(BaseElement element, BaseElement source, BaseElement target) {
+			if (plane==null)
+				return;
+			BPMNShape sourceShape = shapes.get(source);
+			BPMNShape targetShape = shapes.get(target);
+			BPMNEdge edge = diFactory.createBPMNEdge();
+			edge.setId("BPMNEdge_" + element.getId()); //$NON-NLS-1$
+			edge.setBpmnElement(element);
+			edge.setSourceElement(sourceShape);
+			edge.setTargetElement(targetShape);
+			Bounds sb = sourceShape.getBounds();
+			Bounds tb = targetShape.getBounds();
+			edge.getWaypoint().add(createPoint(sb.getX() + sb.getWidth(), sb.getY() + sb.getHeight()/2));
+			edge.getWaypoint().add(createPoint(tb.getX(), tb.getY() + tb.getHeight()/2));
+			plane.getPlaneElement().add(edge);
+		}
+
+		Point createPoint(float x, float y) {
+			Point p = DcFactory.eINSTANCE.createPoint();
+			p.setX(x);
+			p.setY(y);
+			return p;
+		}
+
+		String id(String prefix) {
+			return prefix + "_" + (nextId++); //$NON-NLS-1$
+		}
+	}
+}
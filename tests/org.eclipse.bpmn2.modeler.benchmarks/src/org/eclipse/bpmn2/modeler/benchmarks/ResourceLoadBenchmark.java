@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceFactoryImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+
+/**
+ * Measures parsing of a BPMN2 file into a Bpmn2ModelerResourceImpl.
+ */
+public class ResourceLoadBenchmark extends Benchmark {
+
+	private URI uri;
+	private byte[] contents;
+
+	public ResourceLoadBenchmark() {
+		super("Bpmn2ModelerResourceImpl.load"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		uri = BenchmarkUtil.createURI(getName());
+		Resource resource = generator.generate(uri);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		resource.save(out, null);
+		contents = out.toByteArray();
+		resource.unload();
+	}
+
+	@Override
+	public Object run() throws Exception {
+		ResourceSet rs = new ResourceSetImpl();
+		Resource resource = new Bpmn2ModelerResourceFactoryImpl().createResource(uri);
+		rs.getResources().add(resource);
+		resource.load(new ByteArrayInputStream(contents), null);
+		return resource;
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		contents = null;
+	}
+}
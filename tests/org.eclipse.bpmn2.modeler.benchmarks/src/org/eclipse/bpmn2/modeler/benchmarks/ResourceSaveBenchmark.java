@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Measures serialization of a Bpmn2ModelerResourceImpl.
+ */
+public class ResourceSaveBenchmark extends Benchmark {
+
+	private Resource resource;
+
+	public ResourceSaveBenchmark() {
+		super("Bpmn2ModelerResourceImpl.save"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		resource = generator.generate(BenchmarkUtil.createURI(getName()));
+	}
+
+	@Override
+	public Object run() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		resource.save(out, null);
+		return out;
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		resource.unload();
+		resource = null;
+	}
+}
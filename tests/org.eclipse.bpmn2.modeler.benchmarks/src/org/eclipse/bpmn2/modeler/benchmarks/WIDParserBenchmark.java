@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.benchmarks;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WIDHandler;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WorkItemDefinition;
+
+/**
+ * Measures parsing of a generated Work Item Definition file with one
+ * definition per flow node of the model size, e.g. a large catalog of
+ * generated work items.
+ */
+public class WIDParserBenchmark extends Benchmark {
+
+	private int count;
+	private String content;
+	private final Map<String, Double> measurements = new LinkedHashMap<String, Double>();
+
+	public WIDParserBenchmark() {
+		super("WIDHandler.evaluateWorkDefinitions"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void setUp(ModelGenerator generator) throws Exception {
+		count = generator.getFlowNodeCount();
+		StringBuilder text = new StringBuilder("[\n"); //$NON-NLS-1$
+		for (int i = 0; i < count; i++) {
+			text.append("  [\n"); //$NON-NLS-1$
+			text.append("    \"name\" : \"Task" + i + "\",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			text.append("    \"parameters\" : [\n"); //$NON-NLS-1$
+			text.append("      \"Url\" : new StringDataType(),\n"); //$NON-NLS-1$
+			text.append("      \"Count\" : new IntegerDataType()\n"); //$NON-NLS-1$
+			text.append("    ],\n"); //$NON-NLS-1$
+			text.append("    \"results\" : [ \"Result\" : new ObjectDataType() ],\n"); //$NON-NLS-1$
+			text.append("    \"displayName\" : \"Task " + i + "\", // comment\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			text.append("    \"icon\" : \"icons/task.png\"\n"); //$NON-NLS-1$
+			text.append("  ],\n"); //$NON-NLS-1$
+		}
+		text.append("]\n"); //$NON-NLS-1$
+		content = text.toString();
+
+		measurements.clear();
+		measurements.put("definitions", (double) count); //$NON-NLS-1$
+		measurements.put("KB", (double) content.length() / 1024); //$NON-NLS-1$
+	}
+
+	@Override
+	public Object run() throws Exception {
+		Map<String, WorkItemDefinition> widMap = new HashMap<String, WorkItemDefinition>();
+		WIDHandler.evaluateWorkDefinitions(widMap, content);
+		Assert.assertEquals(count, widMap.size());
+		return widMap;
+	}
+
+	@Override
+	public Map<String, Double> getMeasurements() {
+		return measurements;
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		content = null;
+	}
+}
@@ -15,7 +15,8 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ TestWIDHandler.class })
+@SuiteClasses({ TestWIDHandler.class, TestResourceIdIndex.class, TestIdentifierRegistry.class, TestSimulationEngine.class,
+		TestBinarySnapshotCache.class })
 public class AllTests {
 
 }
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.tests;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.Task;
+import org.eclipse.bpmn2.modeler.core.model.BinarySnapshotCache;
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceImpl;
+import org.eclipse.bpmn2.modeler.core.model.ModelDecorator;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.FeatureMap;
+import org.junit.Test;
+
+/**
+ * Tests that a model restored from a binary snapshot is the same as the parsed
+ * model.
+ */
+public class TestBinarySnapshotCache {
+
+	private static final String MODEL =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<bpmn2:definitions xmlns:bpmn2=\"http://www.omg.org/spec/BPMN/20100524/MODEL\"" +
+			" xmlns:bpmndi=\"http://www.omg.org/spec/BPMN/20100524/DI\"" +
+			" xmlns:dc=\"http://www.omg.org/spec/DD/20100524/DC\"" +
+			" xmlns:ext=\"%s\"" +
+			" id=\"Definitions_1\" targetNamespace=\"http://test\">\n" +
+			"  <bpmn2:itemDefinition id=\"ItemDefinition_1\" structureRef=\"String\"/>\n" +
+			"  <bpmn2:process id=\"Process_1\" name=\"Process\">\n" +
+			"    <bpmn2:property id=\"Property_1\" itemSubjectRef=\"ItemDefinition_1\"/>\n" +
+			"    <bpmn2:startEvent id=\"StartEvent_1\">\n" +
+			"      <bpmn2:outgoing>SequenceFlow_1</bpmn2:outgoing>\n" +
+			"    </bpmn2:startEvent>\n" +
+			"    <bpmn2:task id=\"Task_1\" name=\"Task 1\" ext:priority=\"high\">\n" +
+			"      <bpmn2:incoming>SequenceFlow_1</bpmn2:incoming>\n" +
+			"    </bpmn2:task>\n" +
+			"    <bpmn2:sequenceFlow id=\"SequenceFlow_1\" sourceRef=\"StartEvent_1\" targetRef=\"Task_1\"/>\n" +
+			"  </bpmn2:process>\n" +
+			"  <bpmndi:BPMNDiagram id=\"BPMNDiagram_1\">\n" +
+			"    <bpmndi:BPMNPlane id=\"BPMNPlane_1\" bpmnElement=\"Process_1\">\n" +
+			"      <bpmndi:BPMNShape id=\"BPMNShape_1\" bpmnElement=\"Task_1\">\n" +
+			"        <dc:Bounds height=\"50.0\" width=\"110.0\" x=\"100.0\" y=\"100.0\"/>\n" +
+			"      </bpmndi:BPMNShape>\n" +
+			"    </bpmndi:BPMNPlane>\n" +
+			"  </bpmndi:BPMNDiagram>\n" +
+			"</bpmn2:definitions>\n";
+
+	private Resource createResource() {
+		return TestUtil.createResource("TestBinarySnapshotCache.bpmn2");
+	}
+
+	private ModelDecorator createModelDecorator(String nsURI) {
+		ModelDecorator md = new ModelDecorator("snapshot", "snapshot", nsURI);
+		md.createEAttribute("priority", "EString", "Task", null);
+		return md;
+	}
+
+	private Resource parse(byte[] content) throws Exception {
+		Map<Object, Object> options = new HashMap<Object, Object>();
+		options.put(BinarySnapshotCache.OPTION_USE_SNAPSHOT, Boolean.FALSE);
+		Resource resource = createResource();
+		resource.load(new ByteArrayInputStream(content), options);
+		return resource;
+	}
+
+	private List<EObject> getAllContents(Resource resource) {
+		List<EObject> objects = new ArrayList<EObject>();
+		Iterator<EObject> iter = resource.getAllContents();
+		while (iter.hasNext())
+			objects.add(iter.next());
+		return objects;
+	}
+
+	private Object getPriority(Resource resource) {
+		Definitions definitions = ModelUtil.getDefinitions(resource);
+		Process process = (Process) definitions.getRootElements().get(1);
+		Task task = (Task) process.getFlowElements().get(1);
+		for (FeatureMap.Entry entry : task.getAnyAttribute()) {
+			if ("priority".equals(entry.getEStructuralFeature().getName()))
+				return entry.getValue();
+		}
+		return null;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		System.out.println("testRoundTrip");
+		String nsURI = "http://www.example.org/snapshot/roundtrip";
+		ModelDecorator md = createModelDecorator(nsURI);
+		byte[] content = String.format(MODEL, nsURI).getBytes("UTF-8");
+		BinarySnapshotCache cache = BinarySnapshotCache.getInstance();
+		Assert.assertNotNull(cache);
+
+		Resource parsed = parse(content);
+		String key = cache.getKey(parsed, content, null);
+		cache.save(parsed, key, false);
+		Resource restored = createResource();
+		Assert.assertTrue(cache.load(restored, key));
+
+		Assert.assertTrue(EcoreUtil.equals(parsed.getContents(), restored.getContents()));
+		List<EObject> parsedObjects = getAllContents(parsed);
+		List<EObject> restoredObjects = getAllContents(restored);
+		Assert.assertEquals(parsedObjects.size(), restoredObjects.size());
+		for (int i=0; i<parsedObjects.size(); ++i) {
+			EObject p = parsedObjects.get(i);
+			EObject r = restoredObjects.get(i);
+			Assert.assertSame(p.eClass(), r.eClass());
+			Assert.assertEquals(EcoreUtil.getID(p), EcoreUtil.getID(r));
+			Assert.assertEquals(Bpmn2ModelerResourceImpl.getLineNumber(p), Bpmn2ModelerResourceImpl.getLineNumber(r));
+		}
+		// the task is on line 9 of the file
+		Assert.assertEquals(Integer.valueOf(9), Bpmn2ModelerResourceImpl.getLineNumber(restored.getEObject("Task_1")));
+		Assert.assertEquals("high", getPriority(restored));
+		parsed.unload();
+		restored.unload();
+		md.dispose();
+	}
+
+	@Test
+	public void testRestoreDynamicFeatures() throws Exception {
+		System.out.println("testRestoreDynamicFeatures");
+		String nsURI = "http://www.example.org/snapshot/dynamic";
+		ModelDecorator md = createModelDecorator(nsURI);
+		byte[] content = String.format(MODEL, nsURI).getBytes("UTF-8");
+		BinarySnapshotCache cache = BinarySnapshotCache.getInstance();
+
+		Resource parsed = parse(content);
+		String key = cache.getKey(parsed, content, null);
+		cache.save(parsed, key, false);
+		parsed.unload();
+		// the snapshot must define the dynamic feature again, as in a new session
+		md.dispose();
+		Assert.assertNull(ModelDecorator.getModelDecorator(nsURI));
+
+		Resource restored = createResource();
+		Assert.assertTrue(cache.load(restored, key));
+		Assert.assertNotNull(ModelDecorator.getModelDecorator(nsURI));
+		Assert.assertEquals("high", getPriority(restored));
+		// the namespace is only registered while the snapshot is loaded
+		Assert.assertNull(restored.getResourceSet().getPackageRegistry().get(nsURI));
+		restored.unload();
+		ModelDecorator.getModelDecorator(nsURI).dispose();
+	}
+}
@@ -0,0 +1,392 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.tests;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.Bpmn2Factory;
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.DocumentRoot;
+import org.eclipse.bpmn2.ExtensionAttributeValue;
+import org.eclipse.bpmn2.Message;
+import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.Property;
+import org.eclipse.bpmn2.SubProcess;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.ProcessVariableNameChangeAdapter;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.DroolsFactory;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.DroolsPackage;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.drools.GlobalType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.util.IdentifierRegistry;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.junit.Test;
+
+/**
+ * Tests for the IdentifierRegistry used by jBPM ID validation
+ */
+public class TestIdentifierRegistry {
+
+	private Bpmn2Factory factory = Bpmn2Factory.eINSTANCE;
+
+	private Definitions createDefinitions() {
+		Resource resource = TestUtil.createResource("TestIdentifierRegistry.bpmn2");
+		DocumentRoot root = factory.createDocumentRoot();
+		Definitions definitions = factory.createDefinitions();
+		definitions.setId("Definitions_1");
+		root.setDefinitions(definitions);
+		resource.getContents().add(root);
+		return definitions;
+	}
+
+	private Process createProcess(Definitions definitions, String id) {
+		Process process = factory.createProcess();
+		process.setId(id);
+		definitions.getRootElements().add(process);
+		register(process);
+		return process;
+	}
+
+	// Objects that are added to the model with an ID must be registered, the
+	// same as the editor does for imported or pasted elements
+	private static void register(EObject object) {
+		ModelUtil.addID(object);
+		for (Iterator<EObject> iter = object.eAllContents(); iter.hasNext();) {
+			EObject o = iter.next();
+			if (o instanceof BaseElement && ((BaseElement) o).getId()!=null)
+				ModelUtil.addID(o);
+		}
+	}
+
+	// Change an ID the way the editor does
+	private static void changeId(BaseElement object, String id) {
+		ModelUtil.unsetID(object, object.eResource());
+		object.setId(id);
+		if (id!=null)
+			ModelUtil.addID(object);
+	}
+
+	private Property createProperty(String id) {
+		Property property = factory.createProperty();
+		property.setId(id);
+		property.setName(id);
+		return property;
+	}
+
+	private GlobalType addGlobal(Process process, String id, String identifier) {
+		GlobalType global = DroolsFactory.eINSTANCE.createGlobalType();
+		global.setId(id);
+		global.setIdentifier(identifier);
+		ExtensionAttributeValue extensionValue = factory.createExtensionAttributeValue();
+		extensionValue.getValue().add(DroolsPackage.Literals.DOCUMENT_ROOT__GLOBAL, global);
+		process.getExtensionValues().add(extensionValue);
+		IdentifierRegistry.getRegistry(global).update(global);
+		return global;
+	}
+
+	private static void assertElements(IdentifierRegistry registry, String identifier, BaseElement... expected) {
+		List<BaseElement> actual = registry.getElementsWithIdentifier(identifier);
+		Assert.assertEquals("Elements with identifier " + identifier, expected.length, actual.size());
+		for (BaseElement e : expected)
+			Assert.assertTrue("Missing " + e + " for identifier " + identifier, actual.contains(e));
+	}
+
+	// The duplicates that ProcessVariableNameValidator reported before the
+	// registry existed: a walk over all contents of the Definitions
+	private static Set<BaseElement> findDuplicatesByScan(Definitions definitions, BaseElement object) {
+		Set<BaseElement> result = new HashSet<BaseElement>();
+		String id = getIdentifier(object);
+		TreeIterator<EObject> iter = definitions.eAllContents();
+		while (iter.hasNext()) {
+			EObject o2 = iter.next();
+			if (o2 instanceof BaseElement && object!=o2) {
+				String id2 = getIdentifier((BaseElement) o2);
+				if (id != null && id2 != null && id.equals(id2))
+					result.add((BaseElement) o2);
+			}
+		}
+		return result;
+	}
+
+	// The duplicates that ProcessVariableNameValidator reports now
+	private static Set<BaseElement> findDuplicatesByRegistry(BaseElement object) {
+		Set<BaseElement> result = new HashSet<BaseElement>();
+		String id = getIdentifier(object);
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(object);
+		if (id != null && registry != null) {
+			for (BaseElement o2 : registry.getElementsWithIdentifier(id)) {
+				if (object!=o2)
+					result.add(o2);
+			}
+		}
+		return result;
+	}
+
+	private static String getIdentifier(BaseElement object) {
+		if (object instanceof GlobalType)
+			return ((GlobalType) object).getIdentifier();
+		return object.getId();
+	}
+
+	private static void assertSameDuplicates(Definitions definitions) {
+		TreeIterator<EObject> iter = definitions.eAllContents();
+		while (iter.hasNext()) {
+			EObject o = iter.next();
+			if (o instanceof BaseElement) {
+				BaseElement object = (BaseElement) o;
+				Assert.assertEquals("Duplicates of " + getIdentifier(object),
+						findDuplicatesByScan(definitions, object),
+						findDuplicatesByRegistry(object));
+			}
+		}
+	}
+
+	@Test
+	public void testAddRemoveMoveSubtree() {
+		System.out.println("testAddRemoveMoveSubtree");
+		Definitions definitions = createDefinitions();
+		Process process1 = createProcess(definitions, "Process_1");
+		Process process2 = createProcess(definitions, "Process_2");
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(definitions);
+		Assert.assertSame(registry, IdentifierRegistry.getRegistry(process1));
+		assertElements(registry, "Process_1", process1);
+		// the Definitions itself is not compared by jBPM validation
+		assertElements(registry, "Definitions_1");
+		Assert.assertSame(definitions, registry.findDuplicateId(process1, "Definitions_1"));
+
+		// add a subtree that was built outside of the model
+		SubProcess subProcess = factory.createSubProcess();
+		subProcess.setId("SubProcess_1");
+		Property property = createProperty("counter");
+		subProcess.getProperties().add(property);
+		process1.getFlowElements().add(subProcess);
+		register(subProcess);
+		assertElements(registry, "SubProcess_1", subProcess);
+		assertElements(registry, "counter", property);
+		Assert.assertSame(property, registry.findDuplicateId(subProcess, "counter"));
+
+		// move it to another Process
+		process2.getFlowElements().add(subProcess);
+		Assert.assertTrue(process1.getFlowElements().isEmpty());
+		assertElements(registry, "SubProcess_1", subProcess);
+		assertElements(registry, "counter", property);
+
+		// remove it
+		process2.getFlowElements().remove(subProcess);
+		assertElements(registry, "SubProcess_1");
+		assertElements(registry, "counter");
+		Assert.assertNull(registry.findDuplicateId(null, "counter"));
+
+		// and add it back, as an undo would: the removed IDs were reserved
+		process1.getFlowElements().add(subProcess);
+		assertElements(registry, "SubProcess_1", subProcess);
+		assertElements(registry, "counter", property);
+
+		// a removed object that is added back with a different ID must be
+		// registered again
+		process1.getFlowElements().remove(subProcess);
+		property.setId("counter2");
+		process1.getFlowElements().add(subProcess);
+		assertElements(registry, "counter");
+		register(subProcess);
+		assertElements(registry, "counter2", property);
+		assertSameDuplicates(definitions);
+	}
+
+	@Test
+	public void testIdChange() {
+		System.out.println("testIdChange");
+		Definitions definitions = createDefinitions();
+		Process process = createProcess(definitions, "Process_1");
+		Property property1 = createProperty("x");
+		Property property2 = createProperty("y");
+		process.getProperties().add(property1);
+		process.getProperties().add(property2);
+		register(process);
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(definitions);
+		assertElements(registry, "x", property1);
+		assertElements(registry, "y", property2);
+
+		changeId(property2, "x");
+		assertElements(registry, "x", property1, property2);
+		assertElements(registry, "y");
+		Assert.assertSame(property2, registry.findDuplicateId(property1, "x"));
+
+		changeId(property1, "z");
+		assertElements(registry, "x", property2);
+		assertElements(registry, "z", property1);
+		Assert.assertNull(registry.findDuplicateId(property2, "x"));
+
+		changeId(property1, null);
+		assertElements(registry, "z");
+		Assert.assertNull(registry.findDuplicateId(null, "z"));
+	}
+
+	@Test
+	public void testGlobalIdentifierChange() {
+		System.out.println("testGlobalIdentifierChange");
+		Definitions definitions = createDefinitions();
+		Process process = createProcess(definitions, "Process_1");
+		Property property = createProperty("x");
+		process.getProperties().add(property);
+		register(property);
+		GlobalType global = addGlobal(process, "GlobalType_1", "y");
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(definitions);
+		// Globals are compared by their identifier, and get unique IDs by their id
+		assertElements(registry, "y", global);
+		assertElements(registry, "GlobalType_1");
+		Assert.assertSame(global, registry.findDuplicateId(property, "GlobalType_1"));
+
+		global.setIdentifier("x");
+		assertElements(registry, "x", property, global);
+		assertElements(registry, "y");
+		assertSameDuplicates(definitions);
+
+		global.setIdentifier("z");
+		assertElements(registry, "x", property);
+		assertElements(registry, "z", global);
+
+		// removing the extension value container drops the Global
+		process.getExtensionValues().clear();
+		assertElements(registry, "z");
+		Assert.assertNull(registry.findDuplicateId(property, "GlobalType_1"));
+	}
+
+	@Test
+	public void testNameChangeAdapter() {
+		System.out.println("testNameChangeAdapter");
+		Definitions definitions = createDefinitions();
+		Process process = createProcess(definitions, "Process_1");
+		Property property = factory.createProperty();
+		property.setId("Property_1");
+		process.getProperties().add(property);
+		register(property);
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(definitions);
+		ProcessVariableNameChangeAdapter.adapt(property);
+		assertElements(registry, "Property_1", property);
+
+		// the adapter sets the ID with notifications turned off
+		property.setName("counter");
+		Assert.assertEquals("counter", property.getId());
+		assertElements(registry, "counter", property);
+		assertElements(registry, "Property_1");
+
+		// names are converted to Java identifiers
+		property.setName("my counter");
+		Assert.assertEquals(property.getName(), property.getId());
+		Assert.assertFalse("my counter".equals(property.getId()));
+		assertElements(registry, property.getId(), property);
+		assertElements(registry, "counter");
+
+		// an ID change is made unique, and the name is kept in sync
+		Property property2 = createProperty("other");
+		process.getProperties().add(property2);
+		register(property2);
+		ProcessVariableNameChangeAdapter.adapt(property2);
+		property2.setId(property.getId());
+		Assert.assertEquals(property.getId() + "_1", property2.getId());
+		Assert.assertEquals(property2.getId(), property2.getName());
+		assertElements(registry, property.getId(), property);
+		assertElements(registry, property2.getId(), property2);
+		assertElements(registry, "other");
+	}
+
+	@Test
+	public void testMakeUniqueId() {
+		System.out.println("testMakeUniqueId");
+		Definitions definitions = createDefinitions();
+		Process process = createProcess(definitions, "Process_1");
+		Property x = createProperty("x");
+		process.getProperties().add(x);
+		register(x);
+		IdentifierRegistry registry = IdentifierRegistry.getRegistry(definitions);
+		Property property = factory.createProperty();
+
+		Assert.assertEquals("y", registry.makeUniqueId(property, "y"));
+		// an object's own ID is not a collision
+		Assert.assertEquals("x", registry.makeUniqueId(x, "x"));
+		Assert.assertEquals("x_1", registry.makeUniqueId(property, "x"));
+		Property x1 = createProperty("x_1");
+		process.getProperties().add(x1);
+		register(x1);
+		Assert.assertEquals("x_2", registry.makeUniqueId(property, "x"));
+		// a Global's id collides, its identifier does not
+		addGlobal(process, "x_2", "x_3");
+		Assert.assertEquals("x_3", registry.makeUniqueId(property, "x"));
+	}
+
+	@Test
+	public void testSameDuplicatesAsFullScan() {
+		System.out.println("testSameDuplicatesAsFullScan");
+		Definitions definitions = createDefinitions();
+		IdentifierRegistry.getRegistry(definitions);
+		Random random = new Random(42);
+		List<Process> processes = new ArrayList<Process>();
+		List<BaseElement> elements = new ArrayList<BaseElement>();
+		for (int p=0; p<5; ++p) {
+			Process process = createProcess(definitions, "Process_" + p);
+			processes.add(process);
+			for (int i=0; i<20; ++i) {
+				String id = "v" + random.nextInt(30);
+				Property property;
+				switch (random.nextInt(4)) {
+				case 0:
+					elements.add(addGlobal(process, "GlobalType_" + p + "_" + i, id));
+					break;
+				case 1:
+					SubProcess subProcess = factory.createSubProcess();
+					subProcess.setId("Process_" + random.nextInt(5));
+					property = createProperty(id);
+					subProcess.getProperties().add(property);
+					process.getFlowElements().add(subProcess);
+					register(subProcess);
+					elements.add(subProcess);
+					elements.add(property);
+					break;
+				default:
+					property = createProperty(id);
+					process.getProperties().add(property);
+					register(property);
+					elements.add(property);
+				}
+			}
+		}
+		Message message = factory.createMessage();
+		message.setId("Definitions_1");
+		definitions.getRootElements().add(message);
+		register(message);
+		assertSameDuplicates(definitions);
+
+		// shuffle the model around and check again
+		for (int i=0; i<100; ++i) {
+			BaseElement e = elements.get(random.nextInt(elements.size()));
+			String id = "v" + random.nextInt(30);
+			if (e instanceof GlobalType)
+				((GlobalType) e).setIdentifier(id);
+			else if (e instanceof SubProcess)
+				processes.get(random.nextInt(processes.size())).getFlowElements().add((SubProcess) e);
+			else if (random.nextBoolean())
+				changeId(e, id);
+			else
+				processes.get(random.nextInt(processes.size())).getProperties().add((Property) e);
+		}
+		assertSameDuplicates(definitions);
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.tests;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.eclipse.bpmn2.BaseElement;
+import org.eclipse.bpmn2.Bpmn2Factory;
+import org.eclipse.bpmn2.DataInput;
+import org.eclipse.bpmn2.Definitions;
+import org.eclipse.bpmn2.InputOutputSpecification;
+import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.Property;
+import org.eclipse.bpmn2.Task;
+import org.eclipse.bpmn2.modeler.core.adapters.ResourceIdIndex;
+import org.eclipse.bpmn2.modeler.core.utils.ModelUtil;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.junit.Test;
+
+/**
+ * Tests for generation of missing IDs by the ResourceIdIndex
+ */
+public class TestResourceIdIndex {
+
+	private static final String NO_IDS =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<bpmn2:definitions xmlns:bpmn2=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" id=\"Definitions_1\" targetNamespace=\"http://test\">\n" +
+			"  <bpmn2:process id=\"Process_1\" name=\"Process\">\n" +
+			"    <bpmn2:property itemSubjectRef=\"ItemDefinition_1\"/>\n" +
+			"    <bpmn2:task id=\"Task_1\" name=\"Task 1\">\n" +
+			"      <bpmn2:ioSpecification>\n" +
+			"        <bpmn2:dataInput name=\"input\"/>\n" +
+			"        <bpmn2:inputSet/>\n" +
+			"        <bpmn2:outputSet/>\n" +
+			"      </bpmn2:ioSpecification>\n" +
+			"    </bpmn2:task>\n" +
+			"    <bpmn2:task name=\"Task 2\"/>\n" +
+			"  </bpmn2:process>\n" +
+			"  <bpmn2:itemDefinition id=\"ItemDefinition_1\" structureRef=\"String\"/>\n" +
+			"</bpmn2:definitions>\n";
+
+	private Resource createResource() {
+		return TestUtil.createResource("TestResourceIdIndex.bpmn2");
+	}
+
+	private void assertAllIdsSetAndUnique(Resource resource) {
+		ResourceIdIndex index = ResourceIdIndex.getIndex(resource);
+		Set<String> ids = new HashSet<String>();
+		Iterator<EObject> iter = resource.getAllContents();
+		while (iter.hasNext()) {
+			EObject o = iter.next();
+			if (o instanceof BaseElement) {
+				String id = ((BaseElement) o).getId();
+				Assert.assertNotNull("No ID for " + o, id);
+				Assert.assertTrue("Duplicate ID " + id, ids.add(id));
+				Assert.assertSame(o, index.getObject(id));
+			}
+		}
+		Assert.assertTrue(index.getDuplicates().isEmpty());
+	}
+
+	@Test
+	public void testLoadWithoutIds() throws Exception {
+		System.out.println("testLoadWithoutIds");
+		Resource resource = createResource();
+		resource.load(new ByteArrayInputStream(NO_IDS.getBytes("UTF-8")), null);
+		ResourceIdIndex.getIndex(resource);
+		ModelUtil.setMissingIDs(resource);
+
+		assertAllIdsSetAndUnique(resource);
+		Definitions definitions = ModelUtil.getDefinitions(resource);
+		Process process = (Process) definitions.getRootElements().get(0);
+		Task task1 = (Task) process.getFlowElements().get(0);
+		Task task2 = (Task) process.getFlowElements().get(1);
+		Assert.assertEquals("Process_1", process.getId());
+		Assert.assertEquals("Task_1", task1.getId());
+		// generated IDs must not collide with the ones that were loaded
+		Assert.assertFalse("Task_1".equals(task2.getId()));
+		// the ID index only looks for objects without an ID once
+		Assert.assertEquals(0, ModelUtil.setMissingIDs(resource));
+		resource.unload();
+	}
+
+	@Test
+	public void testAttachWithoutIds() {
+		System.out.println("testAttachWithoutIds");
+		Resource resource = createResource();
+		Bpmn2Factory factory = Bpmn2Factory.eINSTANCE;
+		Definitions definitions = factory.createDefinitions();
+		definitions.setId("Definitions_1");
+		Process process = factory.createProcess();
+		process.setId("Process_1");
+		definitions.getRootElements().add(process);
+		Property property = factory.createProperty();
+		process.getProperties().add(property);
+		Task task = factory.createTask();
+		process.getFlowElements().add(task);
+		InputOutputSpecification ioSpec = factory.createInputOutputSpecification();
+		task.setIoSpecification(ioSpec);
+		DataInput dataInput = factory.createDataInput();
+		ioSpec.getDataInputs().add(dataInput);
+		resource.getContents().add(definitions);
+
+		// attaching the index only registers existing IDs...
+		ResourceIdIndex index = ResourceIdIndex.getIndex(resource);
+		Assert.assertNull(property.getId());
+		Assert.assertTrue(index.contains("Process_1"));
+		// ...and the objects without one are found on the first call
+		Assert.assertEquals(4, ModelUtil.setMissingIDs(resource));
+		assertAllIdsSetAndUnique(resource);
+		// objects added later are expected to be given an ID when they are created
+		Property property2 = factory.createProperty();
+		process.getProperties().add(property2);
+		Assert.assertEquals(0, ModelUtil.setMissingIDs(resource));
+		Assert.assertNull(property2.getId());
+	}
+
+	@Test
+	public void testReservations() {
+		System.out.println("testReservations");
+		Resource resource = createResource();
+		Bpmn2Factory factory = Bpmn2Factory.eINSTANCE;
+		Definitions definitions = factory.createDefinitions();
+		definitions.setId("Definitions_1");
+		Process process = factory.createProcess();
+		process.setId("Process_1");
+		definitions.getRootElements().add(process);
+		resource.getContents().add(definitions);
+		ResourceIdIndex index = ResourceIdIndex.getIndex(resource);
+
+		// an ID reserved for an object that has not been added yet is in use...
+		Task task = factory.createTask();
+		String id = ModelUtil.setID(task, resource);
+		Assert.assertTrue(index.contains(id));
+		Assert.assertNull(index.getObject(id));
+		// ...and belongs to the object once it has been added
+		process.getFlowElements().add(task);
+		Assert.assertSame(task, index.getObject(id));
+
+		// the ID of a removed object stays reserved, since an undo may add it back
+		process.getFlowElements().remove(task);
+		Assert.assertNull(index.getObject(id));
+		Assert.assertTrue(index.contains(id));
+		Assert.assertFalse(index.getObjects().containsKey(id));
+		process.getFlowElements().add(task);
+		Assert.assertSame(task, index.getObject(id));
+
+		// so are entries of objects whose ID was changed without the index
+		process.setId("Process_2");
+		Assert.assertNull(index.getObject("Process_1"));
+		Assert.assertFalse(index.contains("Process_1"));
+	}
+}
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.tests;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.eclipse.bpmn2.Bpmn2Factory;
+import org.eclipse.bpmn2.EndEvent;
+import org.eclipse.bpmn2.FlowNode;
+import org.eclipse.bpmn2.Process;
+import org.eclipse.bpmn2.SequenceFlow;
+import org.eclipse.bpmn2.StartEvent;
+import org.eclipse.bpmn2.Task;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.BetaDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.BinomialDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.BpsimFactory;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ControlParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ElementParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ErlangDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.GammaDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.LogNormalDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.NegativeExponentialDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.NormalDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.NumericParameterType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.Parameter;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ParameterValue;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.PoissonDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ResourceParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.Scenario;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.ScenarioParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TimeParameters;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TimeUnit;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TriangularDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.TruncatedNormalDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.UniformDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.model.bpsim.WeibullDistributionType;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation.Sampler;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation.SimulationEngine;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation.SimulationResults;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.simulation.SimulationResults.ElementStatistics;
+import org.junit.Test;
+
+/**
+ * Tests for the BPSim simulation engine
+ */
+public class TestSimulationEngine {
+
+	private static final int SAMPLES = 100000;
+
+	private static final double ARRIVAL_MEAN = 10.0;
+	private static final double SERVICE_MEAN = 5.0;
+	private static final int INSTANCES = 2000;
+
+	private final BpsimFactory bpsim = BpsimFactory.eINSTANCE;
+
+	/**
+	 * Create an M/M/1 queue: a Start Event with exponential inter-arrival
+	 * times, followed by a single Task with one resource and exponential
+	 * processing times, and an End Event.
+	 */
+	private Process createProcess() {
+		Bpmn2Factory factory = Bpmn2Factory.eINSTANCE;
+		Process process = factory.createProcess();
+		process.setId("Process_1");
+		StartEvent start = factory.createStartEvent();
+		start.setId("StartEvent_1");
+		Task task = factory.createTask();
+		task.setId("Task_1");
+		task.setName("Task");
+		EndEvent end = factory.createEndEvent();
+		end.setId("EndEvent_1");
+		process.getFlowElements().add(start);
+		process.getFlowElements().add(task);
+		process.getFlowElements().add(end);
+		connect(process, start, task, "SequenceFlow_1");
+		connect(process, task, end, "SequenceFlow_2");
+		return process;
+	}
+
+	private void connect(Process process, FlowNode source, FlowNode target, String id) {
+		SequenceFlow sf = Bpmn2Factory.eINSTANCE.createSequenceFlow();
+		sf.setId(id);
+		sf.setSourceRef(source);
+		sf.setTargetRef(target);
+		process.getFlowElements().add(sf);
+	}
+
+	private Scenario createScenario(long seed, int replications) {
+		Scenario scenario = bpsim.createScenario();
+		scenario.setId("Scenario_1");
+		ScenarioParameters sp = bpsim.createScenarioParameters();
+		sp.setReplication(replications);
+		sp.setSeed(seed);
+		scenario.setScenarioParameters(sp);
+
+		ElementParameters ep = bpsim.createElementParameters();
+		ep.setElementRef("StartEvent_1");
+		ControlParameters cp = bpsim.createControlParameters();
+		cp.setInterTriggerTimer(createParameter(exponential(ARRIVAL_MEAN)));
+		cp.setTriggerCount(createParameter(numeric(INSTANCES)));
+		ep.setControlParameters(cp);
+		scenario.getElementParameters().add(ep);
+
+		ep = bpsim.createElementParameters();
+		ep.setElementRef("Task_1");
+		TimeParameters tp = bpsim.createTimeParameters();
+		tp.setProcessingTime(createParameter(exponential(SERVICE_MEAN)));
+		ep.setTimeParameters(tp);
+		ResourceParameters rp = bpsim.createResourceParameters();
+		rp.setQuantity(createParameter(numeric(1)));
+		ep.setResourceParameters(rp);
+		scenario.getElementParameters().add(ep);
+		return scenario;
+	}
+
+	private Parameter createParameter(ParameterValue value) {
+		Parameter param = bpsim.createParameter();
+		param.getParameterValue().add(value);
+		return param;
+	}
+
+	private NumericParameterType numeric(long value) {
+		NumericParameterType v = bpsim.createNumericParameterType();
+		v.setValue(value);
+		return v;
+	}
+
+	private NegativeExponentialDistributionType exponential(double mean) {
+		NegativeExponentialDistributionType d = bpsim.createNegativeExponentialDistributionType();
+		d.setMean(mean);
+		return d;
+	}
+
+	private SimulationResults run(long seed, int replications, int threads) {
+		SimulationEngine engine = new SimulationEngine(createProcess(), createScenario(seed, replications));
+		engine.setThreads(threads);
+		SimulationResults results = engine.run(null);
+		Assert.assertEquals(0, results.getFailedReplications());
+		Assert.assertEquals(replications, results.getReplications());
+		return results;
+	}
+
+	private void assertSameResults(SimulationResults expected, SimulationResults actual) {
+		Assert.assertEquals(expected.getCreatedInstances(), actual.getCreatedInstances(), 0);
+		Assert.assertEquals(expected.getCompletedInstances(), actual.getCompletedInstances(), 0);
+		Assert.assertEquals(expected.getThroughput(), actual.getThroughput(), 0);
+		Assert.assertEquals(expected.getMeanCycleTime(), actual.getMeanCycleTime(), 0);
+		Assert.assertEquals(expected.getCycleTimePercentile(50), actual.getCycleTimePercentile(50), 0);
+		Assert.assertEquals(expected.getCycleTimePercentile(90), actual.getCycleTimePercentile(90), 0);
+		for (ElementStatistics es : expected.getElementStatistics()) {
+			ElementStatistics as = actual.getElementStatistics(es.getElementId());
+			Assert.assertEquals(es.getActivations(), as.getActivations(), 0);
+			Assert.assertEquals(es.getMeanProcessingTime(), as.getMeanProcessingTime(), 0);
+			Assert.assertEquals(es.getMeanQueueTime(), as.getMeanQueueTime(), 0);
+		}
+	}
+
+	/**
+	 * Draw a large number of values from the sampler for the given value,
+	 * and compare their mean and variance with those of the distribution.
+	 */
+	private void assertDistribution(String name, ParameterValue value, TimeUnit baseTimeUnit, double mean, double variance) {
+		Sampler sampler = Sampler.create(value, baseTimeUnit);
+		Assert.assertNotNull("No sampler for " + name, sampler);
+		Random random = new Random(1);
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (int i=0; i<SAMPLES; ++i) {
+			double x = sampler.sample(random);
+			sum += x;
+			sumOfSquares += x * x;
+		}
+		double m = sum / SAMPLES;
+		double v = (sumOfSquares - SAMPLES * m * m) / (SAMPLES - 1);
+		// the sampling error of the mean is relative to the standard deviation
+		Assert.assertEquals(name + " mean", mean, m, 0.02 * Math.max(Math.abs(mean), Math.sqrt(variance)));
+		Assert.assertEquals(name + " variance", variance, v, 0.03 * variance);
+	}
+
+	private void assertDistribution(String name, ParameterValue value, double mean, double variance) {
+		assertDistribution(name, value, null, mean, variance);
+	}
+
+	@Test
+	public void testReproducibleReplications() {
+		System.out.println("testReproducibleReplications");
+		SimulationResults single = run(42, 8, 1);
+		SimulationResults parallel = run(42, 8, 4);
+		assertSameResults(single, parallel);
+		assertSameResults(single, run(42, 8, 1));
+
+		SimulationResults other = run(43, 8, 1);
+		Assert.assertFalse(single.getMeanCycleTime()==other.getMeanCycleTime());
+	}
+
+	@Test
+	public void testSamplerDistributions() {
+		System.out.println("testSamplerDistributions");
+		NormalDistributionType normal = bpsim.createNormalDistributionType();
+		normal.setMean(10);
+		normal.setStandardDeviation(2);
+		assertDistribution("normal", normal, 10, 4);
+
+		// the variance of a standard normal distribution truncated to [-1,1]
+		// is 1 - 2 phi(1) / (2 Phi(1) - 1)
+		TruncatedNormalDistributionType truncated = bpsim.createTruncatedNormalDistributionType();
+		truncated.setMean(0);
+		truncated.setStandardDeviation(1);
+		truncated.setMin(-1);
+		truncated.setMax(1);
+		assertDistribution("truncated normal", truncated, 0, 0.291132);
+
+		UniformDistributionType uniform = bpsim.createUniformDistributionType();
+		uniform.setMin(2);
+		uniform.setMax(8);
+		assertDistribution("uniform", uniform, 5, 3);
+
+		PoissonDistributionType poisson = bpsim.createPoissonDistributionType();
+		poisson.setMean(4);
+		assertDistribution("poisson", poisson, 4, 4);
+		// large means use the normal approximation
+		poisson = bpsim.createPoissonDistributionType();
+		poisson.setMean(50);
+		assertDistribution("poisson (normal approximation)", poisson, 50, 50);
+
+		assertDistribution("exponential", exponential(3), 3, 9);
+
+		TriangularDistributionType triangular = bpsim.createTriangularDistributionType();
+		triangular.setMin(1);
+		triangular.setMode(2);
+		triangular.setMax(6);
+		assertDistribution("triangular", triangular, 3, 21.0 / 18.0);
+
+		// mean = scale * Gamma(1 + 1/shape), variance = scale^2 * (Gamma(1 + 2/shape) - Gamma(1 + 1/shape)^2)
+		WeibullDistributionType weibull = bpsim.createWeibullDistributionType();
+		weibull.setShape(2);
+		weibull.setScale(1);
+		assertDistribution("weibull", weibull, 0.886227, 0.214602);
+
+		GammaDistributionType gamma = bpsim.createGammaDistributionType();
+		gamma.setShape(3);
+		gamma.setScale(2);
+		assertDistribution("gamma", gamma, 6, 12);
+		gamma = bpsim.createGammaDistributionType();
+		gamma.setShape(0.5);
+		gamma.setScale(2);
+		assertDistribution("gamma (shape < 1)", gamma, 1, 2);
+
+		BetaDistributionType beta = bpsim.createBetaDistributionType();
+		beta.setShape(2);
+		beta.setScale(3);
+		assertDistribution("beta", beta, 0.4, 0.04);
+
+		ErlangDistributionType erlang = bpsim.createErlangDistributionType();
+		erlang.setK(4);
+		erlang.setMean(8);
+		assertDistribution("erlang", erlang, 8, 16);
+
+		LogNormalDistributionType logNormal = bpsim.createLogNormalDistributionType();
+		logNormal.setMean(10);
+		logNormal.setStandardDeviation(5);
+		assertDistribution("log-normal", logNormal, 10, 25);
+
+		BinomialDistributionType binomial = bpsim.createBinomialDistributionType();
+		binomial.setProbability(0.3);
+		binomial.setTrials(20);
+		assertDistribution("binomial", binomial, 6, 4.2);
+
+		// values are converted to the base time unit
+		NegativeExponentialDistributionType seconds = exponential(2);
+		seconds.setTimeUnit(TimeUnit.S);
+		assertDistribution("exponential (s)", seconds, TimeUnit.MS, 2000, 4000000);
+		Assert.assertEquals(1.0, Sampler.create(numeric(1), TimeUnit.MS).sample(new Random(1)), 0);
+		NumericParameterType minute = numeric(1);
+		minute.setTimeUnit(TimeUnit.MIN);
+		Assert.assertEquals(60000.0, Sampler.create(minute, TimeUnit.MS).sample(new Random(1)), 0);
+	}
+
+	@Test
+	public void testSingleServerQueue() {
+		System.out.println("testSingleServerQueue");
+		SimulationResults results = run(1, 20, 4);
+		double lambda = 1.0 / ARRIVAL_MEAN;
+		double mu = 1.0 / SERVICE_MEAN;
+		double rho = lambda / mu;
+
+		// every instance passes the Task once, and all instances are run to completion
+		ElementStatistics task = results.getElementStatistics("Task_1");
+		Assert.assertEquals(INSTANCES, results.getCreatedInstances(), 0);
+		Assert.assertEquals(INSTANCES, results.getCompletedInstances(), 0);
+		Assert.assertEquals(INSTANCES, task.getActivations(), 0);
+		Assert.assertEquals(1, task.getResources());
+		Assert.assertTrue(Double.isNaN(results.getElementStatistics("StartEvent_1").getUtilization()));
+
+		// the cycle time is made up of the queue and processing time
+		Assert.assertEquals(task.getMeanQueueTime() + task.getMeanProcessingTime(), results.getMeanCycleTime(),
+				1e-9 * results.getMeanCycleTime());
+		// utilization law: U = X * S
+		Assert.assertEquals(results.getThroughput() * task.getMeanProcessingTime(), task.getUtilization(),
+				0.01 * task.getUtilization());
+
+		Assert.assertEquals(SERVICE_MEAN, task.getMeanProcessingTime(), 0.05 * SERVICE_MEAN);
+		Assert.assertEquals(lambda, results.getThroughput(), 0.05 * lambda);
+		Assert.assertEquals(rho, task.getUtilization(), 0.05 * rho);
+		// mean queue time of an M/M/1 queue: Wq = rho / (mu - lambda)
+		double wq = rho / (mu - lambda);
+		Assert.assertEquals(wq, task.getMeanQueueTime(), 0.15 * wq);
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2012, 2013, 2014 Red Hat, Inc.
+ *  All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.tests;
+
+import java.io.File;
+
+import org.eclipse.bpmn2.modeler.core.model.Bpmn2ModelerResourceFactoryImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+
+/**
+ * Helpers shared by the tests in this bundle
+ */
+public class TestUtil {
+
+	private TestUtil() {
+	}
+
+	/**
+	 * Create an empty BPMN2 Resource in a new ResourceSet. The Resource is
+	 * never saved; its URI only names a file in the temp directory.
+	 *
+	 * @param name the file name of the Resource.
+	 * @return the new Resource.
+	 */
+	public static Resource createResource(String name) {
+		File file = new File(System.getProperty("java.io.tmpdir"), name);
+		ResourceSet rs = new ResourceSetImpl();
+		Resource resource = new Bpmn2ModelerResourceFactoryImpl().createResource(URI.createFileURI(file.getAbsolutePath()));
+		rs.getResources().add(resource);
+		return resource;
+	}
+}
@@ -14,10 +14,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 import junit.framework.Assert;
@@ -25,6 +27,7 @@ import junit.framework.Assert;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WIDException;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WIDHandler;
 import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WorkItemDefinition;
+import org.eclipse.bpmn2.modeler.runtime.jboss.jbpm5.wid.WorkItemDefinitionImpl;
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
@@ -141,4 +144,142 @@ public class TestWIDHandler {
 			Assert.assertTrue(e != null);
 		}
 	}
+
+	private HashMap<String, WorkItemDefinition> evaluate(String content) {
+		HashMap<String, WorkItemDefinition> widMap = new HashMap<String, WorkItemDefinition>();
+		try {
+			WIDHandler.evaluateWorkDefinitions(widMap, content);
+		} catch (WIDException e) {
+			Assert.fail("Failed with exception " + e.getMessage());
+		}
+		return widMap;
+	}
+
+	private void assertTypes(Map<String, String> types, String... namesAndTypes) {
+		Assert.assertEquals(namesAndTypes.length / 2, types.size());
+		for (int i = 0; i < namesAndTypes.length; i += 2)
+			Assert.assertEquals(namesAndTypes[i + 1], types.get(namesAndTypes[i]));
+	}
+
+	private void assertSyntaxError(String content, int line, int column) {
+		HashMap<String, WorkItemDefinition> widMap = new HashMap<String, WorkItemDefinition>();
+		try {
+			WIDHandler.evaluateWorkDefinitions(widMap, content);
+			Assert.fail("No exception for " + content);
+		} catch (WIDException e) {
+			System.out.println(e.getMessage());
+			Assert.assertEquals(line, e.getLine());
+			Assert.assertEquals(column, e.getColumn());
+		}
+	}
+
+	@Test
+	public void testConformance() {
+		System.out.println("testConformance: widfiles/*.wid");
+		HashMap<String, WorkItemDefinition> widMap = evaluate(getFile("widfiles/Email.wid"));
+		Assert.assertEquals(1, widMap.size());
+		WorkItemDefinition wid = widMap.get("Email WID");
+		Assert.assertEquals("Email (WID) Task", wid.getDisplayName());
+		Assert.assertEquals("Communication", wid.getCategory());
+		Assert.assertEquals("email.gif", wid.getIcon());
+		assertTypes(wid.getParameters(),
+				"From", "java.lang.String",
+				"To", "java.lang.String",
+				"Subject", "java.lang.String",
+				"Body", "java.lang.String");
+		Assert.assertTrue(wid.getResults().isEmpty());
+
+		widMap = evaluate(getFile("widfiles/Twitter.wid"));
+		Assert.assertEquals(1, widMap.size());
+		wid = widMap.get("Twitter WID");
+		Assert.assertEquals("twitter.gif", wid.getIcon());
+		assertTypes(wid.getParameters(), "Message", "java.lang.String");
+
+		// java.wid has no comma after the "results" map
+		widMap = evaluate(getFile("widfiles/java.wid"));
+		Assert.assertEquals(1, widMap.size());
+		wid = widMap.get("Java");
+		Assert.assertEquals("org.drools.eclipse.flow.common.editor.editpart.work.SampleCustomEditor",
+				wid.getCustomEditor());
+		assertTypes(wid.getParameters(),
+				"Class", "java.lang.String",
+				"Method", "java.lang.String",
+				"Object", "java.lang.Object",
+				"ParameterTypes", "java.lang.Object",
+				"Parameters", "java.lang.Object");
+		assertTypes(wid.getResults(), "Result", "java.lang.Object");
+
+		widMap = evaluate(getFile("widfiles/logemail.wid"));
+		Assert.assertEquals(2, widMap.size());
+		Assert.assertEquals("Simple Email", widMap.get("SimpleEmail").getDisplayName());
+		Assert.assertEquals("icons/open.gif", widMap.get("Log").getIcon());
+		assertTypes(widMap.get("Log").getParameters(), "Message", "java.lang.String");
+	}
+
+	@Test
+	public void testNestedValues() {
+		System.out.println("testNestedValues: widfiles/conformance.wid");
+		HashMap<String, WorkItemDefinition> widMap = evaluate(getFile("widfiles/conformance.wid"));
+		Assert.assertEquals(2, widMap.size());
+		WorkItemDefinition wid = widMap.get("Rest");
+		Assert.assertEquals("REST: call a service, then wait", wid.getDisplayName());
+		Assert.assertEquals("Calls a 'REST' service", wid.getDescription());
+		Assert.assertEquals("Services", wid.getCategory());
+		Assert.assertEquals("icons/rest.png", wid.getIcon());
+		assertTypes(wid.getParameters(),
+				"Url", "java.lang.String",
+				"Method", "java.lang.String",
+				"Headers", "java.lang.Object",
+				"Timeout", "java.lang.Integer");
+		assertTypes(wid.getResults(),
+				"Result", "java.lang.Object",
+				"Status", "java.lang.Integer");
+		WorkItemDefinitionImpl impl = (WorkItemDefinitionImpl) wid;
+		Assert.assertEquals(10, impl.getLine());
+		Assert.assertEquals(3, impl.getColumn());
+
+		wid = widMap.get("Ping");
+		Assert.assertTrue(wid.getParameters().isEmpty());
+		Assert.assertEquals(34, ((WorkItemDefinitionImpl) wid).getLine());
+	}
+
+	@Test
+	public void testSyntaxErrors() {
+		System.out.println("testSyntaxErrors: widfiles/syntaxerror.wid");
+		assertSyntaxError(getFile("widfiles/syntaxerror.wid"), 5, 13);
+		assertSyntaxError("[\n  [\n    \"name\" : \"Broken\"\n", 2, 3);
+		assertSyntaxError("[\n  [ \"name\" : \"Broken ]\n]\n", 2, 14);
+		assertSyntaxError("[\n  [ \"name\" : new () ]\n]\n", 2, 18);
+		assertSyntaxError("[\n  [ \"name\" : \"A\" ] /* not closed", 2, 20);
+		assertSyntaxError("[\n\t[ [ \"a\" ] : \"A\" ]\n]", 2, 4);
+		// no list at all is not an error
+		Assert.assertTrue(evaluate("import org.drools.process.core.datatype.impl.type.StringDataType;\n").isEmpty());
+	}
+
+	@Test
+	public void testImports() {
+		System.out.println("testImports: wildcard imports");
+		HashMap<String, WorkItemDefinition> widMap = evaluate(
+				"import org.drools.process.core.datatype.impl.type.*;\n" +
+				"import org.drools.process.core.datatype.impl.type.StringDataType\n" +
+				"import static org.jbpm.Util.*; import java.util.*;\n" +
+				"[\n" +
+				"  [ \"name\" : \"Wildcard\", \"parameters\" : [ \"Text\" : new StringDataType() ] ]\n" +
+				"]\n");
+		Assert.assertEquals(1, widMap.size());
+		assertTypes(widMap.get("Wildcard").getParameters(), "Text", "java.lang.String");
+		Assert.assertEquals(4, ((WorkItemDefinitionImpl) widMap.get("Wildcard")).getLine());
+	}
+
+	@Test
+	public void testReader() {
+		System.out.println("testReader: widfiles/logemail.wid");
+		HashMap<String, WorkItemDefinition> widMap = new HashMap<String, WorkItemDefinition>();
+		try {
+			WIDHandler.evaluateWorkDefinitions(widMap, new StringReader(getFile(null)));
+		} catch (WIDException e) {
+			Assert.fail("Failed with exception " + e.getMessage());
+		}
+		Assert.assertEquals(evaluate(getFile(null)).keySet(), widMap.keySet());
+	}
 }